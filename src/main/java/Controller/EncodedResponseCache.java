@@ -0,0 +1,78 @@
+package Controller;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The encoded JSON of recently served response bodies, by an int key (a message_id or an account_id), so
+ * that serving the same message or timeline again writes stored bytes instead of running Jackson.
+ *
+ * Like {@link Service.MessageCache} it is direct-mapped: each key has one slot and a newer body
+ * displaces an older one sharing its slot. Each entry remembers the object it was encoded from, and is
+ * only used for that same instance. The service caches hand out a new instance whenever a message or
+ * timeline changes, so stale bytes are never served even for writes that did not call
+ * {@link #invalidate(int)}.
+ */
+class EncodedResponseCache {
+
+    private static final class Entry {
+        final int key;
+        final Object source;
+        final byte[] body;
+
+        Entry(int key, Object source, byte[] body){
+            this.key = key;
+            this.source = source;
+            this.body = body;
+        }
+    }
+
+    private final AtomicReferenceArray<Entry> slots;
+    private final int mask;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * @param capacity the number of slots, rounded up to a power of two.
+     */
+    EncodedResponseCache(int capacity){
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        slots = new AtomicReferenceArray<>(size);
+        mask = size - 1;
+    }
+
+    /**
+     * @return the body encoded from source under key, or null if it is not cached.
+     */
+    byte[] get(int key, Object source){
+        Entry entry = slots.get(key & mask);
+        if(entry != null && entry.key == key && entry.source == source){
+            hits.incrementAndGet();
+            return entry.body;
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    void put(int key, Object source, byte[] body){
+        slots.set(key & mask, new Entry(key, source, body));
+    }
+
+    /**
+     * Drops the body cached under key.
+     */
+    void invalidate(int key){
+        Entry entry = slots.get(key & mask);
+        if(entry != null && entry.key == key){
+            slots.compareAndSet(key & mask, entry, null);
+        }
+    }
+
+    long getHits(){
+        return hits.get();
+    }
+
+    long getMisses(){
+        return misses.get();
+    }
+}
@@ -0,0 +1,167 @@
+package Controller;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Remembers the responses of write requests by their Idempotency-Key, so that a client retrying after a
+ * timeout gets the original response instead of writing again. The first request with a key becomes its
+ * owner and runs; duplicates that arrive while it is in flight wait for its response. Entries expire after
+ * a fixed time and the store holds at most a fixed number of them, dropping the oldest first. Entries still
+ * in flight are never dropped, since their duplicates would run again; when the store is full of them, new
+ * keys are refused.
+ *
+ * A key is bound to the body it was first sent with; reusing it for a different body is reported as a
+ * mismatch rather than replayed.
+ */
+public class IdempotencyStore {
+
+    /**
+     * A recorded response.
+     */
+    public static final class StoredResponse {
+        public final int status;
+        public final String contentType;
+        public final byte[] body;
+
+        public StoredResponse(int status, String contentType, byte[] body){
+            this.status = status;
+            this.contentType = contentType;
+            this.body = body;
+        }
+    }
+
+    private static final class Entry {
+        final long expiresAtNanos;
+        final byte[] fingerprint;
+        /** completed with the response, or with null if the owner failed without one */
+        final CompletableFuture<StoredResponse> response = new CompletableFuture<>();
+
+        Entry(long expiresAtNanos, byte[] fingerprint){
+            this.expiresAtNanos = expiresAtNanos;
+            this.fingerprint = fingerprint;
+        }
+    }
+
+    private final int maxEntries;
+    private final long ttlNanos;
+    // insertion order is expiry order, since every entry lives for the same time
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>();
+
+    /**
+     * @param maxEntries the most keys remembered at once.
+     * @param ttlSeconds how long a key is remembered.
+     */
+    public IdempotencyStore(int maxEntries, long ttlSeconds){
+        this.maxEntries = maxEntries;
+        this.ttlNanos = TimeUnit.SECONDS.toNanos(ttlSeconds);
+    }
+
+    /**
+     * The outcome of {@link #claim(String, byte[])}: either this caller owns the key and must call
+     * {@link #complete(StoredResponse)} or {@link #abandon()}, or another request got there first.
+     */
+    public final class Claim {
+        private final String key;
+        private final Entry entry;
+        private final boolean owner;
+        private final boolean matches;
+
+        private Claim(String key, Entry entry, boolean owner, boolean matches){
+            this.key = key;
+            this.entry = entry;
+            this.owner = owner;
+            this.matches = matches;
+        }
+
+        public boolean isOwner(){
+            return owner;
+        }
+
+        /**
+         * @return false if the key was first used with a different request body.
+         */
+        public boolean matches(){
+            return matches;
+        }
+
+        /**
+         * Records the owner's response and hands it to every waiting duplicate.
+         */
+        public void complete(StoredResponse response){
+            entry.response.complete(response);
+        }
+
+        /**
+         * Forgets the key after the owner failed without a response, so a retry runs again.
+         */
+        public void abandon(){
+            synchronized(entries){
+                entries.remove(key, entry);
+            }
+            entry.response.complete(null);
+        }
+
+        /**
+         * @return a future of the owner's response, completed with null if the owner abandoned the key. It
+         *         is a copy, so callers may time it out without affecting other duplicates.
+         */
+        public CompletableFuture<StoredResponse> response(){
+            return entry.response.copy();
+        }
+    }
+
+    /**
+     * Claims a key for a request with the given body fingerprint.
+     * @return the claim, or null if the key is new and the store is full of keys still in flight.
+     */
+    public Claim claim(String key, byte[] fingerprint){
+        long now = System.nanoTime();
+        synchronized(entries){
+            evict(now);
+            Entry existing = entries.get(key);
+            if(existing != null){
+                return new Claim(key, existing, false, Arrays.equals(existing.fingerprint, fingerprint));
+            }
+            if(entries.size() >= maxEntries){
+                return null;
+            }
+            Entry entry = new Entry(now + ttlNanos, fingerprint);
+            entries.put(key, entry);
+            return new Claim(key, entry, true, true);
+        }
+    }
+
+    /**
+     * Drops expired entries, and the oldest ones while the store is full, skipping those still in flight.
+     */
+    private void evict(long now){
+        Iterator<Map.Entry<String, Entry>> oldest = entries.entrySet().iterator();
+        while(oldest.hasNext()){
+            Entry entry = oldest.next().getValue();
+            if(entries.size() < maxEntries && entry.expiresAtNanos - now > 0){
+                break;
+            }
+            if(entry.response.isDone()){
+                oldest.remove();
+            }
+        }
+    }
+
+    /**
+     * @return the number of keys remembered, including expired ones not yet evicted.
+     */
+    public int size(){
+        synchronized(entries){
+            return entries.size();
+        }
+    }
+
+    public int getMaxEntries(){
+        return maxEntries;
+    }
+}
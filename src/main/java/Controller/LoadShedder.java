@@ -0,0 +1,45 @@
+package Controller;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides, CoDel-style, whether a request that waited in the server queue should be rejected.
+ *
+ * Queueing is fine as long as the queue regularly drains. So within each interval the shedder tracks the
+ * smallest queue delay any request saw: if even that minimum stayed above the target, the queue never
+ * emptied during the interval and the server is overloaded. In normal operation a request is only shed
+ * if it waited longer than a whole interval; while overloaded, anything that waited longer than the
+ * target is shed, so the queue drains quickly and the requests that do run see a short delay.
+ */
+public class LoadShedder {
+    private final long targetNanos;
+    private final long intervalNanos;
+
+    private long intervalStart = System.nanoTime();
+    private long minDelayInInterval = Long.MAX_VALUE;
+    private boolean overloaded;
+
+    public LoadShedder(long targetMillis, long intervalMillis){
+        this.targetNanos = TimeUnit.MILLISECONDS.toNanos(targetMillis);
+        this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(intervalMillis);
+    }
+
+    /**
+     * Records the queue delay of a request.
+     * @return true if the request should be rejected.
+     */
+    public synchronized boolean shouldShed(long queueDelayNanos){
+        long now = System.nanoTime();
+        if(now - intervalStart >= intervalNanos){
+            overloaded = minDelayInInterval != Long.MAX_VALUE && minDelayInInterval > targetNanos;
+            minDelayInInterval = Long.MAX_VALUE;
+            intervalStart = now;
+        }
+        minDelayInInterval = Math.min(minDelayInInterval, queueDelayNanos);
+        return queueDelayNanos > (overloaded ? targetNanos : intervalNanos);
+    }
+
+    public synchronized boolean isOverloaded(){
+        return overloaded;
+    }
+}
@@ -0,0 +1,61 @@
+package Controller;
+
+import org.eclipse.jetty.util.BlockingArrayQueue;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Jetty's request thread pool with a bounded job queue. Each job is stamped when it is queued, and while
+ * it runs the time it spent waiting is available to the request handlers on that thread through
+ * {@link #takeQueueDelay()}. Jobs offered to a full queue are rejected, which makes Jetty close the
+ * connection instead of letting the backlog grow without limit.
+ */
+class MeasuredThreadPool extends QueuedThreadPool {
+    private static final ThreadLocal<long[]> QUEUE_DELAY = ThreadLocal.withInitial(() -> new long[1]);
+
+    private final LongAdder rejected;
+    private final int queueCapacity;
+
+    MeasuredThreadPool(int maxThreads, int minThreads, int queueCapacity, LongAdder rejected){
+        super(maxThreads, minThreads, 60_000, new BlockingArrayQueue<>(queueCapacity));
+        this.rejected = rejected;
+        this.queueCapacity = queueCapacity;
+        setName("http");
+    }
+
+    int getQueueCapacity(){
+        return queueCapacity;
+    }
+
+    @Override
+    public void execute(Runnable job){
+        long queuedAt = System.nanoTime();
+        try{
+            super.execute(() -> {
+                long[] delay = QUEUE_DELAY.get();
+                delay[0] = System.nanoTime() - queuedAt;
+                try{
+                    job.run();
+                }finally{
+                    delay[0] = 0;
+                }
+            });
+        }catch(RejectedExecutionException e){
+            rejected.increment();
+            throw e;
+        }
+    }
+
+    /**
+     * @return how long the job running on this thread waited in the queue, in nanoseconds. The value is
+     *         cleared, so later requests served by the same job (eg on a keep-alive connection) report 0.
+     */
+    static long takeQueueDelay(){
+        long[] delay = QUEUE_DELAY.get();
+        long nanos = delay[0];
+        delay[0] = 0;
+        return nanos;
+    }
+}
@@ -0,0 +1,45 @@
+package Controller;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import Model.Message;
+import Model.MessageField;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Writes message lists with only the requested fields, straight to a streaming generator. This skips the
+ * reflection-based bean serializer and never writes the fields the client did not ask for. The factory
+ * decides the encoding (JSON, or a binary format, see {@link PayloadFormat}).
+ */
+class MessageJsonWriter {
+
+    static byte[] write(List<Message> messages, Set<MessageField> fields, JsonFactory factory){
+        boolean id = fields.contains(MessageField.MESSAGE_ID);
+        boolean postedBy = fields.contains(MessageField.POSTED_BY);
+        boolean text = fields.contains(MessageField.MESSAGE_TEXT);
+        boolean epoch = fields.contains(MessageField.TIME_POSTED_EPOCH);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(64 + messages.size() * 48);
+        try(JsonGenerator generator = factory.createGenerator(out, JsonEncoding.UTF8)){
+            generator.writeStartArray();
+            for(Message message : messages){
+                generator.writeStartObject();
+                if(id) generator.writeNumberField("message_id", message.message_id);
+                if(postedBy) generator.writeNumberField("posted_by", message.posted_by);
+                if(text) generator.writeStringField("message_text", message.message_text);
+                if(epoch) generator.writeNumberField("time_posted_epoch", message.time_posted_epoch);
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+        }catch(IOException e){
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+}
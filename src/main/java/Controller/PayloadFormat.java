@@ -0,0 +1,85 @@
+package Controller;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.fasterxml.jackson.dataformat.smile.databind.SmileMapper;
+
+import io.javalin.http.Context;
+
+import java.io.IOException;
+
+/**
+ * The encodings request and response bodies can use. JSON is the default; internal clients can ask for
+ * CBOR or Smile, which encode the same data model in binary and are cheaper to produce and parse.
+ *
+ * The request body format follows Content-Type, the response format follows Accept. Anything that does
+ * not name a binary format is treated as JSON, so existing clients are unaffected.
+ */
+public enum PayloadFormat {
+    JSON("application/json", new ObjectMapper()),
+    CBOR("application/cbor", new CBORMapper()),
+    SMILE("application/x-jackson-smile", new SmileMapper());
+
+    private final String mediaType;
+    private final ObjectMapper mapper;
+
+    PayloadFormat(String mediaType, ObjectMapper mapper){
+        this.mediaType = mediaType;
+        this.mapper = mapper;
+    }
+
+    public String getMediaType(){
+        return mediaType;
+    }
+
+    /**
+     * @return the streaming factory of this format, for writers that bypass data binding.
+     */
+    public JsonFactory getFactory(){
+        return mapper.getFactory();
+    }
+
+    public <T> T read(byte[] body, Class<T> type) throws IOException {
+        return mapper.readValue(body, type);
+    }
+
+    public byte[] write(Object value) throws JsonProcessingException {
+        return mapper.writeValueAsBytes(value);
+    }
+
+    /**
+     * @return the format of the request body, by its Content-Type.
+     */
+    public static PayloadFormat ofRequest(Context ctx){
+        String contentType = ctx.header("Content-Type");
+        if(contentType != null){
+            for(PayloadFormat format : values()){
+                if(contentType.regionMatches(true, 0, format.mediaType, 0, format.mediaType.length())){
+                    return format;
+                }
+            }
+        }
+        return JSON;
+    }
+
+    /**
+     * @return the first format in the Accept header this server can write, or JSON.
+     */
+    public static PayloadFormat forResponse(Context ctx){
+        String accept = ctx.header("Accept");
+        if(accept == null){
+            return JSON;
+        }
+        for(String range : accept.split(",")){
+            String mediaRange = range.split(";", 2)[0].trim();
+            for(PayloadFormat format : values()){
+                if(format.mediaType.equalsIgnoreCase(mediaRange)){
+                    return format;
+                }
+            }
+        }
+        return JSON;
+    }
+}
@@ -0,0 +1,26 @@
+package Controller;
+
+import jdk.jfr.Category;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A JDK Flight Recorder event for each HTTP request, from the first before-handler to the last
+ * after-handler.
+ */
+@Name("socialmedia.Request")
+@Label("HTTP Request")
+@Category({"Social Media", "HTTP"})
+class RequestEvent extends jdk.jfr.Event {
+    @Label("Method")
+    String method;
+
+    @Label("Route")
+    String route;
+
+    @Label("Status")
+    int status;
+
+    @Label("Trace Id")
+    String traceId;
+}
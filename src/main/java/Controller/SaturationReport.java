@@ -0,0 +1,159 @@
+package Controller;
+
+import Service.MessageService;
+import Service.TimelineCache;
+import Util.ConnectionUtil;
+import Util.DatabaseExecutor;
+import Util.Readiness;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.MemoryUsage;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The report served by GET /admin/saturation: how full the connection pool, the database executor and
+ * Jetty's thread pool and queue are, GC pauses, heap use and cache fill. Its "saturation" is the fullest
+ * of the pools and queues, from 0 to 1, for load balancers to weigh the node by.
+ *
+ * Every figure is read from a counter or an MXBean that is looked up once, so the report is cheap enough
+ * to poll every second. The GC pause share covers the time since the previous report.
+ */
+class SaturationReport {
+    private final Readiness readiness;
+    private final MeasuredThreadPool threadPool;
+    private final DatabaseExecutor dbExecutor;
+    private final MessageService messageService;
+    private final IdempotencyStore idempotency;
+    // null when load shedding is disabled
+    private final LoadShedder loadShedder;
+    private final boolean usesDatabase;
+    private final List<GarbageCollectorMXBean> collectors = ManagementFactory.getGarbageCollectorMXBeans();
+    private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+    private long lastReportNanos = System.nanoTime();
+    private long lastPauseMillis = totalPauseMillis();
+
+    SaturationReport(Readiness readiness, MeasuredThreadPool threadPool, DatabaseExecutor dbExecutor,
+                     MessageService messageService, IdempotencyStore idempotency, LoadShedder loadShedder,
+                     boolean usesDatabase){
+        this.readiness = readiness;
+        this.threadPool = threadPool;
+        this.dbExecutor = dbExecutor;
+        this.messageService = messageService;
+        this.idempotency = idempotency;
+        this.loadShedder = loadShedder;
+        this.usesDatabase = usesDatabase;
+    }
+
+    /**
+     * @return the report, as nested maps for Jackson.
+     */
+    Map<String, Object> build(){
+        double saturation = Math.max(ratio(threadPool.getBusyThreads(), threadPool.getMaxThreads()),
+                ratio(threadPool.getQueueSize(), threadPool.getQueueCapacity()));
+        saturation = Math.max(saturation, ratio(dbExecutor.getQueued(), dbExecutor.getQueueCapacity()));
+
+        Map<String, Object> db = new LinkedHashMap<>();
+        if(usesDatabase){
+            int active = ConnectionUtil.getActiveConnections();
+            int max = ConnectionUtil.getMaxConnections();
+            db.put("active", active);
+            db.put("idle", ConnectionUtil.getIdleConnections());
+            db.put("waiting", ConnectionUtil.getWaitingConnections());
+            db.put("max", max);
+            if(ConnectionUtil.getLimiter() != null){
+                db.put("limit", ConnectionUtil.getLimiter().getLimit());
+            }
+            saturation = Math.max(saturation, ratio(active, max));
+        }
+        db.put("executor_active", dbExecutor.getActive());
+        db.put("executor_threads", dbExecutor.getThreads());
+        db.put("executor_queued", dbExecutor.getQueued());
+        db.put("executor_queue_capacity", dbExecutor.getQueueCapacity());
+
+        Map<String, Object> http = new LinkedHashMap<>();
+        http.put("threads", threadPool.getThreads());
+        http.put("busy", threadPool.getBusyThreads());
+        http.put("idle", threadPool.getIdleThreads());
+        http.put("max_threads", threadPool.getMaxThreads());
+        http.put("queue_size", threadPool.getQueueSize());
+        http.put("queue_capacity", threadPool.getQueueCapacity());
+
+        MemoryUsage heapUsage = memory.getHeapMemoryUsage();
+        Map<String, Object> heap = new LinkedHashMap<>();
+        heap.put("used_bytes", heapUsage.getUsed());
+        heap.put("committed_bytes", heapUsage.getCommitted());
+        heap.put("max_bytes", heapUsage.getMax());
+
+        Map<String, Object> caches = new LinkedHashMap<>();
+        caches.put("messages", fill(messageService.getMessageCache().size(), messageService.getMessageCache().capacity()));
+        TimelineCache timelines = messageService.getTimelineCache();
+        caches.put("timelines_bytes", fill(timelines.getWeight(), timelines.getMaxWeight()));
+        caches.put("idempotency_keys", fill(idempotency.size(), idempotency.getMaxEntries()));
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("ready", readiness.isReady());
+        report.put("overloaded", loadShedder != null && loadShedder.isOverloaded());
+        report.put("saturation", Math.round(saturation * 100) / 100.0);
+        report.put("db", db);
+        report.put("http", http);
+        report.put("gc", gc());
+        report.put("heap", heap);
+        report.put("caches", caches);
+        return report;
+    }
+
+    /**
+     * @return the collections and pause time of each collector, and the share of the time since the
+     *         previous report spent in them.
+     */
+    private synchronized Map<String, Object> gc(){
+        long now = System.nanoTime();
+        long pauseMillis = 0;
+        long collections = 0;
+        List<Map<String, Object>> perCollector = new ArrayList<>();
+        for(GarbageCollectorMXBean collector : collectors){
+            Map<String, Object> values = new LinkedHashMap<>();
+            values.put("name", collector.getName());
+            values.put("collections", collector.getCollectionCount());
+            values.put("pause_millis", collector.getCollectionTime());
+            perCollector.add(values);
+            collections += Math.max(0, collector.getCollectionCount());
+            pauseMillis += Math.max(0, collector.getCollectionTime());
+        }
+        double elapsedMillis = (now - lastReportNanos) / 1e6;
+        double recentPercent = elapsedMillis <= 0 ? 0 : 100.0 * (pauseMillis - lastPauseMillis) / elapsedMillis;
+        lastReportNanos = now;
+        lastPauseMillis = pauseMillis;
+
+        Map<String, Object> gc = new LinkedHashMap<>();
+        gc.put("collections", collections);
+        gc.put("pause_millis", pauseMillis);
+        gc.put("recent_pause_percent", Math.round(recentPercent * 100) / 100.0);
+        gc.put("collectors", perCollector);
+        return gc;
+    }
+
+    private long totalPauseMillis(){
+        long pauseMillis = 0;
+        for(GarbageCollectorMXBean collector : collectors){
+            pauseMillis += Math.max(0, collector.getCollectionTime());
+        }
+        return pauseMillis;
+    }
+
+    private static Map<String, Object> fill(long size, long capacity){
+        Map<String, Object> fill = new LinkedHashMap<>();
+        fill.put("size", size);
+        fill.put("capacity", capacity);
+        return fill;
+    }
+
+    private static double ratio(long used, long capacity){
+        return capacity <= 0 ? 0 : Math.min(1, (double) used / capacity);
+    }
+}
@@ -1,82 +1,696 @@
 package Controller;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.JsonMappingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 
 import io.javalin.Javalin;
+import io.javalin.http.BadRequestResponse;
 import io.javalin.http.Context;
+import io.javalin.http.Handler;
+import io.javalin.http.ServiceUnavailableResponse;
 
+import DAO.AccountDAO;
+import DAO.MessageDAO;
+import DAO.Repositories;
 import Model.*;
 import Service.*;
+import Util.AdaptiveLimiter;
+import Util.AppConfig;
+import Util.ConnectionUtil;
+import Util.DatabaseExecutor;
+import Util.DatabaseOverloadedException;
+import Util.Metrics;
+import Util.Profiler;
+import Util.Readiness;
+import Util.SnapshotManager;
+import Util.Snapshottable;
+import Util.StartupSequence;
+import Util.Trace;
+import Util.Tracer;
+import Util.UnitOfWork;
 
+import org.eclipse.jetty.server.Server;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
 
 /**
  * Endpoints and handlers for the controller.
  */
 public class SocialMediaController {
+    static final String IDEMPOTENCY_KEY = "Idempotency-Key";
+    static final String TRACE_ID = "X-Trace-Id";
+    // the request's trace, kept on the context because the response may be finished on another thread
+    static final String TRACE_ATTRIBUTE = "trace";
+    // the request's RequestEvent, only set while Flight Recorder records them
+    static final String EVENT_ATTRIBUTE = "requestEvent";
+    private static final CompletableFuture<Void> DONE = CompletableFuture.completedFuture(null);
+
     AccountService accountService;
     MessageService messageService;
+    PurgeJobs purgeJobs;
+    Repositories repositories;
+    Readiness readiness = new Readiness();
+    // only set when the "snapshot.dir" setting is configured
+    SnapshotManager snapshotManager;
+    Javalin app;
+    Metrics metrics = new Metrics();
+    // null when the "shed.enabled" setting is false
+    LoadShedder loadShedder;
+    LongAdder shedRequests = metrics.counter("http.shed");
+    IdempotencyStore idempotency = new IdempotencyStore(AppConfig.getInt("idempotency.maxEntries", 10000),
+            AppConfig.getLong("idempotency.ttlSeconds", 3600));
+    long idempotencyWaitMillis = AppConfig.getLong("idempotency.waitMillis", 10000);
+    LongAdder replayedRequests = metrics.counter("idempotency.replayed");
+    Tracer tracer = new Tracer(AppConfig.getInt("trace.capacity", 1024), AppConfig.getDouble("trace.sampleRate", 0.01));
+    // JSON of the messages and timelines served last, by message_id and account_id
+    EncodedResponseCache encodedMessages = new EncodedResponseCache(AppConfig.getInt("cache.encodedMessages", 4096));
+    EncodedResponseCache encodedTimelines = new EncodedResponseCache(AppConfig.getInt("cache.encodedTimelines", 1024));
+    Profiler profiler = Profiler.fromConfig();
+    // created with the thread pool it reports on, in startAPI()
+    SaturationReport saturationReport;
+    // the most IDs one GET /messages?ids= request may ask for
+    int maxIdsPerRequest = AppConfig.getInt("messages.maxIds", 100);
 
+    /**
+     * Uses the storage engine selected by the "storage" setting, see {@link Repositories#fromConfig()}.
+     */
     public SocialMediaController(){
-        accountService = new AccountService();
-        messageService = new MessageService();
+        this(Repositories.fromConfig());
+    }
+
+    public SocialMediaController(Repositories repositories){
+        this.repositories = repositories;
+        accountService = new AccountService(repositories.getAccountRepository());
+        messageService = new MessageService(repositories.getMessageRepository());
+        purgeJobs = new PurgeJobs(messageService);
+
+        String snapshotDir = AppConfig.getString("snapshot.dir", null);
+        if(snapshotDir != null){
+            snapshotManager = new SnapshotManager(Paths.get(snapshotDir));
+            for(Snapshottable component : repositories.getSnapshottables()){
+                snapshotManager.register(component);
+            }
+            // after the engine's own sections, so the hot messages are reloaded from the restored store
+            snapshotManager.register(new HotMessages(messageService));
+            snapshotManager.register(messageService.getKnownAccounts());
+            snapshotManager.register(purgeJobs);
+        }
+    }
+
+    /**
+     * @return the readiness of this controller; it becomes ready once startup work has finished.
+     */
+    public Readiness getReadiness() {
+        return readiness;
+    }
+
+    public Metrics getMetrics() {
+        return metrics;
+    }
+
+    public Tracer getTracer() {
+        return tracer;
     }
     /**
      * the endpoints in the startAPI() method
      * @return a Javalin app object which defines the behavior of the Javalin controller.
      */
     public Javalin startAPI() {
-        Javalin app = Javalin.create();
-        app.post("/register", this::postUserRegistration);
-        app.post("/login", this::postUserLogin);
-        app.post("messages", this::postNewMessage);
-        app.get("/messages", this::getAllMessages);
-        app.get("/messages/{message_id}", this::getMessageByID);
-        app.delete("/messages/{message_id}", this::deleteByMessageID);
-        app.patch("/messages/{message_id}", this::updateMessageByID);
-        app.get("/accounts/{account_id}/messages", this::retrieveAllMessageOfUser);
+        // an explicit request thread pool whose queue is bounded, see MeasuredThreadPool
+        MeasuredThreadPool threadPool = new MeasuredThreadPool(AppConfig.getInt("http.maxThreads", 200),
+                AppConfig.getInt("http.minThreads", 8), AppConfig.getInt("http.queueCapacity", 1000),
+                metrics.counter("http.rejected"));
+        metrics.gauge("http.threads", threadPool::getThreads);
+        metrics.gauge("http.threads.busy", threadPool::getBusyThreads);
+        metrics.gauge("http.queue.size", threadPool::getQueueSize);
+        if(AppConfig.getBoolean("shed.enabled", true)){
+            loadShedder = new LoadShedder(AppConfig.getLong("shed.targetMillis", 5), AppConfig.getLong("shed.intervalMillis", 100));
+            metrics.gauge("http.overloaded", () -> loadShedder.isOverloaded() ? 1 : 0);
+        }
+        SingleFlight<VersionedMessage> messageFlights = messageService.getMessageFlights();
+        metrics.gauge("coalesce.message.loads", messageFlights::getLoads);
+        metrics.gauge("coalesce.message.shared", messageFlights::getShared);
+        metrics.gauge("coalesce.message.sharedPercent", messageFlights::getSharedPercent);
+        SingleFlight<List<Message>> authorFlights = messageService.getAuthorFlights();
+        metrics.gauge("coalesce.author.loads", authorFlights::getLoads);
+        metrics.gauge("coalesce.author.shared", authorFlights::getShared);
+        metrics.gauge("coalesce.author.sharedPercent", authorFlights::getSharedPercent);
+        TimelineCache timelineCache = messageService.getTimelineCache();
+        metrics.gauge("cache.timelines.entries", timelineCache::size);
+        metrics.gauge("cache.timelines.bytes", timelineCache::getWeight);
+        metrics.gauge("cache.timelines.hits", timelineCache::getHits);
+        metrics.gauge("cache.timelines.misses", timelineCache::getMisses);
+        metrics.gauge("cache.timelines.evictions", timelineCache::getEvictions);
+        metrics.gauge("cache.encoded.hits", () -> encodedMessages.getHits() + encodedTimelines.getHits());
+        metrics.gauge("cache.encoded.misses", () -> encodedMessages.getMisses() + encodedTimelines.getMisses());
+        metrics.gauge("idempotency.keys", idempotency::size);
+        metrics.gauge("trace.published", tracer::getPublished);
+        AdaptiveLimiter dbLimiter = ConnectionUtil.getLimiter();
+        if(repositories.usesDatabase() && dbLimiter != null){
+            metrics.gauge("db.limit", dbLimiter::getLimit);
+            metrics.gauge("db.inFlight", dbLimiter::getInFlight);
+            metrics.gauge("db.rejected", dbLimiter::getRejected);
+        }
+        metrics.gauge("db.checkouts", ConnectionUtil::getCheckouts);
+        metrics.gauge("db.slowQueries", ConnectionUtil.getSlowQueryLog()::getRecorded);
+        DatabaseExecutor dbExecutor = DatabaseExecutor.shared();
+        metrics.gauge("db.executor.active", dbExecutor::getActive);
+        metrics.gauge("db.executor.queued", dbExecutor::getQueued);
+        saturationReport = new SaturationReport(readiness, threadPool, dbExecutor, messageService, idempotency,
+                loadShedder, repositories.usesDatabase());
 
+        app = Javalin.create(config -> config.jetty.server(() -> new Server(threadPool)));
+        app.before(this::startTrace);
+        app.after(this::finishTrace);
+        app.before(this::shedLoad);
+        app.before(this::rejectUntilReady);
+        app.exception(DatabaseOverloadedException.class, (e, ctx) -> respondOverloaded(ctx, e));
+        app.get("/health/live", ctx -> ctx.json(Map.of("live", true)));
+        app.get("/health/ready", this::getHealthReady);
+        app.get("/admin/saturation", ctx -> ctx.json(saturationReport.build()));
+        app.get("/admin/metrics", ctx -> ctx.json(metrics.snapshot()));
+        app.get("/admin/traces", this::getTraces);
+        app.get("/admin/slow-queries", ctx -> ctx.json(ConnectionUtil.getSlowQueryLog().getEntries()));
+        app.get("/admin/jfr", ctx -> respondWithRecording(ctx, profiler.getStatus()));
+        app.post("/admin/jfr/start", this::startRecording);
+        app.post("/admin/jfr/stop", ctx -> respondWithRecording(ctx, profiler.stop()));
+        app.get("/admin/jfr/recording.jfr", this::downloadRecording);
+        app.post("/register", async(idempotent(transactional(this::postUserRegistration))));
+        app.post("/login", async(this::postUserLogin));
+        app.post("messages", async(idempotent(transactional(this::postNewMessage))));
+        app.get("/messages", async(this::getAllMessages));
+        app.get("/messages/{message_id}", async(this::getMessageByID));
+        app.delete("/messages/{message_id}", async(transactional(this::deleteByMessageID)));
+        app.patch("/messages/{message_id}", async(transactional(this::updateMessageByID)));
+        app.get("/accounts/{account_id}/messages", async(this::retrieveAllMessageOfUser));
+        app.get("/accounts/{account_id}/stats", async(this::getAccountStats));
+        app.delete("/accounts/{account_id}/messages", async(this::deleteAllMessagesOfUser));
+        app.post("/admin/purge", this::startPurge);
+        app.get("/admin/purge", ctx -> ctx.json(purgeJobs.getAll()));
+        app.get("/admin/purge/{job_id}", ctx -> respondWithJob(ctx, purgeJobs.get(jobIdOf(ctx))));
+        app.post("/admin/purge/{job_id}/pause", ctx -> respondWithJob(ctx, purgeJobs.pause(jobIdOf(ctx))));
+        app.post("/admin/purge/{job_id}/resume", ctx -> respondWithJob(ctx, purgeJobs.resume(jobIdOf(ctx))));
+
+        app.events(event -> {
+            event.serverStarted(this::startup);
+            event.serverStopped(this::shutdown);
+        });
         return app;
     }
 
+    /**
+     * Runs the startup phases in the background once Jetty is listening: priming the connection pool,
+     * preparing the DAO statements on every pooled connection, restoring the latest snapshot and sending
+     * "warmup.requests" synthetic requests through the handlers. The node is marked ready afterwards;
+     * until then every endpoint except /health answers 503.
+     */
+    private void startup(){
+        StartupSequence sequence = new StartupSequence(readiness);
+        if(repositories.usesDatabase()){
+            sequence.phase("prime connection pool", ConnectionUtil::prime);
+            List<String> statements = new ArrayList<>(AccountDAO.STATEMENTS);
+            statements.addAll(MessageDAO.STATEMENTS);
+            sequence.phase("prepare statements", () -> ConnectionUtil.prepareStatements(statements));
+        }
+        if(snapshotManager != null){
+            sequence.phase("restore snapshot", () -> {
+                System.out.println("Restored " + snapshotManager.restore() + " snapshot sections");
+                snapshotManager.start(AppConfig.getLong("snapshot.intervalSeconds", 60));
+            });
+        }
+        int warmUpRequests = AppConfig.getInt("warmup.requests", 200);
+        if(warmUpRequests > 0){
+            int port = app.port();
+            sequence.phase("warm-up requests", () -> new WarmUp(port).run(warmUpRequests));
+        }
+        sequence.runInBackground();
+    }
+
+    private void shutdown() throws Exception {
+        purgeJobs.stop();
+        if(snapshotManager != null && readiness.isReady()){
+            snapshotManager.stop();
+        }
+        repositories.close();
+    }
+
+    /**
+     * Starts the request's trace and returns its id in the X-Trace-Id header. Whether the request is
+     * sampled is decided here, from the "trace.sampleRate" setting. While Flight Recorder is recording, the
+     * request's {@link RequestEvent} starts here too.
+     */
+    private void startTrace(Context ctx){
+        long traceId = tracer.start(ctx.method() + " " + ctx.path());
+        ctx.attribute(TRACE_ATTRIBUTE, Tracer.current());
+        String traceHeader = Long.toHexString(traceId);
+        ctx.header(TRACE_ID, traceHeader);
+        RequestEvent event = new RequestEvent();
+        if(event.isEnabled()){
+            event.traceId = traceHeader;
+            event.begin();
+            ctx.attribute(EVENT_ATTRIBUTE, event);
+        }
+    }
+
+    /**
+     * Publishes the request's trace and event, named after the route that handled it rather than the raw
+     * path.
+     */
+    private void finishTrace(Context ctx){
+        String route;
+        try{
+            route = ctx.endpointHandlerPath();
+        }catch(RuntimeException e){
+            // no endpoint matched, eg a 404
+            route = ctx.path();
+        }
+        Tracer.attach(null);
+        Tracer.setRoute(null);
+        tracer.finish(ctx.<Trace>attribute(TRACE_ATTRIBUTE), ctx.method() + " " + route + " " + ctx.statusCode());
+        RequestEvent event = ctx.attribute(EVENT_ATTRIBUTE);
+        if(event != null){
+            event.end();
+            if(event.shouldCommit()){
+                event.method = ctx.method().name();
+                event.route = route;
+                event.status = ctx.statusCode();
+                event.commit();
+            }
+        }
+    }
+
+    /**
+     * Dumps recent traces, newest first, or the slowest N of them with ?slowest=N.
+     */
+    private void getTraces(Context ctx){
+        String slowest = ctx.queryParam("slowest");
+        if(slowest == null){
+            ctx.json(tracer.recent());
+            return;
+        }
+        try{
+            ctx.json(tracer.slowest(Integer.parseInt(slowest)));
+        }catch(NumberFormatException e){
+            throw new BadRequestResponse("slowest must be a number");
+        }
+    }
+
+    /**
+     * Rejects requests that waited too long in the server queue, see {@link LoadShedder}. Probes are
+     * never shed.
+     */
+    private void shedLoad(Context ctx){
+        long queueDelay = MeasuredThreadPool.takeQueueDelay();
+        if(loadShedder != null && !isProbe(ctx) && loadShedder.shouldShed(queueDelay)){
+            shedRequests.increment();
+            ctx.header("Retry-After", "1");
+            throw new ServiceUnavailableResponse("Overloaded, try again later");
+        }
+    }
+
+    private void rejectUntilReady(Context ctx){
+        if(!readiness.isReady() && !isProbe(ctx) && !isWarmUpRequest(ctx)){
+            throw new ServiceUnavailableResponse("Starting up: " + readiness.getPhase());
+        }
+    }
+
+    /**
+     * Health checks and the saturation report answer even while the node is starting or overloaded, since
+     * that is when load balancers need them.
+     */
+    private static boolean isProbe(Context ctx){
+        String path = ctx.path();
+        return path.startsWith("/health") || path.equals("/admin/saturation");
+    }
+
+    /**
+     * Warm-up requests are only trusted from the loopback interface.
+     */
+    private static boolean isWarmUpRequest(Context ctx){
+        if(ctx.header(WarmUp.HEADER) == null){
+            return false;
+        }
+        try{
+            return InetAddress.getByName(ctx.ip()).isLoopbackAddress();
+        }catch(UnknownHostException e){
+            return false;
+        }
+    }
+
+    /**
+     * Wraps a write handler so that requests carrying an Idempotency-Key header run at most once per key,
+     * see {@link IdempotencyStore}. Retries get the recorded status, content type and body of the first
+     * completed request; duplicates arriving while it runs wait for it without holding a request thread,
+     * and answer 409 if it takes longer than "idempotency.waitMillis". Reusing a key for a different body
+     * answers 422, and a new key while the store is full of requests still in flight answers 503. A request
+     * that fails with an exception records nothing, so its retry runs again.
+     */
+    private AsyncHandler idempotent(AsyncHandler handler){
+        return ctx -> {
+            String key = ctx.header(IDEMPOTENCY_KEY);
+            if(key == null){
+                return handler.handle(ctx);
+            }
+            if(key.isEmpty() || key.length() > 255){
+                throw new BadRequestResponse(IDEMPOTENCY_KEY + " must have 1 to 255 characters");
+            }
+            byte[] fingerprint = MessageDigest.getInstance("SHA-256").digest(ctx.bodyAsBytes());
+            return claimOnce(ctx, handler, ctx.method() + " " + ctx.path() + " " + key, fingerprint);
+        };
+    }
+
+    /**
+     * Runs the handler if this request owns the key, or else replays the owner's response once it is
+     * recorded. If the owner fails without one, the key is claimed again.
+     */
+    private CompletableFuture<?> claimOnce(Context ctx, AsyncHandler handler, String key, byte[] fingerprint) throws Exception {
+        IdempotencyStore.Claim claim = idempotency.claim(key, fingerprint);
+        if(claim == null){
+            ctx.header("Retry-After", "1");
+            ctx.status(503).result("Too many requests with an " + IDEMPOTENCY_KEY + " are in progress");
+            return DONE;
+        }
+        if(!claim.matches()){
+            ctx.status(422).result(IDEMPOTENCY_KEY + " was already used for a different request");
+            return DONE;
+        }
+        if(claim.isOwner()){
+            return runOnce(ctx, handler, claim);
+        }
+        return claim.response().orTimeout(idempotencyWaitMillis, TimeUnit.MILLISECONDS).handle((response, e) -> {
+            if(e != null){
+                ctx.status(409).result("A request with this " + IDEMPOTENCY_KEY + " is still in progress");
+                return DONE;
+            }
+            if(response == null){
+                // the original failed without a response; try to become the owner
+                try{
+                    return claimOnce(ctx, handler, key, fingerprint);
+                }catch(Exception retry){
+                    return CompletableFuture.failedFuture(retry);
+                }
+            }
+            replayedRequests.increment();
+            ctx.status(response.status).result(response.body);
+            if(response.contentType != null){
+                ctx.contentType(response.contentType);
+            }
+            return DONE;
+        }).thenCompose(next -> next);
+    }
+
+    /**
+     * Wraps a handler so that its DAO calls share one connection and one transaction, see
+     * {@link UnitOfWork}. It commits once the handler has set the response, before the response is sent,
+     * and rolls back if the handler fails. Routes that make a single DAO call are left without one, and so
+     * is DELETE /accounts/{account_id}/messages, which commits each chunk on its own to keep locks short.
+     */
+    private static AsyncHandler transactional(AsyncHandler handler){
+        return ctx -> {
+            UnitOfWork unit = new UnitOfWork();
+            UnitOfWork previous = UnitOfWork.attach(unit);
+            CompletableFuture<?> response;
+            try{
+                response = handler.handle(ctx);
+            }catch(Exception | Error e){
+                unit.finish(false);
+                throw e;
+            }finally{
+                UnitOfWork.attach(previous);
+            }
+            return response.whenComplete((ignored, e) -> unit.finish(e == null));
+        };
+    }
+
+    private static CompletableFuture<?> runOnce(Context ctx, AsyncHandler handler, IdempotencyStore.Claim claim) throws Exception {
+        CompletableFuture<?> response;
+        try{
+            response = handler.handle(ctx);
+        }catch(Exception | Error e){
+            claim.abandon();
+            throw e;
+        }
+        return response.whenComplete((ignored, e) -> {
+            if(e != null){
+                claim.abandon();
+                return;
+            }
+            try{
+                InputStream result = ctx.resultInputStream();
+                byte[] body = result == null ? new byte[0] : result.readAllBytes();
+                ctx.result(body);
+                claim.complete(new IdempotencyStore.StoredResponse(ctx.statusCode(), ctx.res().getContentType(), body));
+            }catch(IOException | RuntimeException ioe){
+                claim.abandon();
+                throw new CompletionException(ioe);
+            }
+        });
+    }
+
+    /**
+     * A handler that starts its work and returns a future that completes once the response is set.
+     */
+    interface AsyncHandler {
+        CompletableFuture<?> handle(Context ctx) throws Exception;
+    }
+
+    /**
+     * Sets the response from a service result.
+     */
+    interface ResponseWriter<T> {
+        void write(T result) throws Exception;
+    }
+
+    /**
+     * Adapts an asynchronous handler to Javalin: the request thread is released once the handler has
+     * handed its work to the {@link DatabaseExecutor}, and the response is sent when the future completes.
+     * DatabaseOverloadedException is answered here rather than by the exception handler, because Javalin
+     * skips the after handlers, and so the trace, of a request whose future fails. The route is named
+     * here, for the events of the statements the request runs (see {@link Tracer#setRoute(String)}).
+     */
+    private static Handler async(AsyncHandler handler){
+        return ctx -> {
+            Tracer.setRoute(ctx.method() + " " + ctx.endpointHandlerPath());
+            CompletableFuture<?> response = handler.handle(ctx).exceptionally(e -> {
+                Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                if(cause instanceof DatabaseOverloadedException){
+                    respondOverloaded(ctx, (DatabaseOverloadedException) cause);
+                    return null;
+                }
+                throw e instanceof CompletionException ? (CompletionException) e : new CompletionException(e);
+            });
+            ctx.future(() -> response);
+        };
+    }
+
+    /**
+     * @return a callback for thenAccept that runs writer, passing its checked exceptions on through the
+     *         future.
+     */
+    private static <T> Consumer<T> writing(ResponseWriter<T> writer){
+        return result -> {
+            try{
+                writer.write(result);
+            }catch(Exception e){
+                throw new CompletionException(e);
+            }
+        };
+    }
+
+    private static void respondOverloaded(Context ctx, DatabaseOverloadedException e){
+        ctx.header("Retry-After", "1");
+        ctx.status(503).result(e.getMessage());
+    }
+
+    /**
+     * Readiness probe for load balancers: 200 once the node is warm, 503 before that.
+     */
+    private void getHealthReady(Context ctx){
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("ready", readiness.isReady());
+        body.put("phase", readiness.getPhase());
+        ctx.status(readiness.isReady() ? 200 : 503).json(body);
+    }
+
     /**
      * submit a new post
      * The request body will contain a JSON representation of a message, 
      * which should be persisted to the database, but will not contain a message_id.
      * @param context The Javalin Context object manages information about both the HTTP request and response.
-     * @throws JsonProcessingException 
-     * @throws JsonMappingException 
+     * @throws IOException if the body cannot be parsed
      */
-    private void postNewMessage(Context ctx) throws JsonMappingException, JsonProcessingException {
+    private CompletableFuture<?> postNewMessage(Context ctx) throws IOException {
         //- The creation of the message will be successful if and only if the message_text is not blank, 
         // is not over 255 characters, and posted_by refers to a real, existing user. If successful, the 
         // response body should contain a JSON of the message, including its message_id. The response status 
         // should be 200, which is the default. The new message should be persisted to the database.
-        ObjectMapper om = new ObjectMapper();
-        Message message = om.readValue(ctx.body(), Message.class);
-        Message addedMessage = messageService.addMessage(message);
-
-        if(addedMessage != null){
-            ctx.json(addedMessage);
-        }else{
-            //- If the creation of the message is not successful, the response status should be 400. (Client error)
-            ctx.status(400);
-        }
+        Message message = readBody(ctx, Message.class);
+        return messageService.addMessageAsync(message).thenAccept(writing(addedMessage -> {
+            if(addedMessage != null){
+                // once committed, see forgetEncoded
+                UnitOfWork.onCommit(() -> encodedTimelines.invalidate(addedMessage.posted_by));
+                respond(ctx, addedMessage);
+            }else{
+                //- If the creation of the message is not successful, the response status should be 400. (Client error)
+                ctx.status(400);
+            }
+        }));
     }
 
     /**
-     *  A user should be able to submit a GET request on the endpoint to retrieve all message
+     *  A user should be able to submit a GET request on the endpoint to retrieve all message.
+     *  With since/until (epoch seconds, until exclusive) and optional limit, only the messages posted in
+     *  that range are returned, oldest first and bounded in number. With bucket=hour or bucket=day, the
+     *  message counts per time bucket of the range are returned instead. fields=message_id,message_text
+     *  limits the returned messages to those fields.
      * 
      * @param ctx
      */
-    private void getAllMessages(Context ctx){
+    private CompletableFuture<?> getAllMessages(Context ctx){
+        Set<MessageField> fields = fieldsOf(ctx);
+        String ids = ctx.queryParam("ids");
+        if(ids != null){
+            return messageService.getMessagesByIDsAsync(parseIds(ids, maxIdsPerRequest))
+                    .thenAccept(writing(messages -> writeMessages(ctx, messages, fields)));
+        }
+        TimeRange range = TimeRange.of(ctx);
+        if(range.bucketSeconds > 0){
+            return messageService.countMessagesByBucketAsync(range.since, range.until, range.bucketSeconds)
+                    .thenAccept(writing(buckets -> respond(ctx, buckets)));
+        }
+        if(range.filtered){
+            return messageService.getMessagesInRangeAsync(range.since, range.until, range.limit, fields)
+                    .thenAccept(writing(messages -> writeMessages(ctx, messages, fields)));
+        }
         //- The response body should contain a JSON representation of a list containing all messages retrieved 
         // from the database. It is expected for the list to simply be empty if there are no messages. 
         // The response status should always be 200, which is the default.
-        List<Message> messages = messageService.getAllMessages();
-        ctx.json(messages);
+        return messageService.getAllMessagesAsync(fields).thenAccept(writing(messages -> writeMessages(ctx, messages, fields)));
+    }
+
+    /**
+     * Parses a comma-separated list of message IDs straight into an int array, without splitting it into
+     * strings or boxing the IDs.
+     * @throws BadRequestResponse if the list is empty, malformed or longer than max.
+     */
+    static int[] parseIds(String list, int max){
+        int[] ids = new int[Math.min(max, list.length() / 2 + 1)];
+        int count = 0;
+        int i = 0;
+        while(i <= list.length()){
+            int start = i;
+            long id = 0;
+            boolean negative = i < list.length() && list.charAt(i) == '-';
+            if(negative){
+                i++;
+            }
+            while(i < list.length() && list.charAt(i) != ','){
+                char c = list.charAt(i++);
+                if(c < '0' || c > '9' || id > Integer.MAX_VALUE){
+                    throw new BadRequestResponse("ids must be a comma-separated list of numbers");
+                }
+                id = id * 10 + (c - '0');
+            }
+            if(i == start || (negative && i == start + 1) || id > Integer.MAX_VALUE + (negative ? 1L : 0L)){
+                throw new BadRequestResponse("ids must be a comma-separated list of numbers");
+            }
+            if(count == max){
+                throw new BadRequestResponse("at most " + max + " ids may be requested at once");
+            }
+            ids[count++] = (int) (negative ? -id : id);
+            i++;
+        }
+        return Arrays.copyOf(ids, count);
+    }
+
+    /**
+     * @return the fields named by the fields= query parameter, or all fields if it is absent.
+     */
+    private static Set<MessageField> fieldsOf(Context ctx){
+        String names = ctx.queryParam("fields");
+        if(names == null){
+            return MessageField.ALL;
+        }
+        try{
+            return MessageField.parse(names);
+        }catch(IllegalArgumentException e){
+            throw new BadRequestResponse(e.getMessage());
+        }
+    }
+
+    /**
+     * Writes a message list, with the bean serializer when every field is wanted and with
+     * {@link MessageJsonWriter} otherwise.
+     */
+    private static void writeMessages(Context ctx, List<Message> messages, Set<MessageField> fields) throws JsonProcessingException {
+        if(fields.size() == MessageField.ALL.size()){
+            respond(ctx, messages);
+        }else{
+            try(Trace.Span span = Tracer.span("serialize response")){
+                PayloadFormat format = PayloadFormat.forResponse(ctx);
+                ctx.contentType(format.getMediaType()).result(MessageJsonWriter.write(messages, fields, format.getFactory()));
+            }
+        }
+    }
+
+    /**
+     * Writes a message or timeline as JSON from the encoded bytes cached for key, encoding and caching
+     * them on a miss. Other formats are written by {@link #respond(Context, Object)}.
+     */
+    private static void respondEncoded(Context ctx, EncodedResponseCache cache, int key, Object body) throws JsonProcessingException {
+        if(PayloadFormat.forResponse(ctx) != PayloadFormat.JSON){
+            respond(ctx, body);
+            return;
+        }
+        byte[] json = cache.get(key, body);
+        if(json == null){
+            try(Trace.Span span = Tracer.span("serialize response")){
+                json = PayloadFormat.JSON.write(body);
+            }
+            cache.put(key, body, json);
+        }
+        ctx.contentType(PayloadFormat.JSON.getMediaType()).result(json);
+    }
+
+    /**
+     * Writes a response body in the format the client accepts; JSON unless it asked for a binary format.
+     */
+    private static void respond(Context ctx, Object body) throws JsonProcessingException {
+        try(Trace.Span span = Tracer.span("serialize response")){
+            PayloadFormat format = PayloadFormat.forResponse(ctx);
+            if(format == PayloadFormat.JSON){
+                ctx.json(body);
+            }else{
+                ctx.contentType(format.getMediaType()).result(format.write(body));
+            }
+        }
+    }
+
+    /**
+     * Reads the request body in the format it was sent in.
+     */
+    private static <T> T readBody(Context ctx, Class<T> type) throws IOException {
+        try(Trace.Span span = Tracer.span("parse request")){
+            return PayloadFormat.ofRequest(ctx).read(ctx.bodyAsBytes(), type);
+        }
     }
 
     /**
@@ -84,20 +698,22 @@ public class SocialMediaController {
      * 
      * @param ctx
      */
-    private void getMessageByID(Context ctx){
+    private CompletableFuture<?> getMessageByID(Context ctx){
         //- The response body should contain a JSON representation of the message identified by the message_id. 
         // It is expected for the response body to simply be empty if there is no such message. 
         // The response status should always be 200, which is the default.
         int id = Integer.parseInt(ctx.pathParam("message_id"));
 
-        Message message = messageService.getMessageByID(id);
-
-        // if the message is not null, then it exists.
-        if(message != null){ 
-            ctx.json(message);
-        }else{
-            ctx.status(200).result("");
-        }
+        return messageService.getVersionedMessageByIDAsync(id).thenAccept(writing(versioned -> {
+            // if the message is not null, then it exists.
+            if(versioned != null){ 
+                // the version lets clients make their next PATCH conditional with If-Match
+                ctx.header("ETag", versioned.etag());
+                respondEncoded(ctx, encodedMessages, id, versioned.message);
+            }else{
+                ctx.status(200).result("");
+            }
+        }));
     }
 
      /**
@@ -105,63 +721,236 @@ public class SocialMediaController {
      * 
      * @param ctx
      */
-    private void deleteByMessageID(Context ctx){
+    private CompletableFuture<?> deleteByMessageID(Context ctx){
         //- The deletion of an existing message should remove an existing message from the database. 
         // If the message existed, the response body should contain the now-deleted message. 
         // The response status should be 200, which is the default.
         int id = Integer.parseInt(ctx.pathParam("message_id"));
 
-        Message message = messageService.getMessageByID(id);
-
-        // if message is not null, it exists and therefore should be deleted.
-        if(message != null){
-            messageService.deleteMessageByID(id);
-            ctx.json(message);
-        }else{
+        return messageService.getMessageByIDAsync(id).thenCompose(message -> {
+            // if message is not null, it exists and therefore should be deleted.
+            if(message != null){
+                return messageService.deleteMessageByIDAsync(id).thenAccept(writing(deleted -> {
+                    forgetEncoded(id, message.posted_by);
+                    respond(ctx, message);
+                }));
+            }
             //- If the message did not exist, the response status should be 200, but the response body should be empty. 
             // This is because the DELETE verb is intended to be idempotent, ie, multiple calls to the DELETE endpoint 
             // should respond with the same type of response.
             ctx.status(200).result("");
-        }
+            return DONE;
+        });
+    }
+
+    /**
+     * Drops the encoded bodies of a written message and its author's timeline once the request's
+     * transaction commits, like the service does with its caches. Handler callbacks run with the
+     * request's {@link UnitOfWork} attached.
+     */
+    private void forgetEncoded(int messageId, int postedBy){
+        UnitOfWork.onCommit(() -> {
+            encodedMessages.invalidate(messageId);
+            encodedTimelines.invalidate(postedBy);
+        });
     }
 
     /**
      * Update a message text identified by a message ID.
      * The request body should contain a new message_text values to replace the message identified by message_id. 
      * The request body can not be guaranteed to contain any other information.
+     *
+     * With an If-Match header the update only happens if the message is still at that version (its ETag),
+     * and fails with 412 otherwise, in the same single UPDATE.
      */
-    private void updateMessageByID(Context ctx) throws JsonMappingException, JsonProcessingException {
+    private CompletableFuture<?> updateMessageByID(Context ctx) throws IOException {
         //- The update of a message should be successful if and only if the message id already exists and the new message_text 
         // is not blank and is not over 255 characters. If the update is successful, the response body should contain the full 
         // updated message (including message_id, posted_by, message_text, and time_posted_epoch), and the response status should 
         // be 200, which is the default. The message existing on the database should have the updated message_text.
-        ObjectMapper om = new ObjectMapper();
-        Message message = om.readValue(ctx.body(), Message.class);
+        Message message = readBody(ctx, Message.class);
         int id = Integer.parseInt(ctx.pathParam("message_id"));
-        Message updatedMessage = null;
 
         message.setMessage_id(id);
-        updatedMessage = messageService.updateMessage(message);
-
-        if(updatedMessage != null){
-            ctx.json(updatedMessage);
-        }else{
-        //- If the update of the message is not successful for any reason, the response status should be 400. (Client error)
+        String ifMatch = ctx.header("If-Match");
+        if(ifMatch == null){
+            return messageService.updateMessageAsync(message).thenAccept(writing(updatedMessage -> {
+                if(updatedMessage != null){
+                    forgetEncoded(id, updatedMessage.posted_by);
+                    respond(ctx, updatedMessage);
+                }else{
+                //- If the update of the message is not successful for any reason, the response status should be 400. (Client error)
+                    ctx.status(400);
+                }
+            }));
+        }
+        // an invalid text is a client error whatever the version, and needs no query
+        if(!MessageService.isValidText(message.message_text) || ifMatch.indexOf(',') >= 0){
             ctx.status(400);
+            return DONE;
+        }
+        long expectedVersion = parseEntityTag(ifMatch.trim());
+        if(expectedVersion == 0){
+            // weak or foreign tags never match one of ours
+            ctx.status(412);
+            return DONE;
+        }
+        return messageService.updateMessageIfVersionAsync(message, expectedVersion).thenAccept(writing(updated -> {
+            if(updated != null){
+                forgetEncoded(id, updated.message.posted_by);
+                ctx.header("ETag", updated.etag());
+                respond(ctx, updated.message);
+            }else{
+                // the message changed since the client read it, or no longer exists: either way the
+                // precondition failed, so no query is needed to tell them apart
+                ctx.status(412);
+            }
+        }));
+    }
+
+    /**
+     * @return the version of a single strong entity tag as served in ETag, VersionedMessage.ANY for "*",
+     *         or 0 if the tag cannot match any version.
+     */
+    static long parseEntityTag(String tag){
+        if(tag.equals("*")){
+            return VersionedMessage.ANY;
+        }
+        if(tag.length() < 3 || tag.charAt(0) != '"' || tag.charAt(tag.length() - 1) != '"'){
+            return 0;
+        }
+        try{
+            return Math.max(0, Long.parseLong(tag.substring(1, tag.length() - 1)));
+        }catch(NumberFormatException e){
+            return 0;
         }
     }
 
     /**
      * retrieve all messages written by a particular user
      */
-    private void retrieveAllMessageOfUser(Context ctx){
+    private CompletableFuture<?> retrieveAllMessageOfUser(Context ctx){
         // The response body contains a JSON representation of a list containing all messages posted by a particular user, 
         // which is retrieved from the database. It is expected for the list to simply be empty if there are no messages. The 
         // response status should always be 200, which is the default.
         int id = Integer.parseInt(ctx.pathParam("account_id"));
-        List<Message> messages = messageService.getAllMessagesOfUser(id);
+        // since/until/limit, bucket and fields work as for GET /messages
+        TimeRange range = TimeRange.of(ctx);
+        Set<MessageField> fields = fieldsOf(ctx);
+        if(range.bucketSeconds > 0){
+            return messageService.countMessagesOfUserByBucketAsync(id, range.since, range.until, range.bucketSeconds)
+                    .thenAccept(writing(buckets -> respond(ctx, buckets)));
+        }
+        if(range.filtered){
+            return messageService.getMessagesOfUserInRangeAsync(id, range.since, range.until, range.limit, fields)
+                    .thenAccept(writing(messages -> writeMessages(ctx, messages, fields)));
+        }
+        return messageService.getAllMessagesOfUserAsync(id, fields).thenAccept(writing(messages -> {
+            if(fields.size() == MessageField.ALL.size()){
+                respondEncoded(ctx, encodedTimelines, id, messages);
+            }else{
+                writeMessages(ctx, messages, fields);
+            }
+        }));
+    }
 
-        ctx.json(messages);
+    /**
+     * retrieve the message count and first/last post time of a user
+     */
+    private CompletableFuture<?> getAccountStats(Context ctx){
+        // The response body contains a JSON representation of the user's stats. A user without messages has a
+        // message_count of 0 and null epochs. The response status should always be 200, which is the default.
+        int id = Integer.parseInt(ctx.pathParam("account_id"));
+        return messageService.getAccountStatsAsync(id).thenAccept(writing(stats -> respond(ctx, stats)));
+    }
+
+    /**
+     * delete every message written by a particular user
+     */
+    private CompletableFuture<?> deleteAllMessagesOfUser(Context ctx){
+        // The messages are deleted a chunk per transaction. The response body contains the number of messages
+        // deleted; deleting again, or for a user without messages, answers 0. The response status is 200.
+        int id = Integer.parseInt(ctx.pathParam("account_id"));
+        return messageService.deleteMessagesOfUserAsync(id).thenAccept(deleted -> {
+            Map<String, Object> body = new LinkedHashMap<>();
+            body.put("account_id", id);
+            body.put("deleted_count", deleted);
+            ctx.json(body);
+        });
+    }
+
+    /**
+     * start an admin job deleting the messages posted in [since, until)
+     */
+    private void startPurge(Context ctx){
+        // until is required so that a missing parameter can never purge everything. The response status is
+        // 202 and the body the new job, whose progress can be followed on GET /admin/purge/{job_id}.
+        if(ctx.queryParam("until") == null){
+            throw new BadRequestResponse("until is required");
+        }
+        TimeRange range = TimeRange.of(ctx);
+        ctx.status(202).json(purgeJobs.start(range.since, range.until));
+    }
+
+    /**
+     * Starts a Flight Recorder recording with ?profile= (default "profile") for ?duration= seconds
+     * (default 60), see {@link Profiler}. Answers 409 while another recording is running.
+     */
+    private void startRecording(Context ctx) throws IOException {
+        String profile = ctx.queryParam("profile");
+        String duration = ctx.queryParam("duration");
+        long durationSeconds;
+        try{
+            durationSeconds = duration == null ? 60 : Long.parseLong(duration);
+        }catch(NumberFormatException e){
+            throw new BadRequestResponse("duration must be a number of seconds");
+        }
+        try{
+            ctx.json(profiler.start(profile == null ? "profile" : profile, durationSeconds));
+        }catch(IllegalArgumentException e){
+            throw new BadRequestResponse(e.getMessage());
+        }catch(IllegalStateException e){
+            ctx.status(409).result(e.getMessage());
+        }
+    }
+
+    /**
+     * Sends what the current recording holds so far as a .jfr file, to open in JDK Mission Control.
+     */
+    private void downloadRecording(Context ctx) throws IOException {
+        Path file = profiler.dump();
+        if(file == null){
+            ctx.status(404);
+            return;
+        }
+        ctx.contentType("application/octet-stream");
+        ctx.header("Content-Disposition", "attachment; filename=\"socialmedia.jfr\"");
+        ctx.header("Content-Length", String.valueOf(Files.size(file)));
+        ctx.result(Files.newInputStream(file, StandardOpenOption.DELETE_ON_CLOSE));
+    }
+
+    private static void respondWithRecording(Context ctx, Profiler.Status status){
+        if(status == null){
+            ctx.status(404);
+        }else{
+            ctx.json(status);
+        }
+    }
+
+    private static int jobIdOf(Context ctx){
+        try{
+            return Integer.parseInt(ctx.pathParam("job_id"));
+        }catch(NumberFormatException e){
+            throw new BadRequestResponse("job_id must be a number");
+        }
+    }
+
+    private static void respondWithJob(Context ctx, PurgeJob job){
+        if(job == null){
+            ctx.status(404);
+        }else{
+            ctx.json(job);
+        }
     }
 
     /**
@@ -169,22 +958,21 @@ public class SocialMediaController {
      * Users are able to create a new Account on the endpoint POST localhost:8080/register. 
      * The body will contain a representation of a JSON Account, but will not contain an account_id.
      */
-    private void postUserRegistration(Context ctx) throws JsonProcessingException {
+    private CompletableFuture<?> postUserRegistration(Context ctx) throws IOException {
         //- The registration will be successful if and only if the username is not blank, 
         //the password is at least 4 characters long, and an Account with that username does not already exist. 
         //If all these conditions are met, the response body should contain a JSON of the Account, 
         //including its account_id. The response status should be 200 OK, which is the default. 
         //The new account should be persisted to the database.
-        ObjectMapper mapper = new ObjectMapper();
-        Account account = mapper.readValue(ctx.body(), Account.class);
-        Account addedAccount = accountService.addAccount(account);
-
-        if(addedAccount != null){
-            ctx.json(addedAccount);
-        }else{
-            //- If the registration is not successful, the response status should be 400. (Client error)
-            ctx.status(400);
-        }
+        Account account = readBody(ctx, Account.class);
+        return accountService.addAccountAsync(account).thenAccept(writing(addedAccount -> {
+            if(addedAccount != null){
+                respond(ctx, addedAccount);
+            }else{
+                //- If the registration is not successful, the response status should be 400. (Client error)
+                ctx.status(400);
+            }
+        }));
     }
 
     /**
@@ -192,22 +980,20 @@ public class SocialMediaController {
      * will contain a JSON representation of an Account, not containing an account_id. 
      */
     
-    private void postUserLogin(Context ctx) throws JsonProcessingException {
+    private CompletableFuture<?> postUserLogin(Context ctx) throws IOException {
         // The login will be successful if and only if the username and password provided in the request body JSON 
         // match a real account existing on the database. If successful, the response body should contain a JSON of 
         // the account in the response body, including its account_id. The response status should be 200 OK, 
         // which is the default.
-        ObjectMapper om = new ObjectMapper();
-
-        Account account = om.readValue(ctx.body(), Account.class);
+        Account account = readBody(ctx, Account.class);
 
-        Account loggedAccount = accountService.loginAccount(account);
-
-        if(loggedAccount != null){
-            ctx.json(loggedAccount);
-        }else{
-            // If the login is not successful, the response status should be 401. (Unauthorized)
-            ctx.status(401);
-        }
+        return accountService.loginAccountAsync(account).thenAccept(writing(loggedAccount -> {
+            if(loggedAccount != null){
+                respond(ctx, loggedAccount);
+            }else{
+                // If the login is not successful, the response status should be 401. (Unauthorized)
+                ctx.status(401);
+            }
+        }));
     }
 }
\ No newline at end of file
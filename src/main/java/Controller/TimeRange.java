@@ -0,0 +1,63 @@
+package Controller;
+
+import io.javalin.http.BadRequestResponse;
+import io.javalin.http.Context;
+
+/**
+ * The since/until/limit/bucket query parameters of the message list endpoints. since is inclusive and
+ * until exclusive, both in epoch seconds; a malformed value is answered with 400.
+ */
+class TimeRange {
+    final long since;
+    final long until;
+    final int limit;
+    /** 0 unless a bucket summary was asked for */
+    final long bucketSeconds;
+    /** true if any range parameter was given, false for a plain list request */
+    final boolean filtered;
+
+    private TimeRange(long since, long until, int limit, long bucketSeconds, boolean filtered){
+        this.since = since;
+        this.until = until;
+        this.limit = limit;
+        this.bucketSeconds = bucketSeconds;
+        this.filtered = filtered;
+    }
+
+    static TimeRange of(Context ctx){
+        String since = ctx.queryParam("since");
+        String until = ctx.queryParam("until");
+        String limit = ctx.queryParam("limit");
+        String bucket = ctx.queryParam("bucket");
+        return new TimeRange(parseLong("since", since, Long.MIN_VALUE),
+                parseLong("until", until, Long.MAX_VALUE),
+                (int) Math.min(Integer.MAX_VALUE, parseLong("limit", limit, Integer.MAX_VALUE)),
+                bucketSeconds(bucket),
+                since != null || until != null || limit != null);
+    }
+
+    private static long parseLong(String name, String value, long defaultValue){
+        if(value == null){
+            return defaultValue;
+        }
+        try{
+            return Long.parseLong(value);
+        }catch(NumberFormatException e){
+            throw new BadRequestResponse(name + " must be a number");
+        }
+    }
+
+    private static long bucketSeconds(String bucket){
+        if(bucket == null){
+            return 0;
+        }
+        switch(bucket){
+            case "hour":
+                return 3600;
+            case "day":
+                return 86400;
+            default:
+                throw new BadRequestResponse("bucket must be hour or day");
+        }
+    }
+}
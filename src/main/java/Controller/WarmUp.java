@@ -0,0 +1,85 @@
+package Controller;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+
+/**
+ * Sends synthetic requests through the real HTTP stack before the node is marked ready, so that Jetty's
+ * threads, Javalin's routing, Jackson's serializers and the JIT are warm when the first user arrives.
+ *
+ * Every request is either read-only or rejected by validation before it reaches storage, so warm-up
+ * never changes data. Requests carry the {@link #HEADER} header, which lets them past the readiness gate
+ * when they come from the loopback interface.
+ */
+class WarmUp {
+    static final String HEADER = "X-Warm-Up";
+
+    private final String baseUrl;
+    private final HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+
+    WarmUp(int port){
+        this.baseUrl = "http://localhost:" + port;
+    }
+
+    /**
+     * Sends requests round-robin over the side-effect-free mix until count have been sent.
+     * @return the number of requests that got a response.
+     */
+    int run(int count) throws InterruptedException {
+        int answered = 0;
+        for(int i = 0; i < count; i++){
+            HttpRequest request = request(i);
+            try{
+                client.send(request, HttpResponse.BodyHandlers.discarding());
+                answered++;
+            }catch(IOException e){
+                System.out.println("Warm-up request failed: " + e.getMessage());
+            }
+        }
+        return answered;
+    }
+
+    private HttpRequest request(int i){
+        int id = 1 + (i / 7) % 50;
+        switch(i % 7){
+            case 0:
+                return get("/messages/" + id);
+            case 1:
+                return get("/accounts/" + id + "/messages");
+            case 2:
+                // no account has an empty password, so this only reads
+                return send("POST", "/login", "{\"username\":\"warm-up\",\"password\":\"\"}");
+            case 3:
+                // rejected by validation: the password is too short
+                return send("POST", "/register", "{\"username\":\"warm-up\",\"password\":\"\"}");
+            case 4:
+                // rejected by validation: blank message_text
+                return send("POST", "/messages", "{\"posted_by\":" + id + ",\"message_text\":\"\",\"time_posted_epoch\":0}");
+            case 5:
+                return send("PATCH", "/messages/" + id, "{\"message_text\":\"\"}");
+            default:
+                // no message has a negative id
+                return send("DELETE", "/messages/-" + id, null);
+        }
+    }
+
+    private HttpRequest get(String path){
+        return send("GET", path, null);
+    }
+
+    private HttpRequest send(String method, String path, String body){
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(baseUrl + path))
+                .timeout(Duration.ofSeconds(5))
+                .header(HEADER, "true");
+        if(body == null){
+            builder.method(method, HttpRequest.BodyPublishers.noBody());
+        }else{
+            builder.header("Content-Type", "application/json").method(method, HttpRequest.BodyPublishers.ofString(body));
+        }
+        return builder.build();
+    }
+}
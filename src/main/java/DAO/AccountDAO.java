@@ -5,9 +5,20 @@ import Util.ConnectionUtil;
 
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
-public class AccountDAO {
+public class AccountDAO implements AccountRepository {
+    static final String SELECT_ALL_ACCOUNTS = "SELECT * From account";
+    static final String INSERT_ACCOUNT = "INSERT INTO account (username, password) VALUES (?, ?)";
+    static final String SELECT_BY_USERNAME = "SELECT * FROM account WHERE username = ?";
+    static final String SELECT_BY_USERNAME_AND_PASSWORD = "SELECT * FROM account WHERE username = ? and password = ?";
+
+    /**
+     * Every statement this DAO runs, so startup can prepare them ahead of the first request.
+     */
+    public static final List<String> STATEMENTS = Arrays.asList(SELECT_ALL_ACCOUNTS, INSERT_ACCOUNT,
+            SELECT_BY_USERNAME, SELECT_BY_USERNAME_AND_PASSWORD);
 
     /**
      * Retrieves all accounts from the database.
@@ -18,7 +29,7 @@ public class AccountDAO {
         List<Account> accounts = new ArrayList<>();
         try {
             //Write SQL logic here
-            String sql = "SELECT * From account";
+            String sql = SELECT_ALL_ACCOUNTS;
             PreparedStatement preparedStatement = connection.prepareStatement(sql);
             ResultSet rs = preparedStatement.executeQuery();
             while(rs.next()){
@@ -27,6 +38,8 @@ public class AccountDAO {
             }
         }catch(SQLException e){
             System.out.println(e.getMessage());
+        }finally {
+            ConnectionUtil.closeConnection(connection);
         }
         return accounts;
     }
@@ -41,7 +54,7 @@ public class AccountDAO {
         try {
             // Write SQL logic here. You should only be inserting with the name column, so that the database may
             // automatically generate a primary key.
-            String sql = "INSERT INTO account (username, password) VALUES (?, ?)";
+            String sql = INSERT_ACCOUNT;
             PreparedStatement preparedStatement = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
 
             //write preparedStatement's setString method here.
@@ -56,6 +69,8 @@ public class AccountDAO {
             }
         }catch(SQLException e){
             System.out.println(e.getMessage());
+        }finally {
+            ConnectionUtil.closeConnection(connection);
         }
         return null;
     }
@@ -69,7 +84,7 @@ public class AccountDAO {
         Connection connection = ConnectionUtil.getConnection();
         try {
             //Write SQL logic here
-            String sql = "SELECT * FROM account WHERE username = ?";
+            String sql = SELECT_BY_USERNAME;
             PreparedStatement preparedStatement = connection.prepareStatement(sql);
 
             //write preparedStatement's setString method here.
@@ -84,6 +99,8 @@ public class AccountDAO {
             }
         }catch(SQLException e){
             System.out.println(e.getMessage());
+        }finally {
+            ConnectionUtil.closeConnection(connection);
         }
         return null;
     }
@@ -98,7 +115,7 @@ public class AccountDAO {
         Connection connection = ConnectionUtil.getConnection();
         try {
             //Write SQL logic here
-            String sql = "SELECT * FROM account WHERE username = ? and password = ?";
+            String sql = SELECT_BY_USERNAME_AND_PASSWORD;
             PreparedStatement preparedStatement = connection.prepareStatement(sql);
 
             //write preparedStatement's setString method here.
@@ -114,6 +131,8 @@ public class AccountDAO {
             }
         }catch(SQLException e){
             System.out.println(e.getMessage());
+        }finally {
+            ConnectionUtil.closeConnection(connection);
         }
         return null;
     }
@@ -0,0 +1,40 @@
+package DAO;
+
+import Model.Account;
+
+import java.util.List;
+
+/**
+ * Storage operations for accounts. Implemented by the JDBC-backed {@link AccountDAO} and by
+ * {@link InMemoryAccountDAO}; see {@link Repositories} for how an engine is picked.
+ */
+public interface AccountRepository {
+
+    /**
+     * Retrieves all accounts.
+     * @return A list of all accounts.
+     */
+    List<Account> getAllAccounts();
+
+    /**
+     * Inserts a new account.
+     * @param account The account to be inserted.
+     * @return The inserted account with its generated ID, or null if the insertion failed.
+     */
+    Account insertAccount(Account account);
+
+    /**
+     * Retrieves an account by its username.
+     * @param username The username of the account to retrieve.
+     * @return The account with the given username, or null if not found.
+     */
+    Account getAccountByUsername(String username);
+
+    /**
+     * Retrieves an account by its username and password.
+     * @param username The username of the account to retrieve.
+     * @param password The password of the account to retrieve.
+     * @return The account with the given username and password, or null if not found.
+     */
+    Account getAccountByUsernameAndPassword(String username, String password);
+}
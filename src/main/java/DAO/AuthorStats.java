@@ -0,0 +1,72 @@
+package DAO;
+
+import Model.AccountStats;
+
+import java.util.function.IntToLongFunction;
+
+/**
+ * Message count and first/last time_posted_epoch of one author, kept next to the per-author message
+ * index of the in-process engines. Instances are immutable. An engine swaps an author's stats inside the
+ * same compute() on the author index that adds or removes the message ID, so the stats are guarded by
+ * that stripe's lock, always agree with the index, and reading them is a single lookup.
+ */
+final class AuthorStats {
+    /** returned by an epoch lookup for a message that is no longer stored */
+    static final long MISSING = Long.MIN_VALUE;
+
+    final int count;
+    final long first;
+    final long last;
+
+    private AuthorStats(int count, long first, long last){
+        this.count = count;
+        this.first = first;
+        this.last = last;
+    }
+
+    /**
+     * @param current the stats before the message was added, or null if the author had no messages.
+     */
+    static AuthorStats plus(AuthorStats current, long epoch){
+        if(current == null){
+            return new AuthorStats(1, epoch, epoch);
+        }
+        return new AuthorStats(current.count + 1, Math.min(current.first, epoch), Math.max(current.last, epoch));
+    }
+
+    /**
+     * Removes a message posted at epoch. Only when it was the first or last message are the remaining
+     * messages of the author looked at, to find the new extreme.
+     * @param remainingIds the author's message IDs after the removal, or null if none are left.
+     * @param epochOf the epoch of a remaining message, or {@link #MISSING} if it is being deleted too.
+     * @return the new stats, or null if the author has no messages left.
+     */
+    static AuthorStats minus(AuthorStats current, long epoch, int[] remainingIds, IntToLongFunction epochOf){
+        if(remainingIds == null || current == null){
+            return null;
+        }
+        if(epoch != current.first && epoch != current.last){
+            return new AuthorStats(remainingIds.length, current.first, current.last);
+        }
+        long first = Long.MAX_VALUE;
+        long last = Long.MIN_VALUE;
+        for(int id : remainingIds){
+            long remaining = epochOf.applyAsLong(id);
+            if(remaining != MISSING){
+                first = Math.min(first, remaining);
+                last = Math.max(last, remaining);
+            }
+        }
+        if(first > last){
+            return null;
+        }
+        return new AuthorStats(remainingIds.length, first, last);
+    }
+
+    static AccountStats toModel(int accountId, AuthorStats stats){
+        if(stats == null){
+            return AccountStats.empty(accountId);
+        }
+        return new AccountStats(accountId, stats.count, stats.first, stats.last);
+    }
+}
@@ -0,0 +1,52 @@
+package DAO;
+
+import Model.Account;
+
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Account storage backed by an {@link InMemoryStore}.
+ */
+public class InMemoryAccountDAO implements AccountRepository {
+    private final InMemoryStore store;
+
+    public InMemoryAccountDAO(InMemoryStore store){
+        this.store = store;
+    }
+
+    public List<Account> getAllAccounts(){
+        List<Account> accounts = store.accounts.values();
+        accounts.sort(Comparator.comparingInt(Account::getAccount_id));
+        return accounts;
+    }
+
+    /**
+     * Inserts a new account. Like the unique constraint on account.username, a second account with the
+     * same username is rejected.
+     */
+    public Account insertAccount(Account account){
+        if(account.getUsername() == null){
+            return null;
+        }
+        int id = store.accountSequence.incrementAndGet();
+        Account stored = new Account(id, account.getUsername(), account.getPassword());
+        if(store.accountsByUsername.putIfAbsent(stored.getUsername(), stored) != null){
+            return null;
+        }
+        store.accounts.put(id, stored);
+        return stored;
+    }
+
+    public Account getAccountByUsername(String username){
+        return username == null ? null : store.accountsByUsername.get(username);
+    }
+
+    public Account getAccountByUsernameAndPassword(String username, String password){
+        Account account = getAccountByUsername(username);
+        if(account != null && account.getPassword() != null && account.getPassword().equals(password)){
+            return account;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,95 @@
+package DAO;
+
+import Model.AccountStats;
+import Model.Message;
+import Model.VersionedMessage;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Message storage backed by an {@link InMemoryStore}. Messages are keyed by message_id in a striped
+ * primitive map and indexed by author, so every operation except listing all messages touches only the
+ * stripes of the keys involved.
+ *
+ * Returned messages are shared with the store and must not be modified by callers.
+ */
+public class InMemoryMessageDAO implements MessageRepository {
+    private final InMemoryStore store;
+
+    public InMemoryMessageDAO(InMemoryStore store){
+        this.store = store;
+    }
+
+    /**
+     * Inserts a new message. Like the foreign key on message.posted_by, the author must exist.
+     */
+    public Message insertMessage(Message message){
+        if(!store.accounts.containsKey(message.posted_by)){
+            return null;
+        }
+        int id = store.messageSequence.incrementAndGet();
+        Message stored = new Message(id, message.posted_by, message.message_text, message.time_posted_epoch);
+        store.addMessage(stored);
+        return stored;
+    }
+
+    public boolean doesIDExist(int account_id){
+        return store.accounts.containsKey(account_id);
+    }
+
+    public List<Message> getAllMessages(){
+        List<Message> messages = store.messages.values();
+        messages.sort(Comparator.comparingInt(Message::getMessage_id));
+        return messages;
+    }
+
+    public Message getMessageByID(int id){
+        return store.messages.get(id);
+    }
+
+    public boolean deleteMessageByID(int id){
+        return store.removeMessage(id) != null;
+    }
+
+    public Message updateMessage(Message message){
+        VersionedMessage updated = updateMessageIfVersion(message, VersionedMessage.ANY);
+        return updated == null ? null : updated.message;
+    }
+
+    /**
+     * The version is derived from the stored text, and compared under the message's stripe lock.
+     */
+    public VersionedMessage updateMessageIfVersion(Message message, long expectedVersion){
+        String text = message.message_text;
+        boolean[] updated = new boolean[1];
+        Message stored = store.messages.compute(message.message_id, current -> {
+            if(current == null || (expectedVersion != VersionedMessage.ANY && VersionedMessage.contentVersion(current) != expectedVersion)){
+                return current;
+            }
+            updated[0] = true;
+            return new Message(current.message_id, current.posted_by, text, current.time_posted_epoch);
+        });
+        return updated[0] ? new VersionedMessage(stored, VersionedMessage.contentVersion(stored)) : null;
+    }
+
+    public List<Message> getMessagesOfUser(int account_id){
+        int[] ids = store.messagesByAuthor.get(account_id);
+        List<Message> messages = new ArrayList<>(ids == null ? 0 : ids.length);
+        if(ids != null){
+            for(int id : ids){
+                Message message = store.messages.get(id);
+                // a concurrent delete may have removed the message before its index entry
+                if(message != null){
+                    messages.add(message);
+                }
+            }
+        }
+        return messages;
+    }
+
+    public AccountStats getAccountStats(int account_id){
+        return AuthorStats.toModel(account_id, store.statsByAuthor.get(account_id));
+    }
+}
@@ -0,0 +1,189 @@
+package DAO;
+
+import Model.Account;
+import Model.Message;
+import Util.ConcurrentIntMap;
+import Util.IntArrays;
+import Util.SnapshotManager;
+import Util.Snapshottable;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The shared state of the in-memory storage engine. Accounts and messages live in primitive-keyed
+ * striped maps, with a per-author index of message IDs so that a user's messages can be listed
+ * without looking at anyone else's.
+ *
+ * Stored objects are never mutated: updates replace the stored Message with a new one, so readers
+ * always see a consistent message.
+ *
+ * The whole store, indexes included, can be saved and restored through a {@link SnapshotManager}, which
+ * lets the in-memory engine survive restarts.
+ */
+public class InMemoryStore implements Snapshottable {
+    final ConcurrentIntMap<Account> accounts = new ConcurrentIntMap<>();
+    final ConcurrentHashMap<String, Account> accountsByUsername = new ConcurrentHashMap<>();
+    final ConcurrentIntMap<Message> messages = new ConcurrentIntMap<>(64);
+    /** author account_id to that author's message IDs, sorted ascending */
+    final ConcurrentIntMap<int[]> messagesByAuthor = new ConcurrentIntMap<>(64);
+    /** author account_id to message count and first/last epoch, only changed together with messagesByAuthor */
+    final ConcurrentIntMap<AuthorStats> statsByAuthor = new ConcurrentIntMap<>(64);
+    final AtomicInteger accountSequence = new AtomicInteger();
+    final AtomicInteger messageSequence = new AtomicInteger();
+
+    /**
+     * Stores a new message and adds it to its author's index and stats. Both happen under the lock of the
+     * author's index entry, so a concurrent delete of the message cannot run in between.
+     */
+    void addMessage(Message message){
+        int author = message.posted_by;
+        messagesByAuthor.compute(author, ids -> {
+            messages.put(message.message_id, message);
+            int[] updated = IntArrays.insertSorted(ids, message.message_id);
+            if(updated != ids){
+                statsByAuthor.put(author, AuthorStats.plus(statsByAuthor.get(author), message.time_posted_epoch));
+            }
+            return updated;
+        });
+    }
+
+    /**
+     * Removes a message together with its author index entry and stats, under the same lock as
+     * {@link #addMessage(Message)}.
+     * @return the removed message, or null if there was none.
+     */
+    Message removeMessage(int messageId){
+        Message found = messages.get(messageId);
+        if(found == null){
+            return null;
+        }
+        // posted_by never changes, so the message is still indexed under this author
+        int author = found.posted_by;
+        Message[] removed = new Message[1];
+        messagesByAuthor.compute(author, ids -> {
+            removed[0] = messages.remove(messageId);
+            if(removed[0] == null){
+                return ids;
+            }
+            int[] updated = IntArrays.removeSorted(ids, messageId);
+            if(updated != ids){
+                AuthorStats stats = AuthorStats.minus(statsByAuthor.get(author), removed[0].time_posted_epoch, updated, this::epochOf);
+                if(stats == null){
+                    statsByAuthor.remove(author);
+                }else{
+                    statsByAuthor.put(author, stats);
+                }
+            }
+            return updated;
+        });
+        return removed[0];
+    }
+
+    private long epochOf(int messageId){
+        Message message = messages.get(messageId);
+        return message == null ? AuthorStats.MISSING : message.time_posted_epoch;
+    }
+
+    public String snapshotName(){
+        return "in-memory-store";
+    }
+
+    /**
+     * Writes the store without stopping writes. Messages are copied before accounts, which are never
+     * removed, so every saved message's author is saved too; the sequences are read after both copies,
+     * so they are at least every saved ID. The author index and stats are not saved but rebuilt from the
+     * messages, so they always agree with them.
+     */
+    public void writeSnapshot(DataOutputStream out) throws IOException {
+        List<Message> messageList = messages.values();
+        List<Account> accountList = accounts.values();
+        out.writeInt(accountSequence.get());
+        out.writeInt(messageSequence.get());
+
+        out.writeInt(accountList.size());
+        for(Account account : accountList){
+            out.writeInt(account.account_id);
+            SnapshotManager.writeString(out, account.username);
+            SnapshotManager.writeString(out, account.password);
+        }
+
+        out.writeInt(messageList.size());
+        for(Message message : messageList){
+            out.writeInt(message.message_id);
+            out.writeInt(message.posted_by);
+            out.writeLong(message.time_posted_epoch);
+            SnapshotManager.writeString(out, message.message_text);
+        }
+
+        // the author index section of older snapshots, left empty
+        out.writeInt(0);
+    }
+
+    public void readSnapshot(ByteBuffer in){
+        accounts.clear();
+        accountsByUsername.clear();
+        messages.clear();
+        messagesByAuthor.clear();
+        statsByAuthor.clear();
+        int savedAccountSequence = in.getInt();
+        int savedMessageSequence = in.getInt();
+
+        int maxAccountId = 0;
+        int accountCount = in.getInt();
+        for(int i = 0; i < accountCount; i++){
+            Account account = new Account(in.getInt(), SnapshotManager.readString(in), SnapshotManager.readString(in));
+            accounts.put(account.account_id, account);
+            accountsByUsername.put(account.username, account);
+            maxAccountId = Math.max(maxAccountId, account.account_id);
+        }
+
+        int maxMessageId = 0;
+        int messageCount = in.getInt();
+        List<Message> restored = new ArrayList<>(messageCount);
+        for(int i = 0; i < messageCount; i++){
+            int id = in.getInt();
+            int postedBy = in.getInt();
+            long epoch = in.getLong();
+            Message message = new Message(id, postedBy, SnapshotManager.readString(in), epoch);
+            messages.put(id, message);
+            restored.add(message);
+            maxMessageId = Math.max(maxMessageId, id);
+        }
+        // an ID saved above its sequence must never be handed out again
+        accountSequence.set(Math.max(savedAccountSequence, maxAccountId));
+        messageSequence.set(Math.max(savedMessageSequence, maxMessageId));
+
+        // skip the author index older snapshots carry; it is rebuilt below
+        int authorCount = in.getInt();
+        for(int i = 0; i < authorCount; i++){
+            in.getInt();
+            in.position(in.position() + in.getInt() * 4);
+        }
+
+        // the author index and stats are derived, so they are rebuilt instead of being part of the snapshot
+        restored.sort(Comparator.comparingInt(Message::getMessage_id));
+        Map<Integer, Integer> counts = new HashMap<>();
+        for(Message message : restored){
+            counts.merge(message.posted_by, 1, Integer::sum);
+        }
+        Map<Integer, int[]> idsByAuthor = new HashMap<>();
+        for(Message message : restored){
+            int[] ids = idsByAuthor.computeIfAbsent(message.posted_by, author -> new int[counts.get(author)]);
+            int remaining = counts.merge(message.posted_by, -1, Integer::sum);
+            ids[ids.length - 1 - remaining] = message.message_id;
+            statsByAuthor.put(message.posted_by, AuthorStats.plus(statsByAuthor.get(message.posted_by), message.time_posted_epoch));
+        }
+        for(Map.Entry<Integer, int[]> entry : idsByAuthor.entrySet()){
+            messagesByAuthor.put(entry.getKey(), entry.getValue());
+        }
+    }
+}
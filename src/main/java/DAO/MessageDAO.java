@@ -1,25 +1,139 @@
 package DAO;
 
+import Model.AccountStats;
 import Model.Message;
+import Model.MessageField;
+import Model.TimeBucket;
+import Model.VersionedMessage;
+import Util.AppConfig;
 import Util.ConnectionUtil;
+import org.h2.api.ErrorCode;
 
+import java.io.Closeable;
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
-public class MessageDAO {
+/**
+ * The JDBC message repository. With soft delete ("message.softDelete"), deleting a message only marks its
+ * row as a tombstone, every read skips tombstones, and {@link #startCompaction(long)} removes them in the
+ * background.
+ */
+public class MessageDAO implements MessageRepository, Closeable {
+    static final String INSERT_MESSAGE = "INSERT INTO message (posted_by, message_text, time_posted_epoch) VALUES (?, ?, ?)";
+    static final String SELECT_ACCOUNT_BY_ID = "SELECT * FROM account WHERE account_id = ?";
+    static final String SELECT_ALL_MESSAGES = "SELECT * FROM message WHERE deleted = FALSE ORDER BY message_id";
+    static final String SELECT_MESSAGE_BY_ID = "SELECT * FROM message WHERE message_id = ? AND deleted = FALSE";
+    static final String SELECT_MESSAGES_BY_IDS = "SELECT * FROM message WHERE message_id IN (%s) AND deleted = FALSE";
+    static final String DELETE_MESSAGE_BY_ID = "SELECT posted_by, time_posted_epoch FROM OLD TABLE (DELETE FROM message WHERE message_id = ? AND deleted = FALSE)";
+    // soft delete: only flips the tombstone flag, which changes the row and its message_tombstone_idx entry
+    // instead of removing it from every index
+    static final String TOMBSTONE_MESSAGE_BY_ID = "SELECT posted_by, time_posted_epoch FROM FINAL TABLE (UPDATE message SET deleted = TRUE WHERE message_id = ? AND deleted = FALSE)";
+    // physically removes a batch of tombstones, found through message_tombstone_idx
+    static final String COMPACT_TOMBSTONES = "DELETE FROM message WHERE message_id IN (" +
+                        "SELECT message_id FROM message WHERE deleted = TRUE ORDER BY message_id LIMIT ?)";
+    // every update bumps the version, and returns the updated row in the same round trip
+    static final String UPDATE_MESSAGE_TEXT = "SELECT * FROM FINAL TABLE (UPDATE message SET message_text = ?, version = version + 1 " +
+                        "WHERE message_id = ? AND deleted = FALSE)";
+    // conditional update for If-Match: matches no row if the message changed since the client read it
+    static final String UPDATE_MESSAGE_TEXT_IF_VERSION = "SELECT * FROM FINAL TABLE (UPDATE message SET message_text = ?, version = version + 1 " +
+                        "WHERE message_id = ? AND deleted = FALSE AND version = ?)";
+    // the foreign key guarantees posted_by refers to an account, so no join with account is needed
+    static final String SELECT_MESSAGES_OF_USER = "SELECT * FROM message WHERE posted_by = ? AND deleted = FALSE ORDER BY message_id";
+    // range scans over message_epoch_idx and message_author_epoch_idx
+    static final String SELECT_MESSAGES_IN_RANGE = "SELECT * FROM message " +
+                        "WHERE time_posted_epoch >= ? AND time_posted_epoch < ? AND deleted = FALSE " +
+                        "ORDER BY time_posted_epoch, message_id LIMIT ?";
+    static final String SELECT_MESSAGES_OF_USER_IN_RANGE = "SELECT * FROM message " +
+                        "WHERE posted_by = ? AND time_posted_epoch >= ? AND time_posted_epoch < ? AND deleted = FALSE " +
+                        "ORDER BY time_posted_epoch, message_id LIMIT ?";
+    // bucket_start rounds down to a multiple of the bucket length, also for negative epochs
+    static final String BUCKET_START = "time_posted_epoch - MOD(MOD(time_posted_epoch, ?1) + ?1, ?1)";
+    static final String COUNT_MESSAGES_BY_BUCKET = "SELECT " + BUCKET_START + " AS bucket_start, COUNT(*) AS message_count " +
+                        "FROM message WHERE time_posted_epoch >= ?2 AND time_posted_epoch < ?3 AND deleted = FALSE " +
+                        "GROUP BY bucket_start ORDER BY bucket_start";
+    static final String COUNT_MESSAGES_OF_USER_BY_BUCKET = "SELECT " + BUCKET_START + " AS bucket_start, COUNT(*) AS message_count " +
+                        "FROM message WHERE posted_by = ?4 AND time_posted_epoch >= ?2 AND time_posted_epoch < ?3 AND deleted = FALSE " +
+                        "GROUP BY bucket_start ORDER BY bucket_start";
+    static final String SELECT_ACCOUNT_STATS = "SELECT * FROM account_stats WHERE account_id = ?";
+    static final String COUNT_POSTED_MESSAGE = "UPDATE account_stats SET message_count = message_count + 1, " +
+                        "first_posted_epoch = LEAST(COALESCE(first_posted_epoch, ?1), ?1), " +
+                        "last_posted_epoch = GREATEST(COALESCE(last_posted_epoch, ?1), ?1) " +
+                        "WHERE account_id = ?2";
+    // the new first or last epoch is only looked up when the deleted message was the first or last one
+    static final String COUNT_DELETED_MESSAGE = "UPDATE account_stats SET message_count = message_count - 1, " +
+                        "first_posted_epoch = CASE WHEN first_posted_epoch = ?1 " +
+                        "THEN (SELECT MIN(time_posted_epoch) FROM message WHERE posted_by = ?2 AND deleted = FALSE) ELSE first_posted_epoch END, " +
+                        "last_posted_epoch = CASE WHEN last_posted_epoch = ?1 " +
+                        "THEN (SELECT MAX(time_posted_epoch) FROM message WHERE posted_by = ?2 AND deleted = FALSE) ELSE last_posted_epoch END " +
+                        "WHERE account_id = ?2";
+    // a chunk of deletes is counted per author: the first or last epoch is only looked up again when it may
+    // have been among the deleted ones, ie is not below the smallest or above the largest deleted epoch
+    static final String COUNT_DELETED_MESSAGES = "UPDATE account_stats SET message_count = message_count - ?3, " +
+                        "first_posted_epoch = CASE WHEN first_posted_epoch >= ?1 " +
+                        "THEN (SELECT MIN(time_posted_epoch) FROM message WHERE posted_by = ?4 AND deleted = FALSE) ELSE first_posted_epoch END, " +
+                        "last_posted_epoch = CASE WHEN last_posted_epoch <= ?2 " +
+                        "THEN (SELECT MAX(time_posted_epoch) FROM message WHERE posted_by = ?4 AND deleted = FALSE) ELSE last_posted_epoch END " +
+                        "WHERE account_id = ?4";
+    static final String DELETE_MESSAGES_OF_USER = "SELECT message_id, posted_by, time_posted_epoch FROM OLD TABLE (" +
+                        "DELETE FROM message WHERE message_id IN (" +
+                        "SELECT message_id FROM message WHERE posted_by = ? AND deleted = FALSE ORDER BY message_id LIMIT ?))";
+    static final String DELETE_MESSAGES_IN_RANGE = "SELECT message_id, posted_by, time_posted_epoch FROM OLD TABLE (" +
+                        "DELETE FROM message WHERE message_id IN (" +
+                        "SELECT message_id FROM message WHERE time_posted_epoch >= ? AND time_posted_epoch < ? AND deleted = FALSE " +
+                        "ORDER BY time_posted_epoch, message_id LIMIT ?))";
+    // creates the summary row of an account that has none yet, eg one inserted outside this DAO
+    static final String INSERT_ACCOUNT_STATS = "INSERT INTO account_stats (account_id, message_count, first_posted_epoch, last_posted_epoch) " +
+                        "SELECT posted_by, COUNT(*), MIN(time_posted_epoch), MAX(time_posted_epoch) FROM message " +
+                        "WHERE posted_by = ? AND deleted = FALSE GROUP BY posted_by";
+
+    private final boolean softDelete;
+    private ScheduledExecutorService compactor;
+
+    /**
+     * Uses the "message.softDelete" setting.
+     */
+    public MessageDAO(){
+        this(AppConfig.getBoolean("message.softDelete", false));
+    }
 
     /**
-     * Inserts a new message into the database.
+     * @param softDelete true to mark deleted messages as tombstones instead of removing their rows.
+     */
+    public MessageDAO(boolean softDelete){
+        this.softDelete = softDelete;
+    }
+
+    /**
+     * Every statement this DAO runs, so startup can prepare them ahead of the first request.
+     */
+    public static final List<String> STATEMENTS = Arrays.asList(INSERT_MESSAGE, SELECT_ACCOUNT_BY_ID,
+            SELECT_ALL_MESSAGES, SELECT_MESSAGE_BY_ID, DELETE_MESSAGE_BY_ID, TOMBSTONE_MESSAGE_BY_ID, UPDATE_MESSAGE_TEXT, UPDATE_MESSAGE_TEXT_IF_VERSION,
+            SELECT_MESSAGES_OF_USER,
+            SELECT_ACCOUNT_STATS, COUNT_POSTED_MESSAGE, COUNT_DELETED_MESSAGE, INSERT_ACCOUNT_STATS,
+            COUNT_DELETED_MESSAGES, DELETE_MESSAGES_OF_USER, DELETE_MESSAGES_IN_RANGE,
+            SELECT_MESSAGES_IN_RANGE, SELECT_MESSAGES_OF_USER_IN_RANGE, COUNT_MESSAGES_BY_BUCKET, COUNT_MESSAGES_OF_USER_BY_BUCKET);
+
+    /**
+     * Inserts a new message into the database, updating the author's account_stats row in the same
+     * transaction.
      * @param message The message to be inserted.
      * @return The inserted message with its generated ID, or null if the insertion failed.
      */
     public Message insertMessage(Message message){
         Connection connection = ConnectionUtil.getConnection();
         try {
+            connection.setAutoCommit(false);
             // Write SQL logic here. You should only be inserting with the name column, so that the database may
             // automatically generate a primary key.
-            String sql = "INSERT INTO message (posted_by, message_text, time_posted_epoch) VALUES (?, ?, ?)";
+            String sql = INSERT_MESSAGE;
             PreparedStatement preparedStatement = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
 
             //write preparedStatement's setString method here.
@@ -31,14 +145,64 @@ public class MessageDAO {
             ResultSet pkeyResultSet = preparedStatement.getGeneratedKeys();
             if(pkeyResultSet.next()){
                 int generated_account_id = (int) pkeyResultSet.getLong(1);
+                countPostedMessage(connection, message.posted_by, message.time_posted_epoch);
+                connection.commit();
                 return new Message(generated_account_id, message.posted_by, message.message_text, message.time_posted_epoch);
             }
+            connection.rollback();
         }catch(SQLException e){
             System.out.println(e.getMessage());
+            rollback(connection);
+        }finally {
+            endTransaction(connection);
         }
         return null;
     }
 
+    /**
+     * Adds a just-inserted message to the author's account_stats row, creating the row if needed.
+     */
+    private void countPostedMessage(Connection connection, int posted_by, long epoch) throws SQLException {
+        PreparedStatement update = connection.prepareStatement(COUNT_POSTED_MESSAGE);
+        update.setLong(1, epoch);
+        update.setInt(2, posted_by);
+        if(update.executeUpdate() > 0){
+            return;
+        }
+        try {
+            // counts the new message too, since it is visible inside this transaction
+            PreparedStatement insert = connection.prepareStatement(INSERT_ACCOUNT_STATS);
+            insert.setInt(1, posted_by);
+            insert.executeUpdate();
+        }catch(SQLException e){
+            if(e.getErrorCode() != ErrorCode.DUPLICATE_KEY_1){
+                throw e;
+            }
+            // another transaction created the row first
+            update.executeUpdate();
+        }
+    }
+
+    private static void rollback(Connection connection){
+        try {
+            if(connection != null) connection.rollback();
+        }catch(SQLException e){
+            System.out.println(e.getMessage());
+        }
+    }
+
+    /**
+     * Restores auto-commit before the connection goes back to the pool.
+     */
+    private static void endTransaction(Connection connection){
+        try {
+            if(connection != null) connection.setAutoCommit(true);
+        }catch(SQLException e){
+            System.out.println(e.getMessage());
+        }
+        ConnectionUtil.closeConnection(connection);
+    }
+
     /**
      * Checks if a given account ID exists in the database.
      * @param account_id The account ID to check.
@@ -48,7 +212,7 @@ public class MessageDAO {
         Connection connection = ConnectionUtil.getConnection();
         try {
             //Write SQL logic here
-            String sql = "SELECT * FROM account WHERE account_id = ?";
+            String sql = SELECT_ACCOUNT_BY_ID;
             PreparedStatement preparedStatement = connection.prepareStatement(sql);
 
             //write preparedStatement's setString method here.
@@ -65,11 +229,7 @@ public class MessageDAO {
         }catch(SQLException e){
             System.out.println(e.getMessage());
         }finally {
-            try {
-                if (connection != null) connection.close();
-            } catch (SQLException e) {
-                System.out.println(e.getMessage());
-            }
+            ConnectionUtil.closeConnection(connection);
         }
 
         return false;
@@ -80,25 +240,26 @@ public class MessageDAO {
      * @return A list of all messages.
      */
     public List<Message> getAllMessages(){
+        return getAllMessages(MessageField.ALL);
+    }
+
+    /**
+     * Retrieves all messages from the database, selecting only the given columns.
+     * @return A list of all messages with only the given fields set.
+     */
+    public List<Message> getAllMessages(Set<MessageField> fields){
         Connection connection = ConnectionUtil.getConnection();
-        List<Message> messages = new ArrayList<>();
         try {
-            String sql = "SELECT * FROM message";
+            String sql = project(SELECT_ALL_MESSAGES, fields);
             PreparedStatement preparedStatement = connection.prepareStatement(sql);
 
-            ResultSet rs = preparedStatement.executeQuery();
-
-            while(rs.next()){
-                Message message = new Message(rs.getInt("message_id"),
-                                rs.getInt("posted_by"),
-                                rs.getString("message_text"),
-                                rs.getLong("time_posted_epoch"));
-                messages.add(message);
-            }
+            return readMessages(preparedStatement.executeQuery(), fields);
         }catch(SQLException e){
             System.out.println(e.getMessage());
+        }finally {
+            ConnectionUtil.closeConnection(connection);
         }
-        return messages;
+        return new ArrayList<>();
     }
 
     /**
@@ -109,79 +270,289 @@ public class MessageDAO {
     public Message getMessageByID(int id){
         Connection connection = ConnectionUtil.getConnection();
         try {
-            String sql = "SELECT * FROM message WHERE message_id = ?";
-            PreparedStatement preparedStatement = connection.prepareStatement(sql);
+            return getMessageByID(connection, id);
+        }catch(SQLException e){
+            System.out.println(e.getMessage());
+        }finally {
+            ConnectionUtil.closeConnection(connection);
+        }
+        return null;
+    }
 
+    /**
+     * Retrieves a message by its ID, with the version from its version column.
+     */
+    @Override
+    public VersionedMessage getVersionedMessageByID(int id){
+        Connection connection = ConnectionUtil.getConnection();
+        try {
+            PreparedStatement preparedStatement = connection.prepareStatement(SELECT_MESSAGE_BY_ID);
             preparedStatement.setInt(1, id);
+            return readVersionedMessage(preparedStatement.executeQuery());
+        }catch(SQLException e){
+            System.out.println(e.getMessage());
+        }finally {
+            ConnectionUtil.closeConnection(connection);
+        }
+        return null;
+    }
 
-            ResultSet rs = preparedStatement.executeQuery();
+    private static VersionedMessage readVersionedMessage(ResultSet rs) throws SQLException {
+        if(!rs.next()){
+            return null;
+        }
+        Message message = new Message(rs.getInt("message_id"),
+                        rs.getInt("posted_by"),
+                        rs.getString("message_text"),
+                        rs.getLong("time_posted_epoch"));
+        return new VersionedMessage(message, rs.getLong("version"));
+    }
 
-            while(rs.next()){
-                Message message = new Message(rs.getInt("message_id"),
-                                rs.getInt("posted_by"),
-                                rs.getString("message_text"),
-                                rs.getLong("time_posted_epoch"));
-                return message;
+    /**
+     * Retrieves the messages with the given IDs with a single IN query. The number of placeholders is
+     * rounded up to a power of two, padded with the last ID, so that few distinct statements reach H2's
+     * statement cache.
+     * @param ids Distinct message IDs.
+     * @return The messages found, in no particular order.
+     */
+    public List<Message> getMessagesByIDs(int[] ids){
+        if(ids.length == 0){
+            return new ArrayList<>();
+        }
+        int placeholders = Integer.highestOneBit(ids.length);
+        if(placeholders < ids.length){
+            placeholders <<= 1;
+        }
+        Connection connection = ConnectionUtil.getConnection();
+        try {
+            PreparedStatement preparedStatement = connection.prepareStatement(selectMessagesByIDs(placeholders));
+            for(int i = 0; i < placeholders; i++){
+                preparedStatement.setInt(i + 1, ids[Math.min(i, ids.length - 1)]);
             }
+            return readMessages(preparedStatement.executeQuery(), MessageField.ALL);
         }catch(SQLException e){
             System.out.println(e.getMessage());
+        }finally {
+            ConnectionUtil.closeConnection(connection);
+        }
+        return new ArrayList<>();
+    }
+
+    private static String selectMessagesByIDs(int placeholders){
+        StringBuilder list = new StringBuilder(placeholders * 3);
+        for(int i = 0; i < placeholders; i++){
+            list.append(i == 0 ? "?" : ", ?");
+        }
+        return String.format(SELECT_MESSAGES_BY_IDS, list);
+    }
+
+    /**
+     * Retrieves a message by its ID on a connection the caller already holds.
+     */
+    private Message getMessageByID(Connection connection, int id) throws SQLException {
+        String sql = SELECT_MESSAGE_BY_ID;
+        PreparedStatement preparedStatement = connection.prepareStatement(sql);
+
+        preparedStatement.setInt(1, id);
+
+        ResultSet rs = preparedStatement.executeQuery();
+
+        while(rs.next()){
+            Message message = new Message(rs.getInt("message_id"),
+                            rs.getInt("posted_by"),
+                            rs.getString("message_text"),
+                            rs.getLong("time_posted_epoch"));
+            return message;
         }
         return null;
     }
 
     /**
-     * Deletes a message by its ID.
+     * Deletes a message by its ID, updating the author's account_stats row in the same transaction.
      * @param id The ID of the message to delete.
      * @return True if the message was successfully deleted, false otherwise.
      */
     public boolean deleteMessageByID(int id){
         Connection connection = ConnectionUtil.getConnection();
         try {
-            String sql = "DELETE FROM message WHERE message_id = ?";
+            connection.setAutoCommit(false);
+            // the delete returns the author and epoch of the removed row, so the stats need no extra read
+            String sql = softDelete ? TOMBSTONE_MESSAGE_BY_ID : DELETE_MESSAGE_BY_ID;
             PreparedStatement preparedStatement = connection.prepareStatement(sql);
 
             preparedStatement.setInt(1, id);
 
-            int rowsAffected = preparedStatement.executeUpdate();
-
-            return rowsAffected > 0;
+            ResultSet rs = preparedStatement.executeQuery();
+            if(!rs.next()){
+                connection.rollback();
+                return false;
+            }
+            PreparedStatement update = connection.prepareStatement(COUNT_DELETED_MESSAGE);
+            update.setLong(1, rs.getLong("time_posted_epoch"));
+            update.setInt(2, rs.getInt("posted_by"));
+            update.executeUpdate();
+            connection.commit();
+            return true;
         }catch(SQLException e){
             System.out.println(e.getMessage());
+            rollback(connection);
+        }finally {
+            endTransaction(connection);
         }
         return false;
     }
 
+    /**
+     * Deletes at most limit messages of a user in one short transaction, updating its account_stats row.
+     * @see MessageRepository#deleteMessagesOfUser(int, int)
+     */
+    public List<Message> deleteMessagesOfUser(int account_id, int limit){
+        return deleteChunk(DELETE_MESSAGES_OF_USER, account_id, limit);
+    }
+
+    /**
+     * Deletes at most limit messages posted in [since, until) in one short transaction, updating the
+     * account_stats rows of their authors.
+     * @see MessageRepository#deleteMessagesInRange(long, long, int)
+     */
+    public List<Message> deleteMessagesInRange(long since, long until, int limit){
+        return deleteChunk(DELETE_MESSAGES_IN_RANGE, since, until, limit);
+    }
+
+    /**
+     * Runs one of the chunked DELETE ... statements, which return the removed rows, and subtracts them
+     * from their authors' stats in the same transaction.
+     * @return the deleted messages, without their text.
+     * @throws IllegalStateException if the chunk failed, eg on a lock timeout; it is rolled back then.
+     *         Callers must not take the failure for the end of the messages to delete.
+     */
+    private List<Message> deleteChunk(String sql, Object... parameters){
+        List<Message> deleted = new ArrayList<>();
+        Connection connection = ConnectionUtil.getConnection();
+        try {
+            connection.setAutoCommit(false);
+            PreparedStatement preparedStatement = connection.prepareStatement(sql);
+            for(int i = 0; i < parameters.length; i++){
+                preparedStatement.setObject(i + 1, parameters[i]);
+            }
+            ResultSet rs = preparedStatement.executeQuery();
+            // count, smallest and largest deleted epoch per author
+            Map<Integer, long[]> authors = new HashMap<>();
+            while(rs.next()){
+                Message message = new Message(rs.getInt("message_id"), rs.getInt("posted_by"), null, rs.getLong("time_posted_epoch"));
+                deleted.add(message);
+                long[] summary = authors.computeIfAbsent(message.posted_by, author -> new long[]{0, Long.MAX_VALUE, Long.MIN_VALUE});
+                summary[0]++;
+                summary[1] = Math.min(summary[1], message.time_posted_epoch);
+                summary[2] = Math.max(summary[2], message.time_posted_epoch);
+            }
+            PreparedStatement update = connection.prepareStatement(COUNT_DELETED_MESSAGES);
+            for(Map.Entry<Integer, long[]> author : authors.entrySet()){
+                update.setLong(1, author.getValue()[1]);
+                update.setLong(2, author.getValue()[2]);
+                update.setLong(3, author.getValue()[0]);
+                update.setInt(4, author.getKey());
+                update.executeUpdate();
+            }
+            connection.commit();
+            return deleted;
+        }catch(SQLException e){
+            System.out.println(e.getMessage());
+            rollback(connection);
+            throw new IllegalStateException("Could not delete a chunk of messages: " + e.getMessage(), e);
+        }finally {
+            endTransaction(connection);
+        }
+    }
+
+    /**
+     * Physically removes up to limit tombstoned messages. Their stats were already updated when they were
+     * deleted.
+     * @return the number of rows removed.
+     */
+    public int compactDeleted(int limit){
+        Connection connection = ConnectionUtil.getConnection();
+        try {
+            PreparedStatement preparedStatement = connection.prepareStatement(COMPACT_TOMBSTONES);
+            preparedStatement.setInt(1, limit);
+            return preparedStatement.executeUpdate();
+        }catch(SQLException e){
+            System.out.println(e.getMessage());
+        }finally {
+            ConnectionUtil.closeConnection(connection);
+        }
+        return 0;
+    }
+
+    /**
+     * Starts removing tombstones in the background, "compact.batchSize" rows per statement. A run only
+     * starts a batch while at most "compact.quietConnections" pooled connections are in use, so compaction
+     * waits for quiet periods instead of competing with requests.
+     * @param intervalMillis time between compaction runs.
+     */
+    public void startCompaction(long intervalMillis){
+        int batchSize = AppConfig.getInt("compact.batchSize", 500);
+        int quietConnections = AppConfig.getInt("compact.quietConnections", 1);
+        compactor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "message-compactor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        compactor.scheduleWithFixedDelay(() -> {
+            try{
+                while(ConnectionUtil.getActiveConnections() <= quietConnections && compactDeleted(batchSize) == batchSize){
+                    // a full batch means there may be more
+                }
+            }catch(RuntimeException e){
+                System.out.println(e.getMessage());
+            }
+        }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops compaction.
+     */
+    public void close(){
+        if(compactor != null){
+            compactor.shutdownNow();
+        }
+    }
+
     /**
      * Updates an existing message in the database.
      * @param message The message to be updated.
      * @return The updated message, or null if the update failed.
      */
     public Message updateMessage(Message message){
+        VersionedMessage updated = updateMessageIfVersion(message, VersionedMessage.ANY);
+        return updated == null ? null : updated.message;
+    }
+
+    /**
+     * Updates an existing message if its version column still holds expectedVersion, incrementing it. The
+     * version check and the read of the updated row happen in the single UPDATE statement, so a stale
+     * version costs no more round trips than a successful update.
+     * @param message The message to be updated.
+     * @param expectedVersion The version the message must have, or VersionedMessage.ANY.
+     * @return The updated message and its new version, or null if no message has that ID and version.
+     */
+    public VersionedMessage updateMessageIfVersion(Message message, long expectedVersion){
         Connection connection = ConnectionUtil.getConnection();
         try {
-            String sql = "UPDATE message SET message_text = ? WHERE message_id = ?";
-            PreparedStatement preparedStatement = connection.prepareStatement(sql);
+            boolean conditional = expectedVersion != VersionedMessage.ANY;
+            PreparedStatement preparedStatement = connection.prepareStatement(conditional ? UPDATE_MESSAGE_TEXT_IF_VERSION : UPDATE_MESSAGE_TEXT);
 
             preparedStatement.setString(1, message.message_text);
             preparedStatement.setInt(2, message.message_id);
-
-            int rowsAffected = preparedStatement.executeUpdate();
-
-            if (rowsAffected > 0) {
-                // Return a new Message object with the updated text
-                return getMessageByID(message.message_id);
-            } else {
-                // If no rows were affected, return null to indicate the update failed
-                return null;
+            if(conditional){
+                preparedStatement.setLong(3, expectedVersion);
             }
+            // no row means the message is missing, deleted or at another version
+            return readVersionedMessage(preparedStatement.executeQuery());
         }catch(SQLException e){
             System.out.println(e.getMessage());
         }finally {
-            try {
-                if (connection != null) connection.close();
-            } catch (SQLException e) {
-                System.out.println(e.getMessage());
-            }
+            ConnectionUtil.closeConnection(connection);
         }
         return null;
     }
@@ -192,27 +563,186 @@ public class MessageDAO {
      * @return A list of messages written by the user.
      */
     public List<Message> getMessagesOfUser(int account_id){
+        return getMessagesOfUser(account_id, MessageField.ALL);
+    }
+
+    /**
+     * Retrieves all messages written by a particular user, selecting only the given columns.
+     * @return A list of messages written by the user with only the given fields set.
+     */
+    public List<Message> getMessagesOfUser(int account_id, Set<MessageField> fields){
         Connection connection = ConnectionUtil.getConnection();
-        List<Message> messages = new ArrayList<>();
         try {
-            String sql = "SELECT m.* " +
-                        "FROM message m " +
-                        "INNER JOIN account a ON m.posted_by = a.account_id " +
-                        "WHERE a.account_id = ?";
+            String sql = project(SELECT_MESSAGES_OF_USER, fields);
 
+            PreparedStatement preparedStatement = connection.prepareStatement(sql);
+            preparedStatement.setInt(1, account_id);
+            return readMessages(preparedStatement.executeQuery(), fields);
+        }catch(SQLException e){
+            System.out.println(e.getMessage());
+        }finally {
+            ConnectionUtil.closeConnection(connection);
+        }
+        return new ArrayList<>();
+    }
+
+    /**
+     * Retrieves the message statistics of an account from its account_stats row.
+     * @param account_id The ID of the account.
+     * @return The stats of the account; a count of 0 if it has no row.
+     */
+    public AccountStats getAccountStats(int account_id){
+        Connection connection = ConnectionUtil.getConnection();
+        try {
+            String sql = SELECT_ACCOUNT_STATS;
             PreparedStatement preparedStatement = connection.prepareStatement(sql);
             preparedStatement.setInt(1, account_id);
             ResultSet rs = preparedStatement.executeQuery();
 
+            if(rs.next()){
+                return new AccountStats(account_id,
+                                rs.getLong("message_count"),
+                                rs.getObject("first_posted_epoch", Long.class),
+                                rs.getObject("last_posted_epoch", Long.class));
+            }
+        }catch(SQLException e){
+            System.out.println(e.getMessage());
+        }finally {
+            ConnectionUtil.closeConnection(connection);
+        }
+        return AccountStats.empty(account_id);
+    }
+
+    /**
+     * Retrieves the messages posted in a time range with a range scan over the epoch index.
+     * @see MessageRepository#getMessagesInRange(long, long, int)
+     */
+    public List<Message> getMessagesInRange(long since, long until, int limit){
+        return getMessagesInRange(since, until, limit, MessageField.ALL);
+    }
+
+    public List<Message> getMessagesInRange(long since, long until, int limit, Set<MessageField> fields){
+        Connection connection = ConnectionUtil.getConnection();
+        try {
+            PreparedStatement preparedStatement = connection.prepareStatement(project(SELECT_MESSAGES_IN_RANGE, fields));
+            preparedStatement.setLong(1, since);
+            preparedStatement.setLong(2, until);
+            preparedStatement.setInt(3, limit);
+            return readMessages(preparedStatement.executeQuery(), fields);
+        }catch(SQLException e){
+            System.out.println(e.getMessage());
+        }finally {
+            ConnectionUtil.closeConnection(connection);
+        }
+        return new ArrayList<>();
+    }
+
+    /**
+     * Retrieves the messages a user posted in a time range with a range scan over the author/epoch index.
+     * @see MessageRepository#getMessagesOfUserInRange(int, long, long, int)
+     */
+    public List<Message> getMessagesOfUserInRange(int account_id, long since, long until, int limit){
+        return getMessagesOfUserInRange(account_id, since, until, limit, MessageField.ALL);
+    }
+
+    public List<Message> getMessagesOfUserInRange(int account_id, long since, long until, int limit, Set<MessageField> fields){
+        Connection connection = ConnectionUtil.getConnection();
+        try {
+            PreparedStatement preparedStatement = connection.prepareStatement(project(SELECT_MESSAGES_OF_USER_IN_RANGE, fields));
+            preparedStatement.setInt(1, account_id);
+            preparedStatement.setLong(2, since);
+            preparedStatement.setLong(3, until);
+            preparedStatement.setInt(4, limit);
+            return readMessages(preparedStatement.executeQuery(), fields);
+        }catch(SQLException e){
+            System.out.println(e.getMessage());
+        }finally {
+            ConnectionUtil.closeConnection(connection);
+        }
+        return new ArrayList<>();
+    }
+
+    /**
+     * Counts the messages per time bucket with a GROUP BY in the database.
+     * @see MessageRepository#countMessagesByBucket(long, long, long)
+     */
+    public List<TimeBucket> countMessagesByBucket(long since, long until, long bucketSeconds){
+        return countByBucket(COUNT_MESSAGES_BY_BUCKET, false, 0, since, until, bucketSeconds);
+    }
+
+    /**
+     * Counts a user's messages per time bucket with a GROUP BY in the database.
+     * @see MessageRepository#countMessagesOfUserByBucket(int, long, long, long)
+     */
+    public List<TimeBucket> countMessagesOfUserByBucket(int account_id, long since, long until, long bucketSeconds){
+        return countByBucket(COUNT_MESSAGES_OF_USER_BY_BUCKET, true, account_id, since, until, bucketSeconds);
+    }
+
+    private List<TimeBucket> countByBucket(String sql, boolean ofUser, int account_id, long since, long until, long bucketSeconds){
+        Connection connection = ConnectionUtil.getConnection();
+        List<TimeBucket> buckets = new ArrayList<>();
+        try {
+            PreparedStatement preparedStatement = connection.prepareStatement(sql);
+            preparedStatement.setLong(1, bucketSeconds);
+            preparedStatement.setLong(2, since);
+            preparedStatement.setLong(3, until);
+            if(ofUser){
+                preparedStatement.setInt(4, account_id);
+            }
+            ResultSet rs = preparedStatement.executeQuery();
             while(rs.next()){
-                Message message = new Message(rs.getInt("message_id"),
-                                rs.getInt("posted_by"),
-                                rs.getString("message_text"),
-                                rs.getLong("time_posted_epoch"));
-                messages.add(message);
+                buckets.add(new TimeBucket(rs.getLong("bucket_start"), rs.getLong("message_count")));
             }
         }catch(SQLException e){
             System.out.println(e.getMessage());
+        }finally {
+            ConnectionUtil.closeConnection(connection);
+        }
+        return buckets;
+    }
+
+    /**
+     * Replaces the "SELECT *" of a message query with the columns of the given fields.
+     */
+    private static String project(String sql, Set<MessageField> fields){
+        if(fields.size() == MessageField.ALL.size()){
+            return sql;
+        }
+        StringBuilder columns = new StringBuilder("SELECT ");
+        for(MessageField field : fields){
+            if(columns.length() > "SELECT ".length()){
+                columns.append(", ");
+            }
+            columns.append(field.getFieldName());
+        }
+        return columns + sql.substring("SELECT *".length());
+    }
+
+    /**
+     * Reads messages from a result set that holds only the columns of the given fields.
+     */
+    private static List<Message> readMessages(ResultSet rs, Set<MessageField> fields) throws SQLException {
+        List<Message> messages = new ArrayList<>();
+        if(fields.size() == MessageField.ALL.size()){
+            while(rs.next()){
+                messages.add(new Message(rs.getInt("message_id"),
+                                rs.getInt("posted_by"),
+                                rs.getString("message_text"),
+                                rs.getLong("time_posted_epoch")));
+            }
+            return messages;
+        }
+        boolean id = fields.contains(MessageField.MESSAGE_ID);
+        boolean postedBy = fields.contains(MessageField.POSTED_BY);
+        boolean text = fields.contains(MessageField.MESSAGE_TEXT);
+        boolean epoch = fields.contains(MessageField.TIME_POSTED_EPOCH);
+        while(rs.next()){
+            Message message = new Message();
+            if(id) message.message_id = rs.getInt("message_id");
+            if(postedBy) message.posted_by = rs.getInt("posted_by");
+            if(text) message.message_text = rs.getString("message_text");
+            if(epoch) message.time_posted_epoch = rs.getLong("time_posted_epoch");
+            messages.add(message);
         }
         return messages;
     }
@@ -0,0 +1,406 @@
+package DAO;
+
+import Model.AccountStats;
+import Model.Message;
+import Model.VersionedMessage;
+import Util.ConcurrentIntMap;
+import Util.IntArrays;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntPredicate;
+
+/**
+ * Message storage as an append-only log of memory-mapped segment files, for write-heavy deployments.
+ *
+ * Every insert, update and delete appends one record to the active segment (see
+ * {@link MessageLogSegment} for the layout); nothing is rewritten in place. An in-memory index maps each
+ * live message_id to the location of its latest record, and a per-author index lists each author's
+ * message IDs. Both are rebuilt on startup by replaying the segments in order; a torn record at the end
+ * of the last segment is discarded.
+ *
+ * A background task compacts sealed segments whose records are mostly superseded: live records are
+ * copied to the head of the log and the old file is deleted. Accounts are not stored here; whether an
+ * author exists is answered by the given predicate.
+ */
+public class MessageLogDAO implements MessageRepository, Closeable {
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    /** sealed segments with less than this share of live bytes are compacted */
+    private static final double COMPACTION_LIVE_RATIO = 0.5;
+
+    private final Path directory;
+    private final int segmentCapacity;
+    private final IntPredicate accountExists;
+
+    private final ConcurrentSkipListMap<Integer, MessageLogSegment> segments = new ConcurrentSkipListMap<>();
+    private final ConcurrentIntMap<Location> index = new ConcurrentIntMap<>(64);
+    private final ConcurrentIntMap<int[]> messagesByAuthor = new ConcurrentIntMap<>(64);
+    /** only changed together with messagesByAuthor, see {@link AuthorStats} */
+    private final ConcurrentIntMap<AuthorStats> statsByAuthor = new ConcurrentIntMap<>(64);
+    private final AtomicInteger messageSequence = new AtomicInteger();
+    /** serializes appends, segment rolls and changes to the indexes and stats */
+    private final Object writeLock = new Object();
+    private MessageLogSegment active;
+    private ScheduledExecutorService compactor;
+
+    /**
+     * Where the latest record of a message lives.
+     */
+    private static final class Location {
+        final int messageId;
+        final int postedBy;
+        final long epoch;
+        final MessageLogSegment segment;
+        final int offset;
+        final int size;
+
+        Location(int messageId, int postedBy, long epoch, MessageLogSegment segment, int offset, int size){
+            this.messageId = messageId;
+            this.postedBy = postedBy;
+            this.epoch = epoch;
+            this.segment = segment;
+            this.offset = offset;
+            this.size = size;
+        }
+    }
+
+    /**
+     * Opens the log in directory, replaying any existing segments.
+     * @param segmentCapacity the size in bytes of each mapped segment file.
+     * @param accountExists answers whether an account_id refers to a real account.
+     */
+    public MessageLogDAO(Path directory, int segmentCapacity, IntPredicate accountExists){
+        this.directory = directory;
+        this.segmentCapacity = segmentCapacity;
+        this.accountExists = accountExists;
+        try{
+            Files.createDirectories(directory);
+            recover();
+        }catch(IOException e){
+            throw new UncheckedIOException("Could not open message log in " + directory, e);
+        }
+    }
+
+    /**
+     * Starts compacting sealed segments in the background.
+     * @param intervalSeconds time between compaction runs.
+     */
+    public void startCompaction(long intervalSeconds){
+        compactor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "message-log-compactor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        compactor.scheduleWithFixedDelay(() -> {
+            try{
+                compact();
+            }catch(RuntimeException | IOException e){
+                System.out.println(e.getMessage());
+            }
+        }, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    private void recover() throws IOException {
+        List<Path> files = new ArrayList<>();
+        try(DirectoryStream<Path> stream = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)){
+            for(Path file : stream){
+                files.add(file);
+            }
+        }
+        files.sort(Comparator.comparingInt(MessageLogDAO::segmentId));
+
+        int maxId = 0;
+        for(int i = 0; i < files.size(); i++){
+            boolean last = i == files.size() - 1;
+            Path file = files.get(i);
+            MessageLogSegment segment = MessageLogSegment.open(file, segmentId(file), last ? segmentCapacity : 0);
+            segments.put(segment.id, segment);
+            int[] highest = {maxId};
+            segment.recover((record, offset) -> {
+                highest[0] = Math.max(highest[0], record.messageId);
+                if(record.type == MessageLogSegment.TOMBSTONE){
+                    Location removed = index.remove(record.messageId);
+                    if(removed != null){
+                        removed.segment.liveBytes.addAndGet(-removed.size);
+                        unindexMessage(removed);
+                    }
+                }else{
+                    Location location = new Location(record.messageId, record.postedBy, record.epoch, segment, offset, record.size);
+                    Location previous = index.put(record.messageId, location);
+                    segment.liveBytes.addAndGet(record.size);
+                    if(previous != null){
+                        previous.segment.liveBytes.addAndGet(-previous.size);
+                    }else{
+                        indexMessage(location);
+                    }
+                }
+            });
+            maxId = highest[0];
+            if(last){
+                active = segment;
+            }
+        }
+        messageSequence.set(maxId);
+        if(active == null){
+            active = newSegment(1);
+        }
+    }
+
+    private MessageLogSegment newSegment(int id) throws IOException {
+        Path file = directory.resolve(String.format("%s%06d%s", SEGMENT_PREFIX, id, SEGMENT_SUFFIX));
+        MessageLogSegment segment = MessageLogSegment.open(file, id, segmentCapacity);
+        segment.recover((record, offset) -> { });
+        segments.put(id, segment);
+        return segment;
+    }
+
+    private static int segmentId(Path file){
+        String name = file.getFileName().toString();
+        return Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    /**
+     * Appends a record to the active segment, rolling to a new segment when it is full.
+     * Callers must hold writeLock.
+     */
+    private Location append(byte type, int messageId, int postedBy, long epoch, byte[] text){
+        int size = MessageLogSegment.recordSize(text);
+        if(!active.hasRoom(size)){
+            active.force();
+            try{
+                active = newSegment(active.id + 1);
+            }catch(IOException e){
+                throw new UncheckedIOException(e);
+            }
+        }
+        int offset = active.append(type, messageId, postedBy, epoch, text);
+        if(type != MessageLogSegment.TOMBSTONE){
+            active.liveBytes.addAndGet(size);
+        }
+        return new Location(messageId, postedBy, epoch, active, offset, size);
+    }
+
+    private void indexMessage(Location location){
+        messagesByAuthor.compute(location.postedBy, ids -> {
+            int[] updated = IntArrays.insertSorted(ids, location.messageId);
+            if(updated != ids){
+                statsByAuthor.put(location.postedBy, AuthorStats.plus(statsByAuthor.get(location.postedBy), location.epoch));
+            }
+            return updated;
+        });
+    }
+
+    /**
+     * Removes a message from the author index. The message must already be gone from the main index.
+     */
+    private void unindexMessage(Location removed){
+        messagesByAuthor.compute(removed.postedBy, ids -> {
+            int[] updated = IntArrays.removeSorted(ids, removed.messageId);
+            if(updated != ids){
+                AuthorStats stats = AuthorStats.minus(statsByAuthor.get(removed.postedBy), removed.epoch, updated, id -> {
+                    Location location = index.get(id);
+                    return location == null ? AuthorStats.MISSING : location.epoch;
+                });
+                if(stats == null){
+                    statsByAuthor.remove(removed.postedBy);
+                }else{
+                    statsByAuthor.put(removed.postedBy, stats);
+                }
+            }
+            return updated;
+        });
+    }
+
+    public Message insertMessage(Message message){
+        if(!accountExists.test(message.posted_by)){
+            return null;
+        }
+        byte[] text = message.message_text.getBytes(StandardCharsets.UTF_8);
+        int id;
+        Location location;
+        synchronized(writeLock){
+            id = messageSequence.incrementAndGet();
+            location = append(MessageLogSegment.PUT, id, message.posted_by, message.time_posted_epoch, text);
+            index.put(id, location);
+            // under the lock, so a delete of the new message cannot unindex it before it is indexed
+            indexMessage(location);
+        }
+        return new Message(id, message.posted_by, message.message_text, message.time_posted_epoch);
+    }
+
+    public boolean doesIDExist(int account_id){
+        return accountExists.test(account_id);
+    }
+
+    public List<Message> getAllMessages(){
+        List<Location> locations = index.values();
+        locations.sort(Comparator.comparingInt(location -> location.messageId));
+        List<Message> messages = new ArrayList<>(locations.size());
+        for(Location location : locations){
+            messages.add(read(location));
+        }
+        return messages;
+    }
+
+    public Message getMessageByID(int id){
+        Location location = index.get(id);
+        return location == null ? null : read(location);
+    }
+
+    public boolean deleteMessageByID(int id){
+        Location removed;
+        synchronized(writeLock){
+            removed = index.get(id);
+            if(removed == null){
+                return false;
+            }
+            append(MessageLogSegment.TOMBSTONE, id, removed.postedBy, 0L, new byte[0]);
+            index.remove(id);
+            removed.segment.liveBytes.addAndGet(-removed.size);
+            unindexMessage(removed);
+        }
+        return true;
+    }
+
+    public Message updateMessage(Message message){
+        VersionedMessage updated = updateMessageIfVersion(message, VersionedMessage.ANY);
+        return updated == null ? null : updated.message;
+    }
+
+    /**
+     * The version is derived from the text of the latest record, which is read and compared under the
+     * write lock.
+     */
+    public VersionedMessage updateMessageIfVersion(Message message, long expectedVersion){
+        byte[] text = message.message_text.getBytes(StandardCharsets.UTF_8);
+        synchronized(writeLock){
+            Location current = index.get(message.message_id);
+            if(current == null){
+                return null;
+            }
+            MessageLogSegment.LogRecord record = current.segment.read(current.offset);
+            if(expectedVersion != VersionedMessage.ANY
+                    && VersionedMessage.contentVersion(new Message(record.messageId, record.postedBy, record.text, record.epoch)) != expectedVersion){
+                return null;
+            }
+            index.put(message.message_id, append(MessageLogSegment.UPDATE, record.messageId, record.postedBy, record.epoch, text));
+            current.segment.liveBytes.addAndGet(-current.size);
+            Message updated = new Message(record.messageId, record.postedBy, message.message_text, record.epoch);
+            return new VersionedMessage(updated, VersionedMessage.contentVersion(updated));
+        }
+    }
+
+    public List<Message> getMessagesOfUser(int account_id){
+        int[] ids = messagesByAuthor.get(account_id);
+        List<Message> messages = new ArrayList<>(ids == null ? 0 : ids.length);
+        if(ids != null){
+            for(int id : ids){
+                Message message = getMessageByID(id);
+                if(message != null){
+                    messages.add(message);
+                }
+            }
+        }
+        return messages;
+    }
+
+    public AccountStats getAccountStats(int account_id){
+        return AuthorStats.toModel(account_id, statsByAuthor.get(account_id));
+    }
+
+    private static Message read(Location location){
+        MessageLogSegment.LogRecord record = location.segment.read(location.offset);
+        return new Message(record.messageId, record.postedBy, record.text, record.epoch);
+    }
+
+    /**
+     * @return the number of segment files currently in use.
+     */
+    public int getSegmentCount(){
+        return segments.size();
+    }
+
+    /**
+     * Rewrites sealed segments whose live share has dropped below the threshold. Live records are copied
+     * to the head of the log. A tombstone is copied too if an older segment might still hold a record it
+     * deletes, or if it deletes the highest message ID handed out so far, which recovery reads the
+     * sequence from; otherwise it is dropped. The head is forced to disk before a compacted segment is
+     * deleted.
+     * @return the number of segments removed.
+     */
+    public int compact() throws IOException {
+        int removed = 0;
+        for(MessageLogSegment segment : new ArrayList<>(segments.values())){
+            if(segment == active){
+                continue;
+            }
+            if(segment.liveBytes.get() >= segment.getWritePosition() * COMPACTION_LIVE_RATIO){
+                continue;
+            }
+            List<MessageLogSegment> older = new ArrayList<>(segments.headMap(segment.id).values());
+            segment.scan((record, offset) -> {
+                synchronized(writeLock){
+                    if(record.type == MessageLogSegment.TOMBSTONE){
+                        // dropping the tombstone of the highest ID would let the next start hand that ID out again
+                        if(olderSegmentMayContain(older, record.messageId) || record.messageId >= messageSequence.get()){
+                            append(MessageLogSegment.TOMBSTONE, record.messageId, record.postedBy, 0L, new byte[0]);
+                        }
+                        return;
+                    }
+                    Location current = index.get(record.messageId);
+                    if(current != null && current.segment == segment && current.offset == offset){
+                        byte[] text = record.text.getBytes(StandardCharsets.UTF_8);
+                        index.put(record.messageId, append(record.type, record.messageId, record.postedBy, record.epoch, text));
+                        segment.liveBytes.addAndGet(-current.size);
+                    }
+                }
+            });
+            synchronized(writeLock){
+                // the copies must reach the disk before the only other copy of those records is deleted
+                active.force();
+                segments.remove(segment.id);
+            }
+            segment.delete();
+            removed++;
+        }
+        return removed;
+    }
+
+    private static boolean olderSegmentMayContain(List<MessageLogSegment> older, int messageId){
+        for(MessageLogSegment segment : older){
+            if(segment.mayContain(messageId)){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Stops compaction and flushes and closes all segments.
+     */
+    public void close() throws IOException {
+        if(compactor != null){
+            compactor.shutdownNow();
+        }
+        synchronized(writeLock){
+            for(Map.Entry<Integer, MessageLogSegment> entry : segments.entrySet()){
+                entry.getValue().close(entry.getValue() == active);
+            }
+        }
+    }
+}
@@ -0,0 +1,253 @@
+package DAO;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+/**
+ * One memory-mapped segment file of the message log. A segment is a sequence of records:
+ *
+ * <pre>
+ *   int   length        size of the whole record in bytes, 0 marks the end of the segment
+ *   byte  type          PUT, UPDATE or TOMBSTONE
+ *   int   message_id
+ *   int   posted_by
+ *   long  time_posted_epoch
+ *   short text length   in UTF-8 bytes
+ *   byte[] text
+ *   int   crc32         of everything from type to the end of text
+ * </pre>
+ *
+ * Appends are done by a single writer (the owning {@link MessageLogDAO} serializes them); reads use
+ * their own view of the buffer and may run concurrently with appends.
+ */
+class MessageLogSegment {
+    static final byte PUT = 1;
+    static final byte UPDATE = 2;
+    static final byte TOMBSTONE = 3;
+
+    /** length, type, message_id, posted_by, epoch, text length */
+    static final int HEADER_BYTES = 4 + 1 + 4 + 4 + 8 + 2;
+    static final int CRC_BYTES = 4;
+
+    final int id;
+    final Path path;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private int writePosition;
+    /** bytes of PUT/UPDATE records in this segment that the index still points at */
+    final AtomicLong liveBytes = new AtomicLong();
+    /** the range of message IDs with PUT or UPDATE records in this segment */
+    private volatile int minMessageId = Integer.MAX_VALUE;
+    private volatile int maxMessageId = Integer.MIN_VALUE;
+
+    private MessageLogSegment(int id, Path path, FileChannel channel, MappedByteBuffer buffer){
+        this.id = id;
+        this.path = path;
+        this.channel = channel;
+        this.buffer = buffer;
+    }
+
+    /**
+     * Opens (creating if needed) and maps a segment file. The mapping is at least capacity bytes long,
+     * which grows a new or trimmed file to that size.
+     */
+    static MessageLogSegment open(Path path, int id, int capacity) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long size = Math.max(channel.size(), capacity);
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        return new MessageLogSegment(id, path, channel, buffer);
+    }
+
+    /**
+     * Receives the records of a segment in order.
+     */
+    interface RecordVisitor {
+        void visit(LogRecord record, int offset);
+    }
+
+    /**
+     * Scans the segment from the start and stops at the first empty, truncated or corrupt record, which
+     * is what a crash in the middle of an append leaves behind. Everything from that point on is zeroed
+     * and new appends continue there.
+     * @return the number of valid records.
+     */
+    int recover(RecordVisitor visitor){
+        int offset = 0;
+        int count = 0;
+        LogRecord record;
+        while((record = readChecked(offset)) != null){
+            track(record.type, record.messageId);
+            visitor.visit(record, offset);
+            offset += record.size;
+            count++;
+        }
+        writePosition = offset;
+        ByteBuffer view = buffer.duplicate();
+        view.position(offset);
+        while(view.hasRemaining()){
+            view.put((byte) 0);
+        }
+        return count;
+    }
+
+    /**
+     * Visits the valid records of a sealed segment without changing it.
+     */
+    void scan(RecordVisitor visitor){
+        int offset = 0;
+        LogRecord record;
+        while(offset < writePosition && (record = readChecked(offset)) != null){
+            visitor.visit(record, offset);
+            offset += record.size;
+        }
+    }
+
+    static int recordSize(byte[] text){
+        return HEADER_BYTES + text.length + CRC_BYTES;
+    }
+
+    boolean hasRoom(int recordSize){
+        // keep room for the terminating zero length
+        return writePosition + recordSize + 4 <= buffer.capacity();
+    }
+
+    int getWritePosition(){
+        return writePosition;
+    }
+
+    /**
+     * Appends a record. Callers must hold the log's write lock and check {@link #hasRoom(int)} first.
+     * @return the offset of the new record.
+     */
+    int append(byte type, int messageId, int postedBy, long epoch, byte[] text){
+        int offset = writePosition;
+        int size = recordSize(text);
+        ByteBuffer view = buffer.duplicate();
+        view.position(offset + 4);
+        view.put(type);
+        view.putInt(messageId);
+        view.putInt(postedBy);
+        view.putLong(epoch);
+        view.putShort((short) text.length);
+        view.put(text);
+        CRC32 crc = new CRC32();
+        ByteBuffer body = buffer.duplicate();
+        body.position(offset + 4).limit(offset + size - CRC_BYTES);
+        crc.update(body);
+        view.putInt((int) crc.getValue());
+        // the length is written last, so a torn append is never mistaken for a complete record
+        buffer.putInt(offset, size);
+        writePosition = offset + size;
+        track(type, messageId);
+        return offset;
+    }
+
+    private void track(byte type, int messageId){
+        if(type != TOMBSTONE){
+            minMessageId = Math.min(minMessageId, messageId);
+            maxMessageId = Math.max(maxMessageId, messageId);
+        }
+    }
+
+    /**
+     * @return true if this segment may hold a PUT or UPDATE record for the message.
+     */
+    boolean mayContain(int messageId){
+        return messageId >= minMessageId && messageId <= maxMessageId;
+    }
+
+    /**
+     * Reads the record at an offset that is known to be valid.
+     */
+    LogRecord read(int offset){
+        ByteBuffer view = buffer.duplicate();
+        view.position(offset);
+        int size = view.getInt();
+        return decode(view, size);
+    }
+
+    /**
+     * @return the record at offset, or null if there is no complete record with a matching checksum.
+     */
+    private LogRecord readChecked(int offset){
+        if(offset + HEADER_BYTES + CRC_BYTES > buffer.capacity()){
+            return null;
+        }
+        int size = buffer.getInt(offset);
+        if(size < HEADER_BYTES + CRC_BYTES || offset + size > buffer.capacity()){
+            return null;
+        }
+        int textLength = buffer.getShort(offset + HEADER_BYTES - 2) & 0xFFFF;
+        if(HEADER_BYTES + textLength + CRC_BYTES != size){
+            return null;
+        }
+        CRC32 crc = new CRC32();
+        ByteBuffer body = buffer.duplicate();
+        body.position(offset + 4).limit(offset + size - CRC_BYTES);
+        crc.update(body);
+        if((int) crc.getValue() != buffer.getInt(offset + size - CRC_BYTES)){
+            return null;
+        }
+        ByteBuffer view = buffer.duplicate();
+        view.position(offset + 4);
+        return decode(view, size);
+    }
+
+    private static LogRecord decode(ByteBuffer view, int size){
+        LogRecord record = new LogRecord();
+        record.size = size;
+        record.type = view.get();
+        record.messageId = view.getInt();
+        record.postedBy = view.getInt();
+        record.epoch = view.getLong();
+        byte[] text = new byte[view.getShort() & 0xFFFF];
+        view.get(text);
+        record.text = new String(text, StandardCharsets.UTF_8);
+        return record;
+    }
+
+    void force(){
+        buffer.force();
+    }
+
+    /**
+     * Flushes and closes the segment. With trim, the file is cut to its written length so that an idle
+     * log does not keep the unused part of the mapping on disk.
+     */
+    void close(boolean trim) throws IOException {
+        buffer.force();
+        if(trim){
+            channel.truncate(writePosition + 4L);
+        }
+        channel.close();
+    }
+
+    /**
+     * Closes the channel and deletes the file. Readers that still hold a location in this segment can
+     * keep reading from the mapping until it is garbage collected.
+     */
+    void delete() throws IOException {
+        channel.close();
+        Files.deleteIfExists(path);
+    }
+
+    /**
+     * A decoded record.
+     */
+    static class LogRecord {
+        byte type;
+        int messageId;
+        int postedBy;
+        long epoch;
+        String text;
+        int size;
+    }
+}
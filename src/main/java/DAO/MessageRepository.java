@@ -0,0 +1,209 @@
+package DAO;
+
+import Model.AccountStats;
+import Model.Message;
+import Model.MessageField;
+import Model.TimeBucket;
+import Model.VersionedMessage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Storage operations for messages. Implemented by the JDBC-backed {@link MessageDAO} and by
+ * {@link InMemoryMessageDAO}; see {@link Repositories} for how an engine is picked.
+ */
+public interface MessageRepository {
+
+    /**
+     * Inserts a new message.
+     * @param message The message to be inserted.
+     * @return The inserted message with its generated ID, or null if the insertion failed.
+     */
+    Message insertMessage(Message message);
+
+    /**
+     * Checks if a given account ID exists.
+     * @param account_id The account ID to check.
+     * @return True if the account ID exists, false otherwise.
+     */
+    boolean doesIDExist(int account_id);
+
+    /**
+     * Retrieves all messages, ordered by message ID.
+     * @return A list of all messages.
+     */
+    List<Message> getAllMessages();
+
+    /**
+     * Retrieves a message by its ID.
+     * @param id The ID of the message to retrieve.
+     * @return The message with the given ID, or null if not found.
+     */
+    Message getMessageByID(int id);
+
+    /**
+     * Retrieves the messages with the given IDs. IDs without a message are skipped.
+     * @param ids Distinct message IDs.
+     * @return The messages found, in no particular order.
+     */
+    default List<Message> getMessagesByIDs(int[] ids){
+        List<Message> messages = new ArrayList<>(ids.length);
+        for(int id : ids){
+            Message message = getMessageByID(id);
+            if(message != null){
+                messages.add(message);
+            }
+        }
+        return messages;
+    }
+
+    /**
+     * Deletes a message by its ID.
+     * @param id The ID of the message to delete.
+     * @return True if the message was successfully deleted, false otherwise.
+     */
+    boolean deleteMessageByID(int id);
+
+    /**
+     * Updates the text of an existing message.
+     * @param message The message to be updated.
+     * @return The updated message, or null if there is no message with that ID.
+     */
+    Message updateMessage(Message message);
+
+    /**
+     * Retrieves a message with its version. Engines without a stored version derive it from the content,
+     * see {@link VersionedMessage#contentVersion(Message)}.
+     * @return The message and its version, or null if not found.
+     */
+    default VersionedMessage getVersionedMessageByID(int id){
+        Message message = getMessageByID(id);
+        return message == null ? null : new VersionedMessage(message, VersionedMessage.contentVersion(message));
+    }
+
+    /**
+     * Updates the text of an existing message if it is still at the expected version, checking and
+     * updating in one atomic step.
+     * @param expectedVersion The version the caller last read, or {@link VersionedMessage#ANY} to update
+     *                        whatever the version.
+     * @return The updated message and its new version, or null if there is no message with that ID at
+     *         the expected version.
+     */
+    VersionedMessage updateMessageIfVersion(Message message, long expectedVersion);
+
+    /**
+     * Retrieves all messages written by a particular user, ordered by message ID.
+     * @param account_id The ID of the user whose messages are to be retrieved.
+     * @return A list of messages written by the user.
+     */
+    List<Message> getMessagesOfUser(int account_id);
+
+    /**
+     * Retrieves the message count and first/last time_posted_epoch of an account, without reading its
+     * messages.
+     * @param account_id The ID of the account.
+     * @return The stats of the account; a count of 0 if it has no messages or does not exist.
+     */
+    AccountStats getAccountStats(int account_id);
+
+    /**
+     * Retrieves the messages posted in a time range, ordered by time_posted_epoch then message ID.
+     * @param since The earliest time_posted_epoch to include.
+     * @param until The time_posted_epoch to stop before (exclusive).
+     * @param limit The maximum number of messages to return.
+     * @return At most limit messages posted in the range.
+     */
+    default List<Message> getMessagesInRange(long since, long until, int limit){
+        return TimeRanges.filter(getAllMessages(), since, until, limit);
+    }
+
+    /**
+     * Retrieves the messages a particular user posted in a time range, ordered by time_posted_epoch then
+     * message ID.
+     * @see #getMessagesInRange(long, long, int)
+     */
+    default List<Message> getMessagesOfUserInRange(int account_id, long since, long until, int limit){
+        return TimeRanges.filter(getMessagesOfUser(account_id), since, until, limit);
+    }
+
+    /**
+     * Counts the messages posted in a time range per bucket of bucketSeconds. Buckets start at multiples
+     * of bucketSeconds since the epoch; empty buckets are left out.
+     * @return The non-empty buckets in ascending order.
+     */
+    default List<TimeBucket> countMessagesByBucket(long since, long until, long bucketSeconds){
+        return TimeRanges.buckets(getAllMessages(), since, until, bucketSeconds);
+    }
+
+    /**
+     * Counts the messages a particular user posted in a time range per bucket of bucketSeconds.
+     * @see #countMessagesByBucket(long, long, long)
+     */
+    default List<TimeBucket> countMessagesOfUserByBucket(int account_id, long since, long until, long bucketSeconds){
+        return TimeRanges.buckets(getMessagesOfUser(account_id), since, until, bucketSeconds);
+    }
+
+    /**
+     * Deletes at most limit messages of a user, lowest message ID first, keeping its stats up to date.
+     * Callers remove a whole account by calling this until it returns fewer than limit messages, so no
+     * single call holds locks for long.
+     * @return The deleted messages, in no particular order; message_text may be unset.
+     * @throws IllegalStateException if the chunk could not be deleted. Earlier chunks stay deleted.
+     */
+    default List<Message> deleteMessagesOfUser(int account_id, int limit){
+        List<Message> messages = getMessagesOfUser(account_id);
+        return deleteEach(messages.subList(0, Math.min(limit, messages.size())));
+    }
+
+    /**
+     * Deletes at most limit messages posted in a time range, oldest first, keeping the stats of their
+     * authors up to date.
+     * @see #deleteMessagesOfUser(int, int)
+     */
+    default List<Message> deleteMessagesInRange(long since, long until, int limit){
+        return deleteEach(getMessagesInRange(since, until, limit));
+    }
+
+    /**
+     * Physically removes up to limit messages that were deleted but kept as tombstones. Engines without
+     * tombstones have nothing to do.
+     * @return The number of messages removed.
+     */
+    default int compactDeleted(int limit){
+        return 0;
+    }
+
+    private List<Message> deleteEach(List<Message> messages){
+        List<Message> deleted = new ArrayList<>();
+        for(Message message : messages){
+            if(deleteMessageByID(message.getMessage_id())){
+                deleted.add(message);
+            }
+        }
+        return deleted;
+    }
+
+    /*
+     * Projected variants of the list queries. Only the given fields of the returned messages are
+     * guaranteed to be set; an engine that reads whole rows anyway may fill in the others. The JDBC engine
+     * selects only the matching columns.
+     */
+
+    default List<Message> getAllMessages(Set<MessageField> fields){
+        return getAllMessages();
+    }
+
+    default List<Message> getMessagesOfUser(int account_id, Set<MessageField> fields){
+        return getMessagesOfUser(account_id);
+    }
+
+    default List<Message> getMessagesInRange(long since, long until, int limit, Set<MessageField> fields){
+        return getMessagesInRange(since, until, limit);
+    }
+
+    default List<Message> getMessagesOfUserInRange(int account_id, long since, long until, int limit, Set<MessageField> fields){
+        return getMessagesOfUserInRange(account_id, since, until, limit);
+    }
+}
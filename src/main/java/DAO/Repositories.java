@@ -0,0 +1,124 @@
+package DAO;
+
+import Util.AppConfig;
+import Util.Snapshottable;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A matching pair of account and message repositories from one storage engine.
+ * The engine is chosen at startup with the "storage" setting (see {@link AppConfig}):
+ * "h2" uses the JDBC DAOs, "memory" uses a fresh {@link InMemoryStore}, and "log" keeps accounts in
+ * H2 but stores messages in a {@link MessageLogDAO}.
+ */
+public class Repositories implements Closeable {
+    private final AccountRepository accountRepository;
+    private final MessageRepository messageRepository;
+    private final List<Snapshottable> snapshottables = new ArrayList<>();
+    private boolean usesDatabase;
+
+    public Repositories(AccountRepository accountRepository, MessageRepository messageRepository){
+        this.accountRepository = accountRepository;
+        this.messageRepository = messageRepository;
+    }
+
+    public AccountRepository getAccountRepository() {
+        return accountRepository;
+    }
+
+    public MessageRepository getMessageRepository() {
+        return messageRepository;
+    }
+
+    /**
+     * @return true if this engine keeps any of its data in the database behind {@link Util.ConnectionUtil}.
+     */
+    public boolean usesDatabase() {
+        return usesDatabase;
+    }
+
+    /**
+     * @return the engine state that should be included in snapshots, if any.
+     */
+    public List<Snapshottable> getSnapshottables() {
+        return snapshottables;
+    }
+
+    /**
+     * @return the JDBC repositories, backed by the database in {@link Util.ConnectionUtil}. With the
+     *         "message.softDelete" setting, tombstones are compacted every "compact.intervalMillis".
+     */
+    public static Repositories h2(){
+        MessageDAO messageDAO = new MessageDAO();
+        if(AppConfig.getBoolean("message.softDelete", false)){
+            messageDAO.startCompaction(AppConfig.getLong("compact.intervalMillis", 1000));
+        }
+        Repositories repositories = new Repositories(new AccountDAO(), messageDAO);
+        repositories.usesDatabase = true;
+        return repositories;
+    }
+
+    /**
+     * @return repositories sharing a new, empty in-memory store.
+     */
+    public static Repositories inMemory(){
+        InMemoryStore store = new InMemoryStore();
+        Repositories repositories = new Repositories(new InMemoryAccountDAO(store), new InMemoryMessageDAO(store));
+        repositories.snapshottables.add(store);
+        return repositories;
+    }
+
+    /**
+     * @return H2 accounts with messages in the append-only log configured by the "log.dir",
+     *         "log.segmentBytes" and "log.compactionSeconds" settings.
+     */
+    public static Repositories messageLog(){
+        MessageDAO accountLookup = new MessageDAO();
+        MessageLogDAO messageLog = new MessageLogDAO(Paths.get(AppConfig.getString("log.dir", "message-log")),
+                AppConfig.getInt("log.segmentBytes", 8 * 1024 * 1024), accountLookup::doesIDExist);
+        messageLog.startCompaction(AppConfig.getLong("log.compactionSeconds", 30));
+        Repositories repositories = new Repositories(new AccountDAO(), messageLog);
+        repositories.usesDatabase = true;
+        return repositories;
+    }
+
+    /**
+     * @param engine "h2", "memory" or "log"
+     * @return the repositories of that engine.
+     */
+    public static Repositories forEngine(String engine){
+        switch(engine.toLowerCase()){
+            case "h2":
+                return h2();
+            case "memory":
+                return inMemory();
+            case "log":
+                return messageLog();
+            default:
+                throw new IllegalArgumentException("Unknown storage engine: " + engine);
+        }
+    }
+
+    /**
+     * @return the repositories of the configured storage engine.
+     */
+    public static Repositories fromConfig(){
+        return forEngine(AppConfig.storageEngine());
+    }
+
+    /**
+     * Closes the repositories that hold files or threads, such as the message log.
+     */
+    public void close() throws IOException {
+        if(accountRepository instanceof Closeable){
+            ((Closeable) accountRepository).close();
+        }
+        if(messageRepository instanceof Closeable){
+            ((Closeable) messageRepository).close();
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package DAO;
+
+import Model.Message;
+import Model.TimeBucket;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.TreeMap;
+
+/**
+ * Time-range filtering and bucketing over an already loaded list of messages, for the engines that keep
+ * no epoch index (see the default methods of {@link MessageRepository}).
+ */
+class TimeRanges {
+    static final Comparator<Message> BY_EPOCH = Comparator.comparingLong(Message::getTime_posted_epoch)
+            .thenComparingInt(Message::getMessage_id);
+
+    /**
+     * @return the messages with since &lt;= time_posted_epoch &lt; until, by epoch then ID, at most limit of them.
+     */
+    static List<Message> filter(List<Message> messages, long since, long until, int limit){
+        List<Message> inRange = new ArrayList<>();
+        for(Message message : messages){
+            if(message.time_posted_epoch >= since && message.time_posted_epoch < until){
+                inRange.add(message);
+            }
+        }
+        inRange.sort(BY_EPOCH);
+        return inRange.size() > limit ? new ArrayList<>(inRange.subList(0, limit)) : inRange;
+    }
+
+    static List<TimeBucket> buckets(List<Message> messages, long since, long until, long bucketSeconds){
+        TreeMap<Long, long[]> counts = new TreeMap<>();
+        for(Message message : messages){
+            if(message.time_posted_epoch >= since && message.time_posted_epoch < until){
+                long start = bucketStart(message.time_posted_epoch, bucketSeconds);
+                counts.computeIfAbsent(start, key -> new long[1])[0]++;
+            }
+        }
+        List<TimeBucket> buckets = new ArrayList<>(counts.size());
+        counts.forEach((start, count) -> buckets.add(new TimeBucket(start, count[0])));
+        return buckets;
+    }
+
+    /**
+     * Rounds down to a multiple of bucketSeconds, the same way the SQL in {@link MessageDAO} does.
+     */
+    static long bucketStart(long epoch, long bucketSeconds){
+        return Math.floorDiv(epoch, bucketSeconds) * bucketSeconds;
+    }
+}
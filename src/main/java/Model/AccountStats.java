@@ -0,0 +1,87 @@
+package Model;
+
+import java.util.Objects;
+
+/**
+ * This is a class that models the message statistics of one account: how many messages it has posted and
+ * the time_posted_epoch of its first and last message. Both epochs are null while the account has no
+ * messages.
+ */
+public class AccountStats {
+    public int account_id;
+    public long message_count;
+    public Long first_posted_epoch;
+    public Long last_posted_epoch;
+
+    /**
+     * A default, no-args constructor is needed for Jackson ObjectMapper to work.
+     */
+    public AccountStats(){
+    }
+
+    public AccountStats(int account_id, long message_count, Long first_posted_epoch, Long last_posted_epoch) {
+        this.account_id = account_id;
+        this.message_count = message_count;
+        this.first_posted_epoch = first_posted_epoch;
+        this.last_posted_epoch = last_posted_epoch;
+    }
+
+    /**
+     * @return the stats of an account without messages.
+     */
+    public static AccountStats empty(int account_id) {
+        return new AccountStats(account_id, 0, null, null);
+    }
+
+    public int getAccount_id() {
+        return account_id;
+    }
+
+    public void setAccount_id(int account_id) {
+        this.account_id = account_id;
+    }
+
+    public long getMessage_count() {
+        return message_count;
+    }
+
+    public void setMessage_count(long message_count) {
+        this.message_count = message_count;
+    }
+
+    public Long getFirst_posted_epoch() {
+        return first_posted_epoch;
+    }
+
+    public void setFirst_posted_epoch(Long first_posted_epoch) {
+        this.first_posted_epoch = first_posted_epoch;
+    }
+
+    public Long getLast_posted_epoch() {
+        return last_posted_epoch;
+    }
+
+    public void setLast_posted_epoch(Long last_posted_epoch) {
+        this.last_posted_epoch = last_posted_epoch;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        AccountStats stats = (AccountStats) o;
+        return account_id == stats.account_id && message_count == stats.message_count
+                && Objects.equals(first_posted_epoch, stats.first_posted_epoch)
+                && Objects.equals(last_posted_epoch, stats.last_posted_epoch);
+    }
+
+    @Override
+    public String toString() {
+        return "AccountStats{" +
+                "account_id=" + account_id +
+                ", message_count=" + message_count +
+                ", first_posted_epoch=" + first_posted_epoch +
+                ", last_posted_epoch=" + last_posted_epoch +
+                '}';
+    }
+}
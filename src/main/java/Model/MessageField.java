@@ -0,0 +1,50 @@
+package Model;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * The fields of a {@link Message}, for requests that only need some of them (see the fields= query
+ * parameter). Each field's name is both its JSON property and its column in the message table.
+ */
+public enum MessageField {
+    MESSAGE_ID("message_id"),
+    POSTED_BY("posted_by"),
+    MESSAGE_TEXT("message_text"),
+    TIME_POSTED_EPOCH("time_posted_epoch");
+
+    /** every field, in declaration order */
+    public static final Set<MessageField> ALL = Collections.unmodifiableSet(EnumSet.allOf(MessageField.class));
+
+    private final String fieldName;
+
+    MessageField(String fieldName){
+        this.fieldName = fieldName;
+    }
+
+    public String getFieldName(){
+        return fieldName;
+    }
+
+    /**
+     * Parses a comma separated list of field names, eg "message_id,message_text".
+     * @throws IllegalArgumentException if a name is not a message field or the list is empty.
+     */
+    public static Set<MessageField> parse(String names){
+        EnumSet<MessageField> fields = EnumSet.noneOf(MessageField.class);
+        for(String name : names.split(",")){
+            fields.add(byName(name.trim()));
+        }
+        return fields;
+    }
+
+    private static MessageField byName(String name){
+        for(MessageField field : values()){
+            if(field.fieldName.equals(name)){
+                return field;
+            }
+        }
+        throw new IllegalArgumentException("Unknown message field: '" + name + "'");
+    }
+}
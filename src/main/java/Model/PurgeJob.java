@@ -0,0 +1,124 @@
+package Model;
+
+/**
+ * This is a class that models the progress of an admin purge job, which deletes the messages posted in
+ * [since, until) a chunk at a time. cursor_epoch is the time_posted_epoch of the newest message deleted so
+ * far; a resumed job continues from there.
+ */
+public class PurgeJob {
+    public enum Status { RUNNING, PAUSED, DONE, FAILED }
+
+    public int job_id;
+    public long since;
+    public long until;
+    public Status status;
+    public long deleted_count;
+    public long chunks;
+    public Long cursor_epoch;
+    public String error;
+
+    /**
+     * A default, no-args constructor is needed for Jackson ObjectMapper to work.
+     */
+    public PurgeJob(){
+    }
+
+    public PurgeJob(int job_id, long since, long until) {
+        this.job_id = job_id;
+        this.since = since;
+        this.until = until;
+        this.status = Status.RUNNING;
+    }
+
+    /**
+     * Copy constructor.
+     */
+    public PurgeJob(PurgeJob other) {
+        this.job_id = other.job_id;
+        this.since = other.since;
+        this.until = other.until;
+        this.status = other.status;
+        this.deleted_count = other.deleted_count;
+        this.chunks = other.chunks;
+        this.cursor_epoch = other.cursor_epoch;
+        this.error = other.error;
+    }
+
+    public int getJob_id() {
+        return job_id;
+    }
+
+    public void setJob_id(int job_id) {
+        this.job_id = job_id;
+    }
+
+    public long getSince() {
+        return since;
+    }
+
+    public void setSince(long since) {
+        this.since = since;
+    }
+
+    public long getUntil() {
+        return until;
+    }
+
+    public void setUntil(long until) {
+        this.until = until;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public void setStatus(Status status) {
+        this.status = status;
+    }
+
+    public long getDeleted_count() {
+        return deleted_count;
+    }
+
+    public void setDeleted_count(long deleted_count) {
+        this.deleted_count = deleted_count;
+    }
+
+    public long getChunks() {
+        return chunks;
+    }
+
+    public void setChunks(long chunks) {
+        this.chunks = chunks;
+    }
+
+    public Long getCursor_epoch() {
+        return cursor_epoch;
+    }
+
+    public void setCursor_epoch(Long cursor_epoch) {
+        this.cursor_epoch = cursor_epoch;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+
+    @Override
+    public String toString() {
+        return "PurgeJob{" +
+                "job_id=" + job_id +
+                ", since=" + since +
+                ", until=" + until +
+                ", status=" + status +
+                ", deleted_count=" + deleted_count +
+                ", chunks=" + chunks +
+                ", cursor_epoch=" + cursor_epoch +
+                ", error='" + error + '\'' +
+                '}';
+    }
+}
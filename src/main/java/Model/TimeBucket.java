@@ -0,0 +1,53 @@
+package Model;
+
+/**
+ * This is a class that models one bucket of a time-bucketed message count: the number of messages whose
+ * time_posted_epoch falls in [bucket_start, bucket_start + bucket length).
+ */
+public class TimeBucket {
+    public long bucket_start;
+    public long message_count;
+
+    /**
+     * A default, no-args constructor is needed for Jackson ObjectMapper to work.
+     */
+    public TimeBucket(){
+    }
+
+    public TimeBucket(long bucket_start, long message_count) {
+        this.bucket_start = bucket_start;
+        this.message_count = message_count;
+    }
+
+    public long getBucket_start() {
+        return bucket_start;
+    }
+
+    public void setBucket_start(long bucket_start) {
+        this.bucket_start = bucket_start;
+    }
+
+    public long getMessage_count() {
+        return message_count;
+    }
+
+    public void setMessage_count(long message_count) {
+        this.message_count = message_count;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        TimeBucket bucket = (TimeBucket) o;
+        return bucket_start == bucket.bucket_start && message_count == bucket.message_count;
+    }
+
+    @Override
+    public String toString() {
+        return "TimeBucket{" +
+                "bucket_start=" + bucket_start +
+                ", message_count=" + message_count +
+                '}';
+    }
+}
@@ -0,0 +1,63 @@
+package Model;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A message together with its version, which changes whenever the message does. The version is served as
+ * the message's ETag and checked by conditional updates (If-Match), so two clients editing the same
+ * message cannot silently overwrite each other.
+ *
+ * The JDBC engine keeps a version column that each update increments. The in-process engines derive the
+ * version from the message's content instead, see {@link #contentVersion(Message)}.
+ */
+public class VersionedMessage {
+    /** passed as the expected version of an update that is not conditional */
+    public static final long ANY = -1;
+
+    public final Message message;
+    public final long version;
+
+    public VersionedMessage(Message message, long version) {
+        this.message = message;
+        this.version = version;
+    }
+
+    /**
+     * @return a positive version computed from the message's text, from an FNV-1a hash of its UTF-8
+     *         bytes. Two versions of a message with the same text are the same representation, so they may
+     *         share it.
+     */
+    public static long contentVersion(Message message) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : message.message_text.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        return Math.max(1, hash & Long.MAX_VALUE);
+    }
+
+    /**
+     * @return the version as an HTTP entity tag, eg "3" with the quotes.
+     */
+    public String etag() {
+        return "\"" + version + "\"";
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        VersionedMessage that = (VersionedMessage) o;
+        return version == that.version && message.equals(that.message);
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(version) * 31 + message.message_id;
+    }
+
+    @Override
+    public String toString() {
+        return "VersionedMessage{" + message + ", version=" + version + '}';
+    }
+}
@@ -0,0 +1,90 @@
+package Perf;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free, log-linear latency histogram. Values are recorded in microseconds. Values below 64 are
+ * counted exactly; above that every power of two is split into 32 sub-buckets, which keeps the relative
+ * error of any reported percentile under about 3%.
+ */
+public class LatencyHistogram {
+    private static final int LINEAR_LIMIT = 64;
+    private static final int SUB_BUCKETS = 32;
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int BUCKET_COUNT = LINEAR_LIMIT + (63 - 6 + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records a single latency.
+     * @param micros the latency in microseconds. Negative values are recorded as zero.
+     */
+    public void record(long micros){
+        long value = Math.max(0, micros);
+        counts.incrementAndGet(indexOf(value));
+        total.incrementAndGet();
+        long currentMax;
+        while(value > (currentMax = max.get()) && !max.compareAndSet(currentMax, value)){
+            // retry until max is at least value
+        }
+    }
+
+    /**
+     * @return the number of recorded values.
+     */
+    public long getCount(){
+        return total.get();
+    }
+
+    /**
+     * @return the largest recorded value in microseconds.
+     */
+    public long getMax(){
+        return max.get();
+    }
+
+    /**
+     * Returns the value at the given percentile.
+     * @param percentile a percentile between 0 and 100, eg 99.9
+     * @return the upper bound of the bucket holding that percentile, in microseconds, or 0 if empty.
+     */
+    public long getValueAtPercentile(double percentile){
+        long count = total.get();
+        if(count == 0){
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * count));
+        long seen = 0;
+        for(int i = 0; i < BUCKET_COUNT; i++){
+            seen += counts.get(i);
+            if(seen >= rank){
+                return Math.min(upperBoundOf(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    static int indexOf(long value){
+        if(value < LINEAR_LIMIT){
+            return (int) value;
+        }
+        int msb = 63 - Long.numberOfLeadingZeros(value);
+        int shift = msb - SUB_BUCKET_BITS;
+        int sub = (int) (value >>> shift) - SUB_BUCKETS;
+        return LINEAR_LIMIT + (msb - 6) * SUB_BUCKETS + sub;
+    }
+
+    static long upperBoundOf(int index){
+        if(index < LINEAR_LIMIT){
+            return index;
+        }
+        int octave = (index - LINEAR_LIMIT) / SUB_BUCKETS;
+        int sub = (index - LINEAR_LIMIT) % SUB_BUCKETS;
+        int shift = octave + 6 - SUB_BUCKET_BITS;
+        long lower = ((long) (SUB_BUCKETS + sub)) << shift;
+        return lower + (1L << shift) - 1;
+    }
+}
@@ -0,0 +1,346 @@
+package Perf;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Account;
+import Model.Message;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Drives a realistic mix of register/login/post/read/patch/delete requests against a running
+ * SocialMediaController and produces a {@link LoadReport}.
+ *
+ * The generator uses an open model: requests are scheduled at a constant arrival rate and sent whether
+ * or not earlier requests have completed. Latency is measured from each request's intended start time,
+ * so when the server stalls the queued-up requests are charged for the wait (no coordinated omission).
+ * The measured duration is the arrival window; requests still unanswered when the drain after it times
+ * out are recorded as failures.
+ *
+ * Usage: java Perf.LoadGenerator [--url http://localhost:8080] [--rate 200] [--duration 30] [--warmup 5]
+ *        [--users 20] [--max-in-flight 2000] [--out target/load-report] [--embedded] [--reset-db]
+ */
+public class LoadGenerator {
+    private final String baseUrl;
+    private final double rate;
+    private final int durationSeconds;
+    private final int warmupSeconds;
+    private final int users;
+    private final int maxInFlight;
+
+    private final HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+    private final ObjectMapper om = new ObjectMapper();
+    private final List<Account> accounts = new ArrayList<>();
+    private final List<Integer> messageIds = new ArrayList<>();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    // measured requests sent and not yet recorded
+    private final Set<Pending> pending = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger usernameSequence = new AtomicInteger();
+    private final String runPrefix = "load" + Long.toString(System.nanoTime(), 36);
+
+    public LoadGenerator(String baseUrl, double rate, int durationSeconds, int warmupSeconds, int users, int maxInFlight){
+        this.baseUrl = baseUrl;
+        this.rate = rate;
+        this.durationSeconds = durationSeconds;
+        this.warmupSeconds = warmupSeconds;
+        this.users = users;
+        this.maxInFlight = maxInFlight;
+    }
+
+    /**
+     * Seeds accounts and messages, then runs the warm-up and measured phases.
+     * @return the report of the measured phase.
+     */
+    public LoadReport run() throws IOException, InterruptedException {
+        seed();
+
+        LoadReport report = new LoadReport(rate);
+        long interval = (long) (1_000_000_000L / rate);
+        long start = System.nanoTime();
+        long measureFrom = start + TimeUnit.SECONDS.toNanos(warmupSeconds);
+        long end = measureFrom + TimeUnit.SECONDS.toNanos(durationSeconds);
+        int totalWeight = Operation.totalWeight();
+
+        report.markStart(measureFrom);
+        for(long i = 0; ; i++){
+            long intended = start + i * interval;
+            if(intended >= end){
+                break;
+            }
+            long wait;
+            while((wait = intended - System.nanoTime()) > 0){
+                LockSupport.parkNanos(wait);
+            }
+            boolean measured = intended >= measureFrom;
+            Operation operation = Operation.pick(ThreadLocalRandom.current().nextInt(totalWeight));
+            if(inFlight.get() >= maxInFlight){
+                // The client itself is saturated; count it as a failure instead of silently skipping.
+                if(measured){
+                    report.record(operation, (System.nanoTime() - intended) / 1000, false);
+                }
+                continue;
+            }
+            send(operation, intended, measured ? report : null);
+        }
+
+        report.markEnd(end);
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while(inFlight.get() > 0 && System.nanoTime() < deadline){
+            Thread.sleep(10);
+        }
+        for(Pending request : pending){
+            request.record(false);
+        }
+        return report;
+    }
+
+    /**
+     * A measured request in flight, recorded exactly once: when it completes, or as a failure if it is
+     * still unanswered after the drain.
+     */
+    private final class Pending {
+        final Operation operation;
+        final long intended;
+        final LoadReport report;
+        final AtomicBoolean recorded = new AtomicBoolean();
+
+        Pending(Operation operation, long intended, LoadReport report){
+            this.operation = operation;
+            this.intended = intended;
+            this.report = report;
+        }
+
+        void record(boolean success){
+            if(recorded.compareAndSet(false, true)){
+                report.record(operation, (System.nanoTime() - intended) / 1000, success);
+                pending.remove(this);
+            }
+        }
+    }
+
+    /**
+     * Registers the initial accounts and gives each of them a few messages so that reads, updates and
+     * deletes have something to work on from the first request.
+     */
+    private void seed() throws IOException, InterruptedException {
+        for(int i = 0; i < users; i++){
+            Account account = new Account(nextUsername(), "password");
+            HttpResponse<String> response = client.send(post("/register", account), HttpResponse.BodyHandlers.ofString());
+            if(response.statusCode() != 200){
+                throw new IllegalStateException("Seeding failed, POST /register returned " + response.statusCode());
+            }
+            Account registered = om.readValue(response.body(), Account.class);
+            addAccount(registered);
+            for(int j = 0; j < 5; j++){
+                Message message = new Message(registered.getAccount_id(), "seed message " + j, System.currentTimeMillis() / 1000);
+                HttpResponse<String> posted = client.send(post("/messages", message), HttpResponse.BodyHandlers.ofString());
+                if(posted.statusCode() == 200){
+                    addMessageId(om.readValue(posted.body(), Message.class).getMessage_id());
+                }
+            }
+        }
+    }
+
+    private void send(Operation operation, long intended, LoadReport report){
+        Account account = randomAccount();
+        Integer messageId = operation == Operation.DELETE_MESSAGE ? takeMessageId() : randomMessageId();
+        HttpRequest request;
+        try{
+            request = buildRequest(operation, account, messageId);
+        }catch(IOException e){
+            if(report != null){
+                report.record(operation, 0, false);
+            }
+            return;
+        }
+        if(request == null){
+            if(report != null){
+                report.recordSkipped(operation);
+            }
+            return;
+        }
+
+        Pending measured = null;
+        if(report != null){
+            measured = new Pending(operation, intended, report);
+            pending.add(measured);
+        }
+        final Pending recorded = measured;
+        inFlight.incrementAndGet();
+        CompletableFuture<HttpResponse<String>> future = client.sendAsync(request, HttpResponse.BodyHandlers.ofString());
+        future.whenComplete((response, error) -> {
+            boolean success = error == null && response.statusCode() == 200;
+            if(success){
+                afterSuccess(operation, response.body());
+            }
+            if(recorded != null){
+                recorded.record(success);
+            }
+            inFlight.decrementAndGet();
+        });
+    }
+
+    /**
+     * @return the request for an operation, or null if the operation has nothing to work on yet.
+     */
+    private HttpRequest buildRequest(Operation operation, Account account, Integer messageId) throws IOException {
+        switch(operation){
+            case REGISTER:
+                return post("/register", new Account(nextUsername(), "password"));
+            case LOGIN:
+                return account == null ? null : post("/login", new Account(account.getUsername(), account.getPassword()));
+            case POST_MESSAGE:
+                return account == null ? null : post("/messages",
+                        new Message(account.getAccount_id(), "load message " + System.nanoTime(), System.currentTimeMillis() / 1000));
+            case GET_ALL_MESSAGES:
+                return get("/messages");
+            case GET_MESSAGE:
+                return messageId == null ? null : get("/messages/" + messageId);
+            case GET_MESSAGES_OF_USER:
+                return account == null ? null : get("/accounts/" + account.getAccount_id() + "/messages");
+            case PATCH_MESSAGE:
+                return messageId == null ? null : HttpRequest.newBuilder(uri("/messages/" + messageId))
+                        .method("PATCH", HttpRequest.BodyPublishers.ofString("{\"message_text\": \"edited " + System.nanoTime() + "\"}"))
+                        .header("Content-Type", "application/json")
+                        .build();
+            case DELETE_MESSAGE:
+                return messageId == null ? null : HttpRequest.newBuilder(uri("/messages/" + messageId)).DELETE().build();
+            default:
+                return null;
+        }
+    }
+
+    private void afterSuccess(Operation operation, String body){
+        try{
+            if(operation == Operation.REGISTER){
+                addAccount(om.readValue(body, Account.class));
+            }else if(operation == Operation.POST_MESSAGE){
+                addMessageId(om.readValue(body, Message.class).getMessage_id());
+            }
+        }catch(IOException e){
+            System.out.println(e.getMessage());
+        }
+    }
+
+    private HttpRequest post(String path, Object body) throws IOException {
+        return HttpRequest.newBuilder(uri(path))
+                .POST(HttpRequest.BodyPublishers.ofByteArray(om.writeValueAsBytes(body)))
+                .header("Content-Type", "application/json")
+                .build();
+    }
+
+    private HttpRequest get(String path){
+        return HttpRequest.newBuilder(uri(path)).GET().build();
+    }
+
+    private URI uri(String path){
+        return URI.create(baseUrl + path);
+    }
+
+    private String nextUsername(){
+        return runPrefix + "_" + usernameSequence.incrementAndGet();
+    }
+
+    private synchronized void addAccount(Account account){
+        accounts.add(account);
+    }
+
+    private synchronized Account randomAccount(){
+        return accounts.isEmpty() ? null : accounts.get(ThreadLocalRandom.current().nextInt(accounts.size()));
+    }
+
+    private synchronized void addMessageId(int id){
+        messageIds.add(id);
+    }
+
+    private synchronized Integer randomMessageId(){
+        return messageIds.isEmpty() ? null : messageIds.get(ThreadLocalRandom.current().nextInt(messageIds.size()));
+    }
+
+    /**
+     * Removes a random message id from the pool, so no other request is generated for a message that is
+     * about to be deleted.
+     */
+    private synchronized Integer takeMessageId(){
+        if(messageIds.isEmpty()){
+            return null;
+        }
+        int index = ThreadLocalRandom.current().nextInt(messageIds.size());
+        int last = messageIds.size() - 1;
+        Integer id = messageIds.get(index);
+        messageIds.set(index, messageIds.get(last));
+        messageIds.remove(last);
+        return id;
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        String url = "http://localhost:8080";
+        double rate = 200;
+        int duration = 30;
+        int warmup = 5;
+        int users = 20;
+        int maxInFlight = 2000;
+        Path out = Paths.get("target", "load-report");
+        boolean embedded = false;
+        boolean resetDb = false;
+
+        for(int i = 0; i < args.length; i++){
+            switch(args[i]){
+                case "--url": url = args[++i]; break;
+                case "--rate": rate = Double.parseDouble(args[++i]); break;
+                case "--duration": duration = Integer.parseInt(args[++i]); break;
+                case "--warmup": warmup = Integer.parseInt(args[++i]); break;
+                case "--users": users = Integer.parseInt(args[++i]); break;
+                case "--max-in-flight": maxInFlight = Integer.parseInt(args[++i]); break;
+                case "--out": out = Paths.get(args[++i]); break;
+                case "--embedded": embedded = true; break;
+                case "--reset-db": resetDb = true; break;
+                default: throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+
+        if(resetDb){
+            ConnectionUtil.resetTestDatabase();
+        }
+        Javalin app = null;
+        if(embedded){
+            app = new SocialMediaController().startAPI();
+            app.start(URI.create(url).getPort());
+        }
+
+        try{
+            LoadReport report = new LoadGenerator(url, rate, duration, warmup, users, maxInFlight).run();
+            Files.createDirectories(out);
+            report.writeJson(out.resolve("report.json"));
+            report.writeHtml(out.resolve("report.html"));
+            System.out.println("Load report written to " + out.toAbsolutePath());
+            System.out.println(new ObjectMapper().writerWithDefaultPrettyPrinter().writeValueAsString(report.toMap()));
+        }finally{
+            if(app != null){
+                app.stop();
+            }
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package Perf;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Collects per-route results of a load run and renders them as JSON and HTML.
+ * Latencies are measured from the moment a request was scheduled to be sent, not from when it was
+ * actually sent, so a stalled server shows up in the percentiles instead of being hidden.
+ */
+public class LoadReport {
+    private final Map<Operation, LatencyHistogram> latencies = new EnumMap<>(Operation.class);
+    private final Map<Operation, AtomicLong> errors = new EnumMap<>(Operation.class);
+    private final Map<Operation, AtomicLong> skipped = new EnumMap<>(Operation.class);
+    private final double targetRate;
+    private long startNanos;
+    private long endNanos;
+
+    public LoadReport(double targetRate){
+        this.targetRate = targetRate;
+        for(Operation operation : Operation.values()){
+            latencies.put(operation, new LatencyHistogram());
+            errors.put(operation, new AtomicLong());
+            skipped.put(operation, new AtomicLong());
+        }
+    }
+
+    /**
+     * Records a completed request.
+     * @param operation the route that was called.
+     * @param latencyMicros time from intended start to completion.
+     * @param success false if the request failed or returned an unexpected status.
+     */
+    public void record(Operation operation, long latencyMicros, boolean success){
+        latencies.get(operation).record(latencyMicros);
+        if(!success){
+            errors.get(operation).incrementAndGet();
+        }
+    }
+
+    /**
+     * Records a scheduled request that was not sent because the generator had nothing for it to work on
+     * yet, eg no message to delete. It is neither a request nor a failure of the server.
+     */
+    public void recordSkipped(Operation operation){
+        skipped.get(operation).incrementAndGet();
+    }
+
+    void markStart(long nanos){
+        this.startNanos = nanos;
+    }
+
+    void markEnd(long nanos){
+        this.endNanos = nanos;
+    }
+
+    /**
+     * @return the measured duration of the run in seconds.
+     */
+    public double getDurationSeconds(){
+        return Math.max(1, endNanos - startNanos) / 1_000_000_000.0;
+    }
+
+    /**
+     * @return the number of requests recorded for a route.
+     */
+    public long getCount(Operation operation){
+        return latencies.get(operation).getCount();
+    }
+
+    /**
+     * @return the number of failed requests recorded for a route.
+     */
+    public long getErrors(Operation operation){
+        return errors.get(operation).get();
+    }
+
+    /**
+     * @return the number of scheduled requests of a route that were skipped.
+     */
+    public long getSkipped(Operation operation){
+        return skipped.get(operation).get();
+    }
+
+    /**
+     * @return the number of requests recorded over all routes.
+     */
+    public long getTotalCount(){
+        long sum = 0;
+        for(LatencyHistogram histogram : latencies.values()){
+            sum += histogram.getCount();
+        }
+        return sum;
+    }
+
+    /**
+     * @return the number of failed requests over all routes.
+     */
+    public long getTotalErrors(){
+        long sum = 0;
+        for(AtomicLong count : errors.values()){
+            sum += count.get();
+        }
+        return sum;
+    }
+
+    /**
+     * @return the number of skipped requests over all routes.
+     */
+    public long getTotalSkipped(){
+        long sum = 0;
+        for(AtomicLong count : skipped.values()){
+            sum += count.get();
+        }
+        return sum;
+    }
+
+    /**
+     * @return the report as a tree of maps, ready to be serialized.
+     */
+    public Map<String, Object> toMap(){
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("targetRate", targetRate);
+        report.put("durationSeconds", round(getDurationSeconds()));
+        report.put("totalRequests", getTotalCount());
+        report.put("totalErrors", getTotalErrors());
+        report.put("totalSkipped", getTotalSkipped());
+        report.put("throughput", round(getTotalCount() / getDurationSeconds()));
+
+        Map<String, Object> routes = new LinkedHashMap<>();
+        for(Operation operation : Operation.values()){
+            LatencyHistogram histogram = latencies.get(operation);
+            Map<String, Object> route = new LinkedHashMap<>();
+            route.put("count", histogram.getCount());
+            route.put("errors", errors.get(operation).get());
+            route.put("skipped", skipped.get(operation).get());
+            route.put("throughput", round(histogram.getCount() / getDurationSeconds()));
+            route.put("p50Ms", millis(histogram.getValueAtPercentile(50)));
+            route.put("p99Ms", millis(histogram.getValueAtPercentile(99)));
+            route.put("p999Ms", millis(histogram.getValueAtPercentile(99.9)));
+            route.put("maxMs", millis(histogram.getMax()));
+            routes.put(operation.getRoute(), route);
+        }
+        report.put("routes", routes);
+        return report;
+    }
+
+    /**
+     * Writes the report as pretty-printed JSON.
+     */
+    public void writeJson(Path file) throws IOException {
+        ObjectMapper om = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+        Files.write(file, om.writeValueAsBytes(toMap()));
+    }
+
+    /**
+     * Writes the report as a standalone HTML page with one table row per route.
+     */
+    @SuppressWarnings("unchecked")
+    public void writeHtml(Path file) throws IOException {
+        Map<String, Object> report = toMap();
+        StringBuilder html = new StringBuilder();
+        html.append("<!DOCTYPE html>\n<html><head><meta charset=\"utf-8\"><title>Load report</title>\n")
+            .append("<style>body{font-family:sans-serif}table{border-collapse:collapse}")
+            .append("td,th{border:1px solid #ccc;padding:4px 8px;text-align:right}")
+            .append("td:first-child{text-align:left}</style></head><body>\n")
+            .append("<h1>Load report</h1>\n<p>")
+            .append("Target rate: ").append(report.get("targetRate")).append(" req/s, ")
+            .append("duration: ").append(report.get("durationSeconds")).append(" s, ")
+            .append("requests: ").append(report.get("totalRequests")).append(", ")
+            .append("errors: ").append(report.get("totalErrors")).append(", ")
+            .append("skipped: ").append(report.get("totalSkipped")).append(", ")
+            .append("throughput: ").append(report.get("throughput")).append(" req/s</p>\n")
+            .append("<table><tr><th>Route</th><th>Count</th><th>Errors</th><th>Skipped</th><th>req/s</th>")
+            .append("<th>p50 ms</th><th>p99 ms</th><th>p99.9 ms</th><th>max ms</th></tr>\n");
+
+        Map<String, Object> routes = (Map<String, Object>) report.get("routes");
+        for(Map.Entry<String, Object> entry : routes.entrySet()){
+            Map<String, Object> route = (Map<String, Object>) entry.getValue();
+            html.append("<tr><td>").append(escape(entry.getKey())).append("</td>");
+            for(String key : new String[]{"count", "errors", "skipped", "throughput", "p50Ms", "p99Ms", "p999Ms", "maxMs"}){
+                html.append("<td>").append(route.get(key)).append("</td>");
+            }
+            html.append("</tr>\n");
+        }
+        html.append("</table></body></html>\n");
+        Files.write(file, html.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static double millis(long micros){
+        return round(micros / 1000.0);
+    }
+
+    private static double round(double value){
+        return Math.round(value * 1000.0) / 1000.0;
+    }
+
+    private static String escape(String text){
+        return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+    }
+}
@@ -0,0 +1,65 @@
+package Perf;
+
+/**
+ * The routes exercised by the load generator, with their default share of the request mix.
+ * The weights roughly follow a read-heavy social feed: most traffic reads messages, a smaller part
+ * posts or edits them, and registration/login are comparatively rare.
+ */
+public enum Operation {
+    REGISTER("POST /register", 3),
+    LOGIN("POST /login", 7),
+    POST_MESSAGE("POST /messages", 15),
+    GET_ALL_MESSAGES("GET /messages", 10),
+    GET_MESSAGE("GET /messages/{message_id}", 35),
+    GET_MESSAGES_OF_USER("GET /accounts/{account_id}/messages", 20),
+    PATCH_MESSAGE("PATCH /messages/{message_id}", 6),
+    DELETE_MESSAGE("DELETE /messages/{message_id}", 4);
+
+    private final String route;
+    private final int weight;
+
+    Operation(String route, int weight){
+        this.route = route;
+        this.weight = weight;
+    }
+
+    /**
+     * @return the route template, used as the key in the load report.
+     */
+    public String getRoute() {
+        return route;
+    }
+
+    /**
+     * @return the relative weight of this operation in the request mix.
+     */
+    public int getWeight() {
+        return weight;
+    }
+
+    /**
+     * Picks an operation according to the weights.
+     * @param roll a uniformly distributed value in [0, totalWeight())
+     * @return the operation owning that slice of the mix.
+     */
+    public static Operation pick(int roll){
+        for(Operation operation : values()){
+            if(roll < operation.weight){
+                return operation;
+            }
+            roll -= operation.weight;
+        }
+        return GET_MESSAGE;
+    }
+
+    /**
+     * @return the sum of all weights.
+     */
+    public static int totalWeight(){
+        int sum = 0;
+        for(Operation operation : values()){
+            sum += operation.weight;
+        }
+        return sum;
+    }
+}
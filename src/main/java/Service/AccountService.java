@@ -2,19 +2,27 @@ package Service;
 
 import Model.Account;
 import DAO.AccountDAO;
+import DAO.AccountRepository;
+import Util.DatabaseExecutor;
+import Util.Trace;
+import Util.Tracer;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 public class AccountService {
-    private AccountDAO accountDAO;
+    private AccountRepository accountDAO;
+    // runs the asynchronous variants
+    private DatabaseExecutor executor = DatabaseExecutor.shared();
 
     // Default constructor that initializes a new AccountDAO instance
     public AccountService(){
         accountDAO = new AccountDAO();
     }
 
-    // Constructor that accepts an AccountDAO instance, useful for dependency injection and testing
-    public AccountService(AccountDAO accountDAO){
+    // Constructor that accepts any AccountRepository (eg the JDBC AccountDAO or the in-memory engine),
+    // useful for dependency injection and testing
+    public AccountService(AccountRepository accountDAO){
         this.accountDAO = accountDAO;
     }
 
@@ -23,7 +31,9 @@ public class AccountService {
      * @return A list of all accounts.
      */
     public List<Account> getAllAccount() {
-        return this.accountDAO.getAllAccounts();
+        try(Trace.Span span = Tracer.span("AccountService.getAllAccount")){
+            return this.accountDAO.getAllAccounts();
+        }
     }
 
     /**
@@ -34,13 +44,15 @@ public class AccountService {
      * @return The added account with its generated ID, or null if the registration criteria are not met.
      */
     public Account addAccount(Account account){
-        if(account.getUsername().length() > 0 && account.getPassword().length() >= 4 &&
-            accountDAO.getAccountByUsername(account.getUsername()) == null)
-        {
-             return this.accountDAO.insertAccount(account);
-        }
+        try(Trace.Span span = Tracer.span("AccountService.addAccount")){
+            if(account.getUsername().length() > 0 && account.getPassword().length() >= 4 &&
+                accountDAO.getAccountByUsername(account.getUsername()) == null)
+            {
+                 return this.accountDAO.insertAccount(account);
+            }
         
-        return null;
+            return null;
+        }
     }
 
     /**
@@ -51,6 +63,22 @@ public class AccountService {
      * @return The account if the login is successful, null otherwise.
      */
     public Account loginAccount(Account account){
-        return accountDAO.getAccountByUsernameAndPassword(account.getUsername(), account.getPassword());
+        try(Trace.Span span = Tracer.span("AccountService.loginAccount")){
+            return accountDAO.getAccountByUsernameAndPassword(account.getUsername(), account.getPassword());
+        }
+    }
+
+    /**
+     * Runs {@link #addAccount(Account)} on the shared {@link DatabaseExecutor}.
+     */
+    public CompletableFuture<Account> addAccountAsync(Account account){
+        return executor.supply(() -> addAccount(account));
+    }
+
+    /**
+     * Runs {@link #loginAccount(Account)} on the shared {@link DatabaseExecutor}.
+     */
+    public CompletableFuture<Account> loginAccountAsync(Account account){
+        return executor.supply(() -> loginAccount(account));
     }
 }
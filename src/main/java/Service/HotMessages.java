@@ -0,0 +1,41 @@
+package Service;
+
+import Util.Snapshottable;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * The snapshot section of the message cache. Only the IDs of the cached messages are saved; restoring
+ * reads their current rows back into the cache, so the cache always agrees with the storage it is
+ * restored against: a database that changed since the snapshot, or an in-memory store whose section was
+ * written at a slightly different moment.
+ */
+public class HotMessages implements Snapshottable {
+    private final MessageService messageService;
+
+    public HotMessages(MessageService messageService){
+        this.messageService = messageService;
+    }
+
+    public String snapshotName(){
+        return "hot-message-ids";
+    }
+
+    public void writeSnapshot(DataOutputStream out) throws IOException {
+        int[] ids = messageService.getMessageCache().ids();
+        out.writeInt(ids.length);
+        for(int id : ids){
+            out.writeInt(id);
+        }
+    }
+
+    public void readSnapshot(ByteBuffer in){
+        int count = in.getInt();
+        for(int i = 0; i < count; i++){
+            // loads the row with its version, as a GET would
+            messageService.getVersionedMessageByID(in.getInt());
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package Service;
+
+import Util.ConcurrentIntMap;
+import Util.Snapshottable;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * The set of account IDs known to exist. Accounts are never deleted, so once an ID has been seen it
+ * can answer "does this author exist" without asking the database again.
+ */
+public class KnownAccounts implements Snapshottable {
+    private final ConcurrentIntMap<Boolean> ids = new ConcurrentIntMap<>();
+
+    public boolean contains(int accountId){
+        return ids.containsKey(accountId);
+    }
+
+    public void add(int accountId){
+        ids.put(accountId, Boolean.TRUE);
+    }
+
+    public int size(){
+        return ids.size();
+    }
+
+    public String snapshotName(){
+        return "known-accounts";
+    }
+
+    public void writeSnapshot(DataOutputStream out) throws IOException {
+        int[] known = ids.keys();
+        out.writeInt(known.length);
+        for(int id : known){
+            out.writeInt(id);
+        }
+    }
+
+    public void readSnapshot(ByteBuffer in){
+        int count = in.getInt();
+        for(int i = 0; i < count; i++){
+            add(in.getInt());
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package Service;
+
+import Model.Message;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded, lock-free cache of messages by message_id. The cache is direct-mapped: each message_id
+ * has exactly one slot, so a lookup is a single array read and a newer message simply displaces an
+ * older one that shares its slot.
+ *
+ * Every slot carries a stamp that invalidation increments. A value loaded from the database is only
+ * stored if the slot's stamp has not changed since the load started, so a read racing with an update
+ * or delete can never put the old message back.
+ */
+public class MessageCache {
+
+    private static final class Slot {
+        final long stamp;
+        final Message message;
+        // the message's version, 0 if unknown
+        final long version;
+
+        Slot(long stamp, Message message, long version){
+            this.stamp = stamp;
+            this.message = message;
+            this.version = version;
+        }
+    }
+
+    private static final Slot EMPTY = new Slot(0, null, 0);
+
+    private final AtomicReferenceArray<Slot> slots;
+    private final int mask;
+    // slots holding a message, changed whenever a slot turns from empty to full or back
+    private final LongAdder occupied = new LongAdder();
+
+    /**
+     * @param capacity the number of slots, rounded up to a power of two.
+     */
+    public MessageCache(int capacity){
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        slots = new AtomicReferenceArray<>(size);
+        for(int i = 0; i < size; i++){
+            slots.set(i, EMPTY);
+        }
+        mask = size - 1;
+    }
+
+    /**
+     * A ticket for filling a slot after a cache miss. See {@link MessageCache#lookup(int)}.
+     */
+    public static final class Lookup {
+        final int index;
+        final Slot observed;
+        /** the cached message, or null on a miss */
+        public final Message message;
+        /** the cached message's version, or 0 if unknown */
+        public final long version;
+
+        Lookup(int index, Slot observed, Message message, long version){
+            this.index = index;
+            this.observed = observed;
+            this.message = message;
+            this.version = version;
+        }
+    }
+
+    /**
+     * Looks up a message. On a miss, pass the returned lookup to {@link #fill(Lookup, Message)} together
+     * with the message loaded from storage.
+     */
+    public Lookup lookup(int id){
+        int index = id & mask;
+        Slot slot = slots.get(index);
+        boolean hit = slot.message != null && slot.message.message_id == id;
+        return new Lookup(index, slot, hit ? slot.message : null, hit ? slot.version : 0);
+    }
+
+    /**
+     * Stores a loaded message, unless the slot was invalidated since the lookup.
+     */
+    public void fill(Lookup lookup, Message message){
+        fill(lookup, message, 0);
+    }
+
+    /**
+     * Stores a loaded message and its version, unless the slot was invalidated since the lookup.
+     */
+    public void fill(Lookup lookup, Message message, long version){
+        if(message != null && slots.compareAndSet(lookup.index, lookup.observed, new Slot(lookup.observed.stamp, message, version))
+                && lookup.observed.message == null){
+            occupied.increment();
+        }
+    }
+
+    /**
+     * Drops whatever is cached in the slot of id and fails any fill started before this call.
+     */
+    public void invalidate(int id){
+        int index = id & mask;
+        Slot slot;
+        do{
+            slot = slots.get(index);
+        }while(!slots.compareAndSet(index, slot, new Slot(slot.stamp + 1, null, 0)));
+        if(slot.message != null){
+            occupied.decrement();
+        }
+    }
+
+    /**
+     * @return the number of slots holding a message, from a counter rather than a scan of the slots.
+     */
+    public int size(){
+        return (int) occupied.sum();
+    }
+
+    /**
+     * @return the number of slots.
+     */
+    public int capacity(){
+        return slots.length();
+    }
+
+    /**
+     * @return the IDs of the cached messages, in slot order.
+     */
+    public int[] ids(){
+        List<Message> cached = cachedMessages();
+        int[] ids = new int[cached.size()];
+        for(int i = 0; i < ids.length; i++){
+            ids[i] = cached.get(i).message_id;
+        }
+        return ids;
+    }
+
+    private List<Message> cachedMessages(){
+        List<Message> cached = new ArrayList<>();
+        for(int i = 0; i < slots.length(); i++){
+            Message message = slots.get(i).message;
+            if(message != null){
+                cached.add(message);
+            }
+        }
+        return cached;
+    }
+}
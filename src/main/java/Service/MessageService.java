@@ -1,21 +1,73 @@
 package Service;
 
+import Model.AccountStats;
 import Model.Message;
+import Model.MessageField;
+import Model.TimeBucket;
+import Model.VersionedMessage;
 import DAO.MessageDAO;
+import DAO.MessageRepository;
+import Util.AppConfig;
+import Util.DatabaseExecutor;
+import Util.Trace;
+import Util.Tracer;
+import Util.UnitOfWork;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
 public class MessageService {
-    MessageDAO messageDAO;
+    MessageRepository messageDAO;
+    // messages by id, sized by the "cache.messages" setting
+    MessageCache messageCache;
+    // each author's messages, sized by the "cache.timelines.maxBytes" setting
+    TimelineCache timelineCache = new TimelineCache(AppConfig.getLong("cache.timelines.maxBytes", 8L << 20));
+    // authors already known to exist, so posting does not have to look them up every time
+    KnownAccounts knownAccounts = new KnownAccounts();
+    // concurrent reads of the same message, and of the same author's message list, share one load
+    SingleFlight<VersionedMessage> messageFlights = new SingleFlight<>();
+    SingleFlight<List<Message>> authorFlights = new SingleFlight<>();
+    // upper bound on the size of a time-range result, from the "query.maxResults" setting
+    int maxResults = AppConfig.getInt("query.maxResults", 1000);
+    // messages removed per transaction by bulk deletes, from the "purge.chunkSize" setting
+    int purgeChunkSize = AppConfig.getInt("purge.chunkSize", 500);
+    // runs the asynchronous variants
+    DatabaseExecutor executor = DatabaseExecutor.shared();
 
     // Default constructor that initializes a new MessageDAO instance
     public MessageService(){
-        messageDAO = new MessageDAO();
+        this(new MessageDAO());
     }
 
-    // Constructor that accepts a MessageDAO instance, useful for dependency injection and testing
-    public MessageService(MessageDAO messageDAO){
+    // Constructor that accepts any MessageRepository (eg the JDBC MessageDAO or the in-memory engine),
+    // useful for dependency injection and testing
+    public MessageService(MessageRepository messageDAO){
         this.messageDAO = messageDAO;
+        this.messageCache = new MessageCache(AppConfig.getInt("cache.messages", 4096));
+    }
+
+    public MessageCache getMessageCache() {
+        return messageCache;
+    }
+
+    public TimelineCache getTimelineCache() {
+        return timelineCache;
+    }
+
+    public KnownAccounts getKnownAccounts() {
+        return knownAccounts;
+    }
+
+    public SingleFlight<VersionedMessage> getMessageFlights() {
+        return messageFlights;
+    }
+
+    public SingleFlight<List<Message>> getAuthorFlights() {
+        return authorFlights;
     }
 
     /**
@@ -29,13 +81,24 @@ public class MessageService {
      * @return The added message with its generated ID, or null if the message is invalid
      */
     public Message addMessage(Message message){
-        if(!(message.message_text.length() > 255) && (message.message_text.length() > 0) 
-            && messageDAO.doesIDExist(message.posted_by))
-        {
-            return messageDAO.insertMessage(message);
-        }
+        try(Trace.Span span = Tracer.span("MessageService.addMessage")){
+            if(!(message.message_text.length() > 255) && (message.message_text.length() > 0) 
+                && doesIDExist(message.posted_by))
+            {
+                Message added = messageDAO.insertMessage(message);
+                if(added != null){
+                    afterWrite(added.message_id, added.posted_by, () -> {
+                        timelineCache.put(added);
+                        authorFlights.forget(added.posted_by);
+                    });
+                }else{
+                    authorFlights.forget(message.posted_by);
+                }
+                return added;
+            }
         
-        return null;
+            return null;
+        }
     }
 
     /**
@@ -49,13 +112,49 @@ public class MessageService {
      * @return The updated message, or null if the message is invalid
      */
     public Message updateMessage(Message message){
-        if(!(message.message_text.length() > 255) && (message.message_text.length() > 0) &&
-            doesIDExist(message.getMessage_id()))
-        {
-            return messageDAO.updateMessage(message);
-        }
+        VersionedMessage updated = updateMessageIfVersion(message, VersionedMessage.ANY);
+        return updated == null ? null : updated.message;
+    }
+
+    /**
+     * Updates an existing message if it is still at the expected version, as for If-Match. Checking the
+     * version is part of the update itself, so it costs no extra query.
+     *
+     * @param message The message to be updated
+     * @param expectedVersion The version the client last read, or VersionedMessage.ANY
+     * @return The updated message and its new version, or null if the message is invalid, missing or at
+     *         another version
+     */
+    public VersionedMessage updateMessageIfVersion(Message message, long expectedVersion){
+        try(Trace.Span span = Tracer.span("MessageService.updateMessage")){
+            // the DAO returns null when no row has this message_id, so no separate existence check is needed
+            if(isValidText(message.message_text))
+            {
+                VersionedMessage updated = messageDAO.updateMessageIfVersion(message, expectedVersion);
+                if(updated != null){
+                    afterWrite(updated.message.message_id, updated.message.posted_by, () -> {
+                        messageCache.invalidate(updated.message.message_id);
+                        messageFlights.forget(updated.message.message_id);
+                        timelineCache.put(updated.message);
+                        authorFlights.forget(updated.message.posted_by);
+                    });
+                }else{
+                    messageCache.invalidate(message.getMessage_id());
+                    messageFlights.forget(message.getMessage_id());
+                }
+                return updated;
+            }
         
-        return null;
+            return null;
+        }
+    }
+
+    /**
+     * @return whether text may be posted or saved as a message's text: not blank and at most 255
+     *         characters.
+     */
+    public static boolean isValidText(String text){
+        return text != null && !(text.length() > 255) && (text.length() > 0);
     }
 
     /**
@@ -64,32 +163,139 @@ public class MessageService {
      * @return A list of all messages
      */
     public List<Message> getAllMessages(){
-        return messageDAO.getAllMessages();
+        try(Trace.Span span = Tracer.span("MessageService.getAllMessages")){
+            return messageDAO.getAllMessages();
+        }
+    }
+
+    /**
+     * Retrieves all messages, reading only the given fields.
+     *
+     * @return A list of all messages; fields that were not asked for may be unset
+     */
+    public List<Message> getAllMessages(Set<MessageField> fields){
+        try(Trace.Span span = Tracer.span("MessageService.getAllMessages")){
+            return messageDAO.getAllMessages(fields);
+        }
     }
 
     /**
-     * Checks if a given ID exists.
+     * Checks if an account with the given ID exists.
      *
-     * @param id The ID to check
-     * @return True if the ID exists, false otherwise
+     * @param id The account ID to check
+     * @return True if the account exists, false otherwise
      */
     public boolean doesIDExist(int id){
-        return messageDAO.doesIDExist(id);
+        try(Trace.Span span = Tracer.span("MessageService.doesIDExist")){
+            if(knownAccounts.contains(id)){
+                return true;
+            }
+            if(messageDAO.doesIDExist(id)){
+                knownAccounts.add(id);
+                return true;
+            }
+            return false;
+        }
     }
 
     /**
      * Retrieves a message by its ID.
-     * Returns null if there is no such message.
+     * Returns null if there is no such message. Concurrent cache misses for the same ID share one query.
      *
      * @param id The ID of the message to retrieve
      * @return The message with the given ID, or null if not found
      */
     public Message getMessageByID(int id){
-        if(doesIDExist(id))
-        {
-            return messageDAO.getMessageByID(id);
+        try(Trace.Span span = Tracer.span("MessageService.getMessageByID")){
+            MessageCache.Lookup lookup = messageCache.lookup(id);
+            if(lookup.message != null){
+                return lookup.message;
+            }
+            VersionedMessage loaded = load(id, lookup);
+            return loaded == null ? null : loaded.message;
+        }
+    }
+
+    /**
+     * Retrieves a message by its ID together with its version, for the ETag. Served from the cache when
+     * the cached message's version is known, like getMessageByID otherwise.
+     *
+     * @param id The ID of the message to retrieve
+     * @return The message and its version, or null if not found
+     */
+    public VersionedMessage getVersionedMessageByID(int id){
+        try(Trace.Span span = Tracer.span("MessageService.getMessageByID")){
+            MessageCache.Lookup lookup = messageCache.lookup(id);
+            if(lookup.message != null && lookup.version != 0){
+                return new VersionedMessage(lookup.message, lookup.version);
+            }
+            return load(id, lookup);
         }
-        return null;
+    }
+
+    private VersionedMessage load(int id, MessageCache.Lookup lookup){
+        return messageFlights.load(id, () -> {
+            VersionedMessage loaded = messageDAO.getVersionedMessageByID(id);
+            if(loaded != null){
+                messageCache.fill(lookup, loaded.message, loaded.version);
+            }
+            return loaded;
+        });
+    }
+
+    /**
+     * Retrieves several messages at once. Cached messages are served from the cache and all misses are
+     * read with one query, instead of one query per ID.
+     *
+     * @param ids The IDs of the messages to retrieve; may repeat
+     * @return The messages in the order of ids, leaving out IDs without a message
+     */
+    public List<Message> getMessagesByIDs(int[] ids){
+        try(Trace.Span span = Tracer.span("MessageService.getMessagesByIDs")){
+            Message[] found = new Message[ids.length];
+            MessageCache.Lookup[] lookups = new MessageCache.Lookup[ids.length];
+            int[] misses = new int[ids.length];
+            int missCount = 0;
+            for(int i = 0; i < ids.length; i++){
+                lookups[i] = messageCache.lookup(ids[i]);
+                found[i] = lookups[i].message;
+                if(found[i] == null){
+                    misses[missCount++] = ids[i];
+                }
+            }
+            if(missCount > 0){
+                misses = distinctSorted(misses, missCount);
+                Message[] loaded = new Message[misses.length];
+                for(Message message : messageDAO.getMessagesByIDs(misses)){
+                    loaded[Arrays.binarySearch(misses, message.message_id)] = message;
+                }
+                for(int i = 0; i < ids.length; i++){
+                    if(found[i] == null){
+                        found[i] = loaded[Arrays.binarySearch(misses, ids[i])];
+                        messageCache.fill(lookups[i], found[i]);
+                    }
+                }
+            }
+            List<Message> messages = new ArrayList<>(ids.length);
+            for(Message message : found){
+                if(message != null){
+                    messages.add(message);
+                }
+            }
+            return messages;
+        }
+    }
+
+    private static int[] distinctSorted(int[] values, int count){
+        int[] sorted = Arrays.copyOf(values, count);
+        Arrays.sort(sorted);
+        int distinct = 0;
+        for(int i = 0; i < sorted.length; i++){
+            if(i == 0 || sorted[i] != sorted[i - 1]){
+                sorted[distinct++] = sorted[i];
+            }
+        }
+        return Arrays.copyOf(sorted, distinct);
     }
 
     /**
@@ -99,16 +305,285 @@ public class MessageService {
      * @return True if the message was successfully deleted, false otherwise
      */
     public boolean deleteMessageByID(int id){
-        return messageDAO.deleteMessageByID(id);
+        try(Trace.Span span = Tracer.span("MessageService.deleteMessageByID")){
+            // the author's timeline has to be patched; handlers read the message before deleting it, so it
+            // is usually cached
+            Message message = messageCache.lookup(id).message;
+            if(message == null){
+                message = messageDAO.getMessageByID(id);
+            }
+            boolean deleted = messageDAO.deleteMessageByID(id);
+            if(deleted && message != null){
+                int postedBy = message.posted_by;
+                afterWrite(id, postedBy, () -> {
+                    messageCache.invalidate(id);
+                    messageFlights.forget(id);
+                    timelineCache.remove(postedBy, id);
+                    authorFlights.forget(postedBy);
+                });
+            }else if(deleted){
+                // deleted by someone else in between; in-flight author lists are few
+                Runnable forgetAll = () -> {
+                    messageCache.invalidate(id);
+                    messageFlights.forget(id);
+                    timelineCache.clear();
+                    authorFlights.forgetAll();
+                };
+                forgetAll.run();
+                if(UnitOfWork.current() != null){
+                    UnitOfWork.onCommit(forgetAll);
+                }
+            }else{
+                messageCache.invalidate(id);
+                messageFlights.forget(id);
+            }
+            return deleted;
+        }
     }
 
     /**
-     * Retrieves all messages written by a particular user.
+     * Deletes every message of a user, purgeChunkSize messages per transaction, so that no transaction
+     * holds locks on the message table for long.
      *
      * @param account_id The ID of the user
-     * @return A list of messages written by the user
+     * @return The number of messages deleted
+     * @throws IllegalStateException if a chunk fails; the chunks before it stay deleted, and calling again
+     *         deletes the rest
+     */
+    public int deleteMessagesOfUser(int account_id){
+        try(Trace.Span span = Tracer.span("MessageService.deleteMessagesOfUser")){
+            int deleted = 0;
+            List<Message> chunk;
+            do{
+                chunk = messageDAO.deleteMessagesOfUser(account_id, purgeChunkSize);
+                forgetDeleted(chunk);
+                deleted += chunk.size();
+            }while(chunk.size() == purgeChunkSize);
+            return deleted;
+        }
+    }
+
+    /**
+     * Deletes one chunk of the messages posted in [since, until), oldest first.
+     *
+     * @param limit The maximum number of messages to delete
+     * @return The deleted messages, without their text
+     */
+    public List<Message> deleteMessagesInRange(long since, long until, int limit){
+        try(Trace.Span span = Tracer.span("MessageService.deleteMessagesInRange")){
+            List<Message> chunk = messageDAO.deleteMessagesInRange(since, until, limit);
+            forgetDeleted(chunk);
+            return chunk;
+        }
+    }
+
+    /**
+     * Shows a write of a message in the caches. Outside of a {@link UnitOfWork} the write has already
+     * committed and patch runs at once. Within one, other requests must not see the write before it
+     * commits, and a read of theirs in the meantime must not cache the old row for good: the message and
+     * its author's timeline are only dropped now, patch runs once the unit commits, and they are dropped
+     * again if it rolls back.
+     */
+    private void afterWrite(int messageId, int postedBy, Runnable patch){
+        if(UnitOfWork.current() == null){
+            patch.run();
+            return;
+        }
+        Runnable forget = () -> {
+            messageCache.invalidate(messageId);
+            messageFlights.forget(messageId);
+            timelineCache.invalidate(postedBy);
+            authorFlights.forget(postedBy);
+        };
+        forget.run();
+        UnitOfWork.onCommit(patch);
+        UnitOfWork.onRollback(forget);
+    }
+
+    private void forgetDeleted(List<Message> messages){
+        for(Message message : messages){
+            messageCache.invalidate(message.message_id);
+            messageFlights.forget(message.message_id);
+            timelineCache.remove(message.posted_by, message.message_id);
+            authorFlights.forget(message.posted_by);
+        }
+    }
+
+    /**
+     * Retrieves all messages written by a particular user, from the timeline cache when it has them.
+     * Concurrent misses for the same user share one query and its result.
+     *
+     * @param account_id The ID of the user
+     * @return An unmodifiable list of messages written by the user
      */
     public List<Message> getAllMessagesOfUser(int account_id){
-        return messageDAO.getMessagesOfUser(account_id);
+        try(Trace.Span span = Tracer.span("MessageService.getAllMessagesOfUser")){
+            List<Message> cached = timelineCache.get(account_id);
+            if(cached != null){
+                return cached;
+            }
+            // the list may be handed to several callers, so it must not be changed
+            return authorFlights.load(account_id, () -> {
+                long stamp = timelineCache.stamp(account_id);
+                List<Message> messages = messageDAO.getMessagesOfUser(account_id);
+                timelineCache.fill(account_id, stamp, messages);
+                return Collections.unmodifiableList(messages);
+            });
+        }
+    }
+
+    /**
+     * Retrieves all messages written by a particular user. The timeline cache holds whole messages, so
+     * this reads them all and leaves the projection to the caller.
+     *
+     * @return A list of messages written by the user; fields that were not asked for may be set too
+     */
+    public List<Message> getAllMessagesOfUser(int account_id, Set<MessageField> fields){
+        return getAllMessagesOfUser(account_id);
+    }
+
+    /**
+     * Retrieves the message count and first/last post time of an account. The storage engine keeps these
+     * up to date on every insert and delete, so this never reads the account's messages.
+     *
+     * @param account_id The ID of the account
+     * @return The stats of the account
+     */
+    public AccountStats getAccountStats(int account_id){
+        try(Trace.Span span = Tracer.span("MessageService.getAccountStats")){
+            return messageDAO.getAccountStats(account_id);
+        }
+    }
+
+    /**
+     * Retrieves the messages posted in [since, until), oldest first.
+     *
+     * @param limit The requested maximum number of messages; capped at the "query.maxResults" setting
+     * @param fields The fields to read
+     * @return At most limit messages posted in the range
+     */
+    public List<Message> getMessagesInRange(long since, long until, int limit, Set<MessageField> fields){
+        try(Trace.Span span = Tracer.span("MessageService.getMessagesInRange")){
+            return messageDAO.getMessagesInRange(since, until, boundedLimit(limit), fields);
+        }
+    }
+
+    /**
+     * Retrieves the messages a particular user posted in [since, until), oldest first.
+     *
+     * @param limit The requested maximum number of messages; capped at the "query.maxResults" setting
+     * @param fields The fields to read
+     * @return At most limit messages posted by the user in the range
+     */
+    public List<Message> getMessagesOfUserInRange(int account_id, long since, long until, int limit, Set<MessageField> fields){
+        try(Trace.Span span = Tracer.span("MessageService.getMessagesOfUserInRange")){
+            return messageDAO.getMessagesOfUserInRange(account_id, since, until, boundedLimit(limit), fields);
+        }
+    }
+
+    /**
+     * Counts the messages posted in [since, until) per bucket of bucketSeconds.
+     *
+     * @return The non-empty buckets, oldest first
+     */
+    public List<TimeBucket> countMessagesByBucket(long since, long until, long bucketSeconds){
+        try(Trace.Span span = Tracer.span("MessageService.countMessagesByBucket")){
+            return messageDAO.countMessagesByBucket(since, until, bucketSeconds);
+        }
+    }
+
+    /**
+     * Counts the messages a particular user posted in [since, until) per bucket of bucketSeconds.
+     *
+     * @return The non-empty buckets, oldest first
+     */
+    public List<TimeBucket> countMessagesOfUserByBucket(int account_id, long since, long until, long bucketSeconds){
+        try(Trace.Span span = Tracer.span("MessageService.countMessagesOfUserByBucket")){
+            return messageDAO.countMessagesOfUserByBucket(account_id, since, until, bucketSeconds);
+        }
+    }
+
+    /*
+     * Asynchronous variants of the methods above. Each runs its blocking counterpart on the shared
+     * DatabaseExecutor and fails with DatabaseOverloadedException when that executor is full, so request
+     * threads never wait for storage.
+     */
+
+    public CompletableFuture<Message> addMessageAsync(Message message){
+        return executor.supply(() -> addMessage(message));
+    }
+
+    public CompletableFuture<Message> updateMessageAsync(Message message){
+        return executor.supply(() -> updateMessage(message));
+    }
+
+    public CompletableFuture<VersionedMessage> updateMessageIfVersionAsync(Message message, long expectedVersion){
+        return executor.supply(() -> updateMessageIfVersion(message, expectedVersion));
+    }
+
+    public CompletableFuture<List<Message>> getAllMessagesAsync(Set<MessageField> fields){
+        return executor.supply(() -> getAllMessages(fields));
+    }
+
+    /**
+     * Completes at once, without handing off to the executor, when the message is cached.
+     */
+    public CompletableFuture<Message> getMessageByIDAsync(int id){
+        Message cached = messageCache.lookup(id).message;
+        if(cached != null){
+            return CompletableFuture.completedFuture(cached);
+        }
+        return executor.supply(() -> getMessageByID(id));
+    }
+
+    /**
+     * Completes at once, without handing off to the executor, when the message and its version are cached.
+     */
+    public CompletableFuture<VersionedMessage> getVersionedMessageByIDAsync(int id){
+        MessageCache.Lookup lookup = messageCache.lookup(id);
+        if(lookup.message != null && lookup.version != 0){
+            return CompletableFuture.completedFuture(new VersionedMessage(lookup.message, lookup.version));
+        }
+        return executor.supply(() -> getVersionedMessageByID(id));
+    }
+
+    public CompletableFuture<List<Message>> getMessagesByIDsAsync(int[] ids){
+        return executor.supply(() -> getMessagesByIDs(ids));
+    }
+
+    public CompletableFuture<Boolean> deleteMessageByIDAsync(int id){
+        return executor.supply(() -> deleteMessageByID(id));
+    }
+
+    public CompletableFuture<Integer> deleteMessagesOfUserAsync(int account_id){
+        return executor.supply(() -> deleteMessagesOfUser(account_id));
+    }
+
+    public CompletableFuture<List<Message>> getAllMessagesOfUserAsync(int account_id, Set<MessageField> fields){
+        return executor.supply(() -> getAllMessagesOfUser(account_id, fields));
+    }
+
+    public CompletableFuture<AccountStats> getAccountStatsAsync(int account_id){
+        return executor.supply(() -> getAccountStats(account_id));
+    }
+
+    public CompletableFuture<List<Message>> getMessagesInRangeAsync(long since, long until, int limit, Set<MessageField> fields){
+        return executor.supply(() -> getMessagesInRange(since, until, limit, fields));
+    }
+
+    public CompletableFuture<List<Message>> getMessagesOfUserInRangeAsync(int account_id, long since, long until, int limit, Set<MessageField> fields){
+        return executor.supply(() -> getMessagesOfUserInRange(account_id, since, until, limit, fields));
+    }
+
+    public CompletableFuture<List<TimeBucket>> countMessagesByBucketAsync(long since, long until, long bucketSeconds){
+        return executor.supply(() -> countMessagesByBucket(since, until, bucketSeconds));
+    }
+
+    public CompletableFuture<List<TimeBucket>> countMessagesOfUserByBucketAsync(int account_id, long since, long until, long bucketSeconds){
+        return executor.supply(() -> countMessagesOfUserByBucket(account_id, since, until, bucketSeconds));
+    }
+
+    private int boundedLimit(int limit){
+        return Math.max(0, Math.min(limit, maxResults));
     }
 }
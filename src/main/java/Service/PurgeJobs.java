@@ -0,0 +1,225 @@
+package Service;
+
+import Model.Message;
+import Model.PurgeJob;
+import Util.AppConfig;
+import Util.DatabaseOverloadedException;
+import Util.SnapshotManager;
+import Util.Snapshottable;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Admin jobs that delete the messages posted in a time range. A job deletes "purge.chunkSize" messages per
+ * transaction, oldest first, and sleeps "purge.pauseMillis" between chunks so that online traffic keeps
+ * getting connections and locks. When the database limiter refuses a chunk the job backs off and tries
+ * again instead of failing.
+ *
+ * Jobs run one at a time on a single background thread. They can be paused and resumed; a resumed or
+ * restored job continues from its cursor. With snapshots configured, the jobs are part of the snapshot,
+ * so running jobs pick up again after a restart.
+ */
+public class PurgeJobs implements Snapshottable {
+    private final MessageService messageService;
+    private final int chunkSize = AppConfig.getInt("purge.chunkSize", 500);
+    private final long pauseMillis = AppConfig.getLong("purge.pauseMillis", 10);
+    private final ConcurrentHashMap<Integer, PurgeJob> jobs = new ConcurrentHashMap<>();
+    private final AtomicInteger lastJobId = new AtomicInteger();
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "purge");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public PurgeJobs(MessageService messageService){
+        this.messageService = messageService;
+    }
+
+    /**
+     * Starts a job that deletes the messages posted in [since, until).
+     * @return the new job.
+     */
+    public PurgeJob start(long since, long until){
+        PurgeJob job = new PurgeJob(lastJobId.incrementAndGet(), since, until);
+        jobs.put(job.job_id, job);
+        executor.execute(() -> run(job));
+        return get(job.job_id);
+    }
+
+    /**
+     * @return a copy of the job's current progress, or null if there is no such job.
+     */
+    public PurgeJob get(int jobId){
+        PurgeJob job = jobs.get(jobId);
+        if(job == null){
+            return null;
+        }
+        synchronized(job){
+            return new PurgeJob(job);
+        }
+    }
+
+    /**
+     * @return copies of all jobs, by job ID.
+     */
+    public List<PurgeJob> getAll(){
+        List<PurgeJob> all = new ArrayList<>();
+        for(int jobId : jobs.keySet()){
+            all.add(get(jobId));
+        }
+        all.sort(Comparator.comparingInt(PurgeJob::getJob_id));
+        return all;
+    }
+
+    /**
+     * Stops a running job after its current chunk.
+     * @return the job, or null if there is no such job.
+     */
+    public PurgeJob pause(int jobId){
+        PurgeJob job = jobs.get(jobId);
+        if(job == null){
+            return null;
+        }
+        synchronized(job){
+            if(job.status == PurgeJob.Status.RUNNING){
+                job.status = PurgeJob.Status.PAUSED;
+            }
+        }
+        return get(jobId);
+    }
+
+    /**
+     * Continues a paused or failed job from its cursor.
+     * @return the job, or null if there is no such job.
+     */
+    public PurgeJob resume(int jobId){
+        PurgeJob job = jobs.get(jobId);
+        if(job == null){
+            return null;
+        }
+        boolean resumed = false;
+        synchronized(job){
+            if(job.status == PurgeJob.Status.PAUSED || job.status == PurgeJob.Status.FAILED){
+                job.status = PurgeJob.Status.RUNNING;
+                job.error = null;
+                resumed = true;
+            }
+        }
+        if(resumed){
+            executor.execute(() -> run(job));
+        }
+        return get(jobId);
+    }
+
+    private void run(PurgeJob job){
+        while(true){
+            long since;
+            synchronized(job){
+                if(job.status != PurgeJob.Status.RUNNING){
+                    return;
+                }
+                // messages at the cursor's epoch may remain, so it is included again
+                since = job.cursor_epoch == null ? job.since : Math.max(job.since, job.cursor_epoch);
+            }
+            try{
+                List<Message> chunk = messageService.deleteMessagesInRange(since, job.until, chunkSize);
+                synchronized(job){
+                    job.deleted_count += chunk.size();
+                    job.chunks++;
+                    for(Message message : chunk){
+                        if(job.cursor_epoch == null || message.time_posted_epoch > job.cursor_epoch){
+                            job.cursor_epoch = message.time_posted_epoch;
+                        }
+                    }
+                    if(chunk.size() < chunkSize && job.status == PurgeJob.Status.RUNNING){
+                        job.status = PurgeJob.Status.DONE;
+                    }
+                }
+                Thread.sleep(pauseMillis);
+            }catch(DatabaseOverloadedException e){
+                if(!sleep(Math.max(100, pauseMillis))){
+                    return;
+                }
+            }catch(InterruptedException e){
+                // shutting down; the job stays RUNNING so a restored snapshot picks it up again
+                Thread.currentThread().interrupt();
+                return;
+            }catch(RuntimeException e){
+                System.out.println("Purge job " + job.job_id + " failed: " + e.getMessage());
+                synchronized(job){
+                    job.status = PurgeJob.Status.FAILED;
+                    job.error = String.valueOf(e.getMessage());
+                }
+                return;
+            }
+        }
+    }
+
+    private static boolean sleep(long millis){
+        try{
+            Thread.sleep(millis);
+            return true;
+        }catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Interrupts the running job, leaving it RUNNING so that a snapshot taken afterwards resumes it.
+     */
+    public void stop() throws InterruptedException {
+        executor.shutdownNow();
+        executor.awaitTermination(5, TimeUnit.SECONDS);
+    }
+
+    public String snapshotName(){
+        return "purge-jobs";
+    }
+
+    public void writeSnapshot(DataOutputStream out) throws IOException {
+        List<PurgeJob> all = getAll();
+        out.writeInt(all.size());
+        for(PurgeJob job : all){
+            out.writeInt(job.job_id);
+            out.writeLong(job.since);
+            out.writeLong(job.until);
+            out.writeByte(job.status.ordinal());
+            out.writeLong(job.deleted_count);
+            out.writeLong(job.chunks);
+            out.writeBoolean(job.cursor_epoch != null);
+            out.writeLong(job.cursor_epoch == null ? 0 : job.cursor_epoch);
+            SnapshotManager.writeString(out, job.error == null ? "" : job.error);
+        }
+    }
+
+    public void readSnapshot(ByteBuffer in){
+        int count = in.getInt();
+        for(int i = 0; i < count; i++){
+            PurgeJob job = new PurgeJob(in.getInt(), in.getLong(), in.getLong());
+            job.status = PurgeJob.Status.values()[in.get()];
+            job.deleted_count = in.getLong();
+            job.chunks = in.getLong();
+            boolean hasCursor = in.get() != 0;
+            long cursor = in.getLong();
+            job.cursor_epoch = hasCursor ? cursor : null;
+            String error = SnapshotManager.readString(in);
+            job.error = error.isEmpty() ? null : error;
+            jobs.put(job.job_id, job);
+            lastJobId.accumulateAndGet(job.job_id, Math::max);
+            if(job.status == PurgeJob.Status.RUNNING){
+                executor.execute(() -> run(job));
+            }
+        }
+    }
+}
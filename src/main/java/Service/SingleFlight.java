@@ -0,0 +1,98 @@
+package Service;
+
+import Util.ConcurrentIntMap;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces concurrent loads of the same int key: the first caller runs the load, and callers arriving
+ * while it is in flight wait for it and share its result (or its exception) instead of running their own.
+ * Nothing is kept once the load finishes, so this is not a cache; it only collapses simultaneous misses.
+ *
+ * Writers call {@link #forget(int)} after changing a key, so that readers arriving after the write start
+ * a fresh load instead of joining one that may have read the old value.
+ * @param <V> the loaded value type
+ */
+public class SingleFlight<V> {
+    private final ConcurrentIntMap<CompletableFuture<V>> flights = new ConcurrentIntMap<>();
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder shared = new LongAdder();
+
+    /**
+     * @return the value of key, loaded by this call or by a concurrent call for the same key.
+     */
+    public V load(int key, Supplier<V> loader){
+        CompletableFuture<V> flight = new CompletableFuture<>();
+        CompletableFuture<V> existing = flights.putIfAbsent(key, flight);
+        if(existing != null){
+            shared.increment();
+            return await(existing);
+        }
+        loads.increment();
+        try{
+            V value = loader.get();
+            flight.complete(value);
+            return value;
+        }catch(RuntimeException | Error e){
+            flight.completeExceptionally(e);
+            throw e;
+        }finally{
+            flights.compute(key, current -> current == flight ? null : current);
+        }
+    }
+
+    /**
+     * Detaches the in-flight load of key, if any. Callers already waiting on it still get its result.
+     */
+    public void forget(int key){
+        flights.remove(key);
+    }
+
+    /**
+     * Detaches every in-flight load.
+     */
+    public void forgetAll(){
+        flights.clear();
+    }
+
+    private static <V> V await(CompletableFuture<V> flight){
+        try{
+            return flight.join();
+        }catch(CompletionException e){
+            Throwable cause = e.getCause();
+            if(cause instanceof RuntimeException){
+                throw (RuntimeException) cause;
+            }
+            if(cause instanceof Error){
+                throw (Error) cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * @return the number of loads that were actually run.
+     */
+    public long getLoads(){
+        return loads.sum();
+    }
+
+    /**
+     * @return the number of calls that were answered by another caller's load.
+     */
+    public long getShared(){
+        return shared.sum();
+    }
+
+    /**
+     * @return the percentage of calls that were answered by another caller's load.
+     */
+    public long getSharedPercent(){
+        long shared = getShared();
+        long calls = shared + getLoads();
+        return calls == 0 ? 0 : shared * 100 / calls;
+    }
+}
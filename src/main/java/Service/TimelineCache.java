@@ -0,0 +1,337 @@
+package Service;
+
+import Model.Message;
+import Util.ConcurrentIntMap;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.UnaryOperator;
+
+/**
+ * A bounded cache of each author's messages, ordered by message_id. A timeline is held as parallel
+ * arrays (ids, epochs, texts) rather than a list of Message objects, and is replaced copy-on-write:
+ * posts, edits and deletes patch the cached timeline instead of dropping it.
+ *
+ * The cache is bounded by an estimate of the bytes its timelines take ("cache.timelines.maxBytes").
+ * When it is over, timelines are evicted CLOCK-style: a read marks a timeline as referenced, and the
+ * eviction sweep spares referenced timelines once, clearing their mark.
+ *
+ * Fills are guarded like those of {@link MessageCache}: writes bump the stamp of the author's stripe, and
+ * a timeline loaded from storage is only stored if that stamp has not changed since the load started.
+ */
+public class TimelineCache {
+    private static final int STAMP_STRIPES = 1024;
+    /** an estimate of the bytes of a Timeline and its three arrays */
+    private static final long TIMELINE_BYTES = 96;
+    /** an estimate of the bytes per message: array slots plus the String and its header */
+    private static final long MESSAGE_BYTES = 4 + 8 + 4 + 40;
+
+    private final ConcurrentIntMap<Timeline> timelines = new ConcurrentIntMap<>(64);
+    private final AtomicLongArray stamps = new AtomicLongArray(STAMP_STRIPES);
+    private final AtomicLong weight = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final long maxWeight;
+    private int hand;
+
+    /**
+     * @param maxWeight the estimated bytes the cached timelines may take; 0 disables the cache. A single
+     *                  timeline heavier than a sixteenth of this is not cached.
+     */
+    public TimelineCache(long maxWeight){
+        this.maxWeight = maxWeight;
+    }
+
+    /**
+     * One author's messages, sorted by message_id. Never changed after it is published, except for the
+     * referenced mark.
+     */
+    private static final class Timeline {
+        final int postedBy;
+        final int[] ids;
+        final long[] epochs;
+        final String[] texts;
+        final long weight;
+        // one view per timeline, so callers can tell an unchanged timeline by identity
+        final List<Message> view = asList();
+        volatile boolean referenced = true;
+
+        Timeline(int postedBy, int[] ids, long[] epochs, String[] texts){
+            this.postedBy = postedBy;
+            this.ids = ids;
+            this.epochs = epochs;
+            this.texts = texts;
+            long textBytes = 0;
+            for(String text : texts){
+                textBytes += text == null ? 0 : text.length();
+            }
+            weight = TIMELINE_BYTES + ids.length * MESSAGE_BYTES + textBytes;
+        }
+
+        static Timeline of(int postedBy, List<Message> messages){
+            int[] ids = new int[messages.size()];
+            long[] epochs = new long[ids.length];
+            String[] texts = new String[ids.length];
+            for(int i = 0; i < ids.length; i++){
+                Message message = messages.get(i);
+                ids[i] = message.message_id;
+                epochs[i] = message.time_posted_epoch;
+                texts[i] = message.message_text;
+            }
+            if(!isSorted(ids)){
+                return sorted(postedBy, ids, epochs, texts);
+            }
+            return new Timeline(postedBy, ids, epochs, texts);
+        }
+
+        /**
+         * @return a copy with the message inserted in order, or replacing the message with its ID.
+         */
+        Timeline with(Message message){
+            int position = Arrays.binarySearch(ids, message.message_id);
+            if(position >= 0){
+                String[] updatedTexts = texts.clone();
+                long[] updatedEpochs = epochs.clone();
+                updatedTexts[position] = message.message_text;
+                updatedEpochs[position] = message.time_posted_epoch;
+                return new Timeline(postedBy, ids, updatedEpochs, updatedTexts);
+            }
+            int insertAt = -position - 1;
+            int length = ids.length + 1;
+            int[] updatedIds = new int[length];
+            long[] updatedEpochs = new long[length];
+            String[] updatedTexts = new String[length];
+            System.arraycopy(ids, 0, updatedIds, 0, insertAt);
+            System.arraycopy(epochs, 0, updatedEpochs, 0, insertAt);
+            System.arraycopy(texts, 0, updatedTexts, 0, insertAt);
+            updatedIds[insertAt] = message.message_id;
+            updatedEpochs[insertAt] = message.time_posted_epoch;
+            updatedTexts[insertAt] = message.message_text;
+            System.arraycopy(ids, insertAt, updatedIds, insertAt + 1, ids.length - insertAt);
+            System.arraycopy(epochs, insertAt, updatedEpochs, insertAt + 1, ids.length - insertAt);
+            System.arraycopy(texts, insertAt, updatedTexts, insertAt + 1, ids.length - insertAt);
+            return new Timeline(postedBy, updatedIds, updatedEpochs, updatedTexts);
+        }
+
+        /**
+         * @return a copy without the message, or this timeline if it does not have it.
+         */
+        Timeline without(int messageId){
+            int position = Arrays.binarySearch(ids, messageId);
+            if(position < 0){
+                return this;
+            }
+            int length = ids.length - 1;
+            int[] updatedIds = new int[length];
+            long[] updatedEpochs = new long[length];
+            String[] updatedTexts = new String[length];
+            System.arraycopy(ids, 0, updatedIds, 0, position);
+            System.arraycopy(epochs, 0, updatedEpochs, 0, position);
+            System.arraycopy(texts, 0, updatedTexts, 0, position);
+            System.arraycopy(ids, position + 1, updatedIds, position, length - position);
+            System.arraycopy(epochs, position + 1, updatedEpochs, position, length - position);
+            System.arraycopy(texts, position + 1, updatedTexts, position, length - position);
+            return new Timeline(postedBy, updatedIds, updatedEpochs, updatedTexts);
+        }
+
+        /**
+         * @return a read-only list view that creates each Message when it is read.
+         */
+        private List<Message> asList(){
+            return new AbstractList<Message>(){
+                @Override
+                public Message get(int index){
+                    return new Message(ids[index], postedBy, texts[index], epochs[index]);
+                }
+
+                @Override
+                public int size(){
+                    return ids.length;
+                }
+            };
+        }
+
+        private static boolean isSorted(int[] ids){
+            for(int i = 1; i < ids.length; i++){
+                if(ids[i - 1] >= ids[i]){
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static Timeline sorted(int postedBy, int[] ids, long[] epochs, String[] texts){
+            Timeline timeline = new Timeline(postedBy, new int[0], new long[0], new String[0]);
+            for(int i = 0; i < ids.length; i++){
+                timeline = timeline.with(new Message(ids[i], postedBy, texts[i], epochs[i]));
+            }
+            return timeline;
+        }
+    }
+
+    /**
+     * @return the author's messages ordered by message_id as a read-only list, or null if they are not
+     *         cached. The same list instance is returned until the timeline changes.
+     */
+    public List<Message> get(int postedBy){
+        Timeline timeline = timelines.get(postedBy);
+        if(timeline == null){
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        timeline.referenced = true;
+        return timeline.view;
+    }
+
+    /**
+     * @return the stamp to pass to {@link #fill(int, long, List)} for a load starting now.
+     */
+    public long stamp(int postedBy){
+        return stamps.get(stripe(postedBy));
+    }
+
+    /**
+     * Caches an author's messages loaded from storage, unless a write for that author (or another author
+     * of its stripe) happened since stamp was taken.
+     */
+    public void fill(int postedBy, long stamp, List<Message> messages){
+        if(maxWeight <= 0){
+            return;
+        }
+        Timeline loaded = Timeline.of(postedBy, messages);
+        if(loaded.weight > maxWeight / 16){
+            return;
+        }
+        timelines.compute(postedBy, current -> {
+            if(stamps.get(stripe(postedBy)) != stamp){
+                return current;
+            }
+            weight.addAndGet(loaded.weight - (current == null ? 0 : current.weight));
+            return loaded;
+        });
+        if(weight.get() > maxWeight){
+            evict();
+        }
+    }
+
+    /**
+     * Adds a new or edited message to its author's cached timeline, replacing an older version of it.
+     */
+    public void put(Message message){
+        patch(message.posted_by, current -> current.with(message));
+    }
+
+    /**
+     * Removes a deleted message from its author's cached timeline.
+     */
+    public void remove(int postedBy, int messageId){
+        patch(postedBy, current -> current.without(messageId));
+    }
+
+    /**
+     * Drops an author's cached timeline, eg after a write to it was rolled back.
+     */
+    public void invalidate(int postedBy){
+        timelines.compute(postedBy, current -> {
+            stamps.incrementAndGet(stripe(postedBy));
+            if(current != null){
+                weight.addAndGet(-current.weight);
+            }
+            return null;
+        });
+    }
+
+    private void patch(int postedBy, UnaryOperator<Timeline> change){
+        timelines.compute(postedBy, current -> {
+            // bumped under the stripe lock of the author, so a fill for it cannot slip in between
+            stamps.incrementAndGet(stripe(postedBy));
+            if(current == null){
+                return null;
+            }
+            Timeline patched = change.apply(current);
+            weight.addAndGet(patched.weight - current.weight);
+            return patched;
+        });
+        if(weight.get() > maxWeight){
+            evict();
+        }
+    }
+
+    /**
+     * Sweeps the timelines from where the last sweep stopped until the cache is back under its weight,
+     * sparing each referenced timeline once.
+     */
+    private synchronized void evict(){
+        int[] keys = timelines.keys();
+        for(int visited = 0; visited < keys.length * 2 && weight.get() > maxWeight; visited++){
+            int key = keys[hand++ % keys.length];
+            timelines.compute(key, current -> {
+                if(current == null){
+                    return null;
+                }
+                if(current.referenced){
+                    current.referenced = false;
+                    return current;
+                }
+                weight.addAndGet(-current.weight);
+                evictions.incrementAndGet();
+                return null;
+            });
+        }
+        hand %= Math.max(1, keys.length);
+    }
+
+    /**
+     * Drops every cached timeline. Every stamp is bumped first, so a load that started before the clear
+     * cannot fill its timeline back afterwards.
+     */
+    public void clear(){
+        for(int i = 0; i < STAMP_STRIPES; i++){
+            stamps.incrementAndGet(i);
+        }
+        for(int key : timelines.keys()){
+            timelines.compute(key, current -> {
+                if(current != null){
+                    weight.addAndGet(-current.weight);
+                }
+                return null;
+            });
+        }
+    }
+
+    private static int stripe(int postedBy){
+        return postedBy & (STAMP_STRIPES - 1);
+    }
+
+    public int size(){
+        return timelines.size();
+    }
+
+    /**
+     * @return the estimated bytes of the cached timelines.
+     */
+    public long getWeight(){
+        return weight.get();
+    }
+
+    public long getMaxWeight(){
+        return maxWeight;
+    }
+
+    public long getHits(){
+        return hits.get();
+    }
+
+    public long getMisses(){
+        return misses.get();
+    }
+
+    public long getEvictions(){
+        return evictions.get();
+    }
+}
@@ -0,0 +1,93 @@
+package Util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * An AIMD concurrency limit for calls to one backend. Callers take a permit with {@link #tryAcquire()}
+ * and return it with {@link #release(long)}, passing how long they held it. When a call takes longer
+ * than the target latency the limit is cut by a tenth (multiplicative decrease); when calls are fast and
+ * the limit is actually being used it grows by about one per limit's worth of calls (additive increase).
+ * One congestion episode cuts the limit once: slow calls that were already running at the last cut do not
+ * cut it again, so a burst of them returning together is not counted once per call.
+ * Callers over the limit are refused immediately instead of queueing.
+ */
+public class AdaptiveLimiter {
+    private static final double BACKOFF = 0.9;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final long targetNanos;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final LongAdder rejected = new LongAdder();
+    // only changed under this lock; read without it
+    private volatile double limit;
+    // when the limit was last cut; guarded by this
+    private long lastDecreaseNanos = System.nanoTime();
+
+    /**
+     * @param initialLimit the starting limit.
+     * @param minLimit the limit never drops below this.
+     * @param maxLimit the limit never grows past this.
+     * @param targetMillis calls slower than this shrink the limit.
+     */
+    public AdaptiveLimiter(int initialLimit, int minLimit, int maxLimit, long targetMillis){
+        this.minLimit = Math.max(1, minLimit);
+        this.maxLimit = Math.max(this.minLimit, maxLimit);
+        this.limit = Math.min(this.maxLimit, Math.max(this.minLimit, initialLimit));
+        this.targetNanos = TimeUnit.MILLISECONDS.toNanos(targetMillis);
+    }
+
+    /**
+     * @return true if a permit was taken; it must be given back with {@link #release(long)}.
+     */
+    public boolean tryAcquire(){
+        while(true){
+            int current = inFlight.get();
+            if(current >= (int) limit){
+                rejected.increment();
+                return false;
+            }
+            if(inFlight.compareAndSet(current, current + 1)){
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Returns a permit and adjusts the limit from the call's latency.
+     * @param latencyNanos how long the permit was held.
+     */
+    public void release(long latencyNanos){
+        int inFlightBefore = inFlight.getAndDecrement();
+        long now = System.nanoTime();
+        synchronized(this){
+            if(latencyNanos > targetNanos){
+                // a call started before the last cut saw the old limit's congestion, which was already acted on
+                if(now - latencyNanos - lastDecreaseNanos >= 0){
+                    limit = Math.max(minLimit, limit * BACKOFF);
+                    lastDecreaseNanos = now;
+                }
+            }else if(inFlightBefore >= (int) limit / 2){
+                // only grow when the current limit is at least half used, so idle periods do not inflate it
+                limit = Math.min(maxLimit, limit + 1.0 / limit);
+            }
+        }
+    }
+
+    public int getLimit(){
+        return (int) limit;
+    }
+
+    public int getInFlight(){
+        return inFlight.get();
+    }
+
+    /**
+     * @return the number of callers refused so far.
+     */
+    public long getRejected(){
+        return rejected.sum();
+    }
+}
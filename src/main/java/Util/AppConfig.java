@@ -0,0 +1,44 @@
+package Util;
+
+/**
+ * Startup configuration. Every setting is read from a system property prefixed with "socialmedia."
+ * (eg -Dsocialmedia.storage=memory) or, if that is not set, from the matching environment variable
+ * (eg SOCIALMEDIA_STORAGE=memory). Settings are read when they are used, so tests can change them
+ * before creating a controller.
+ */
+public class AppConfig {
+
+    /**
+     * @return the configured value for key, or defaultValue if it is not set.
+     */
+    public static String getString(String key, String defaultValue){
+        String value = System.getProperty("socialmedia." + key);
+        if(value == null){
+            value = System.getenv("SOCIALMEDIA_" + key.toUpperCase().replace('.', '_'));
+        }
+        return value == null || value.isEmpty() ? defaultValue : value;
+    }
+
+    public static int getInt(String key, int defaultValue){
+        return Integer.parseInt(getString(key, Integer.toString(defaultValue)));
+    }
+
+    public static long getLong(String key, long defaultValue){
+        return Long.parseLong(getString(key, Long.toString(defaultValue)));
+    }
+
+    public static double getDouble(String key, double defaultValue){
+        return Double.parseDouble(getString(key, Double.toString(defaultValue)));
+    }
+
+    public static boolean getBoolean(String key, boolean defaultValue){
+        return Boolean.parseBoolean(getString(key, Boolean.toString(defaultValue)));
+    }
+
+    /**
+     * @return the storage engine to use: "h2" (default) or "memory".
+     */
+    public static String storageEngine(){
+        return getString("storage", "h2");
+    }
+}
@@ -0,0 +1,327 @@
+package Util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.UnaryOperator;
+
+/**
+ * A concurrent map from primitive int keys to objects. Keys are never boxed: each stripe is an
+ * open-addressing table of int keys with linear probing. The key space is split over a fixed number of
+ * stripes, each guarded by its own read/write lock, so writers to different stripes never contend and
+ * readers only block on a writer of the same stripe.
+ *
+ * Null values are not allowed; a null return always means "no mapping".
+ * @param <V> the value type
+ */
+public class ConcurrentIntMap<V> {
+    private static final int DEFAULT_STRIPES = 16;
+    private static final int INITIAL_STRIPE_CAPACITY = 16;
+
+    private final Stripe<V>[] stripes;
+    private final int stripeMask;
+
+    public ConcurrentIntMap(){
+        this(DEFAULT_STRIPES);
+    }
+
+    /**
+     * @param stripeCount the number of independently locked stripes, rounded up to a power of two.
+     */
+    @SuppressWarnings("unchecked")
+    public ConcurrentIntMap(int stripeCount){
+        int count = Integer.highestOneBit(Math.max(1, stripeCount - 1)) << 1;
+        stripes = new Stripe[count];
+        for(int i = 0; i < count; i++){
+            stripes[i] = new Stripe<>(Integer.numberOfTrailingZeros(count));
+        }
+        stripeMask = count - 1;
+    }
+
+    /**
+     * @return the value mapped to key, or null if there is none.
+     */
+    public V get(int key){
+        Stripe<V> stripe = stripes[hash(key) & stripeMask];
+        stripe.lock.readLock().lock();
+        try{
+            return stripe.get(key);
+        }finally{
+            stripe.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return true if key is mapped to a value.
+     */
+    public boolean containsKey(int key){
+        return get(key) != null;
+    }
+
+    /**
+     * Maps key to value.
+     * @return the previous value, or null if there was none.
+     */
+    public V put(int key, V value){
+        if(value == null){
+            throw new NullPointerException("value");
+        }
+        Stripe<V> stripe = stripes[hash(key) & stripeMask];
+        stripe.lock.writeLock().lock();
+        try{
+            return stripe.put(key, value, false);
+        }finally{
+            stripe.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Maps key to value unless key already has a value.
+     * @return the existing value, or null if value was stored.
+     */
+    public V putIfAbsent(int key, V value){
+        if(value == null){
+            throw new NullPointerException("value");
+        }
+        Stripe<V> stripe = stripes[hash(key) & stripeMask];
+        stripe.lock.writeLock().lock();
+        try{
+            return stripe.put(key, value, true);
+        }finally{
+            stripe.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes the mapping for key.
+     * @return the removed value, or null if there was none.
+     */
+    public V remove(int key){
+        Stripe<V> stripe = stripes[hash(key) & stripeMask];
+        stripe.lock.writeLock().lock();
+        try{
+            return stripe.remove(key);
+        }finally{
+            stripe.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Atomically replaces the value of key with the result of the function. The function runs under the
+     * stripe's write lock, so it should be short and must not touch this map.
+     * @param function receives the current value (or null) and returns the new value, or null to remove
+     *                 the mapping.
+     * @return the new value, or null if the mapping was removed.
+     */
+    public V compute(int key, UnaryOperator<V> function){
+        Stripe<V> stripe = stripes[hash(key) & stripeMask];
+        stripe.lock.writeLock().lock();
+        try{
+            V current = stripe.get(key);
+            V updated = function.apply(current);
+            if(updated == null){
+                if(current != null){
+                    stripe.remove(key);
+                }
+            }else{
+                stripe.put(key, updated, false);
+            }
+            return updated;
+        }finally{
+            stripe.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return the number of mappings. Not an atomic snapshot when writers are active.
+     */
+    public int size(){
+        int size = 0;
+        for(Stripe<V> stripe : stripes){
+            stripe.lock.readLock().lock();
+            try{
+                size += stripe.size;
+            }finally{
+                stripe.lock.readLock().unlock();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * @return a copy of all values, stripe by stripe, in no particular order.
+     */
+    public List<V> values(){
+        List<V> values = new ArrayList<>();
+        for(Stripe<V> stripe : stripes){
+            stripe.lock.readLock().lock();
+            try{
+                for(Object value : stripe.values){
+                    if(value != null){
+                        @SuppressWarnings("unchecked")
+                        V v = (V) value;
+                        values.add(v);
+                    }
+                }
+            }finally{
+                stripe.lock.readLock().unlock();
+            }
+        }
+        return values;
+    }
+
+    /**
+     * @return a copy of all keys, stripe by stripe, in no particular order.
+     */
+    public int[] keys(){
+        int[] keys = new int[16];
+        int count = 0;
+        for(Stripe<V> stripe : stripes){
+            stripe.lock.readLock().lock();
+            try{
+                for(int i = 0; i < stripe.values.length; i++){
+                    if(stripe.values[i] != null){
+                        if(count == keys.length){
+                            keys = Arrays.copyOf(keys, count * 2);
+                        }
+                        keys[count++] = stripe.keys[i];
+                    }
+                }
+            }finally{
+                stripe.lock.readLock().unlock();
+            }
+        }
+        return Arrays.copyOf(keys, count);
+    }
+
+    /**
+     * Removes every mapping.
+     */
+    public void clear(){
+        for(Stripe<V> stripe : stripes){
+            stripe.lock.writeLock().lock();
+            try{
+                stripe.keys = new int[INITIAL_STRIPE_CAPACITY];
+                stripe.values = new Object[INITIAL_STRIPE_CAPACITY];
+                stripe.size = 0;
+            }finally{
+                stripe.lock.writeLock().unlock();
+            }
+        }
+    }
+
+    private static int hash(int key){
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * One open-addressing table. An empty slot is one whose value is null.
+     */
+    private static final class Stripe<V> {
+        final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        /** the hash bits used to pick the stripe are shifted away before picking a slot */
+        final int shift;
+        int[] keys = new int[INITIAL_STRIPE_CAPACITY];
+        Object[] values = new Object[INITIAL_STRIPE_CAPACITY];
+        int size;
+
+        Stripe(int shift){
+            this.shift = shift;
+        }
+
+        @SuppressWarnings("unchecked")
+        V get(int key){
+            int mask = keys.length - 1;
+            for(int i = slotOf(key) & mask; values[i] != null; i = (i + 1) & mask){
+                if(keys[i] == key){
+                    return (V) values[i];
+                }
+            }
+            return null;
+        }
+
+        @SuppressWarnings("unchecked")
+        V put(int key, V value, boolean onlyIfAbsent){
+            int mask = keys.length - 1;
+            int i = slotOf(key) & mask;
+            for(; values[i] != null; i = (i + 1) & mask){
+                if(keys[i] == key){
+                    V previous = (V) values[i];
+                    if(!onlyIfAbsent){
+                        values[i] = value;
+                    }
+                    return previous;
+                }
+            }
+            keys[i] = key;
+            values[i] = value;
+            if(++size * 4 > keys.length * 3){
+                resize();
+            }
+            return null;
+        }
+
+        @SuppressWarnings("unchecked")
+        V remove(int key){
+            int mask = keys.length - 1;
+            int i = slotOf(key) & mask;
+            for(; values[i] != null; i = (i + 1) & mask){
+                if(keys[i] == key){
+                    V previous = (V) values[i];
+                    shiftBack(i);
+                    size--;
+                    return previous;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Backward-shift deletion: moves later entries of the probe chain into the hole so that lookups
+         * never need tombstones.
+         */
+        private void shiftBack(int hole){
+            int mask = keys.length - 1;
+            int i = hole;
+            while(true){
+                i = (i + 1) & mask;
+                if(values[i] == null){
+                    break;
+                }
+                int home = slotOf(keys[i]) & mask;
+                // move the entry if its home slot is not cyclically within (hole, i]
+                boolean between = hole <= i ? (hole < home && home <= i) : (hole < home || home <= i);
+                if(!between){
+                    keys[hole] = keys[i];
+                    values[hole] = values[i];
+                    hole = i;
+                }
+            }
+            values[hole] = null;
+        }
+
+        private void resize(){
+            int[] oldKeys = keys;
+            Object[] oldValues = values;
+            keys = new int[oldKeys.length * 2];
+            values = new Object[oldValues.length * 2];
+            int mask = keys.length - 1;
+            for(int j = 0; j < oldKeys.length; j++){
+                if(oldValues[j] != null){
+                    int i = slotOf(oldKeys[j]) & mask;
+                    while(values[i] != null){
+                        i = (i + 1) & mask;
+                    }
+                    keys[i] = oldKeys[j];
+                    values[i] = oldValues[j];
+                }
+            }
+        }
+
+        private int slotOf(int key){
+            return hash(key) >>> shift;
+        }
+    }
+}
@@ -3,9 +3,14 @@ package Util;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
-import org.h2.jdbcx.JdbcDataSource;
+import org.h2.jdbcx.JdbcConnectionPool;
 import org.h2.tools.RunScript;
 
 /**
@@ -13,7 +18,8 @@ import org.h2.tools.RunScript;
  * our database. This class utilizes the singleton design pattern. We will be
  * utilizing an in-memory called h2database for the sql demos.
  *
- * DO NOT CHANGE ANYTHING IN THIS CLASS
+ * Connections come from a bounded pool, so every connection must be closed (see
+ * {@link #closeConnection(Connection)}) to hand it back.
  */
 public class ConnectionUtil {
 
@@ -32,43 +38,220 @@ public class ConnectionUtil {
 	private static String password = "sa";
 
 	/**
-	 * DataSource for pooling. Pooling enables the creation of multiple connections when connections are closed.
+	 * Connection pool. Closed connections are kept open for reuse, up to the "db.poolSize" setting;
+	 * callers wait for a free connection when all of them are in use.
 	 */
-	private static JdbcDataSource pool = new JdbcDataSource();
+	private static JdbcConnectionPool pool = JdbcConnectionPool.create(url, username, password);
 
 	/**
-	 * static initialization block to establish credentials for DataSoure Pool
+	 * Concurrency limit for this pool, adjusted from how long connections are held. It never grows past
+	 * the pool size, so callers over the limit are refused instead of waiting for a free connection.
+	 * Null when "db.limit.enabled" is false.
+	 */
+	private static AdaptiveLimiter limiter;
+
+	/**
+	 * Statements slower than "slowQuery.thresholdMillis", see {@link SlowQueryLog}.
+	 */
+	private static SlowQueryLog slowQueryLog = SlowQueryLog.fromConfig();
+
+	/**
+	 * Callers inside pool.getConnection(), which blocks while every connection is in use.
+	 */
+	private static final AtomicInteger waiting = new AtomicInteger();
+
+	/**
+	 * Connections checked out of the pool so far, by {@link #checkOut()}.
+	 */
+	private static final LongAdder checkouts = new LongAdder();
+
+	/**
+	 * static initialization block to size the pool and its limiter
 	 */
 	static {
-		pool.setURL(url);
-		pool.setUser(username);
-		pool.setPassword(password);
+		int poolSize = AppConfig.getInt("db.poolSize", 16);
+		pool.setMaxConnections(poolSize);
+		if (AppConfig.getBoolean("db.limit.enabled", true)) {
+			limiter = new AdaptiveLimiter(poolSize, AppConfig.getInt("db.limit.min", 1), poolSize,
+					AppConfig.getLong("db.limit.targetMillis", 100));
+		}
 	}
 
 	/**
-	 * @return an active connection to the database
+	 * @return an active connection to the database, whose statements are traced (see {@link Tracer}). Within
+	 *         a {@link UnitOfWork} this is the unit's connection, and closing it does not end its transaction.
+	 * @throws DatabaseOverloadedException if the concurrency limit is reached.
 	 */
 	public static Connection getConnection() {
+		UnitOfWork unit = UnitOfWork.current();
+		if (unit != null) {
+			return unit.getConnection();
+		}
+		return checkOut();
+	}
+
+	/**
+	 * @return a connection checked out of the pool, whose statements are traced (see {@link Tracer})
+	 * @throws DatabaseOverloadedException if the concurrency limit is reached.
+	 */
+	static Connection checkOut() {
+		if (limiter != null && !limiter.tryAcquire()) {
+			throw new DatabaseOverloadedException("Database concurrency limit of " + limiter.getLimit() + " reached");
+		}
+		checkouts.increment();
+		waiting.incrementAndGet();
 		try {
-			return pool.getConnection();
+			return InstrumentedConnection.wrap(pool.getConnection(), limiter, slowQueryLog);
 		} catch (SQLException e) {
+			if (limiter != null) limiter.release(0);
 			e.printStackTrace();
+		} finally {
+			waiting.decrementAndGet();
 		}
 
 		return null;
 	}
 
+	/**
+	 * @return a pooled connection that bypasses the limiter and is not traced or timed, for the slow query
+	 *         log's own EXPLAIN statements; null if none could be opened.
+	 */
+	static Connection getUninstrumentedConnection() {
+		try {
+			return pool.getConnection();
+		} catch (SQLException e) {
+			System.out.println(e.getMessage());
+		}
+		return null;
+	}
+
+	/**
+	 * @return the log of slow statements run on this pool.
+	 */
+	public static SlowQueryLog getSlowQueryLog() {
+		return slowQueryLog;
+	}
+
+	/**
+	 * @return the pool's concurrency limiter, or null if limiting is disabled.
+	 */
+	public static AdaptiveLimiter getLimiter() {
+		return limiter;
+	}
+
+	/**
+	 * Returns a connection to the pool. Safe to call with null.
+	 */
+	public static void closeConnection(Connection connection) {
+		try {
+			if (connection != null) connection.close();
+		} catch (SQLException e) {
+			System.out.println(e.getMessage());
+		}
+	}
+
+	/**
+	 * @return the number of connections currently checked out of the pool.
+	 */
+	public static int getActiveConnections() {
+		return pool.getActiveConnections();
+	}
+
+	/**
+	 * @return the number of connections that can be checked out without waiting. H2 opens them lazily,
+	 *         so some may not be open yet.
+	 */
+	public static int getIdleConnections() {
+		return Math.max(0, pool.getMaxConnections() - pool.getActiveConnections());
+	}
+
+	/**
+	 * @return the number of connections checked out of the pool so far.
+	 */
+	public static long getCheckouts() {
+		return checkouts.sum();
+	}
+
+	/**
+	 * @return the number of callers waiting to check out a connection.
+	 */
+	public static int getWaitingConnections() {
+		return waiting.get();
+	}
+
+	/**
+	 * @return the maximum number of connections the pool hands out.
+	 */
+	public static int getMaxConnections() {
+		return pool.getMaxConnections();
+	}
+
+	/**
+	 * Opens every pooled connection up front, so the first requests do not pay for opening database
+	 * sessions.
+	 * @return the number of connections opened.
+	 */
+	public static int prime() {
+		return forEachPooledConnection(connection -> { });
+	}
+
+	/**
+	 * Prepares the given statements once on every pooled connection. H2 keeps a cache of parsed
+	 * statements per session, so later prepareStatement calls for the same SQL skip parsing and planning.
+	 * @return the number of connections the statements were prepared on.
+	 */
+	public static int prepareStatements(List<String> statements) {
+		return forEachPooledConnection(connection -> {
+			for (String sql : statements) {
+				PreparedStatement preparedStatement = connection.prepareStatement(sql);
+				preparedStatement.close();
+			}
+		});
+	}
+
+	private interface ConnectionTask {
+		void run(Connection connection) throws SQLException;
+	}
+
+	/**
+	 * Checks out every connection that is not in use at once, so that each pooled session is visited,
+	 * runs the task on each and hands them all back. Connections in use are skipped rather than waited
+	 * for, and concurrent callers are serialized so they cannot starve each other.
+	 */
+	private static synchronized int forEachPooledConnection(ConnectionTask task) {
+		List<Connection> connections = new ArrayList<>();
+		try {
+			int free = pool.getMaxConnections() - pool.getActiveConnections();
+			for (int i = 0; i < free; i++) {
+				connections.add(pool.getConnection());
+			}
+			for (Connection connection : connections) {
+				task.run(connection);
+			}
+		} catch (SQLException e) {
+			System.out.println("Could not prime connection pool: " + e.getMessage());
+		} finally {
+			for (Connection connection : connections) {
+				closeConnection(connection);
+			}
+		}
+		return connections.size();
+	}
+
 	/**
 	 * For the purpose of testing, we will need to drop and recreate our database
 	 * tables to keep it consistent across all tests. The method will read the sql
 	 * file in resources. This will be performed before every test.
 	 */
 	public static void resetTestDatabase() {
+		Connection connection = getConnection();
 		try {
 			FileReader sqlReader = new FileReader("src/main/resources/SocialMedia.sql");
-			RunScript.execute(getConnection(), sqlReader);
+			RunScript.execute(connection, sqlReader);
 		} catch (SQLException | FileNotFoundException e) {
 			e.printStackTrace();
+		} finally {
+			closeConnection(connection);
 		}
 	}
 }
@@ -0,0 +1,97 @@
+package Util;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Runs blocking storage calls off the request threads, for the asynchronous service methods. The pool is
+ * as large as the connection pool by default, so it never has more calls in flight than there are
+ * connections, and its queue is bounded: a call that finds it full fails with
+ * {@link DatabaseOverloadedException} instead of waiting.
+ *
+ * Calls run within the trace and {@link UnitOfWork} of the thread that submitted them (see
+ * {@link Tracer#propagate(Runnable)}), and so do the stages that depend on their future, because the
+ * future is completed on the worker before the trace is detached from it.
+ */
+public class DatabaseExecutor {
+    private static DatabaseExecutor shared;
+
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * @param threads the number of worker threads.
+     * @param queueCapacity the number of calls that may wait for a worker.
+     */
+    public DatabaseExecutor(int threads, int queueCapacity){
+        AtomicInteger threadCount = new AtomicInteger();
+        executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+            Thread thread = new Thread(runnable, "db-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * @return the executor shared by every service, sized by the "db.executor.threads" (default
+     *         "db.poolSize") and "db.executor.queueCapacity" settings.
+     */
+    public static synchronized DatabaseExecutor shared(){
+        if(shared == null){
+            shared = new DatabaseExecutor(AppConfig.getInt("db.executor.threads", AppConfig.getInt("db.poolSize", 16)),
+                    AppConfig.getInt("db.executor.queueCapacity", 1000));
+        }
+        return shared;
+    }
+
+    /**
+     * Runs a call on a worker.
+     * @return a future of the call's result; failed with {@link DatabaseOverloadedException} if the queue
+     *         is full.
+     */
+    public <T> CompletableFuture<T> supply(Supplier<T> call){
+        CompletableFuture<T> future = new CompletableFuture<>();
+        try{
+            executor.execute(Tracer.propagate(UnitOfWork.propagate(() -> {
+                try{
+                    future.complete(call.get());
+                }catch(Throwable e){
+                    future.completeExceptionally(e);
+                }
+            })));
+        }catch(RejectedExecutionException e){
+            future.completeExceptionally(new DatabaseOverloadedException("Database executor queue is full"));
+        }
+        return future;
+    }
+
+    /**
+     * @return the number of workers running a call.
+     */
+    public int getActive(){
+        return executor.getActiveCount();
+    }
+
+    /**
+     * @return the number of calls waiting for a worker.
+     */
+    public int getQueued(){
+        return executor.getQueue().size();
+    }
+
+    public int getThreads(){
+        return executor.getMaximumPoolSize();
+    }
+
+    /**
+     * @return the number of calls that may wait for a worker.
+     */
+    public int getQueueCapacity(){
+        return executor.getQueue().size() + executor.getQueue().remainingCapacity();
+    }
+}
@@ -0,0 +1,11 @@
+package Util;
+
+/**
+ * Thrown instead of waiting for the database when its concurrency limit is reached (see
+ * {@link AdaptiveLimiter}). The controller answers it with 503.
+ */
+public class DatabaseOverloadedException extends RuntimeException {
+    public DatabaseOverloadedException(String message){
+        super(message);
+    }
+}
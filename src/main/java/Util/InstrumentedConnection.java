@@ -0,0 +1,110 @@
+package Util;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Wraps every pooled connection handed out by {@link ConnectionUtil}. Statements created on it are
+ * wrapped too, so that each execution is traced (see {@link Tracer}) and timed for the
+ * {@link SlowQueryLog}, and recorded as a {@link QueryEvent} when Flight Recorder is on. If the
+ * connection was handed out
+ * under an {@link AdaptiveLimiter} permit, closing it returns the permit, reporting its slowest statement
+ * execution as the call's latency; the time the caller held the connection between statements says
+ * nothing about the database.
+ */
+class InstrumentedConnection implements InvocationHandler {
+    private final Connection connection;
+    // null when limiting is disabled
+    private final AdaptiveLimiter limiter;
+    private final SlowQueryLog slowQueryLog;
+    private long slowestExecutionNanos;
+    private boolean released;
+    // query events waiting for their rows to be read, committed on close
+    private List<QueryEvent> pendingEvents;
+
+    private InstrumentedConnection(Connection connection, AdaptiveLimiter limiter, SlowQueryLog slowQueryLog){
+        this.connection = connection;
+        this.limiter = limiter;
+        this.slowQueryLog = slowQueryLog;
+    }
+
+    static Connection wrap(Connection connection, AdaptiveLimiter limiter, SlowQueryLog slowQueryLog){
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, new InstrumentedConnection(connection, limiter, slowQueryLog));
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        String name = method.getName();
+        if(name.equals("close") && method.getParameterCount() == 0){
+            try{
+                connection.close();
+            }finally{
+                commitPendingEvents();
+                release();
+            }
+            return null;
+        }
+        Object result = invokeOn(connection, method, args);
+        if(result instanceof PreparedStatement && name.equals("prepareStatement")){
+            return InstrumentedStatement.wrap((PreparedStatement) result, (String) args[0], this);
+        }
+        if(result instanceof Statement && name.equals("createStatement")){
+            return InstrumentedStatement.wrap((Statement) result, null, this);
+        }
+        return result;
+    }
+
+    static Object invokeOn(Object target, Method method, Object[] args) throws Throwable {
+        try{
+            return method.invoke(target, args);
+        }catch(InvocationTargetException e){
+            throw e.getCause();
+        }
+    }
+
+    SlowQueryLog getSlowQueryLog(){
+        return slowQueryLog;
+    }
+
+    /**
+     * Holds back a query's event until the connection is closed, by when the caller has read the rows it
+     * wanted.
+     */
+    synchronized void deferEvent(QueryEvent event){
+        if(pendingEvents == null){
+            pendingEvents = new ArrayList<>();
+        }
+        pendingEvents.add(event);
+    }
+
+    private synchronized void commitPendingEvents(){
+        if(pendingEvents != null){
+            for(QueryEvent event : pendingEvents){
+                event.commit();
+            }
+            pendingEvents = null;
+        }
+    }
+
+    /**
+     * Records how long a statement on this connection took to execute, for the limiter's latency sample.
+     */
+    synchronized void recordExecution(long nanos){
+        slowestExecutionNanos = Math.max(slowestExecutionNanos, nanos);
+    }
+
+    private synchronized void release(){
+        if(!released && limiter != null){
+            released = true;
+            limiter.release(slowestExecutionNanos);
+        }
+    }
+}
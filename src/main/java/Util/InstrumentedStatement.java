@@ -0,0 +1,163 @@
+package Util;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Wraps a statement of an {@link InstrumentedConnection} so that every execute call runs in a span named
+ * after its SQL and is timed for the {@link SlowQueryLog}. Parameters set on a prepared statement are
+ * remembered so a slow execution can be logged and explained with them. While Flight Recorder records
+ * {@link QueryEvent}s, each execution is also recorded as one, with the rows read from a query counted
+ * through a wrapper of its result set. Every execution's time, failed ones included, is reported to the
+ * connection for its limiter.
+ */
+class InstrumentedStatement implements InvocationHandler {
+    private static final Object[] NO_PARAMETERS = new Object[0];
+
+    private final Statement statement;
+    // the SQL of a prepared statement; null for plain statements, which pass it to execute
+    private final String sql;
+    private final InstrumentedConnection connection;
+    private final SlowQueryLog slowQueryLog;
+    // parameter i is at index i - 1
+    private Object[] parameters = NO_PARAMETERS;
+
+    private InstrumentedStatement(Statement statement, String sql, InstrumentedConnection connection){
+        this.statement = statement;
+        this.sql = sql;
+        this.connection = connection;
+        this.slowQueryLog = connection.getSlowQueryLog();
+    }
+
+    static Statement wrap(Statement statement, String sql, InstrumentedConnection connection){
+        Class<?> type = statement instanceof PreparedStatement ? PreparedStatement.class : Statement.class;
+        return (Statement) Proxy.newProxyInstance(Statement.class.getClassLoader(),
+                new Class<?>[]{type}, new InstrumentedStatement(statement, sql, connection));
+    }
+
+    static PreparedStatement wrap(PreparedStatement statement, String sql, InstrumentedConnection connection){
+        return (PreparedStatement) wrap((Statement) statement, sql, connection);
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        String name = method.getName();
+        if(!name.startsWith("execute")){
+            if(name.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer){
+                remember((Integer) args[0], args[1]);
+            }else if(name.equals("clearParameters")){
+                parameters = NO_PARAMETERS;
+            }
+            return InstrumentedConnection.invokeOn(statement, method, args);
+        }
+        String executed = args != null && args.length > 0 && args[0] instanceof String ? (String) args[0] : sql;
+        Object result;
+        QueryEvent event = new QueryEvent();
+        event.begin();
+        long start = System.nanoTime();
+        long duration;
+        try(Trace.Span span = Tracer.span(executed)){
+            result = InstrumentedConnection.invokeOn(statement, method, args);
+        }finally{
+            // a statement failing on a lock timeout is the slowest sample of all
+            duration = System.nanoTime() - start;
+            connection.recordExecution(duration);
+        }
+        event.end();
+        SlowQueryLog.Entry entry = null;
+        if(slowQueryLog != null && slowQueryLog.isSlow(duration)){
+            entry = logSlow(executed, duration, result);
+        }
+        if(event.shouldCommit()){
+            event.route = Tracer.route();
+            event.sql = executed;
+            if(!(result instanceof ResultSet)){
+                event.rows = updateCount(result);
+                event.commit();
+                event = null;
+            }else{
+                connection.deferEvent(event);
+            }
+        }else{
+            event = null;
+        }
+        if(result instanceof ResultSet && (entry != null || event != null)){
+            return CountingResultSet.wrap((ResultSet) result, entry, event);
+        }
+        return result;
+    }
+
+    private void remember(int index, Object value){
+        if(index > parameters.length){
+            parameters = Arrays.copyOf(parameters, Math.max(index, parameters.length * 2));
+        }
+        parameters[index - 1] = value;
+    }
+
+    /**
+     * Logs a slow execution. A query's rows are counted later, as the caller reads them.
+     */
+    private SlowQueryLog.Entry logSlow(String executed, long duration, Object result) throws Exception {
+        int count = parameters.length;
+        while(count > 0 && parameters[count - 1] == null){
+            count--;
+        }
+        List<Object> bound = new ArrayList<>(Arrays.asList(parameters).subList(0, count));
+        return slowQueryLog.record(executed, bound, duration, updateCount(result));
+    }
+
+    /**
+     * @return the rows changed by an execution; 0 for queries.
+     */
+    private long updateCount(Object result) throws Exception {
+        if(result instanceof Integer || result instanceof Long){
+            return ((Number) result).longValue();
+        }else if(result instanceof Boolean && !(Boolean) result){
+            return statement.getUpdateCount();
+        }
+        return 0;
+    }
+
+    /**
+     * Counts the rows read from the result of a query into its slow log entry and its event, either of
+     * which may be null.
+     */
+    private static class CountingResultSet implements InvocationHandler {
+        private final ResultSet resultSet;
+        private final SlowQueryLog.Entry entry;
+        private final QueryEvent event;
+
+        private CountingResultSet(ResultSet resultSet, SlowQueryLog.Entry entry, QueryEvent event){
+            this.resultSet = resultSet;
+            this.entry = entry;
+            this.event = event;
+        }
+
+        static ResultSet wrap(ResultSet resultSet, SlowQueryLog.Entry entry, QueryEvent event){
+            return (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(),
+                    new Class<?>[]{ResultSet.class}, new CountingResultSet(resultSet, entry, event));
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            Object result = InstrumentedConnection.invokeOn(resultSet, method, args);
+            if(method.getName().equals("next") && Boolean.TRUE.equals(result)){
+                if(entry != null){
+                    entry.countRow();
+                }
+                if(event != null){
+                    // only read by the commit on the connection's close, which happens after this
+                    event.rows++;
+                }
+            }
+            return result;
+        }
+    }
+}
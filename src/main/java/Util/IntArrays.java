@@ -0,0 +1,51 @@
+package Util;
+
+import java.util.Arrays;
+
+/**
+ * Copy-on-write helpers for sorted int arrays, used for the per-author message ID indexes.
+ * The input array is never modified, so a reader holding the old array keeps a consistent view.
+ */
+public class IntArrays {
+
+    /**
+     * @return a copy of sorted with value inserted in order, or sorted itself if value is already present.
+     *         A null array is treated as empty.
+     */
+    public static int[] insertSorted(int[] sorted, int value){
+        if(sorted == null){
+            return new int[]{value};
+        }
+        int position = Arrays.binarySearch(sorted, value);
+        if(position >= 0){
+            return sorted;
+        }
+        int insertAt = -position - 1;
+        int[] updated = new int[sorted.length + 1];
+        System.arraycopy(sorted, 0, updated, 0, insertAt);
+        updated[insertAt] = value;
+        System.arraycopy(sorted, insertAt, updated, insertAt + 1, sorted.length - insertAt);
+        return updated;
+    }
+
+    /**
+     * @return a copy of sorted without value, sorted itself if value is absent, or null if the result
+     *         would be empty.
+     */
+    public static int[] removeSorted(int[] sorted, int value){
+        if(sorted == null){
+            return null;
+        }
+        int position = Arrays.binarySearch(sorted, value);
+        if(position < 0){
+            return sorted;
+        }
+        if(sorted.length == 1){
+            return null;
+        }
+        int[] updated = new int[sorted.length - 1];
+        System.arraycopy(sorted, 0, updated, 0, position);
+        System.arraycopy(sorted, position + 1, updated, position, sorted.length - position - 1);
+        return updated;
+    }
+}
@@ -0,0 +1,42 @@
+package Util;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * A small registry of named counters and gauges, served by GET /admin/metrics. Counters are LongAdders,
+ * so hot paths can increment them without contending; gauges are read only when a snapshot is taken.
+ * Names are dotted, eg "http.shed".
+ */
+public class Metrics {
+    private final ConcurrentHashMap<String, LongAdder> counters = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, LongSupplier> gauges = new ConcurrentHashMap<>();
+
+    /**
+     * @return the counter with this name, created on first use. Callers should keep the returned counter
+     *         rather than looking it up on every increment.
+     */
+    public LongAdder counter(String name){
+        return counters.computeIfAbsent(name, key -> new LongAdder());
+    }
+
+    /**
+     * Registers a value that is computed when metrics are read, replacing any gauge of the same name.
+     */
+    public void gauge(String name, LongSupplier value){
+        gauges.put(name, value);
+    }
+
+    /**
+     * @return the current value of every counter and gauge, by name.
+     */
+    public Map<String, Long> snapshot(){
+        Map<String, Long> values = new TreeMap<>();
+        counters.forEach((name, counter) -> values.put(name, counter.sum()));
+        gauges.forEach((name, gauge) -> values.put(name, gauge.getAsLong()));
+        return values;
+    }
+}
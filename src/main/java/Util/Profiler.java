@@ -0,0 +1,162 @@
+package Util;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import jdk.jfr.RecordingState;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.time.Duration;
+
+/**
+ * Starts and stops a JDK Flight Recorder recording of the running process on demand, for the
+ * /admin/jfr endpoints. One recording is kept at a time: it runs for the requested duration (at most
+ * "jfr.maxDurationSeconds") and stays available for download after it stops, until the next one is
+ * started. Recordings are kept on disk and bounded to "jfr.maxBytes".
+ *
+ * The profile names a JFR configuration: "default" has low overhead and can be left on, "profile"
+ * samples more, for chasing a latency spike. Both include the socialmedia.Request and socialmedia.Query
+ * events.
+ */
+public class Profiler {
+    private final long maxDurationSeconds;
+    private final long maxBytes;
+    private Recording recording;
+    private String profile;
+
+    /**
+     * The state of the current recording.
+     */
+    public static class Status {
+        private final long id;
+        private final String profile;
+        private final String state;
+        private final long startEpochMillis;
+        private final long durationSeconds;
+        private final long sizeBytes;
+
+        Status(Recording recording, String profile){
+            this.id = recording.getId();
+            this.profile = profile;
+            this.state = recording.getState().name();
+            this.startEpochMillis = recording.getStartTime() == null ? 0 : recording.getStartTime().toEpochMilli();
+            this.durationSeconds = recording.getDuration() == null ? 0 : recording.getDuration().getSeconds();
+            this.sizeBytes = recording.getSize();
+        }
+
+        public long getId(){
+            return id;
+        }
+
+        public String getProfile(){
+            return profile;
+        }
+
+        /**
+         * @return RUNNING, or STOPPED once the duration has passed or it was stopped.
+         */
+        public String getState(){
+            return state;
+        }
+
+        public long getStart_epoch_millis(){
+            return startEpochMillis;
+        }
+
+        public long getDuration_seconds(){
+            return durationSeconds;
+        }
+
+        /**
+         * @return the bytes written so far; 0 while running.
+         */
+        public long getSize_bytes(){
+            return sizeBytes;
+        }
+    }
+
+    public Profiler(long maxDurationSeconds, long maxBytes){
+        this.maxDurationSeconds = maxDurationSeconds;
+        this.maxBytes = maxBytes;
+    }
+
+    public static Profiler fromConfig(){
+        return new Profiler(AppConfig.getLong("jfr.maxDurationSeconds", 600),
+                AppConfig.getLong("jfr.maxBytes", 64L << 20));
+    }
+
+    /**
+     * Starts a recording, discarding the previous one.
+     * @param profile the name of a JFR configuration, eg "default" or "profile".
+     * @param durationSeconds how long to record, capped at "jfr.maxDurationSeconds".
+     * @throws IllegalArgumentException if there is no such configuration or the duration is not positive.
+     * @throws IllegalStateException if a recording is already running.
+     */
+    public synchronized Status start(String profile, long durationSeconds) throws IOException {
+        if(durationSeconds <= 0){
+            throw new IllegalArgumentException("duration must be positive");
+        }
+        if(recording != null && recording.getState() == RecordingState.RUNNING){
+            throw new IllegalStateException("Recording " + recording.getId() + " is already running");
+        }
+        Configuration configuration;
+        try{
+            configuration = Configuration.getConfiguration(profile);
+        }catch(NoSuchFileException | ParseException e){
+            throw new IllegalArgumentException("Unknown JFR profile " + profile);
+        }
+        if(recording != null){
+            recording.close();
+        }
+        recording = new Recording(configuration);
+        recording.setName("socialmedia-" + profile);
+        recording.setToDisk(true);
+        recording.setMaxSize(maxBytes);
+        recording.setDuration(Duration.ofSeconds(Math.min(durationSeconds, maxDurationSeconds)));
+        recording.start();
+        this.profile = profile;
+        return new Status(recording, profile);
+    }
+
+    /**
+     * Stops the current recording early; it can still be downloaded.
+     * @return its state, or null if there is no recording.
+     */
+    public synchronized Status stop(){
+        if(recording == null){
+            return null;
+        }
+        if(recording.getState() == RecordingState.RUNNING){
+            recording.stop();
+        }
+        return new Status(recording, profile);
+    }
+
+    /**
+     * @return the state of the current recording, or null if there is none.
+     */
+    public synchronized Status getStatus(){
+        return recording == null ? null : new Status(recording, profile);
+    }
+
+    /**
+     * Writes what the current recording holds so far to a new temporary file, which the caller deletes.
+     * @return the .jfr file, or null if there is no recording.
+     */
+    public synchronized Path dump() throws IOException {
+        if(recording == null){
+            return null;
+        }
+        Path file = Files.createTempFile("socialmedia-", ".jfr");
+        try{
+            recording.dump(file);
+        }catch(IOException | RuntimeException e){
+            Files.deleteIfExists(file);
+            throw e;
+        }
+        return file;
+    }
+}
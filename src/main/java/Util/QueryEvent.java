@@ -0,0 +1,28 @@
+package Util;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A JDK Flight Recorder event for each statement run on an {@link InstrumentedConnection}. Its duration is
+ * the execution; for queries the rows are those the caller read, so the event is committed when the
+ * connection is closed.
+ */
+@Name("socialmedia.Query")
+@Label("JDBC Statement")
+@Category({"Social Media", "Database"})
+@Description("A statement run by a DAO")
+class QueryEvent extends jdk.jfr.Event {
+    @Label("Route")
+    @Description("The route of the request the statement ran for, null outside of requests")
+    String route;
+
+    @Label("SQL")
+    String sql;
+
+    @Label("Rows")
+    @Description("The update count, or the rows read from the result")
+    long rows;
+}
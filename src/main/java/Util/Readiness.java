@@ -0,0 +1,58 @@
+package Util;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Tracks whether the node is warm and should receive traffic. It starts out not ready and becomes
+ * ready exactly once, when startup work such as restoring a snapshot has finished.
+ */
+public class Readiness {
+    private final CompletableFuture<Void> ready = new CompletableFuture<>();
+    private volatile String phase = "starting";
+
+    /**
+     * @return true once {@link #markReady()} has been called.
+     */
+    public boolean isReady(){
+        return ready.isDone();
+    }
+
+    /**
+     * @return a future completed when the node becomes ready.
+     */
+    public CompletableFuture<Void> whenReady(){
+        return ready;
+    }
+
+    /**
+     * Blocks until the node is ready, eg in tests instead of sleeping after app.start().
+     * @return true if the node became ready within the timeout.
+     */
+    public boolean awaitReady(long timeout, TimeUnit unit) throws InterruptedException {
+        try{
+            ready.get(timeout, unit);
+            return true;
+        }catch(TimeoutException | ExecutionException e){
+            return false;
+        }
+    }
+
+    /**
+     * @return a short description of what the node is doing, eg "restoring snapshot" or "ready".
+     */
+    public String getPhase(){
+        return phase;
+    }
+
+    public void setPhase(String phase){
+        this.phase = phase;
+    }
+
+    public void markReady(){
+        phase = "ready";
+        ready.complete(null);
+    }
+}
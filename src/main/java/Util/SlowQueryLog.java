@@ -0,0 +1,316 @@
+package Util;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Statements slower than "slowQuery.thresholdMillis", with their bound parameters, row count and H2 plan.
+ * {@link InstrumentedStatement} reports them; the plan is captured afterwards on a background thread with
+ * a connection of its own, so the slow request does not also wait for the EXPLAIN. Queries are explained
+ * with EXPLAIN ANALYZE, which runs them again; statements that change data (including SELECTs over a
+ * data change delta table) only get a plain EXPLAIN, which does not run them.
+ *
+ * The newest "slowQuery.capacity" entries are kept in memory for GET /admin/slow-queries. Each entry is
+ * also appended as a JSON line to "slowQuery.file", which is rolled over to .1, .2, ... once it reaches
+ * "slowQuery.fileBytes"; "slowQuery.files" old files are kept. Parameters bound to a password column are
+ * written as ***.
+ */
+public class SlowQueryLog {
+    private static final String REDACTED = "***";
+    private static final Pattern DATA_CHANGE = Pattern.compile("\\b(INSERT|UPDATE|DELETE|MERGE)\\b", Pattern.CASE_INSENSITIVE);
+    private static final Pattern INSERT_COLUMNS = Pattern.compile("^\\s*INSERT\\s+INTO\\s+\\w+\\s*\\(([^)]*)\\)", Pattern.CASE_INSENSITIVE);
+    private static final Pattern COMPARED_PARAMETER = Pattern.compile("(\\w+)\\s*(?:=|<>|<=|>=|<|>|LIKE)\\s*\\?(\\d*)", Pattern.CASE_INSENSITIVE);
+
+    private final int capacity;
+    private final Path file;
+    private final long fileBytes;
+    private final int files;
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final ArrayDeque<Entry> entries = new ArrayDeque<>();
+    private final AtomicLong recorded = new AtomicLong();
+    private final ThreadPoolExecutor explainer;
+    private volatile long thresholdNanos;
+
+    /**
+     * A slow statement execution.
+     */
+    public static class Entry {
+        private final long timeEpochMillis = System.currentTimeMillis();
+        private final String sql;
+        private final List<Object> parameters;
+        private final List<String> shownParameters;
+        private final long durationNanos;
+        private volatile long rowCount;
+        private volatile String plan;
+
+        Entry(String sql, List<Object> parameters, long durationNanos, long rowCount){
+            this.sql = sql;
+            this.parameters = parameters;
+            this.shownParameters = redact(sql, parameters);
+            this.durationNanos = durationNanos;
+            this.rowCount = rowCount;
+        }
+
+        /**
+         * Counts a row the caller read from the result of a slow query.
+         */
+        void countRow(){
+            rowCount++;
+        }
+
+        public long getTime_epoch_millis(){
+            return timeEpochMillis;
+        }
+
+        public String getSql(){
+            return sql;
+        }
+
+        public List<String> getParameters(){
+            return shownParameters;
+        }
+
+        public long getDuration_micros(){
+            return TimeUnit.NANOSECONDS.toMicros(durationNanos);
+        }
+
+        /**
+         * @return the update count, or the rows read from a query's result so far.
+         */
+        public long getRow_count(){
+            return rowCount;
+        }
+
+        /**
+         * @return the H2 plan, or null while it is still being captured.
+         */
+        public String getPlan(){
+            return plan;
+        }
+    }
+
+    /**
+     * @param thresholdMillis statements taking at least this long are logged; negative disables logging.
+     * @param capacity the number of entries kept in memory.
+     * @param file the rolling log file, or null for no file.
+     */
+    public SlowQueryLog(long thresholdMillis, int capacity, Path file, long fileBytes, int files){
+        setThresholdMillis(thresholdMillis);
+        this.capacity = capacity;
+        this.file = file;
+        this.fileBytes = fileBytes;
+        this.files = files;
+        explainer = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(capacity), runnable -> {
+            Thread thread = new Thread(runnable, "slow-query-explain");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * @return a log configured by the "slowQuery.*" settings.
+     */
+    static SlowQueryLog fromConfig(){
+        String file = AppConfig.getString("slowQuery.file", "slow-queries.log");
+        return new SlowQueryLog(AppConfig.getLong("slowQuery.thresholdMillis", 100), AppConfig.getInt("slowQuery.capacity", 256),
+                file.equals("none") ? null : Paths.get(file), AppConfig.getLong("slowQuery.fileBytes", 1024 * 1024),
+                AppConfig.getInt("slowQuery.files", 3));
+    }
+
+    public void setThresholdMillis(long thresholdMillis){
+        thresholdNanos = thresholdMillis < 0 ? Long.MAX_VALUE : TimeUnit.MILLISECONDS.toNanos(thresholdMillis);
+    }
+
+    boolean isSlow(long durationNanos){
+        return durationNanos >= thresholdNanos;
+    }
+
+    /**
+     * Records a slow execution and queues the capture of its plan.
+     * @param rowCount the update count, or 0 for a query whose rows are counted as they are read.
+     */
+    Entry record(String sql, List<Object> parameters, long durationNanos, long rowCount){
+        Entry entry = new Entry(sql, parameters, durationNanos, rowCount);
+        recorded.incrementAndGet();
+        synchronized(entries){
+            if(entries.size() == capacity){
+                entries.removeFirst();
+            }
+            entries.addLast(entry);
+        }
+        try{
+            explainer.execute(() -> capture(entry));
+        }catch(RejectedExecutionException e){
+            // too many captures queued; the entry is kept without a plan
+        }
+        return entry;
+    }
+
+    private void capture(Entry entry){
+        entry.plan = explain(entry);
+        if(file != null){
+            try{
+                append(mapper.writeValueAsString(entry) + System.lineSeparator());
+            }catch(IOException e){
+                System.out.println("Could not write slow query log: " + e.getMessage());
+            }
+        }
+    }
+
+    private static String explain(Entry entry){
+        boolean changesData = DATA_CHANGE.matcher(entry.sql).find();
+        Connection connection = ConnectionUtil.getUninstrumentedConnection();
+        if(connection == null){
+            return null;
+        }
+        try{
+            PreparedStatement explain = connection.prepareStatement((changesData ? "EXPLAIN " : "EXPLAIN ANALYZE ") + entry.sql);
+            for(int i = 0; i < entry.parameters.size(); i++){
+                explain.setObject(i + 1, entry.parameters.get(i));
+            }
+            ResultSet rs = explain.executeQuery();
+            StringBuilder plan = new StringBuilder();
+            while(rs.next()){
+                plan.append(rs.getString(1));
+            }
+            return plan.toString();
+        }catch(SQLException e){
+            return "EXPLAIN failed: " + e.getMessage();
+        }finally{
+            ConnectionUtil.closeConnection(connection);
+        }
+    }
+
+    private synchronized void append(String line) throws IOException {
+        byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+        if(Files.exists(file) && Files.size(file) + bytes.length > fileBytes){
+            roll();
+        }
+        Files.write(file, bytes, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    private void roll() throws IOException {
+        Files.deleteIfExists(Paths.get(file + "." + files));
+        for(int i = files - 1; i >= 1; i--){
+            Path older = Paths.get(file + "." + i);
+            if(Files.exists(older)){
+                Files.move(older, Paths.get(file + "." + (i + 1)), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        if(files > 0){
+            Files.move(file, Paths.get(file + ".1"), StandardCopyOption.REPLACE_EXISTING);
+        }else{
+            Files.delete(file);
+        }
+    }
+
+    /**
+     * @return the entries in memory, newest first.
+     */
+    public List<Entry> getEntries(){
+        List<Entry> newestFirst = new ArrayList<>();
+        synchronized(entries){
+            entries.descendingIterator().forEachRemaining(newestFirst::add);
+        }
+        return newestFirst;
+    }
+
+    /**
+     * @return the number of slow statements recorded so far.
+     */
+    public long getRecorded(){
+        return recorded.get();
+    }
+
+    /**
+     * Shows parameters as text, replacing those bound to a column whose name contains "password".
+     */
+    public static List<String> redact(String sql, List<Object> parameters){
+        Set<Integer> secret = passwordParameters(sql);
+        List<String> shown = new ArrayList<>(parameters.size());
+        for(int i = 0; i < parameters.size(); i++){
+            shown.add(secret.contains(i + 1) ? REDACTED : String.valueOf(parameters.get(i)));
+        }
+        return shown;
+    }
+
+    /**
+     * @return the 1-based indexes of the parameters bound to a password column, found from the column
+     *         list of an INSERT and from "column = ?" comparisons. If the statement mentions a password but
+     *         the column of some parameter cannot be told, every parameter is treated as secret.
+     */
+    static Set<Integer> passwordParameters(String sql){
+        Set<Integer> secret = new HashSet<>();
+        if(!sql.toLowerCase(Locale.ROOT).contains("password")){
+            return secret;
+        }
+        int parameterCount = 0;
+        for(char c : sql.toCharArray()){
+            if(c == '?'){
+                parameterCount++;
+            }
+        }
+        Set<Integer> known = new HashSet<>();
+        Matcher insert = INSERT_COLUMNS.matcher(sql);
+        if(insert.find()){
+            String[] columns = insert.group(1).split(",");
+            for(int i = 0; i < columns.length; i++){
+                known.add(i + 1);
+                if(columns[i].trim().toLowerCase(Locale.ROOT).contains("password")){
+                    secret.add(i + 1);
+                }
+            }
+        }else{
+            Matcher compared = COMPARED_PARAMETER.matcher(sql);
+            int position = 0;
+            while(compared.find()){
+                position++;
+                int index = compared.group(2).isEmpty() ? position : Integer.parseInt(compared.group(2));
+                known.add(index);
+                if(compared.group(1).toLowerCase(Locale.ROOT).contains("password")){
+                    secret.add(index);
+                }
+            }
+        }
+        for(int i = 1; i <= parameterCount; i++){
+            if(!known.contains(i)){
+                for(int j = 1; j <= parameterCount; j++){
+                    secret.add(j);
+                }
+                break;
+            }
+        }
+        return secret;
+    }
+
+    /**
+     * Stops capturing plans.
+     */
+    public void shutdown(){
+        explainer.shutdownNow();
+    }
+}
@@ -0,0 +1,149 @@
+package Util;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodically saves the registered in-process state (caches, id sets, in-memory stores) to one
+ * compact binary file, and restores it on startup so a restarted node does not start cold.
+ *
+ * The file is a magic number and format version followed by one section per component:
+ * the component name, the section length and the component's own bytes. It is written to a temporary
+ * file and atomically moved into place, and read back through a read-only memory mapping. Sections of
+ * unknown components are skipped, and a damaged file is ignored.
+ */
+public class SnapshotManager {
+    private static final int MAGIC = 0x534D534E;
+    private static final int VERSION = 1;
+    private static final String FILE_NAME = "snapshot.bin";
+
+    private final Path directory;
+    private final List<Snapshottable> components = new ArrayList<>();
+    private ScheduledExecutorService scheduler;
+
+    public SnapshotManager(Path directory){
+        this.directory = directory;
+    }
+
+    public void register(Snapshottable component){
+        components.add(component);
+    }
+
+    /**
+     * Writes a snapshot of every registered component.
+     */
+    public synchronized void writeSnapshot() throws IOException {
+        Files.createDirectories(directory);
+        Path temporary = directory.resolve(FILE_NAME + ".tmp");
+        try(OutputStream file = Files.newOutputStream(temporary);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file, 1 << 16))){
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(components.size());
+            for(Snapshottable component : components){
+                ByteArrayOutputStream section = new ByteArrayOutputStream();
+                DataOutputStream sectionOut = new DataOutputStream(section);
+                component.writeSnapshot(sectionOut);
+                sectionOut.flush();
+                writeString(out, component.snapshotName());
+                out.writeInt(section.size());
+                section.writeTo(out);
+            }
+        }
+        Files.move(temporary, directory.resolve(FILE_NAME), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Restores every registered component that has a section in the latest snapshot.
+     * @return the number of components restored; 0 if there is no usable snapshot.
+     */
+    public int restore(){
+        Path file = directory.resolve(FILE_NAME);
+        if(!Files.exists(file)){
+            return 0;
+        }
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)){
+            ByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if(in.remaining() < 12 || in.getInt() != MAGIC || in.getInt() != VERSION){
+                return 0;
+            }
+            int sections = in.getInt();
+            int restored = 0;
+            for(int i = 0; i < sections; i++){
+                String name = readString(in);
+                int length = in.getInt();
+                ByteBuffer section = in.slice();
+                section.limit(length);
+                in.position(in.position() + length);
+                for(Snapshottable component : components){
+                    if(component.snapshotName().equals(name)){
+                        component.readSnapshot(section);
+                        restored++;
+                    }
+                }
+            }
+            return restored;
+        }catch(IOException | RuntimeException e){
+            System.out.println("Ignoring unreadable snapshot: " + e);
+            return 0;
+        }
+    }
+
+    /**
+     * Writes a snapshot every intervalSeconds on a background thread.
+     */
+    public void start(long intervalSeconds){
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "snapshot-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try{
+                writeSnapshot();
+            }catch(IOException | RuntimeException e){
+                System.out.println(e.getMessage());
+            }
+        }, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Stops the periodic writer and writes a final snapshot.
+     */
+    public void stop() throws IOException {
+        if(scheduler != null){
+            scheduler.shutdownNow();
+        }
+        writeSnapshot();
+    }
+
+    /**
+     * Writes a string as its UTF-8 length and bytes, readable with {@link #readString(ByteBuffer)}.
+     */
+    public static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    public static String readString(ByteBuffer in){
+        byte[] bytes = new byte[in.getInt()];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
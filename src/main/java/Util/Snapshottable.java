@@ -0,0 +1,28 @@
+package Util;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * In-process state that can be saved to and restored from a {@link SnapshotManager} snapshot.
+ */
+public interface Snapshottable {
+
+    /**
+     * @return the name of this component's section in the snapshot file. Must be unique.
+     */
+    String snapshotName();
+
+    /**
+     * Writes the current state. Runs concurrently with requests, so the written state only has to be
+     * consistent per entry, not across the whole component.
+     */
+    void writeSnapshot(DataOutputStream out) throws IOException;
+
+    /**
+     * Replaces the current state with the state written by {@link #writeSnapshot(DataOutputStream)}.
+     * @param in a read-only view of exactly this component's section.
+     */
+    void readSnapshot(ByteBuffer in);
+}
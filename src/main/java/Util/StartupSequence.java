@@ -0,0 +1,82 @@
+package Util;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The ordered startup phases of a node (pool priming, statement preparation, snapshot restore,
+ * warm-up...). Each phase is timed and logged, the current phase is published through
+ * {@link Readiness}, and the node is marked ready after the last one. A failing phase is logged and
+ * skipped; a node that could not warm up fully is still better than one that never becomes ready.
+ */
+public class StartupSequence {
+
+    /**
+     * One step of startup.
+     */
+    public interface Phase {
+        void run() throws Exception;
+    }
+
+    private final Readiness readiness;
+    private final List<String> names = new ArrayList<>();
+    private final List<Phase> phases = new ArrayList<>();
+    private final Map<String, Long> timings = new LinkedHashMap<>();
+
+    public StartupSequence(Readiness readiness){
+        this.readiness = readiness;
+    }
+
+    /**
+     * Adds a phase to run after the ones already added.
+     */
+    public StartupSequence phase(String name, Phase phase){
+        names.add(name);
+        phases.add(phase);
+        return this;
+    }
+
+    /**
+     * Runs every phase in order on the calling thread, then marks the node ready.
+     */
+    public void run(){
+        long startupStart = System.nanoTime();
+        for(int i = 0; i < phases.size(); i++){
+            String name = names.get(i);
+            readiness.setPhase(name);
+            long start = System.nanoTime();
+            try{
+                phases.get(i).run();
+            }catch(Exception e){
+                System.out.println("Startup phase '" + name + "' failed: " + e);
+            }
+            long millis = (System.nanoTime() - start) / 1_000_000;
+            synchronized(timings){
+                timings.put(name, millis);
+            }
+            System.out.println("Startup phase '" + name + "' took " + millis + " ms");
+        }
+        readiness.markReady();
+        System.out.println("Ready after " + (System.nanoTime() - startupStart) / 1_000_000 + " ms");
+    }
+
+    /**
+     * Runs the phases on a background daemon thread.
+     */
+    public void runInBackground(){
+        Thread thread = new Thread(this::run, "startup");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * @return the duration in milliseconds of every phase finished so far, in order.
+     */
+    public Map<String, Long> getTimings(){
+        synchronized(timings){
+            return new LinkedHashMap<>(timings);
+        }
+    }
+}
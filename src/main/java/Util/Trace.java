@@ -0,0 +1,131 @@
+package Util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One sampled request: its trace id, the route it hit and the nested spans (handler steps, service methods,
+ * JDBC statements) that ran for it. Work the request hands to another thread gets a fork of the trace (see
+ * {@link Tracer#propagate(Runnable)}), which adds to the same spans but nests them on its own. A trace does
+ * not change after it is published by {@link Tracer}.
+ */
+public class Trace {
+    private final long traceId;
+    private final long startEpochMillis;
+    private final long startNanos;
+    private final List<Span> spans;
+    private String name;
+    private long durationNanos;
+    private int depth;
+
+    Trace(long traceId, String name){
+        this.traceId = traceId;
+        this.name = name;
+        startEpochMillis = System.currentTimeMillis();
+        startNanos = System.nanoTime();
+        spans = new ArrayList<>();
+    }
+
+    private Trace(Trace parent){
+        traceId = parent.traceId;
+        name = parent.name;
+        startEpochMillis = parent.startEpochMillis;
+        startNanos = parent.startNanos;
+        spans = parent.spans;
+        depth = parent.depth;
+    }
+
+    /**
+     * @return a view of this trace for another thread: spans opened on it go into this trace, nested
+     *         below the spans open here now.
+     */
+    Trace fork(){
+        return new Trace(this);
+    }
+
+    Span open(String name){
+        Span span = new Span(this, name, depth++, System.nanoTime() - startNanos);
+        synchronized(spans){
+            spans.add(span);
+        }
+        return span;
+    }
+
+    void finish(String name){
+        this.name = name;
+        durationNanos = System.nanoTime() - startNanos;
+    }
+
+    public long getTrace_id(){
+        return traceId;
+    }
+
+    public String getName(){
+        return name;
+    }
+
+    public long getStart_epoch_millis(){
+        return startEpochMillis;
+    }
+
+    public long getDuration_micros(){
+        return TimeUnit.NANOSECONDS.toMicros(durationNanos);
+    }
+
+    long getDurationNanos(){
+        return durationNanos;
+    }
+
+    public List<Span> getSpans(){
+        synchronized(spans){
+            return new ArrayList<>(spans);
+        }
+    }
+
+    /**
+     * A timed step of a trace, closed with try-with-resources. Spans opened while another is open are
+     * nested one level deeper.
+     */
+    public static class Span implements AutoCloseable {
+        /** returned when the current request is not sampled; closing it does nothing */
+        static final Span NOOP = new Span(null, null, 0, 0);
+
+        private final Trace trace;
+        private final String name;
+        private final int depth;
+        private final long offsetNanos;
+        private long durationNanos;
+
+        private Span(Trace trace, String name, int depth, long offsetNanos){
+            this.trace = trace;
+            this.name = name;
+            this.depth = depth;
+            this.offsetNanos = offsetNanos;
+        }
+
+        @Override
+        public void close(){
+            if(trace != null){
+                durationNanos = System.nanoTime() - trace.startNanos - offsetNanos;
+                trace.depth--;
+            }
+        }
+
+        public String getName(){
+            return name;
+        }
+
+        public int getDepth(){
+            return depth;
+        }
+
+        public long getOffset_micros(){
+            return TimeUnit.NANOSECONDS.toMicros(offsetNanos);
+        }
+
+        public long getDuration_micros(){
+            return TimeUnit.NANOSECONDS.toMicros(durationNanos);
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package Util;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Request tracing. Every request gets a trace id; a sampled share of them ("trace.sampleRate") also
+ * records a {@link Trace} of spans opened anywhere on the request thread with {@link #span(String)}.
+ * Finished traces go into a fixed-size ring buffer that writers fill with a single atomic increment and
+ * readers copy without locking, so the newest traces overwrite the oldest.
+ *
+ * When the current request is not sampled, {@link #span(String)} is one ThreadLocal read and returns a
+ * shared no-op span.
+ *
+ * The trace follows work handed to other threads through {@link #propagate(Runnable)}; a request that
+ * finishes on another thread than it started on is published with {@link #finish(Trace, String)}. So does
+ * the request's route (see {@link #setRoute(String)}), which is kept for every request, sampled or not.
+ */
+public class Tracer {
+    private static final ThreadLocal<Trace> CURRENT = new ThreadLocal<>();
+    private static final ThreadLocal<String> ROUTE = new ThreadLocal<>();
+    private static final AtomicLong nextTraceId = new AtomicLong(ThreadLocalRandom.current().nextLong(1L << 40));
+
+    private final AtomicReferenceArray<Trace> recent;
+    private final int mask;
+    private final AtomicLong published = new AtomicLong();
+    private volatile double sampleRate;
+
+    /**
+     * @param capacity the number of recent traces kept, rounded up to a power of two.
+     * @param sampleRate the share of requests to trace, from 0 to 1.
+     */
+    public Tracer(int capacity, double sampleRate){
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        recent = new AtomicReferenceArray<>(size);
+        mask = size - 1;
+        this.sampleRate = sampleRate;
+    }
+
+    public void setSampleRate(double sampleRate){
+        this.sampleRate = sampleRate;
+    }
+
+    public double getSampleRate(){
+        return sampleRate;
+    }
+
+    /**
+     * Starts the trace of a request on this thread, replacing any trace left over on it.
+     * @return the trace id, also for requests that are not sampled.
+     */
+    public long start(String name){
+        long traceId = nextTraceId.incrementAndGet();
+        ROUTE.set(name);
+        double rate = sampleRate;
+        if(rate > 0 && (rate >= 1 || ThreadLocalRandom.current().nextDouble() < rate)){
+            CURRENT.set(new Trace(traceId, name));
+        }else{
+            CURRENT.remove();
+        }
+        return traceId;
+    }
+
+    /**
+     * Finishes the trace of this thread, if it is sampled, and publishes it under its final name.
+     * @return the finished trace, or null if the request was not sampled.
+     */
+    public Trace finish(String name){
+        Trace trace = CURRENT.get();
+        CURRENT.remove();
+        ROUTE.remove();
+        return finish(trace, name);
+    }
+
+    /**
+     * Finishes a trace taken from {@link #current()} when the request started, and publishes it under its
+     * final name.
+     * @return the finished trace, or null if trace is null.
+     */
+    public Trace finish(Trace trace, String name){
+        if(trace == null){
+            return null;
+        }
+        trace.finish(name);
+        recent.set((int) (published.getAndIncrement() & mask), trace);
+        return trace;
+    }
+
+    /**
+     * @return the trace of this thread, or null if the current request is not sampled.
+     */
+    public static Trace current(){
+        return CURRENT.get();
+    }
+
+    /**
+     * Makes trace the trace of this thread, or clears it if trace is null.
+     * @return the trace the thread had before.
+     */
+    public static Trace attach(Trace trace){
+        Trace previous = CURRENT.get();
+        if(trace == null){
+            CURRENT.remove();
+        }else{
+            CURRENT.set(trace);
+        }
+        return previous;
+    }
+
+    /**
+     * Names the route the request on this thread is for, eg "GET /messages/{message_id}", replacing the
+     * raw path it was started with.
+     */
+    public static void setRoute(String route){
+        ROUTE.set(route);
+    }
+
+    /**
+     * @return the route of the request this thread works for, or null outside of requests.
+     */
+    public static String route(){
+        return ROUTE.get();
+    }
+
+    /**
+     * Wraps a task about to be handed to another thread so that it runs within the trace and route of this
+     * thread, with its spans nested below those open now. Outside of requests the task is returned
+     * unchanged.
+     */
+    public static Runnable propagate(Runnable task){
+        Trace trace = CURRENT.get();
+        String route = ROUTE.get();
+        if(trace == null && route == null){
+            return task;
+        }
+        Trace fork = trace == null ? null : trace.fork();
+        return () -> {
+            Trace previous = attach(fork);
+            String previousRoute = ROUTE.get();
+            ROUTE.set(route);
+            try{
+                task.run();
+            }finally{
+                attach(previous);
+                ROUTE.set(previousRoute);
+            }
+        };
+    }
+
+    /**
+     * Opens a span in the trace of this thread.
+     */
+    public static Trace.Span span(String name){
+        Trace trace = CURRENT.get();
+        return trace == null ? Trace.Span.NOOP : trace.open(name);
+    }
+
+    /**
+     * @return the traces in the buffer, newest first.
+     */
+    public List<Trace> recent(){
+        List<Trace> traces = new ArrayList<>();
+        long end = published.get();
+        for(long i = end - 1; i >= Math.max(0, end - recent.length()); i--){
+            Trace trace = recent.get((int) (i & mask));
+            if(trace != null){
+                traces.add(trace);
+            }
+        }
+        return traces;
+    }
+
+    /**
+     * @return the count slowest traces in the buffer, slowest first.
+     */
+    public List<Trace> slowest(int count){
+        List<Trace> traces = recent();
+        traces.sort(Comparator.comparingLong(Trace::getDurationNanos).reversed());
+        return traces.subList(0, Math.min(count, traces.size()));
+    }
+
+    /**
+     * @return the number of traces published so far.
+     */
+    public long getPublished(){
+        return published.get();
+    }
+}
@@ -0,0 +1,252 @@
+package Util;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One pooled connection and one transaction shared by every DAO call of a request. While a unit is
+ * attached to a thread, {@link ConnectionUtil#getConnection()} hands out its connection instead of
+ * checking out a new one; the connection is only checked out on first use, so requests served from
+ * caches never touch the pool. The unit follows work handed to the {@link DatabaseExecutor} like the
+ * trace does, and {@link #finish(boolean)} commits or rolls back once the request is done. Caches shared
+ * with other requests learn of the unit's writes through {@link #onCommit(Runnable)} and
+ * {@link #onRollback(Runnable)}.
+ *
+ * DAO methods keep managing their own transactions: on the shared connection, setAutoCommit(false) sets
+ * a savepoint, rollback() goes back to it, setAutoCommit(true) and close() release it, and commit()
+ * leaves the work to the unit. A DAO that rolls back its own statements so does not undo earlier ones of the request.
+ */
+public class UnitOfWork {
+    private static final ThreadLocal<UnitOfWork> CURRENT = new ThreadLocal<>();
+
+    // the checked out connection, and the proxy DAOs get for it; null until first use
+    private Connection connection;
+    private Connection shared;
+    private Savepoint savepoint;
+    private List<Runnable> commitActions;
+    private List<Runnable> rollbackActions;
+    private boolean finished;
+
+    /**
+     * @return the unit of the request this thread works for, or null.
+     */
+    public static UnitOfWork current(){
+        return CURRENT.get();
+    }
+
+    /**
+     * Makes unit the unit of this thread, or clears it if unit is null.
+     * @return the unit the thread had before.
+     */
+    public static UnitOfWork attach(UnitOfWork unit){
+        UnitOfWork previous = CURRENT.get();
+        if(unit == null){
+            CURRENT.remove();
+        }else{
+            CURRENT.set(unit);
+        }
+        return previous;
+    }
+
+    /**
+     * Wraps a task about to be handed to another thread so that it runs within the unit of this thread.
+     * Without a unit the task is returned unchanged.
+     */
+    public static Runnable propagate(Runnable task){
+        UnitOfWork unit = CURRENT.get();
+        if(unit == null){
+            return task;
+        }
+        return () -> {
+            UnitOfWork previous = attach(unit);
+            try{
+                task.run();
+            }finally{
+                attach(previous);
+            }
+        };
+    }
+
+    /**
+     * Registers an action to run if the unit of this thread is rolled back, eg to drop what was cached from
+     * its writes. Runs nothing outside of a unit, where every DAO call commits on its own.
+     */
+    public static void onRollback(Runnable action){
+        UnitOfWork unit = CURRENT.get();
+        if(unit != null){
+            unit.addRollbackAction(action);
+        }
+    }
+
+    /**
+     * Registers an action to run once the unit of this thread has committed, eg to show its writes in
+     * caches that other requests read. Outside of a unit, where every DAO call commits on its own, the
+     * action runs at once.
+     */
+    public static void onCommit(Runnable action){
+        UnitOfWork unit = CURRENT.get();
+        if(unit == null){
+            action.run();
+        }else{
+            unit.addCommitAction(action);
+        }
+    }
+
+    private synchronized void addRollbackAction(Runnable action){
+        if(rollbackActions == null){
+            rollbackActions = new ArrayList<>();
+        }
+        rollbackActions.add(action);
+    }
+
+    private synchronized void addCommitAction(Runnable action){
+        if(commitActions == null){
+            commitActions = new ArrayList<>();
+        }
+        commitActions.add(action);
+    }
+
+    /**
+     * @return the unit's connection, checked out and put in a transaction on first use.
+     * @throws DatabaseOverloadedException if the pool's concurrency limit is reached.
+     */
+    synchronized Connection getConnection(){
+        if(finished){
+            throw new IllegalStateException("The unit of work has already finished");
+        }
+        if(shared == null){
+            Connection checkedOut = ConnectionUtil.checkOut();
+            if(checkedOut == null){
+                return null;
+            }
+            try{
+                checkedOut.setAutoCommit(false);
+            }catch(SQLException e){
+                ConnectionUtil.closeConnection(checkedOut);
+                System.out.println(e.getMessage());
+                return null;
+            }
+            connection = checkedOut;
+            shared = (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                    new Class<?>[]{Connection.class}, new SharedConnection());
+        }
+        return shared;
+    }
+
+    /**
+     * Commits the unit's transaction, or rolls it back, and returns its connection to the pool, then runs
+     * the commit or rollback actions. Does nothing if the unit has already finished. A unit that never
+     * used a connection has nothing to roll back, as its writes went to engines outside of the database,
+     * so it runs its commit actions either way.
+     * @throws IllegalStateException if the commit failed; the transaction is rolled back then.
+     */
+    public void finish(boolean commit){
+        List<Runnable> actions;
+        SQLException failure = null;
+        synchronized(this){
+            if(finished){
+                return;
+            }
+            finished = true;
+            actions = commit || connection == null ? commitActions : rollbackActions;
+            if(connection != null){
+                try{
+                    if(commit){
+                        connection.commit();
+                    }else{
+                        connection.rollback();
+                    }
+                }catch(SQLException e){
+                    failure = e;
+                    actions = rollbackActions;
+                    try{
+                        connection.rollback();
+                    }catch(SQLException rollbackFailure){
+                        System.out.println(rollbackFailure.getMessage());
+                    }
+                }finally{
+                    try{
+                        connection.setAutoCommit(true);
+                    }catch(SQLException e){
+                        System.out.println(e.getMessage());
+                    }
+                    ConnectionUtil.closeConnection(connection);
+                }
+            }
+        }
+        runAll(actions);
+        if(failure != null){
+            throw new IllegalStateException("Could not commit the request's transaction: " + failure.getMessage(), failure);
+        }
+    }
+
+    private static void runAll(List<Runnable> actions){
+        if(actions != null){
+            for(Runnable action : actions){
+                action.run();
+            }
+        }
+    }
+
+    /**
+     * The connection DAOs get: their transaction calls become savepoints of the unit's transaction.
+     */
+    private class SharedConnection implements InvocationHandler {
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            synchronized(UnitOfWork.this){
+                switch(method.getName()){
+                    case "close":
+                        // only leaves a DAO's savepoint, in case it was not ended
+                        releaseSavepoint();
+                        return null;
+                    case "isClosed":
+                        return finished;
+                    case "getAutoCommit":
+                        return savepoint == null;
+                    case "setAutoCommit":
+                        if(!(Boolean) args[0] && savepoint == null){
+                            savepoint = connection.setSavepoint();
+                        }else if((Boolean) args[0]){
+                            releaseSavepoint();
+                        }
+                        return null;
+                    case "commit":
+                        return null;
+                    case "rollback":
+                        if(args == null && savepoint != null){
+                            connection.rollback(savepoint);
+                            return null;
+                        }
+                        if(args == null){
+                            return null;
+                        }
+                        break;
+                    default:
+                        break;
+                }
+                return InstrumentedConnection.invokeOn(connection, method, args);
+            }
+        }
+
+        /**
+         * Ends a DAO's savepoint, so a request making many DAO calls does not pile them up until it commits.
+         */
+        private void releaseSavepoint(){
+            if(savepoint != null && !finished){
+                try{
+                    connection.releaseSavepoint(savepoint);
+                }catch(SQLException e){
+                    System.out.println(e.getMessage());
+                }
+            }
+            savepoint = null;
+        }
+    }
+}
@@ -1,3 +1,4 @@
+drop table if exists account_stats;
 drop table if exists message;
 drop table if exists account;
 create table account (
@@ -10,8 +11,25 @@ create table message (
     posted_by int,
     message_text varchar(255),
     time_posted_epoch bigint,
+    -- tombstone flag for soft delete, see MessageDAO
+    deleted boolean not null default false,
+    -- incremented by every update, served as the ETag for If-Match, see MessageDAO
+    version bigint not null default 1,
     foreign key (posted_by) references  account(account_id)
 );
+-- range scans on time_posted_epoch, globally and per author
+create index message_epoch_idx on message (time_posted_epoch, message_id);
+create index message_author_epoch_idx on message (posted_by, time_posted_epoch, message_id);
+-- lets the compactor find tombstones without scanning the table
+create index message_tombstone_idx on message (deleted, message_id);
+-- per-account summary kept in step by MessageDAO, so stats never have to scan message
+create table account_stats (
+    account_id int primary key,
+    message_count bigint not null,
+    first_posted_epoch bigint,
+    last_posted_epoch bigint
+);
 
 insert into account (username, password) values ('testuser1', 'password');
 insert into message (posted_by, message_text, time_posted_epoch) values (1,'test message 1',1669947792);
+insert into account_stats (account_id, message_count, first_posted_epoch, last_posted_epoch) values (1, 1, 1669947792, 1669947792);
@@ -0,0 +1,107 @@
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import DAO.Repositories;
+import Model.Account;
+import Model.Message;
+import Model.MessageField;
+import Service.AccountService;
+import Service.MessageService;
+import Util.DatabaseExecutor;
+import Util.DatabaseOverloadedException;
+import Util.Trace;
+import Util.Tracer;
+
+public class AsyncServiceTest {
+
+    /**
+     * The asynchronous service methods give the same results as the blocking ones.
+     */
+    @Test
+    public void asyncMethodsMatchBlockingOnes() throws Exception {
+        Repositories repositories = Repositories.inMemory();
+        AccountService accountService = new AccountService(repositories.getAccountRepository());
+        MessageService messageService = new MessageService(repositories.getMessageRepository());
+
+        Account account = accountService.addAccountAsync(new Account("async_user", "password")).get(5, TimeUnit.SECONDS);
+        Assert.assertNotNull(account);
+        Assert.assertEquals(account, accountService.loginAccountAsync(new Account("async_user", "password")).get(5, TimeUnit.SECONDS));
+
+        Message message = messageService.addMessageAsync(new Message(account.getAccount_id(), "async", 1L)).get(5, TimeUnit.SECONDS);
+        Assert.assertEquals(message, messageService.getMessageByIDAsync(message.getMessage_id()).get(5, TimeUnit.SECONDS));
+        List<Message> ofUser = messageService.getAllMessagesOfUserAsync(account.getAccount_id(), MessageField.ALL).get(5, TimeUnit.SECONDS);
+        Assert.assertEquals(messageService.getAllMessagesOfUser(account.getAccount_id()), ofUser);
+        Assert.assertTrue(messageService.deleteMessageByIDAsync(message.getMessage_id()).get(5, TimeUnit.SECONDS));
+        Assert.assertNull(messageService.getMessageByID(message.getMessage_id()));
+    }
+
+    /**
+     * Calls that find every worker busy and the queue full fail at once with DatabaseOverloadedException.
+     */
+    @Test
+    public void fullExecutorRejectsCalls() throws Exception {
+        DatabaseExecutor executor = new DatabaseExecutor(1, 1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Boolean> running = executor.supply(() -> {
+            try{
+                return release.await(5, TimeUnit.SECONDS);
+            }catch(InterruptedException e){
+                return false;
+            }
+        });
+        while(executor.getActive() == 0){
+            Thread.sleep(1);
+        }
+        CompletableFuture<Integer> queued = executor.supply(() -> 1);
+        CompletableFuture<Integer> rejected = executor.supply(() -> 2);
+
+        try{
+            rejected.get(5, TimeUnit.SECONDS);
+            Assert.fail("expected the call to be rejected");
+        }catch(ExecutionException e){
+            Assert.assertTrue(e.getCause() instanceof DatabaseOverloadedException);
+        }
+        release.countDown();
+        Assert.assertTrue(running.get(5, TimeUnit.SECONDS));
+        Assert.assertEquals(Integer.valueOf(1), queued.get(5, TimeUnit.SECONDS));
+    }
+
+    /**
+     * Spans opened by a call on a worker, and by the stages that depend on it, go into the trace of the
+     * thread that submitted it, nested below the spans that were open there.
+     */
+    @Test
+    public void workerSpansJoinTheSubmittersTrace() throws Exception {
+        Tracer tracer = new Tracer(4, 1);
+        DatabaseExecutor executor = new DatabaseExecutor(1, 1);
+        tracer.start("request");
+        Trace trace = Tracer.current();
+        CompletableFuture<Void> done;
+        try(Trace.Span handler = Tracer.span("handler")){
+            done = executor.supply(() -> {
+                try(Trace.Span span = Tracer.span("service")){
+                    return 1;
+                }
+            }).thenAccept(result -> {
+                try(Trace.Span span = Tracer.span("serialize")){
+                    Assert.assertEquals(1, (int) result);
+                }
+            });
+        }
+        done.get(5, TimeUnit.SECONDS);
+        tracer.finish("request");
+
+        List<Trace.Span> spans = trace.getSpans();
+        Assert.assertEquals(3, spans.size());
+        Assert.assertEquals("handler", spans.get(0).getName());
+        Assert.assertEquals("service", spans.get(1).getName());
+        Assert.assertEquals(1, spans.get(1).getDepth());
+        Assert.assertEquals(trace, tracer.recent().get(0));
+    }
+}
@@ -0,0 +1,90 @@
+package Benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+
+import Controller.PayloadFormat;
+import Model.Message;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Compares encoding a message and a 50 message timeline with Jackson on every request against looking up
+ * bytes encoded earlier, the way the controller's encoded response cache does. Run with "-prof gc" for the
+ * bytes allocated per request.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EncodedResponseBenchmark {
+    private static final int MESSAGES = 50;
+
+    private static final class Entry {
+        final int key;
+        final Object source;
+        final byte[] body;
+
+        Entry(int key, Object source, byte[] body){
+            this.key = key;
+            this.source = source;
+            this.body = body;
+        }
+    }
+
+    List<Message> timeline;
+    Message message;
+    AtomicReferenceArray<Entry> slots = new AtomicReferenceArray<>(1024);
+
+    @Setup(Level.Trial)
+    public void encode() throws JsonProcessingException {
+        timeline = new ArrayList<>(MESSAGES);
+        for(int i = 1; i <= MESSAGES; i++){
+            timeline.add(new Message(i, 1, "message number " + i + " with some typical text", 1669947792L + i));
+        }
+        message = timeline.get(0);
+        slots.set(1, new Entry(1, message, PayloadFormat.JSON.write(message)));
+        slots.set(2, new Entry(2, timeline, PayloadFormat.JSON.write(timeline)));
+    }
+
+    private byte[] cached(int key, Object source){
+        Entry entry = slots.get(key & 1023);
+        return entry != null && entry.key == key && entry.source == source ? entry.body : null;
+    }
+
+    @Benchmark
+    public byte[] encodeMessage() throws JsonProcessingException {
+        return PayloadFormat.JSON.write(message);
+    }
+
+    @Benchmark
+    public byte[] cachedMessage() {
+        return cached(1, message);
+    }
+
+    @Benchmark
+    public byte[] encodeTimeline() throws JsonProcessingException {
+        return PayloadFormat.JSON.write(timeline);
+    }
+
+    @Benchmark
+    public byte[] cachedTimeline() {
+        return cached(2, timeline);
+    }
+}
@@ -0,0 +1,78 @@
+package Benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+
+import Controller.PayloadFormat;
+import Model.Message;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the payload formats on encoding and decoding a typical list response of 100 messages and a
+ * single message. The encoded sizes are printed during setup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PayloadFormatBenchmark {
+    private static final int MESSAGES = 100;
+
+    @Param({"JSON", "CBOR", "SMILE"})
+    public PayloadFormat format;
+
+    List<Message> messages;
+    Message message;
+    byte[] encodedList;
+    byte[] encodedMessage;
+
+    @Setup(Level.Trial)
+    public void encode() throws JsonProcessingException {
+        messages = new ArrayList<>(MESSAGES);
+        for(int i = 1; i <= MESSAGES; i++){
+            messages.add(new Message(i, 1 + i % 20, "message number " + i + " with some typical text", 1669947792L + i));
+        }
+        message = messages.get(0);
+        encodedList = format.write(messages);
+        encodedMessage = format.write(message);
+        System.out.println(format + ": " + encodedList.length + " bytes per list, " + encodedMessage.length + " bytes per message");
+    }
+
+    @Benchmark
+    public byte[] encodeList() throws JsonProcessingException {
+        return format.write(messages);
+    }
+
+    @Benchmark
+    public Message[] decodeList() throws IOException {
+        return format.read(encodedList, Message[].class);
+    }
+
+    @Benchmark
+    public byte[] encodeMessage() throws JsonProcessingException {
+        return format.write(message);
+    }
+
+    @Benchmark
+    public Message decodeMessage() throws IOException {
+        return format.read(encodedMessage, Message.class);
+    }
+}
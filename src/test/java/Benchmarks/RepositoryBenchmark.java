@@ -0,0 +1,108 @@
+package Benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import DAO.AccountRepository;
+import DAO.MessageRepository;
+import DAO.Repositories;
+import Model.Account;
+import Model.Message;
+import Util.ConnectionUtil;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the storage engines on the repository operations behind the hot endpoints.
+ * Each engine is seeded with 100 authors of 20 messages each. The "log" engine writes its segments to
+ * a fresh temporary directory.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RepositoryBenchmark {
+    private static final int AUTHORS = 100;
+    private static final int MESSAGES_PER_AUTHOR = 20;
+
+    @Param({"h2", "memory", "log"})
+    public String engine;
+
+    MessageRepository messageRepository;
+    AccountRepository accountRepository;
+    int[] authorIds;
+    int[] messageIds;
+
+    @Setup(Level.Trial)
+    public void seed() throws IOException {
+        if(!engine.equals("memory")){
+            ConnectionUtil.resetTestDatabase();
+        }
+        if(engine.equals("log")){
+            System.setProperty("socialmedia.log.dir", Files.createTempDirectory("message-log-bench").toString());
+        }
+        Repositories repositories = Repositories.forEngine(engine);
+        messageRepository = repositories.getMessageRepository();
+        accountRepository = repositories.getAccountRepository();
+        authorIds = new int[AUTHORS];
+        messageIds = new int[AUTHORS * MESSAGES_PER_AUTHOR];
+        for(int a = 0; a < AUTHORS; a++){
+            authorIds[a] = accountRepository.insertAccount(new Account("bench_" + a, "password")).getAccount_id();
+            for(int m = 0; m < MESSAGES_PER_AUTHOR; m++){
+                Message message = messageRepository.insertMessage(new Message(authorIds[a], "message " + m, 1669947792L + m));
+                messageIds[a * MESSAGES_PER_AUTHOR + m] = message.getMessage_id();
+            }
+        }
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Message getMessageByID() {
+        return messageRepository.getMessageByID(messageIds[ThreadLocalRandom.current().nextInt(messageIds.length)]);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public List<Message> getMessagesOfUser() {
+        return messageRepository.getMessagesOfUser(authorIds[ThreadLocalRandom.current().nextInt(authorIds.length)]);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Message updateMessage() {
+        Message patch = new Message();
+        patch.setMessage_id(messageIds[ThreadLocalRandom.current().nextInt(messageIds.length)]);
+        patch.setMessage_text("updated " + ThreadLocalRandom.current().nextInt(1000));
+        return messageRepository.updateMessage(patch);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public boolean insertAndDeleteMessage() {
+        int author = authorIds[ThreadLocalRandom.current().nextInt(authorIds.length)];
+        Message inserted = messageRepository.insertMessage(new Message(author, "short lived", 1L));
+        return messageRepository.deleteMessageByID(inserted.getMessage_id());
+    }
+
+    @Benchmark
+    public Account login() {
+        return accountRepository.getAccountByUsernameAndPassword("bench_" + ThreadLocalRandom.current().nextInt(AUTHORS), "password");
+    }
+}
@@ -0,0 +1,67 @@
+package Benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import Util.Trace;
+import Util.Tracer;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The cost tracing adds to a request shaped like DELETE /messages/{id}: a trace with one service span and
+ * three statement spans below it. sampleRate 0 measures what every unsampled request pays; 1 measures a
+ * recorded trace. "none" is the same work with no tracing calls at all.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TracingBenchmark {
+    private static final String[] STATEMENTS = {
+            "SELECT * FROM message WHERE message_id = ? AND deleted = FALSE",
+            "SELECT posted_by, time_posted_epoch FROM OLD TABLE (DELETE FROM message WHERE message_id = ? AND deleted = FALSE)",
+            "UPDATE account_stats SET message_count = message_count - 1 WHERE account_id = ?2"};
+
+    @Param({"0", "1"})
+    public double sampleRate;
+
+    Tracer tracer;
+
+    @Setup
+    public void createTracer(){
+        tracer = new Tracer(1024, sampleRate);
+    }
+
+    @Benchmark
+    public void none(Blackhole blackhole){
+        for(String sql : STATEMENTS){
+            blackhole.consume(sql);
+        }
+    }
+
+    @Benchmark
+    public Trace traced(Blackhole blackhole){
+        tracer.start("DELETE /messages/1");
+        try(Trace.Span service = Tracer.span("MessageService.deleteMessageByID")){
+            for(String sql : STATEMENTS){
+                try(Trace.Span statement = Tracer.span(sql)){
+                    blackhole.consume(sql);
+                }
+            }
+        }
+        return tracer.finish("DELETE /messages/{message_id} 200");
+    }
+}
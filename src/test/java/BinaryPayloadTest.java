@@ -0,0 +1,92 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.fasterxml.jackson.dataformat.smile.databind.SmileMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class BinaryPayloadTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        app.start(8080);
+        socialMediaController.getReadiness().awaitReady(30, TimeUnit.SECONDS);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Sending an http request to POST localhost:8080/messages with a CBOR body, accepting CBOR
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: the new message, encoded as CBOR
+     */
+    @Test
+    public void postMessageInCbor() throws IOException, InterruptedException {
+        ObjectMapper cbor = new CBORMapper();
+        byte[] body = cbor.writeValueAsBytes(new Message(1, "binary message", 1669947800));
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body))
+                .header("Content-Type", "application/cbor")
+                .header("Accept", "application/cbor")
+                .build();
+        HttpResponse<byte[]> response = webClient.send(request, HttpResponse.BodyHandlers.ofByteArray());
+
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertEquals("application/cbor", response.headers().firstValue("Content-Type").orElse(""));
+        Assert.assertEquals(new Message(2, 1, "binary message", 1669947800), cbor.readValue(response.body(), Message.class));
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages, preferring Smile over JSON
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: the seeded message list, encoded as Smile
+     */
+    @Test
+    public void getMessagesInSmile() throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .header("Accept", "application/x-jackson-smile, application/json;q=0.5")
+                .build();
+        HttpResponse<byte[]> response = webClient.send(request, HttpResponse.BodyHandlers.ofByteArray());
+
+        Assert.assertEquals(200, response.statusCode());
+        List<Message> actual = new SmileMapper().readValue(response.body(), new TypeReference<List<Message>>(){});
+        Assert.assertEquals(List.of(new Message(1, 1, "test message 1", 1669947792)), actual);
+    }
+}
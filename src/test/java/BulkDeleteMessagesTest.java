@@ -0,0 +1,258 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.AccountStats;
+import Model.Message;
+import Model.PurgeJob;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class BulkDeleteMessagesTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web. Bulk deletes run in chunks of two, so every test spans several chunks,
+     * and purge jobs pause 100 ms between chunks.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        System.setProperty("socialmedia.purge.chunkSize", "2");
+        // leaves time to pause a job between its chunks
+        System.setProperty("socialmedia.purge.pauseMillis", "100");
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        socialMediaController.getReadiness().awaitReady(30, TimeUnit.SECONDS);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+        System.clearProperty("socialmedia.purge.chunkSize");
+        System.clearProperty("socialmedia.purge.pauseMillis");
+    }
+
+    private void postMessage(int postedBy, long epoch) throws IOException, InterruptedException {
+        HttpRequest postMessageRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString("{" +
+                        "\"posted_by\":" + postedBy + ", " +
+                        "\"message_text\": \"message at " + epoch + "\", " +
+                        "\"time_posted_epoch\": " + epoch + "}"))
+                .header("Content-Type", "application/json")
+                .build();
+        Assert.assertEquals(200, webClient.send(postMessageRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+    }
+
+    private HttpResponse<String> send(String method, String path) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path))
+                .method(method, HttpRequest.BodyPublishers.noBody())
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    /**
+     * Sending an http request to DELETE localhost:8080/accounts/1/messages after posting four more messages
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: a deleted_count of 5; afterwards the user has no messages and empty stats
+     */
+    @Test
+    public void deleteAllMessagesOfUser() throws IOException, InterruptedException {
+        for(int i = 0; i < 4; i++){
+            postMessage(1, 1669947800L + i);
+        }
+
+        HttpResponse<String> response = send("DELETE", "/accounts/1/messages");
+
+        Assert.assertEquals(200, response.statusCode());
+        Map<String, Integer> body = objectMapper.readValue(response.body(), new TypeReference<Map<String, Integer>>(){});
+        Assert.assertEquals(Integer.valueOf(5), body.get("deleted_count"));
+        List<Message> remaining = objectMapper.readValue(send("GET", "/accounts/1/messages").body(), new TypeReference<List<Message>>(){});
+        Assert.assertTrue(remaining.isEmpty());
+        Assert.assertEquals("", send("GET", "/messages/1").body());
+        Assert.assertEquals(AccountStats.empty(1), objectMapper.readValue(send("GET", "/accounts/1/stats").body(), AccountStats.class));
+    }
+
+    /**
+     * Sending an http request to POST localhost:8080/admin/purge?since=1669947792&until=1669947900
+     *
+     * Expected Response:
+     *  Status Code: 202, then GET localhost:8080/admin/purge/1 reports the job DONE after deleting the seeded
+     *  message and the three posted in the range; the message posted after the range is kept
+     */
+    @Test
+    public void purgeJobDeletesTheRangeInChunks() throws IOException, InterruptedException {
+        postMessage(1, 1669947800L);
+        postMessage(1, 1669947801L);
+        postMessage(1, 1669947802L);
+        postMessage(1, 1669948000L);
+
+        HttpResponse<String> response = send("POST", "/admin/purge?since=1669947792&until=1669947900");
+        Assert.assertEquals(202, response.statusCode());
+        PurgeJob job = objectMapper.readValue(response.body(), PurgeJob.class);
+
+        long deadline = System.currentTimeMillis() + 10_000;
+        while(job.status == PurgeJob.Status.RUNNING && System.currentTimeMillis() < deadline){
+            Thread.sleep(20);
+            job = objectMapper.readValue(send("GET", "/admin/purge/" + job.job_id).body(), PurgeJob.class);
+        }
+
+        Assert.assertEquals(PurgeJob.Status.DONE, job.status);
+        Assert.assertEquals(4, job.deleted_count);
+        Assert.assertTrue(job.chunks >= 2);
+        Assert.assertEquals(Long.valueOf(1669947802L), job.cursor_epoch);
+        List<Message> remaining = objectMapper.readValue(send("GET", "/accounts/1/messages").body(), new TypeReference<List<Message>>(){});
+        Assert.assertEquals(1, remaining.size());
+        Assert.assertEquals(1669948000L, remaining.get(0).getTime_posted_epoch());
+    }
+
+    /**
+     * Sending an http request to POST localhost:8080/admin/purge without until, and for an unknown job
+     *
+     * Expected Response:
+     *  Status Code: 400 for the missing until, 404 for the unknown job
+     */
+    @Test
+    public void purgeRequiresUntilAndAKnownJob() throws IOException, InterruptedException {
+        Assert.assertEquals(400, send("POST", "/admin/purge?since=0").statusCode());
+        Assert.assertEquals(404, send("GET", "/admin/purge/99").statusCode());
+        Assert.assertEquals(404, send("POST", "/admin/purge/99/resume").statusCode());
+    }
+
+    private PurgeJob awaitJob(int jobId, PurgeJob.Status status) throws IOException, InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        PurgeJob job = objectMapper.readValue(send("GET", "/admin/purge/" + jobId).body(), PurgeJob.class);
+        while(job.status != status && System.currentTimeMillis() < deadline){
+            Thread.sleep(20);
+            job = objectMapper.readValue(send("GET", "/admin/purge/" + jobId).body(), PurgeJob.class);
+        }
+        return job;
+    }
+
+    /**
+     * Holds the lock of message 1's row in an open transaction, so deleting it times out.
+     */
+    private Connection lockMessage1() throws SQLException {
+        Connection connection = ConnectionUtil.getConnection();
+        connection.setAutoCommit(false);
+        connection.createStatement().executeUpdate("UPDATE message SET message_text = 'locked' WHERE message_id = 1");
+        return connection;
+    }
+
+    private static void release(Connection connection) throws SQLException {
+        connection.rollback();
+        connection.setAutoCommit(true);
+        ConnectionUtil.closeConnection(connection);
+    }
+
+    /**
+     * Sending an http request to DELETE localhost:8080/accounts/1/messages while a chunk cannot be deleted,
+     * then again
+     *
+     * Expected Response:
+     *  Status Code: 500 instead of a partial deleted_count; the retry deletes every message
+     */
+    @Test
+    public void failedChunkFailsTheBulkDelete() throws Exception {
+        postMessage(1, 1669947800L);
+        Connection lock = lockMessage1();
+        try{
+            Assert.assertEquals(500, send("DELETE", "/accounts/1/messages").statusCode());
+        }finally{
+            release(lock);
+        }
+
+        HttpResponse<String> response = send("DELETE", "/accounts/1/messages");
+        Assert.assertEquals(200, response.statusCode());
+        Map<String, Integer> body = objectMapper.readValue(response.body(), new TypeReference<Map<String, Integer>>(){});
+        Assert.assertEquals(Integer.valueOf(2), body.get("deleted_count"));
+    }
+
+    /**
+     * Sending an http request to POST localhost:8080/admin/purge while a chunk cannot be deleted, then
+     * POST localhost:8080/admin/purge/1/resume once it can
+     *
+     * Expected Response:
+     *  The job ends FAILED with the error instead of DONE, and the resumed job deletes the whole range
+     */
+    @Test
+    public void failedPurgeJobCanBeResumed() throws Exception {
+        postMessage(1, 1669947800L);
+        PurgeJob job;
+        Connection lock = lockMessage1();
+        try{
+            job = objectMapper.readValue(send("POST", "/admin/purge?since=0&until=1669947900").body(), PurgeJob.class);
+            job = awaitJob(job.job_id, PurgeJob.Status.FAILED);
+        }finally{
+            release(lock);
+        }
+        Assert.assertEquals(PurgeJob.Status.FAILED, job.status);
+        Assert.assertNotNull(job.error);
+        Assert.assertEquals(0, job.deleted_count);
+
+        Assert.assertEquals(200, send("POST", "/admin/purge/" + job.job_id + "/resume").statusCode());
+        job = awaitJob(job.job_id, PurgeJob.Status.DONE);
+        Assert.assertEquals(PurgeJob.Status.DONE, job.status);
+        Assert.assertEquals(2, job.deleted_count);
+        Assert.assertEquals("[]", send("GET", "/accounts/1/messages").body());
+    }
+
+    /**
+     * Sending an http request to POST localhost:8080/admin/purge, then POST localhost:8080/admin/purge/1/pause
+     * and POST localhost:8080/admin/purge/1/resume
+     *
+     * Expected Response:
+     *  The paused job stops between chunks with messages left, and the resumed one continues from its
+     *  cursor until the range is empty
+     */
+    @Test
+    public void pausedPurgeJobResumesFromItsCursor() throws IOException, InterruptedException {
+        for(int i = 0; i < 6; i++){
+            postMessage(1, 1669947800L + i);
+        }
+        PurgeJob job = objectMapper.readValue(send("POST", "/admin/purge?since=0&until=1669947900").body(), PurgeJob.class);
+        send("POST", "/admin/purge/" + job.job_id + "/pause");
+        // the chunk running when it was paused still completes
+        Thread.sleep(300);
+        job = awaitJob(job.job_id, PurgeJob.Status.PAUSED);
+        Assert.assertEquals(PurgeJob.Status.PAUSED, job.status);
+        long deletedWhenPaused = job.deleted_count;
+        Assert.assertTrue(deletedWhenPaused < 7);
+        Thread.sleep(300);
+        Assert.assertEquals(deletedWhenPaused, awaitJob(job.job_id, PurgeJob.Status.PAUSED).deleted_count);
+
+        Assert.assertEquals(200, send("POST", "/admin/purge/" + job.job_id + "/resume").statusCode());
+        job = awaitJob(job.job_id, PurgeJob.Status.DONE);
+        Assert.assertEquals(PurgeJob.Status.DONE, job.status);
+        Assert.assertEquals(7, job.deleted_count);
+        Assert.assertEquals("[]", send("GET", "/accounts/1/messages").body());
+    }
+}
@@ -0,0 +1,108 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class ConditionalUpdateTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        socialMediaController.getReadiness().awaitReady(30, TimeUnit.SECONDS);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    private HttpResponse<String> patch(String text, String ifMatch) throws IOException, InterruptedException {
+        HttpRequest.Builder builder = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/1"))
+                .header("Content-Type", "application/json")
+                .method("PATCH", HttpRequest.BodyPublishers.ofString("{\"message_text\":\"" + text + "\"}"));
+        if(ifMatch != null){
+            builder.header("If-Match", ifMatch);
+        }
+        return webClient.send(builder.build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private HttpResponse<String> get() throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder().uri(URI.create("http://localhost:8080/messages/1")).build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    /**
+     * Sending GET localhost:8080/messages/1, then PATCH localhost:8080/messages/1 with its ETag in If-Match,
+     * twice
+     *
+     * Expected Response:
+     *  The first PATCH succeeds with a new ETag; the second, with the now stale ETag, fails with Status Code
+     *  412 and leaves the message as the first one left it
+     */
+    @Test
+    public void staleIfMatchFailsWithPreconditionFailed() throws IOException, InterruptedException {
+        HttpResponse<String> read = get();
+        Assert.assertEquals(200, read.statusCode());
+        String etag = read.headers().firstValue("ETag").orElse(null);
+        Assert.assertNotNull(etag);
+
+        HttpResponse<String> updated = patch("first edit", etag);
+        Assert.assertEquals(200, updated.statusCode());
+        Assert.assertEquals("first edit", objectMapper.readValue(updated.body(), Message.class).getMessage_text());
+        String newEtag = updated.headers().firstValue("ETag").orElse(null);
+        Assert.assertNotNull(newEtag);
+        Assert.assertNotEquals(etag, newEtag);
+
+        Assert.assertEquals(412, patch("lost edit", etag).statusCode());
+        HttpResponse<String> after = get();
+        Assert.assertEquals("first edit", objectMapper.readValue(after.body(), Message.class).getMessage_text());
+        Assert.assertEquals(newEtag, after.headers().firstValue("ETag").orElse(null));
+    }
+
+    /**
+     * Sending PATCH localhost:8080/messages/1 with different If-Match headers, or none
+     *
+     * Expected Response:
+     *  Without If-Match or with * the update is unconditional; weak or unknown tags fail with 412; a blank
+     *  text or a list of tags is rejected with 400
+     */
+    @Test
+    public void ifMatchVariants() throws IOException, InterruptedException {
+        Assert.assertEquals(200, patch("unconditional", null).statusCode());
+        Assert.assertEquals(200, patch("any version", "*").statusCode());
+        Assert.assertEquals(412, patch("weak", "W/\"1\"").statusCode());
+        Assert.assertEquals(412, patch("unknown", "\"not-a-version\"").statusCode());
+        Assert.assertEquals(400, patch("", "*").statusCode());
+        Assert.assertEquals(400, patch("list", "\"1\", \"2\"").statusCode());
+        Assert.assertEquals("any version", objectMapper.readValue(get().body(), Message.class).getMessage_text());
+    }
+}
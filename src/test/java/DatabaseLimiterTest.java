@@ -0,0 +1,166 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.Connection;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Util.AdaptiveLimiter;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class DatabaseLimiterTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        socialMediaController.getReadiness().awaitReady(30, TimeUnit.SECONDS);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Callers over the limit are refused at once and counted.
+     */
+    @Test
+    public void refusesCallersOverTheLimit() {
+        AdaptiveLimiter limiter = new AdaptiveLimiter(2, 1, 4, 10);
+
+        Assert.assertTrue(limiter.tryAcquire());
+        Assert.assertTrue(limiter.tryAcquire());
+        Assert.assertFalse(limiter.tryAcquire());
+        Assert.assertEquals(1, limiter.getRejected());
+        limiter.release(0);
+        Assert.assertTrue(limiter.tryAcquire());
+    }
+
+    /**
+     * Slow calls cut the limit down to the minimum; fast calls at the limit grow it back to the maximum.
+     */
+    @Test
+    public void adaptsTheLimitToLatency() throws InterruptedException {
+        AdaptiveLimiter limiter = new AdaptiveLimiter(4, 2, 8, 10);
+        for(int i = 0; i < 20; i++){
+            limiter.tryAcquire();
+            Thread.sleep(11);
+            limiter.release(TimeUnit.MILLISECONDS.toNanos(11));
+        }
+        Assert.assertEquals(2, limiter.getLimit());
+
+        for(int i = 0; i < 200; i++){
+            while(limiter.tryAcquire()) { }
+            limiter.release(TimeUnit.MILLISECONDS.toNanos(1));
+            while(limiter.getInFlight() > 0){
+                limiter.release(TimeUnit.MILLISECONDS.toNanos(1));
+            }
+        }
+        Assert.assertEquals(8, limiter.getLimit());
+    }
+
+    /**
+     * Slow calls that were all in flight together cut the limit once, not once each.
+     */
+    @Test
+    public void slowCallsInFlightTogetherCutTheLimitOnce() throws InterruptedException {
+        AdaptiveLimiter limiter = new AdaptiveLimiter(8, 2, 8, 10);
+        for(int i = 0; i < 8; i++){
+            Assert.assertTrue(limiter.tryAcquire());
+        }
+        Thread.sleep(50);
+        for(int i = 0; i < 8; i++){
+            limiter.release(TimeUnit.MILLISECONDS.toNanos(50));
+        }
+        Assert.assertEquals(7, limiter.getLimit());
+
+        // a slow call started after that cut cuts it again
+        Assert.assertTrue(limiter.tryAcquire());
+        Thread.sleep(11);
+        limiter.release(TimeUnit.MILLISECONDS.toNanos(11));
+        Assert.assertEquals(6, limiter.getLimit());
+    }
+
+    /**
+     * The limiter samples how long statements take to execute, not how long the connection was held, so
+     * a caller holding a connection between fast statements does not cut the limit.
+     */
+    @Test
+    public void heldConnectionWithFastStatementsKeepsTheLimit() throws Exception {
+        AdaptiveLimiter limiter = ConnectionUtil.getLimiter();
+        int before = limiter.getLimit();
+        Connection connection = ConnectionUtil.getConnection();
+        try{
+            connection.createStatement().executeQuery("SELECT 1").close();
+            // longer than "db.limit.targetMillis"
+            Thread.sleep(150);
+        }finally{
+            connection.close();
+        }
+        Assert.assertEquals(before, limiter.getLimit());
+    }
+
+    /**
+     * While the database limit is used up, sending an http request to POST localhost:8080/login
+     *
+     * Expected Response:
+     *  Status Code: 503, with a Retry-After header and the rejection visible in /admin/metrics
+     */
+    @Test
+    public void overloadedDatabaseAnswers503() throws IOException, InterruptedException {
+        AdaptiveLimiter limiter = ConnectionUtil.getLimiter();
+        int held = 0;
+        while(limiter.tryAcquire()){
+            held++;
+        }
+        HttpResponse<String> response;
+        try{
+            HttpRequest request = HttpRequest.newBuilder()
+                    .uri(URI.create("http://localhost:8080/login"))
+                    .POST(HttpRequest.BodyPublishers.ofString("{\"username\":\"testuser1\",\"password\":\"password\"}"))
+                    .header("Content-Type", "application/json")
+                    .build();
+            response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+        }finally{
+            for(int i = 0; i < held; i++){
+                limiter.release(0);
+            }
+        }
+
+        Assert.assertEquals(503, response.statusCode());
+        Assert.assertEquals("1", response.headers().firstValue("Retry-After").orElse(null));
+        HttpRequest metricsRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/admin/metrics"))
+                .build();
+        Map<String, Long> metrics = objectMapper.readValue(webClient.send(metricsRequest, HttpResponse.BodyHandlers.ofString()).body(),
+                new TypeReference<Map<String, Long>>(){});
+        Assert.assertTrue(metrics.get("db.rejected") > 0);
+        Assert.assertTrue(metrics.get("db.limit") > 0);
+    }
+}
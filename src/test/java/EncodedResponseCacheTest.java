@@ -0,0 +1,117 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class EncodedResponseCacheTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        socialMediaController.getReadiness().awaitReady(30, TimeUnit.SECONDS);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    private HttpResponse<String> send(String method, String path, String body) throws IOException, InterruptedException {
+        HttpRequest.Builder builder = HttpRequest.newBuilder().uri(URI.create("http://localhost:8080" + path));
+        if(body == null){
+            builder.method(method, HttpRequest.BodyPublishers.noBody());
+        }else{
+            builder.header("Content-Type", "application/json").method(method, HttpRequest.BodyPublishers.ofString(body));
+        }
+        return webClient.send(builder.build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private long encodedHits() throws IOException, InterruptedException {
+        Map<String, Long> metrics = objectMapper.readValue(send("GET", "/admin/metrics", null).body(),
+                new TypeReference<Map<String, Long>>(){});
+        return metrics.get("cache.encoded.hits");
+    }
+
+    /**
+     * Sending GET localhost:8080/messages/1 twice, then PATCH localhost:8080/messages/1 and GET it again
+     *
+     * Expected Response:
+     *  The second GET is served from the encoded bytes with the same body, content type and length; after
+     *  the update the new text is served
+     */
+    @Test
+    public void repeatedReadsAreServedFromEncodedBytesUntilUpdated() throws IOException, InterruptedException {
+        HttpResponse<String> first = send("GET", "/messages/1", null);
+        long hitsBefore = encodedHits();
+        HttpResponse<String> second = send("GET", "/messages/1", null);
+
+        Assert.assertEquals(200, second.statusCode());
+        Assert.assertEquals(first.body(), second.body());
+        Assert.assertEquals(new Message(1, 1, "test message 1", 1669947792), objectMapper.readValue(second.body(), Message.class));
+        Assert.assertEquals("application/json", second.headers().firstValue("Content-Type").orElse(null));
+        Assert.assertEquals(String.valueOf(second.body().length()), second.headers().firstValue("Content-Length").orElse(null));
+        Assert.assertEquals(hitsBefore + 1, encodedHits());
+
+        Assert.assertEquals(200, send("PATCH", "/messages/1", "{\"message_text\":\"updated message\"}").statusCode());
+        HttpResponse<String> afterUpdate = send("GET", "/messages/1", null);
+
+        Assert.assertEquals(new Message(1, 1, "updated message", 1669947792), objectMapper.readValue(afterUpdate.body(), Message.class));
+    }
+
+    /**
+     * Sending GET localhost:8080/accounts/1/messages twice, then POST localhost:8080/messages and GET the
+     * timeline again
+     *
+     * Expected Response:
+     *  The repeated timeline is served from the encoded bytes; after the post it includes the new message
+     */
+    @Test
+    public void timelinesAreServedFromEncodedBytesUntilTheAuthorPosts() throws IOException, InterruptedException {
+        HttpResponse<String> first = send("GET", "/accounts/1/messages", null);
+        send("GET", "/accounts/1/messages", null);
+        long hitsBefore = encodedHits();
+        HttpResponse<String> cached = send("GET", "/accounts/1/messages", null);
+
+        Assert.assertEquals(first.body(), cached.body());
+        Assert.assertEquals(hitsBefore + 1, encodedHits());
+
+        HttpResponse<String> posted = send("POST", "/messages", "{\"posted_by\":1,\"message_text\":\"second message\",\"time_posted_epoch\":1669947793}");
+        Assert.assertEquals(200, posted.statusCode());
+        List<Message> messages = objectMapper.readValue(send("GET", "/accounts/1/messages", null).body(),
+                new TypeReference<List<Message>>(){});
+
+        Assert.assertEquals(2, messages.size());
+        Assert.assertEquals("second message", messages.get(1).getMessage_text());
+    }
+}
@@ -0,0 +1,126 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+public class FlightRecorderTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        socialMediaController.getReadiness().awaitReady(30, TimeUnit.SECONDS);
+    }
+
+    @After
+    public void tearDown() throws IOException, InterruptedException {
+        send("POST", "/admin/jfr/stop", null);
+        app.stop();
+    }
+
+    private HttpResponse<byte[]> send(String method, String path, String body) throws IOException, InterruptedException {
+        HttpRequest.Builder builder = HttpRequest.newBuilder().uri(URI.create("http://localhost:8080" + path));
+        if(body == null){
+            builder.method(method, HttpRequest.BodyPublishers.noBody());
+        }else{
+            builder.header("Content-Type", "application/json").method(method, HttpRequest.BodyPublishers.ofString(body));
+        }
+        return webClient.send(builder.build(), HttpResponse.BodyHandlers.ofByteArray());
+    }
+
+    /**
+     * Sending POST localhost:8080/admin/jfr/start?profile=default&duration=60, a login, then
+     * POST localhost:8080/admin/jfr/stop and GET localhost:8080/admin/jfr/recording.jfr
+     *
+     * Expected Response:
+     *  The recording runs until stopped and downloads as a .jfr file holding a request event for the login
+     *  route and a query event for its statement, with the route and the row it read
+     */
+    @Test
+    public void recordingHoldsRequestAndQueryEvents() throws IOException, InterruptedException {
+        HttpResponse<byte[]> started = send("POST", "/admin/jfr/start?profile=default&duration=60", null);
+        Assert.assertEquals(200, started.statusCode());
+        Assert.assertEquals("RUNNING", objectMapper.readTree(started.body()).get("state").asText());
+        Assert.assertEquals(409, send("POST", "/admin/jfr/start", null).statusCode());
+
+        HttpResponse<byte[]> login = send("POST", "/login", "{\"username\":\"testuser1\",\"password\":\"password\"}");
+        Assert.assertEquals(200, login.statusCode());
+
+        JsonNode stopped = objectMapper.readTree(send("POST", "/admin/jfr/stop", null).body());
+        Assert.assertEquals("STOPPED", stopped.get("state").asText());
+        Assert.assertEquals("default", stopped.get("profile").asText());
+
+        HttpResponse<byte[]> download = send("GET", "/admin/jfr/recording.jfr", null);
+        Assert.assertEquals(200, download.statusCode());
+        Assert.assertEquals("application/octet-stream", download.headers().firstValue("Content-Type").orElse(null));
+        Path file = Files.createTempFile("recording", ".jfr");
+        try{
+            Files.write(file, download.body());
+            List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+            boolean request = false;
+            boolean query = false;
+            for(RecordedEvent event : events){
+                String name = event.getEventType().getName();
+                if(name.equals("socialmedia.Request") && "/login".equals(event.getString("route"))){
+                    Assert.assertEquals("POST", event.getString("method"));
+                    Assert.assertEquals(200, event.getInt("status"));
+                    request = true;
+                }else if(name.equals("socialmedia.Query") && "POST /login".equals(event.getString("route"))){
+                    Assert.assertTrue(event.getString("sql").contains("account"));
+                    Assert.assertEquals(1, event.getLong("rows"));
+                    query = true;
+                }
+            }
+            Assert.assertTrue("no request event for POST /login", request);
+            Assert.assertTrue("no query event for POST /login", query);
+        }finally{
+            Files.deleteIfExists(file);
+        }
+    }
+
+    /**
+     * Sending POST localhost:8080/admin/jfr/start?profile=missing, or with a bad duration
+     *
+     * Expected Response:
+     *  Status Code 400, and no recording is started
+     */
+    @Test
+    public void badRecordingRequestsAreRejected() throws IOException, InterruptedException {
+        Assert.assertEquals(400, send("POST", "/admin/jfr/start?profile=missing", null).statusCode());
+        Assert.assertEquals(400, send("POST", "/admin/jfr/start?duration=soon", null).statusCode());
+        Assert.assertEquals(404, send("GET", "/admin/jfr", null).statusCode());
+        Assert.assertEquals(404, send("GET", "/admin/jfr/recording.jfr", null).statusCode());
+    }
+}
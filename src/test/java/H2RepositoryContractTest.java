@@ -0,0 +1,14 @@
+import DAO.Repositories;
+import Util.ConnectionUtil;
+
+/**
+ * Runs the repository contract against the JDBC DAOs.
+ */
+public class H2RepositoryContractTest extends RepositoryContract {
+
+    @Override
+    protected Repositories createRepositories() {
+        ConnectionUtil.resetTestDatabase();
+        return Repositories.h2();
+    }
+}
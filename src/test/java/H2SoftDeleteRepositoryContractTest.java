@@ -0,0 +1,40 @@
+import org.junit.Assert;
+import org.junit.Test;
+
+import DAO.AccountDAO;
+import DAO.MessageDAO;
+import DAO.Repositories;
+import Model.Account;
+import Model.AccountStats;
+import Model.Message;
+import Util.ConnectionUtil;
+
+/**
+ * Runs the repository contract against the JDBC DAOs with soft delete, where deleted messages stay behind
+ * as tombstones until they are compacted.
+ */
+public class H2SoftDeleteRepositoryContractTest extends RepositoryContract {
+
+    @Override
+    protected Repositories createRepositories() {
+        ConnectionUtil.resetTestDatabase();
+        return new Repositories(new AccountDAO(), new MessageDAO(true));
+    }
+
+    @Test
+    public void compactionRemovesOnlyTombstones() {
+        Account author = newAccount();
+        int id = author.getAccount_id();
+        Message deleted = messageRepository.insertMessage(new Message(id, "deleted", 10L));
+        Message kept = messageRepository.insertMessage(new Message(id, "kept", 20L));
+        Assert.assertTrue(messageRepository.deleteMessageByID(deleted.getMessage_id()));
+        Assert.assertFalse(messageRepository.deleteMessageByID(deleted.getMessage_id()));
+        Assert.assertNull(messageRepository.updateMessage(new Message(deleted.getMessage_id(), id, "revived", 10L)));
+
+        Assert.assertEquals(1, messageRepository.compactDeleted(100));
+        Assert.assertEquals(0, messageRepository.compactDeleted(100));
+        Assert.assertNull(messageRepository.getMessageByID(deleted.getMessage_id()));
+        Assert.assertEquals(kept, messageRepository.getMessageByID(kept.getMessage_id()));
+        Assert.assertEquals(new AccountStats(id, 1, 20L, 20L), messageRepository.getAccountStats(id));
+    }
+}
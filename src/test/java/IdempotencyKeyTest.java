@@ -0,0 +1,134 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Account;
+import Model.Message;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class IdempotencyKeyTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        socialMediaController.getReadiness().awaitReady(30, TimeUnit.SECONDS);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    private HttpRequest post(String path, String key, String body) {
+        return HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path))
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .header("Content-Type", "application/json")
+                .header("Idempotency-Key", key)
+                .build();
+    }
+
+    private List<Message> messagesOfUser1() throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/accounts/1/messages"))
+                .build();
+        return objectMapper.readValue(webClient.send(request, HttpResponse.BodyHandlers.ofString()).body(),
+                new TypeReference<List<Message>>(){});
+    }
+
+    /**
+     * Sending POST localhost:8080/messages twice with the same Idempotency-Key
+     *
+     * Expected Response:
+     *  Status Code: 200 both times, with the same message; only one message is created
+     */
+    @Test
+    public void retriedPostReplaysTheFirstResponse() throws IOException, InterruptedException {
+        String body = "{\"posted_by\":1, \"message_text\": \"only once\", \"time_posted_epoch\": 1669947800}";
+        HttpResponse<String> first = webClient.send(post("/messages", "retry-1", body), HttpResponse.BodyHandlers.ofString());
+        HttpResponse<String> retry = webClient.send(post("/messages", "retry-1", body), HttpResponse.BodyHandlers.ofString());
+
+        Assert.assertEquals(200, first.statusCode());
+        Assert.assertEquals(200, retry.statusCode());
+        Assert.assertEquals(objectMapper.readValue(first.body(), Message.class), objectMapper.readValue(retry.body(), Message.class));
+        Assert.assertEquals(2, messagesOfUser1().size());
+    }
+
+    /**
+     * Sending ten concurrent POST localhost:8080/messages with the same Idempotency-Key
+     *
+     * Expected Response:
+     *  Status Code: 200 for all, with the same message; only one message is created
+     */
+    @Test
+    public void concurrentDuplicatesShareOneWrite() throws Exception {
+        String body = "{\"posted_by\":1, \"message_text\": \"concurrent\", \"time_posted_epoch\": 1669947800}";
+        List<CompletableFuture<HttpResponse<String>>> responses = new ArrayList<>();
+        for(int i = 0; i < 10; i++){
+            responses.add(webClient.sendAsync(post("/messages", "concurrent-1", body), HttpResponse.BodyHandlers.ofString()));
+        }
+
+        Message expected = null;
+        for(CompletableFuture<HttpResponse<String>> response : responses){
+            HttpResponse<String> result = response.get(10, TimeUnit.SECONDS);
+            Assert.assertEquals(200, result.statusCode());
+            Message message = objectMapper.readValue(result.body(), Message.class);
+            if(expected == null){
+                expected = message;
+            }
+            Assert.assertEquals(expected, message);
+        }
+        Assert.assertEquals(2, messagesOfUser1().size());
+    }
+
+    /**
+     * Sending POST localhost:8080/register twice with the same Idempotency-Key, then with a different body
+     *
+     * Expected Response:
+     *  Status Code: 200 with the same account for the retry (not 400 for a duplicate username), 422 for the
+     *  different body
+     */
+    @Test
+    public void registrationRetryIsReplayedAndKeyReuseIsRejected() throws IOException, InterruptedException {
+        String body = "{\"username\":\"user\", \"password\":\"password\"}";
+        HttpResponse<String> first = webClient.send(post("/register", "register-1", body), HttpResponse.BodyHandlers.ofString());
+        HttpResponse<String> retry = webClient.send(post("/register", "register-1", body), HttpResponse.BodyHandlers.ofString());
+        HttpResponse<String> reused = webClient.send(post("/register", "register-1", "{\"username\":\"other\", \"password\":\"password\"}"),
+                HttpResponse.BodyHandlers.ofString());
+
+        Assert.assertEquals(200, first.statusCode());
+        Assert.assertEquals(200, retry.statusCode());
+        Assert.assertEquals(objectMapper.readValue(first.body(), Account.class), objectMapper.readValue(retry.body(), Account.class));
+        Assert.assertEquals(422, reused.statusCode());
+    }
+}
@@ -0,0 +1,61 @@
+import org.junit.Assert;
+import org.junit.Test;
+
+import Controller.IdempotencyStore;
+
+public class IdempotencyStoreTest {
+    private static final byte[] BODY = {1, 2, 3};
+
+    private static IdempotencyStore.StoredResponse ok(){
+        return new IdempotencyStore.StoredResponse(200, "application/json", new byte[0]);
+    }
+
+    /**
+     * A full store drops completed keys for new ones, but never a key still in flight; with only keys in
+     * flight it refuses new ones instead.
+     */
+    @Test
+    public void keysInFlightAreNotEvicted() {
+        IdempotencyStore store = new IdempotencyStore(2, 3600);
+        IdempotencyStore.Claim first = store.claim("first", BODY);
+        IdempotencyStore.Claim second = store.claim("second", BODY);
+        Assert.assertNull(store.claim("third", BODY));
+
+        first.complete(ok());
+        Assert.assertTrue(store.claim("third", BODY).isOwner());
+        // the in-flight key is still there, so its duplicate waits instead of running again
+        IdempotencyStore.Claim duplicate = store.claim("second", BODY);
+        Assert.assertFalse(duplicate.isOwner());
+        Assert.assertFalse(duplicate.response().isDone());
+
+        second.complete(ok());
+        Assert.assertEquals(200, duplicate.response().join().status);
+    }
+
+    /**
+     * An expired key is kept while its request is in flight.
+     */
+    @Test
+    public void expiredKeysInFlightAreKept() {
+        IdempotencyStore store = new IdempotencyStore(10, 0);
+        IdempotencyStore.Claim owner = store.claim("key", BODY);
+        Assert.assertFalse(store.claim("key", BODY).isOwner());
+
+        owner.complete(ok());
+        Assert.assertTrue(store.claim("key", BODY).isOwner());
+    }
+
+    /**
+     * Timing out one duplicate's wait leaves the response to the others.
+     */
+    @Test
+    public void timedOutWaitDoesNotFailOtherDuplicates() {
+        IdempotencyStore store = new IdempotencyStore(10, 3600);
+        IdempotencyStore.Claim owner = store.claim("key", BODY);
+        IdempotencyStore.Claim duplicate = store.claim("key", BODY);
+        duplicate.response().completeExceptionally(new RuntimeException("timed out"));
+
+        owner.complete(ok());
+        Assert.assertEquals(200, store.claim("key", BODY).response().join().status);
+    }
+}
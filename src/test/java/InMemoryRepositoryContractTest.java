@@ -0,0 +1,12 @@
+import DAO.Repositories;
+
+/**
+ * Runs the repository contract against the in-memory storage engine.
+ */
+public class InMemoryRepositoryContractTest extends RepositoryContract {
+
+    @Override
+    protected Repositories createRepositories() {
+        return Repositories.inMemory();
+    }
+}
@@ -0,0 +1,77 @@
+import org.junit.Assert;
+import org.junit.Test;
+
+import DAO.InMemoryAccountDAO;
+import DAO.InMemoryMessageDAO;
+import DAO.InMemoryStore;
+import Model.Account;
+import Model.AccountStats;
+import Model.Message;
+import Util.SnapshotManager;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Saving and restoring the in-memory store through its snapshot section.
+ */
+public class InMemoryStoreSnapshotTest {
+
+    static InMemoryStore restore(byte[] section) {
+        InMemoryStore store = new InMemoryStore();
+        store.readSnapshot(ByteBuffer.wrap(section));
+        return store;
+    }
+
+    /**
+     * The author index and stats are rebuilt from the saved messages.
+     */
+    @Test
+    public void indexAndStatsAreRebuilt() throws IOException {
+        InMemoryStore store = new InMemoryStore();
+        int author = new InMemoryAccountDAO(store).insertAccount(new Account("snapshot_author", "password")).getAccount_id();
+        InMemoryMessageDAO messages = new InMemoryMessageDAO(store);
+        Message first = messages.insertMessage(new Message(author, "first", 10L));
+        Message second = messages.insertMessage(new Message(author, "second", 20L));
+        Message third = messages.insertMessage(new Message(author, "third", 30L));
+        messages.deleteMessageByID(second.getMessage_id());
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        store.writeSnapshot(new DataOutputStream(bytes));
+        InMemoryMessageDAO restored = new InMemoryMessageDAO(restore(bytes.toByteArray()));
+
+        Assert.assertEquals(Arrays.asList(first, third), restored.getMessagesOfUser(author));
+        Assert.assertEquals(new AccountStats(author, 2, 10L, 30L), restored.getAccountStats(author));
+    }
+
+    /**
+     * A snapshot taken while messages are inserted can hold IDs above its saved sequence. Restoring it
+     * must not hand those IDs out again.
+     */
+    @Test
+    public void sequenceCoversEverySavedId() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0);
+        out.writeInt(1);
+        out.writeInt(1);
+        out.writeInt(1);
+        SnapshotManager.writeString(out, "raced_author");
+        SnapshotManager.writeString(out, "password");
+        out.writeInt(2);
+        for (int id = 1; id <= 2; id++) {
+            out.writeInt(id);
+            out.writeInt(1);
+            out.writeLong(id);
+            SnapshotManager.writeString(out, "message " + id);
+        }
+        out.writeInt(0);
+
+        InMemoryStore store = restore(bytes.toByteArray());
+        Assert.assertEquals(3, new InMemoryMessageDAO(store).insertMessage(new Message(1, "next", 3L)).getMessage_id());
+        Assert.assertEquals(2, new InMemoryAccountDAO(store).insertAccount(new Account("next_author", "password")).getAccount_id());
+    }
+}
@@ -0,0 +1,95 @@
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Controller.SocialMediaController;
+import Perf.LatencyHistogram;
+import Perf.LoadGenerator;
+import Perf.LoadReport;
+import Perf.Operation;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+public class LoadGeneratorTest {
+    SocialMediaController socialMediaController;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database and restart the Javalin app.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        app.start(8080);
+        socialMediaController.getReadiness().awaitReady(30, TimeUnit.SECONDS);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * A short open-model run against the local API should hit every route without errors.
+     */
+    @Test
+    public void shortRunCoversEveryRoute() throws Exception {
+        LoadGenerator generator = new LoadGenerator("http://localhost:8080", 100, 3, 0, 3, 500);
+        LoadReport report = generator.run();
+
+        Assert.assertTrue(report.getTotalCount() > 200);
+        Assert.assertEquals(0, report.getTotalErrors());
+        for(Operation operation : Operation.values()){
+            Assert.assertTrue(operation.getRoute(), report.getCount(operation) > 0);
+        }
+
+        // the arrival window, not the time spent draining the last responses
+        Assert.assertEquals(3.0, report.getDurationSeconds(), 0.001);
+
+        Map<String, Object> map = report.toMap();
+        Assert.assertTrue(map.containsKey("throughput"));
+        Assert.assertEquals(report.getTotalSkipped(), map.get("totalSkipped"));
+        Assert.assertTrue(((Map<?, ?>) map.get("routes")).containsKey("GET /messages/{message_id}"));
+    }
+
+    /**
+     * Operations with nothing to work on are counted as skipped for their own route, not as requests.
+     */
+    @Test
+    public void skippedOperationsAreCountedSeparately() {
+        LoadReport report = new LoadReport(100);
+        report.recordSkipped(Operation.DELETE_MESSAGE);
+        report.record(Operation.GET_ALL_MESSAGES, 1000, true);
+
+        Assert.assertEquals(1, report.getSkipped(Operation.DELETE_MESSAGE));
+        Assert.assertEquals(0, report.getCount(Operation.DELETE_MESSAGE));
+        Assert.assertEquals(1, report.getTotalCount());
+        Assert.assertEquals(0, report.getTotalErrors());
+        Map<?, ?> route = (Map<?, ?>) ((Map<?, ?>) report.toMap().get("routes")).get(Operation.DELETE_MESSAGE.getRoute());
+        Assert.assertEquals(1L, route.get("skipped"));
+    }
+
+    /**
+     * Percentiles should be ordered and stay within a few percent of the recorded values.
+     */
+    @Test
+    public void histogramPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for(int i = 1; i <= 10000; i++){
+            histogram.record(i);
+        }
+
+        Assert.assertEquals(10000, histogram.getCount());
+        Assert.assertEquals(10000, histogram.getMax());
+        Assert.assertEquals(5000, histogram.getValueAtPercentile(50), 5000 * 0.04);
+        Assert.assertEquals(9900, histogram.getValueAtPercentile(99), 9900 * 0.04);
+        Assert.assertTrue(histogram.getValueAtPercentile(99.9) >= histogram.getValueAtPercentile(99));
+    }
+}
@@ -0,0 +1,101 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.LoadShedder;
+import Controller.SocialMediaController;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class LoadSheddingTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        socialMediaController.getReadiness().awaitReady(30, TimeUnit.SECONDS);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Without overload, only requests that waited longer than a whole interval are shed.
+     */
+    @Test
+    public void shedsOnlyVeryLateRequestsWhenNotOverloaded() {
+        LoadShedder shedder = new LoadShedder(5, 100);
+
+        Assert.assertFalse(shedder.shouldShed(TimeUnit.MILLISECONDS.toNanos(50)));
+        Assert.assertTrue(shedder.shouldShed(TimeUnit.MILLISECONDS.toNanos(150)));
+        Assert.assertFalse(shedder.isOverloaded());
+    }
+
+    /**
+     * Once the queue delay stayed above the target for a whole interval, anything above the target is shed,
+     * until an interval in which some request got through quickly.
+     */
+    @Test
+    public void shedsAboveTargetWhileOverloaded() throws InterruptedException {
+        LoadShedder shedder = new LoadShedder(5, 20);
+        shedder.shouldShed(TimeUnit.MILLISECONDS.toNanos(10));
+        Thread.sleep(25);
+
+        Assert.assertTrue(shedder.shouldShed(TimeUnit.MILLISECONDS.toNanos(10)));
+        Assert.assertTrue(shedder.isOverloaded());
+        shedder.shouldShed(0);
+        Thread.sleep(25);
+
+        Assert.assertFalse(shedder.shouldShed(TimeUnit.MILLISECONDS.toNanos(10)));
+        Assert.assertFalse(shedder.isOverloaded());
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/admin/metrics
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: the shedding counters and the request pool gauges
+     */
+    @Test
+    public void metricsExposeSheddingCounters() throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/admin/metrics"))
+                .build();
+        HttpResponse<String> response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+
+        Assert.assertEquals(200, response.statusCode());
+        Map<String, Long> metrics = objectMapper.readValue(response.body(), new TypeReference<Map<String, Long>>(){});
+        Assert.assertEquals(Long.valueOf(0), metrics.get("http.shed"));
+        Assert.assertTrue(metrics.containsKey("http.rejected"));
+        Assert.assertTrue(metrics.get("http.threads") > 0);
+        Assert.assertTrue(metrics.containsKey("http.queue.size"));
+    }
+}
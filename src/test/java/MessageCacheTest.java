@@ -0,0 +1,36 @@
+import org.junit.Assert;
+import org.junit.Test;
+
+import Model.Message;
+import Service.MessageCache;
+
+public class MessageCacheTest {
+
+    /**
+     * The size counter follows slots turning full and empty, and does not count a message that displaces
+     * another one in the same slot.
+     */
+    @Test
+    public void sizeCountsOccupiedSlots() {
+        MessageCache cache = new MessageCache(4);
+        Assert.assertEquals(0, cache.size());
+
+        cache.fill(cache.lookup(1), new Message(1, 1, "one", 1L));
+        cache.fill(cache.lookup(2), new Message(2, 1, "two", 2L));
+        Assert.assertEquals(2, cache.size());
+
+        // 5 shares the slot of 1
+        cache.fill(cache.lookup(5), new Message(5, 1, "five", 5L));
+        Assert.assertEquals(2, cache.size());
+
+        MessageCache.Lookup stale = cache.lookup(2);
+        cache.invalidate(2);
+        cache.invalidate(2);
+        Assert.assertEquals(1, cache.size());
+
+        // a fill started before the invalidation is dropped and does not count
+        cache.fill(stale, new Message(2, 1, "two", 2L));
+        Assert.assertEquals(1, cache.size());
+        Assert.assertEquals(1, cache.ids().length);
+    }
+}
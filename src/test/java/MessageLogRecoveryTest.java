@@ -0,0 +1,232 @@
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import DAO.MessageLogDAO;
+import Model.Message;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Restart and crash-recovery behaviour of the memory-mapped message log.
+ */
+public class MessageLogRecoveryTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    Path directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = folder.newFolder("log").toPath();
+    }
+
+    MessageLogDAO open(int segmentBytes) {
+        return new MessageLogDAO(directory, segmentBytes, accountId -> accountId > 0);
+    }
+
+    List<Path> segmentFiles() throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "segment-*.log")) {
+            for (Path file : stream) {
+                files.add(file);
+            }
+        }
+        files.sort(null);
+        return files;
+    }
+
+    /**
+     * Inserts, updates and deletes should all be replayed after a clean restart.
+     */
+    @Test
+    public void stateSurvivesRestart() throws IOException {
+        MessageLogDAO log = open(64 * 1024);
+        Message first = log.insertMessage(new Message(1, "first", 100L));
+        Message second = log.insertMessage(new Message(2, "second", 200L));
+        Message third = log.insertMessage(new Message(1, "third", 300L));
+        Message patch = new Message();
+        patch.setMessage_id(first.getMessage_id());
+        patch.setMessage_text("first, edited");
+        log.updateMessage(patch);
+        log.deleteMessageByID(second.getMessage_id());
+        log.close();
+
+        MessageLogDAO reopened = open(64 * 1024);
+        Assert.assertEquals(new Message(first.getMessage_id(), 1, "first, edited", 100L), reopened.getMessageByID(first.getMessage_id()));
+        Assert.assertNull(reopened.getMessageByID(second.getMessage_id()));
+        Assert.assertEquals(2, reopened.getMessagesOfUser(1).size());
+        Assert.assertEquals(third, reopened.getAllMessages().get(1));
+
+        // ids are never reused, not even the id of a deleted last message
+        Message fourth = reopened.insertMessage(new Message(2, "fourth", 400L));
+        Assert.assertEquals(third.getMessage_id() + 1, fourth.getMessage_id());
+        reopened.close();
+    }
+
+    /**
+     * A crash in the middle of an append leaves a partial record at the end of the segment. Recovery
+     * keeps every complete record before it and new appends overwrite the torn one.
+     */
+    @Test
+    public void truncatedTailIsDiscarded() throws IOException {
+        MessageLogDAO log = open(64 * 1024);
+        for (int i = 0; i < 10; i++) {
+            log.insertMessage(new Message(1, "message " + i, i));
+        }
+        log.close();
+
+        Path segment = segmentFiles().get(0);
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            // drop the terminating zero length and the last 7 bytes of the last record
+            channel.truncate(channel.size() - 4 - 7);
+        }
+
+        MessageLogDAO reopened = open(64 * 1024);
+        Assert.assertEquals(9, reopened.getAllMessages().size());
+        Assert.assertNull(reopened.getMessageByID(10));
+        Message appended = reopened.insertMessage(new Message(1, "after crash", 11L));
+        Assert.assertEquals(10, appended.getMessage_id());
+        reopened.close();
+
+        MessageLogDAO again = open(64 * 1024);
+        Assert.assertEquals(appended, again.getMessageByID(10));
+        Assert.assertEquals(10, again.getAllMessages().size());
+        again.close();
+    }
+
+    /**
+     * A record whose bytes were only partly written fails its checksum and is discarded.
+     */
+    @Test
+    public void corruptTailRecordIsDiscarded() throws IOException {
+        MessageLogDAO log = open(64 * 1024);
+        log.insertMessage(new Message(1, "kept", 1L));
+        log.insertMessage(new Message(1, "torn", 2L));
+        log.close();
+
+        Path segment = segmentFiles().get(0);
+        try (RandomAccessFile file = new RandomAccessFile(segment.toFile(), "rw")) {
+            // scribble over the text of the last record, just before its checksum and the end marker
+            file.seek(file.length() - 4 - 4 - 2);
+            file.write(new byte[]{'X', 'X'});
+        }
+
+        MessageLogDAO reopened = open(64 * 1024);
+        Assert.assertEquals(1, reopened.getAllMessages().size());
+        Assert.assertEquals("kept", reopened.getMessageByID(1).getMessage_text());
+        reopened.close();
+    }
+
+    /**
+     * Compaction should drop superseded segments without changing what is visible, before or after a restart.
+     */
+    @Test
+    public void compactionKeepsLiveRecords() throws IOException {
+        MessageLogDAO log = open(2 * 1024);
+        List<Message> kept = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            Message message = log.insertMessage(new Message(1 + i % 3, "message number " + i, i));
+            if (i % 4 == 0) {
+                kept.add(message);
+            } else {
+                log.deleteMessageByID(message.getMessage_id());
+            }
+        }
+        for (int round = 0; round < 50; round++) {
+            Message patch = new Message();
+            patch.setMessage_id(kept.get(0).getMessage_id());
+            patch.setMessage_text("edit " + round);
+            kept.set(0, log.updateMessage(patch));
+        }
+        int before = log.getSegmentCount();
+        Assert.assertTrue(before > 2);
+
+        Assert.assertTrue(log.compact() > 0);
+        Assert.assertTrue(log.getSegmentCount() < before);
+        Assert.assertEquals(kept, log.getAllMessages());
+        log.close();
+
+        MessageLogDAO reopened = open(2 * 1024);
+        Assert.assertEquals(kept, reopened.getAllMessages());
+        reopened.close();
+    }
+
+    /**
+     * Compacting away the records of the highest message ID, which was deleted, must not let that ID be
+     * handed out again after a restart.
+     */
+    @Test
+    public void compactionKeepsTheHighestIdUsed() throws IOException {
+        MessageLogDAO log = open(2 * 1024);
+        Message keeper = log.insertMessage(new Message(1, "keeper", 1L));
+        Message last = null;
+        for (int i = 0; i < 40; i++) {
+            last = log.insertMessage(new Message(1, "deleted message " + i, i));
+            log.deleteMessageByID(last.getMessage_id());
+        }
+        // seal the segment holding the last tombstone
+        for (int round = 0; round < 60; round++) {
+            Message patch = new Message();
+            patch.setMessage_id(keeper.getMessage_id());
+            patch.setMessage_text("edit " + round);
+            log.updateMessage(patch);
+        }
+        Assert.assertTrue(log.compact() > 0);
+        log.close();
+
+        MessageLogDAO reopened = open(2 * 1024);
+        Message next = reopened.insertMessage(new Message(1, "next", 100L));
+        Assert.assertEquals(last.getMessage_id() + 1, next.getMessage_id());
+        reopened.close();
+    }
+
+    /**
+     * A crash after compaction that tears the head segment loses only the record being appended; the live
+     * records compaction copied to the head before deleting their segments survive.
+     */
+    @Test
+    public void compactedRecordsSurviveATruncatedHeadSegment() throws IOException {
+        MessageLogDAO log = open(2 * 1024);
+        List<Message> kept = new ArrayList<>();
+        for (int i = 0; i < 60; i++) {
+            Message message = log.insertMessage(new Message(1, "message number " + i, i));
+            if (i % 5 == 0) {
+                kept.add(message);
+            } else {
+                log.deleteMessageByID(message.getMessage_id());
+            }
+        }
+        // seal the segments holding the inserts
+        Message filler = log.insertMessage(new Message(2, "filler", 1000L));
+        for (int round = 0; round < 60; round++) {
+            Message patch = new Message();
+            patch.setMessage_id(filler.getMessage_id());
+            patch.setMessage_text("edit " + round);
+            filler = log.updateMessage(patch);
+        }
+        kept.add(filler);
+        Assert.assertTrue(log.compact() > 0);
+        log.insertMessage(new Message(1, "torn by the crash", 2000L));
+        log.close();
+
+        List<Path> files = segmentFiles();
+        try (FileChannel channel = FileChannel.open(files.get(files.size() - 1), StandardOpenOption.WRITE)) {
+            // drop the terminating zero length and the last 7 bytes of the record appended after compaction
+            channel.truncate(channel.size() - 4 - 7);
+        }
+
+        MessageLogDAO reopened = open(2 * 1024);
+        Assert.assertEquals(kept, reopened.getAllMessages());
+        reopened.close();
+    }
+}
@@ -0,0 +1,39 @@
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.rules.TemporaryFolder;
+
+import DAO.InMemoryAccountDAO;
+import DAO.InMemoryMessageDAO;
+import DAO.InMemoryStore;
+import DAO.MessageLogDAO;
+import DAO.Repositories;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Runs the repository contract against the memory-mapped message log, with accounts kept in memory.
+ */
+public class MessageLogRepositoryContractTest extends RepositoryContract {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    Repositories repositories;
+
+    @Override
+    protected Repositories createRepositories() {
+        InMemoryStore store = new InMemoryStore();
+        InMemoryMessageDAO accountLookup = new InMemoryMessageDAO(store);
+        try {
+            MessageLogDAO messageLog = new MessageLogDAO(folder.newFolder("log").toPath(), 64 * 1024, accountLookup::doesIDExist);
+            repositories = new Repositories(new InMemoryAccountDAO(store), messageLog);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return repositories;
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        repositories.close();
+    }
+}
@@ -0,0 +1,352 @@
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import DAO.AccountRepository;
+import DAO.MessageRepository;
+import DAO.Repositories;
+import Model.Account;
+import Model.AccountStats;
+import Model.Message;
+import Model.MessageField;
+import Model.TimeBucket;
+import Model.VersionedMessage;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The behaviour every storage engine has to provide. Each engine gets a subclass that supplies fresh
+ * repositories; the tests create their own accounts so they do not depend on any seed data.
+ */
+public abstract class RepositoryContract {
+    AccountRepository accountRepository;
+    MessageRepository messageRepository;
+    int usernameCounter;
+
+    /**
+     * @return repositories of the engine under test, backed by an empty or freshly reset store.
+     */
+    protected abstract Repositories createRepositories();
+
+    @Before
+    public void setUpRepositories() {
+        Repositories repositories = createRepositories();
+        accountRepository = repositories.getAccountRepository();
+        messageRepository = repositories.getMessageRepository();
+    }
+
+    Account newAccount() {
+        return accountRepository.insertAccount(new Account("contract_user_" + (++usernameCounter), "password"));
+    }
+
+    @Test
+    public void insertedAccountCanBeFound() {
+        Account account = newAccount();
+
+        Assert.assertNotNull(account);
+        Assert.assertTrue(account.getAccount_id() > 0);
+        Assert.assertEquals(account, accountRepository.getAccountByUsername(account.getUsername()));
+        Assert.assertTrue(accountRepository.getAllAccounts().contains(account));
+    }
+
+    @Test
+    public void duplicateUsernameIsRejected() {
+        Account account = newAccount();
+
+        Assert.assertNull(accountRepository.insertAccount(new Account(account.getUsername(), "other password")));
+    }
+
+    @Test
+    public void loginRequiresMatchingPassword() {
+        Account account = newAccount();
+
+        Assert.assertEquals(account, accountRepository.getAccountByUsernameAndPassword(account.getUsername(), "password"));
+        Assert.assertNull(accountRepository.getAccountByUsernameAndPassword(account.getUsername(), "wrong"));
+        Assert.assertNull(accountRepository.getAccountByUsernameAndPassword("no_such_user", "password"));
+    }
+
+    @Test
+    public void messageRequiresExistingAuthor() {
+        Assert.assertFalse(messageRepository.doesIDExist(Integer.MAX_VALUE));
+        Assert.assertNull(messageRepository.insertMessage(new Message(Integer.MAX_VALUE, "orphan", 1L)));
+    }
+
+    @Test
+    public void insertedMessageCanBeRead() {
+        Account account = newAccount();
+        Message inserted = messageRepository.insertMessage(new Message(account.getAccount_id(), "hello", 1669947792L));
+
+        Assert.assertNotNull(inserted);
+        Assert.assertTrue(messageRepository.doesIDExist(account.getAccount_id()));
+        Assert.assertEquals(new Message(inserted.getMessage_id(), account.getAccount_id(), "hello", 1669947792L), inserted);
+        Assert.assertEquals(inserted, messageRepository.getMessageByID(inserted.getMessage_id()));
+        Assert.assertTrue(messageRepository.getAllMessages().contains(inserted));
+    }
+
+    @Test
+    public void messagesCanBeReadByIds() {
+        Account account = newAccount();
+        List<Integer> expected = new ArrayList<>();
+        int[] ids = new int[5];
+        for(int i = 0; i < 5; i++){
+            ids[i] = messageRepository.insertMessage(new Message(account.getAccount_id(), "batch " + i, i)).getMessage_id();
+            expected.add(ids[i]);
+        }
+        messageRepository.deleteMessageByID(ids[4]);
+        expected.remove(4);
+
+        List<Integer> found = new ArrayList<>();
+        for(Message message : messageRepository.getMessagesByIDs(ids)){
+            found.add(message.getMessage_id());
+        }
+        found.sort(null);
+
+        Assert.assertEquals(expected, found);
+        Assert.assertTrue(messageRepository.getMessagesByIDs(new int[0]).isEmpty());
+    }
+
+    @Test
+    public void updateChangesOnlyTheText() {
+        Account account = newAccount();
+        Message inserted = messageRepository.insertMessage(new Message(account.getAccount_id(), "before", 42L));
+        Message patch = new Message();
+        patch.setMessage_id(inserted.getMessage_id());
+        patch.setMessage_text("after");
+
+        Message expected = new Message(inserted.getMessage_id(), account.getAccount_id(), "after", 42L);
+        Assert.assertEquals(expected, messageRepository.updateMessage(patch));
+        Assert.assertEquals(expected, messageRepository.getMessageByID(inserted.getMessage_id()));
+    }
+
+    @Test
+    public void updateOfMissingMessageReturnsNull() {
+        Message patch = new Message();
+        patch.setMessage_id(Integer.MAX_VALUE);
+        patch.setMessage_text("nothing to update");
+
+        Assert.assertNull(messageRepository.updateMessage(patch));
+    }
+
+    @Test
+    public void conditionalUpdateRequiresTheCurrentVersion() {
+        Account account = newAccount();
+        Message inserted = messageRepository.insertMessage(new Message(account.getAccount_id(), "first", 42L));
+        VersionedMessage read = messageRepository.getVersionedMessageByID(inserted.getMessage_id());
+        Assert.assertEquals(inserted, read.message);
+
+        Message patch = new Message();
+        patch.setMessage_id(inserted.getMessage_id());
+        patch.setMessage_text("second");
+        VersionedMessage updated = messageRepository.updateMessageIfVersion(patch, read.version);
+        Assert.assertEquals(new Message(inserted.getMessage_id(), account.getAccount_id(), "second", 42L), updated.message);
+        Assert.assertNotEquals(read.version, updated.version);
+        Assert.assertEquals(updated, messageRepository.getVersionedMessageByID(inserted.getMessage_id()));
+
+        // a stale version changes nothing
+        patch.setMessage_text("third");
+        Assert.assertNull(messageRepository.updateMessageIfVersion(patch, read.version));
+        Assert.assertEquals(updated.message, messageRepository.getMessageByID(inserted.getMessage_id()));
+
+        patch.setMessage_id(Integer.MAX_VALUE);
+        Assert.assertNull(messageRepository.updateMessageIfVersion(patch, VersionedMessage.ANY));
+    }
+
+    @Test
+    public void deleteRemovesTheMessage() {
+        Account account = newAccount();
+        Message inserted = messageRepository.insertMessage(new Message(account.getAccount_id(), "short lived", 1L));
+
+        Assert.assertTrue(messageRepository.deleteMessageByID(inserted.getMessage_id()));
+        Assert.assertNull(messageRepository.getMessageByID(inserted.getMessage_id()));
+        Assert.assertFalse(messageRepository.getMessagesOfUser(account.getAccount_id()).contains(inserted));
+        Assert.assertFalse(messageRepository.deleteMessageByID(inserted.getMessage_id()));
+    }
+
+    @Test
+    public void messagesOfUserAreTheirsInIdOrder() {
+        Account author = newAccount();
+        Account other = newAccount();
+        Message first = messageRepository.insertMessage(new Message(author.getAccount_id(), "one", 1L));
+        messageRepository.insertMessage(new Message(other.getAccount_id(), "not mine", 2L));
+        Message second = messageRepository.insertMessage(new Message(author.getAccount_id(), "two", 3L));
+
+        List<Message> expected = new ArrayList<>();
+        expected.add(first);
+        expected.add(second);
+        Assert.assertEquals(expected, messageRepository.getMessagesOfUser(author.getAccount_id()));
+        Assert.assertTrue(messageRepository.getMessagesOfUser(Integer.MAX_VALUE).isEmpty());
+    }
+
+    @Test
+    public void allMessagesAreInIdOrder() {
+        Account account = newAccount();
+        for(int i = 0; i < 5; i++){
+            messageRepository.insertMessage(new Message(account.getAccount_id(), "message " + i, i));
+        }
+
+        List<Message> all = messageRepository.getAllMessages();
+        for(int i = 1; i < all.size(); i++){
+            Assert.assertTrue(all.get(i - 1).getMessage_id() < all.get(i).getMessage_id());
+        }
+    }
+
+    @Test
+    public void concurrentInsertsAreAllVisible() throws Exception {
+        Account account = newAccount();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<Message>> futures = new ArrayList<>();
+        for(int i = 0; i < 200; i++){
+            String text = "concurrent " + i;
+            futures.add(executor.submit(() -> messageRepository.insertMessage(new Message(account.getAccount_id(), text, 1L))));
+        }
+        for(Future<Message> future : futures){
+            Assert.assertNotNull(future.get());
+        }
+        executor.shutdown();
+
+        Assert.assertEquals(200, messageRepository.getMessagesOfUser(account.getAccount_id()).size());
+    }
+
+    @Test
+    public void deletesRacingInsertsLeaveNoIndexEntries() throws Exception {
+        Account account = newAccount();
+        int author = account.getAccount_id();
+        AtomicInteger lastId = new AtomicInteger(messageRepository.insertMessage(new Message(author, "first", 1L)).getMessage_id());
+        messageRepository.deleteMessageByID(lastId.get());
+
+        // keeps deleting the ID the next insert is about to get
+        AtomicBoolean inserting = new AtomicBoolean(true);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Future<?> deleter = executor.submit(() -> {
+            while(inserting.get()){
+                messageRepository.deleteMessageByID(lastId.get() + 1);
+            }
+        });
+        for(int i = 0; i < 500; i++){
+            lastId.set(messageRepository.insertMessage(new Message(author, "raced " + i, 1L)).getMessage_id());
+        }
+        inserting.set(false);
+        deleter.get();
+        executor.shutdown();
+        for(Message message : messageRepository.getMessagesOfUser(author)){
+            messageRepository.deleteMessageByID(message.getMessage_id());
+        }
+
+        Assert.assertTrue(messageRepository.getMessagesOfUser(author).isEmpty());
+        Assert.assertEquals(AccountStats.empty(author), messageRepository.getAccountStats(author));
+    }
+
+    @Test
+    public void statsFollowInsertsAndDeletes() {
+        Account account = newAccount();
+        int id = account.getAccount_id();
+        Assert.assertEquals(AccountStats.empty(id), messageRepository.getAccountStats(id));
+
+        Message middle = messageRepository.insertMessage(new Message(id, "middle", 20L));
+        Message first = messageRepository.insertMessage(new Message(id, "first", 10L));
+        Message last = messageRepository.insertMessage(new Message(id, "last", 30L));
+        Assert.assertEquals(new AccountStats(id, 3, 10L, 30L), messageRepository.getAccountStats(id));
+
+        messageRepository.deleteMessageByID(middle.getMessage_id());
+        Assert.assertEquals(new AccountStats(id, 2, 10L, 30L), messageRepository.getAccountStats(id));
+        messageRepository.deleteMessageByID(last.getMessage_id());
+        Assert.assertEquals(new AccountStats(id, 1, 10L, 10L), messageRepository.getAccountStats(id));
+        messageRepository.deleteMessageByID(first.getMessage_id());
+        Assert.assertEquals(AccountStats.empty(id), messageRepository.getAccountStats(id));
+    }
+
+    @Test
+    public void rangeQueriesAreBoundedAndOrderedByEpoch() {
+        Account author = newAccount();
+        Account other = newAccount();
+        long base = 5_000_000_000L;
+        Message late = messageRepository.insertMessage(new Message(author.getAccount_id(), "late", base + 7200));
+        Message early = messageRepository.insertMessage(new Message(author.getAccount_id(), "early", base));
+        Message middle = messageRepository.insertMessage(new Message(other.getAccount_id(), "middle", base + 3600));
+        messageRepository.insertMessage(new Message(author.getAccount_id(), "after the range", base + 10800));
+
+        List<Message> expected = new ArrayList<>();
+        expected.add(early);
+        expected.add(middle);
+        expected.add(late);
+        Assert.assertEquals(expected, messageRepository.getMessagesInRange(base, base + 10800, 10));
+        Assert.assertEquals(expected.subList(0, 2), messageRepository.getMessagesInRange(base, base + 10800, 2));
+
+        expected.remove(middle);
+        Assert.assertEquals(expected, messageRepository.getMessagesOfUserInRange(author.getAccount_id(), base, base + 10800, 10));
+    }
+
+    @Test
+    public void bucketsCountMessagesPerInterval() {
+        Account author = newAccount();
+        long base = 6_000_001_200L; // a multiple of 3600
+        messageRepository.insertMessage(new Message(author.getAccount_id(), "one", base + 10));
+        messageRepository.insertMessage(new Message(author.getAccount_id(), "two", base + 20));
+        messageRepository.insertMessage(new Message(author.getAccount_id(), "three", base + 7300));
+
+        List<TimeBucket> expected = new ArrayList<>();
+        expected.add(new TimeBucket(base, 2));
+        expected.add(new TimeBucket(base + 7200, 1));
+        Assert.assertEquals(expected, messageRepository.countMessagesOfUserByBucket(author.getAccount_id(), base, base + 86400, 3600));
+        Assert.assertEquals(expected, messageRepository.countMessagesByBucket(base, base + 86400, 3600));
+    }
+
+    @Test
+    public void projectedListsKeepTheRequestedFields() {
+        Account author = newAccount();
+        Message inserted = messageRepository.insertMessage(new Message(author.getAccount_id(), "projected", 7L));
+
+        List<Message> messages = messageRepository.getMessagesOfUser(author.getAccount_id(),
+                EnumSet.of(MessageField.MESSAGE_ID, MessageField.MESSAGE_TEXT));
+        Assert.assertEquals(1, messages.size());
+        Assert.assertEquals(inserted.getMessage_id(), messages.get(0).getMessage_id());
+        Assert.assertEquals("projected", messages.get(0).getMessage_text());
+    }
+
+    @Test
+    public void bulkDeletesWorkInChunksAndKeepStats() {
+        Account spammer = newAccount();
+        Account other = newAccount();
+        int id = spammer.getAccount_id();
+        long base = 7_000_000_000L;
+        for(int i = 0; i < 5; i++){
+            messageRepository.insertMessage(new Message(id, "spam " + i, base + i));
+        }
+        Message kept = messageRepository.insertMessage(new Message(other.getAccount_id(), "kept", base + 100));
+
+        Assert.assertEquals(2, messageRepository.deleteMessagesOfUser(id, 2).size());
+        Assert.assertEquals(new AccountStats(id, 3, base + 2, base + 4), messageRepository.getAccountStats(id));
+        Assert.assertEquals(3, messageRepository.deleteMessagesOfUser(id, 10).size());
+        Assert.assertEquals(AccountStats.empty(id), messageRepository.getAccountStats(id));
+        Assert.assertTrue(messageRepository.getMessagesOfUser(id).isEmpty());
+        Assert.assertEquals(kept, messageRepository.getMessageByID(kept.getMessage_id()));
+    }
+
+    @Test
+    public void rangeDeletesRemoveOldestFirst() {
+        Account author = newAccount();
+        int id = author.getAccount_id();
+        long base = 8_000_000_000L;
+        for(int i = 0; i < 4; i++){
+            messageRepository.insertMessage(new Message(id, "old " + i, base + i));
+        }
+        Message newer = messageRepository.insertMessage(new Message(id, "newer", base + 50));
+
+        List<Message> chunk = messageRepository.deleteMessagesInRange(base, base + 10, 3);
+        Assert.assertEquals(3, chunk.size());
+        for(Message message : chunk){
+            Assert.assertTrue(message.getTime_posted_epoch() < base + 3);
+        }
+        Assert.assertEquals(1, messageRepository.deleteMessagesInRange(base, base + 10, 3).size());
+        Assert.assertTrue(messageRepository.deleteMessagesInRange(base, base + 10, 3).isEmpty());
+        Assert.assertEquals(new AccountStats(id, 1, base + 50, base + 50), messageRepository.getAccountStats(id));
+        Assert.assertEquals(newer, messageRepository.getMessageByID(newer.getMessage_id()));
+    }
+}
@@ -0,0 +1,125 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class RetrieveMessagesByIdsTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web. Messages 2 and 3 are posted next to the seeded message 1.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws IOException, InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        socialMediaController.getReadiness().awaitReady(30, TimeUnit.SECONDS);
+        for(int i = 2; i <= 3; i++){
+            HttpRequest postRequest = HttpRequest.newBuilder()
+                    .uri(URI.create("http://localhost:8080/messages"))
+                    .POST(HttpRequest.BodyPublishers.ofString("{\"posted_by\":1,\"message_text\":\"test message " + i + "\",\"time_posted_epoch\":1669947792}"))
+                    .header("Content-Type", "application/json")
+                    .build();
+            Assert.assertEquals(200, webClient.send(postRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+        }
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    private HttpResponse<String> get(String query) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages?" + query))
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages?ids=3,1,100,2,3 (message 100 does not exist)
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: JSON list of messages 3, 1, 2 and 3, in the requested order
+     */
+    @Test
+    public void getMessagesByIdsKeepsRequestedOrder() throws IOException, InterruptedException {
+        // message 1 is cached by this read, so the next request mixes a cache hit with misses
+        Assert.assertEquals(200, get("ids=1").statusCode());
+
+        HttpResponse<String> response = get("ids=3,1,100,2,3");
+
+        Assert.assertEquals(200, response.statusCode());
+        List<Message> messages = objectMapper.readValue(response.body(), new TypeReference<List<Message>>(){});
+        List<Integer> ids = new ArrayList<>();
+        for(Message message : messages){
+            ids.add(message.getMessage_id());
+        }
+        Assert.assertEquals(Arrays.asList(3, 1, 2, 3), ids);
+        Assert.assertEquals(new Message(1, 1, "test message 1", 1669947792), messages.get(1));
+        Assert.assertEquals(new Message(2, 1, "test message 2", 1669947792), messages.get(2));
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages?ids=2&fields=message_text
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: [{"message_text":"test message 2"}]
+     */
+    @Test
+    public void getMessagesByIdsWithFields() throws IOException, InterruptedException {
+        HttpResponse<String> response = get("ids=2&fields=message_text");
+
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertEquals("[{\"message_text\":\"test message 2\"}]", response.body());
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages with malformed or too many ids
+     *
+     * Expected Response:
+     *  Status Code: 400
+     */
+    @Test
+    public void getMessagesByIdsRejectsBadLists() throws IOException, InterruptedException {
+        StringBuilder tooMany = new StringBuilder("1");
+        for(int i = 2; i <= 101; i++){
+            tooMany.append(',').append(i);
+        }
+
+        Assert.assertEquals(400, get("ids=").statusCode());
+        Assert.assertEquals(400, get("ids=1,,2").statusCode());
+        Assert.assertEquals(400, get("ids=1,two").statusCode());
+        Assert.assertEquals(400, get("ids=99999999999").statusCode());
+        Assert.assertEquals(400, get("ids=" + tooMany).statusCode());
+    }
+}
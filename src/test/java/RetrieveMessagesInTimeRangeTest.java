@@ -0,0 +1,105 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Model.TimeBucket;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class RetrieveMessagesInTimeRangeTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        socialMediaController.getReadiness().awaitReady(30, TimeUnit.SECONDS);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    private HttpResponse<String> get(String path) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path))
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages?since=...&until=... around the seeded message
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: the seeded message, and nothing for a range that excludes it
+     */
+    @Test
+    public void getMessagesInTimeRange() throws IOException, InterruptedException {
+        HttpResponse<String> response = get("/messages?since=1669947792&until=1669947793");
+        Assert.assertEquals(200, response.statusCode());
+        List<Message> expectedResult = new ArrayList<>();
+        expectedResult.add(new Message(1, 1, "test message 1", 1669947792));
+        Assert.assertEquals(expectedResult, objectMapper.readValue(response.body(), new TypeReference<List<Message>>(){}));
+
+        response = get("/accounts/1/messages?until=1669947792");
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertEquals(new ArrayList<>(), objectMapper.readValue(response.body(), new TypeReference<List<Message>>(){}));
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/accounts/1/messages?bucket=day
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: one day bucket holding the seeded message
+     */
+    @Test
+    public void getMessageCountsPerDay() throws IOException, InterruptedException {
+        HttpResponse<String> response = get("/accounts/1/messages?bucket=day");
+        Assert.assertEquals(200, response.statusCode());
+        List<TimeBucket> expectedResult = new ArrayList<>();
+        expectedResult.add(new TimeBucket(1669947792L / 86400 * 86400, 1));
+        Assert.assertEquals(expectedResult, objectMapper.readValue(response.body(), new TypeReference<List<TimeBucket>>(){}));
+    }
+
+    /**
+     * Sending an http request with a malformed range or bucket
+     *
+     * Expected Response:
+     *  Status Code: 400
+     */
+    @Test
+    public void malformedRangeIsRejected() throws IOException, InterruptedException {
+        Assert.assertEquals(400, get("/messages?since=yesterday").statusCode());
+        Assert.assertEquals(400, get("/messages?bucket=week").statusCode());
+    }
+}
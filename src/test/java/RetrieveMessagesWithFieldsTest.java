@@ -0,0 +1,100 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class RetrieveMessagesWithFieldsTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        socialMediaController.getReadiness().awaitReady(30, TimeUnit.SECONDS);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    private HttpResponse<String> get(String path) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path))
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages?fields=message_id,message_text
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: the seeded message with only message_id and message_text
+     */
+    @Test
+    public void getAllMessagesWithSelectedFields() throws IOException, InterruptedException {
+        HttpResponse<String> response = get("/messages?fields=message_id,message_text");
+        Assert.assertEquals(200, response.statusCode());
+
+        Map<String, Object> expected = new LinkedHashMap<>();
+        expected.put("message_id", 1);
+        expected.put("message_text", "test message 1");
+        List<Map<String, Object>> actual = objectMapper.readValue(response.body(), new TypeReference<List<Map<String, Object>>>(){});
+        Assert.assertEquals(List.of(expected), actual);
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/accounts/1/messages?fields=time_posted_epoch
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: the seeded message with only time_posted_epoch
+     */
+    @Test
+    public void getMessagesOfUserWithSelectedFields() throws IOException, InterruptedException {
+        HttpResponse<String> response = get("/accounts/1/messages?fields=time_posted_epoch");
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertEquals("[{\"time_posted_epoch\":1669947792}]", response.body());
+    }
+
+    /**
+     * Sending an http request with a field that messages do not have
+     *
+     * Expected Response:
+     *  Status Code: 400
+     */
+    @Test
+    public void unknownFieldIsRejected() throws IOException, InterruptedException {
+        Assert.assertEquals(400, get("/messages?fields=message_id,password").statusCode());
+    }
+}
@@ -0,0 +1,103 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class SaturationReportTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        socialMediaController.getReadiness().awaitReady(30, TimeUnit.SECONDS);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    private HttpResponse<String> get(String path) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder().uri(URI.create("http://localhost:8080" + path)).build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    /**
+     * Sending GET localhost:8080/health/live
+     *
+     * Expected Response:
+     *  Status Code 200
+     */
+    @Test
+    public void liveProbeAnswers() throws IOException, InterruptedException {
+        HttpResponse<String> response = get("/health/live");
+
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertTrue(objectMapper.readTree(response.body()).get("live").asBoolean());
+    }
+
+    /**
+     * Sending GET localhost:8080/admin/saturation twice
+     *
+     * Expected Response:
+     *  Status Code 200, with the pool, executor, Jetty, GC, heap and cache figures and an overall
+     *  saturation from 0 to 1
+     */
+    @Test
+    public void saturationReportCoversPoolsQueuesAndCaches() throws IOException, InterruptedException {
+        get("/admin/saturation");
+        HttpResponse<String> response = get("/admin/saturation");
+        Assert.assertEquals(200, response.statusCode());
+        JsonNode report = objectMapper.readTree(response.body());
+
+        Assert.assertTrue(report.get("ready").asBoolean());
+        double saturation = report.get("saturation").asDouble();
+        Assert.assertTrue(saturation >= 0 && saturation <= 1);
+
+        JsonNode db = report.get("db");
+        Assert.assertEquals(16, db.get("max").asInt());
+        Assert.assertEquals(16, db.get("active").asInt() + db.get("idle").asInt());
+        Assert.assertEquals(0, db.get("waiting").asInt());
+        Assert.assertTrue(db.get("executor_queue_capacity").asInt() > 0);
+
+        JsonNode http = report.get("http");
+        // this request holds a thread
+        Assert.assertTrue(http.get("busy").asInt() >= 1);
+        Assert.assertTrue(http.get("max_threads").asInt() >= http.get("threads").asInt());
+        Assert.assertTrue(http.get("queue_capacity").asInt() > 0);
+
+        JsonNode gc = report.get("gc");
+        Assert.assertTrue(gc.get("collectors").isArray());
+        Assert.assertTrue(gc.get("recent_pause_percent").asDouble() >= 0);
+        Assert.assertTrue(report.get("heap").get("used_bytes").asLong() > 0);
+        Assert.assertTrue(report.get("caches").get("messages").get("capacity").asInt() > 0);
+        Assert.assertTrue(report.get("caches").get("timelines_bytes").has("size"));
+    }
+}
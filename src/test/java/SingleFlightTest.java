@@ -0,0 +1,120 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Service.SingleFlight;
+
+public class SingleFlightTest {
+    ExecutorService executor;
+
+    @Before
+    public void setUp() {
+        executor = Executors.newFixedThreadPool(8);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Callers that arrive while a load of the same key is in flight share its result.
+     */
+    @Test
+    public void concurrentCallersShareOneLoad() throws Exception {
+        SingleFlight<String> flights = new SingleFlight<>();
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        List<Future<String>> results = new ArrayList<>();
+        for(int i = 0; i < 8; i++){
+            results.add(executor.submit(() -> flights.load(1, () -> {
+                loads.incrementAndGet();
+                awaitQuietly(release);
+                return "message 1";
+            })));
+        }
+        while(flights.getLoads() + flights.getShared() < 8){
+            Thread.sleep(1);
+        }
+        release.countDown();
+
+        for(Future<String> result : results){
+            Assert.assertEquals("message 1", result.get(5, TimeUnit.SECONDS));
+        }
+        Assert.assertEquals(1, loads.get());
+        Assert.assertEquals(7, flights.getShared());
+        Assert.assertEquals(87, flights.getSharedPercent());
+    }
+
+    /**
+     * A failed load fails every caller that waited on it, and the next call loads again.
+     */
+    @Test
+    public void failuresAreSharedButNotKept() throws Exception {
+        SingleFlight<String> flights = new SingleFlight<>();
+        CountDownLatch release = new CountDownLatch(1);
+        Future<String> leader = executor.submit(() -> flights.load(1, () -> {
+            awaitQuietly(release);
+            throw new IllegalStateException("database down");
+        }));
+        while(flights.getLoads() < 1){
+            Thread.sleep(1);
+        }
+        Future<String> follower = executor.submit(() -> flights.load(1, () -> "unused"));
+        while(flights.getShared() < 1){
+            Thread.sleep(1);
+        }
+        release.countDown();
+
+        for(Future<String> result : List.of(leader, follower)){
+            try{
+                result.get(5, TimeUnit.SECONDS);
+                Assert.fail("expected the load to fail");
+            }catch(ExecutionException e){
+                Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+            }
+        }
+        Assert.assertEquals("loaded again", flights.load(1, () -> "loaded again"));
+    }
+
+    /**
+     * After forget, new callers start their own load instead of joining the old one.
+     */
+    @Test
+    public void forgottenLoadsAreNotJoined() throws Exception {
+        SingleFlight<String> flights = new SingleFlight<>();
+        CountDownLatch release = new CountDownLatch(1);
+        Future<String> stale = executor.submit(() -> flights.load(1, () -> {
+            awaitQuietly(release);
+            return "old text";
+        }));
+        while(flights.getLoads() < 1){
+            Thread.sleep(1);
+        }
+        flights.forget(1);
+
+        Assert.assertEquals("new text", flights.load(1, () -> "new text"));
+        release.countDown();
+        Assert.assertEquals("old text", stale.get(5, TimeUnit.SECONDS));
+        Assert.assertEquals(0, flights.getShared());
+    }
+
+    private static void awaitQuietly(CountDownLatch latch){
+        try{
+            latch.await(5, TimeUnit.SECONDS);
+        }catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,110 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Util.ConnectionUtil;
+import Util.SlowQueryLog;
+import io.javalin.Javalin;
+
+public class SlowQueryLogTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web. Every statement counts as slow while these tests run.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        socialMediaController.getReadiness().awaitReady(30, TimeUnit.SECONDS);
+        ConnectionUtil.getSlowQueryLog().setThresholdMillis(0);
+    }
+
+    @After
+    public void tearDown() {
+        ConnectionUtil.getSlowQueryLog().setThresholdMillis(100);
+        app.stop();
+    }
+
+    /**
+     * Only parameters bound to a password column are redacted; when the column of a parameter cannot be
+     * told in a statement about passwords, all of them are.
+     */
+    @Test
+    public void passwordParametersAreRedacted() {
+        List<Object> parameters = Arrays.asList("user", "secret");
+        Assert.assertEquals(Arrays.asList("user", "***"),
+                SlowQueryLog.redact("INSERT INTO account (username, password) VALUES (?, ?)", parameters));
+        Assert.assertEquals(Arrays.asList("user", "***"),
+                SlowQueryLog.redact("SELECT * FROM account WHERE username = ? and password = ?", parameters));
+        Assert.assertEquals(Arrays.asList("user", "secret"),
+                SlowQueryLog.redact("SELECT * FROM account WHERE username = ? or username = ?", parameters));
+        Assert.assertEquals(Arrays.asList("***", "***"),
+                SlowQueryLog.redact("SELECT * FROM account WHERE password IN (?, ?)", parameters));
+    }
+
+    /**
+     * Sending an http request to POST localhost:8080/login, then GET localhost:8080/admin/slow-queries
+     *
+     * Expected Response:
+     *  Status Code: 200; the login query is logged with its username, a redacted password, the rows read and
+     *  an EXPLAIN ANALYZE plan
+     */
+    @Test
+    public void loginQueryIsLoggedWithPlanAndRedactedPassword() throws IOException, InterruptedException {
+        HttpRequest loginRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/login"))
+                .POST(HttpRequest.BodyPublishers.ofString("{\"username\":\"testuser1\",\"password\":\"password\"}"))
+                .header("Content-Type", "application/json")
+                .build();
+        Assert.assertEquals(200, webClient.send(loginRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+
+        JsonNode login = null;
+        long deadline = System.currentTimeMillis() + 10_000;
+        while(System.currentTimeMillis() < deadline){
+            HttpRequest request = HttpRequest.newBuilder()
+                    .uri(URI.create("http://localhost:8080/admin/slow-queries"))
+                    .build();
+            HttpResponse<String> response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+            Assert.assertEquals(200, response.statusCode());
+            for(JsonNode entry : objectMapper.readTree(response.body())){
+                if(entry.get("sql").asText().contains("password = ?") && !entry.get("plan").isNull()){
+                    login = entry;
+                }
+            }
+            if(login != null){
+                break;
+            }
+            Thread.sleep(20);
+        }
+
+        Assert.assertNotNull(login);
+        Assert.assertEquals("testuser1", login.get("parameters").get(0).asText());
+        Assert.assertEquals("***", login.get("parameters").get(1).asText());
+        Assert.assertEquals(1, login.get("row_count").asInt());
+        Assert.assertTrue(login.get("plan").asText(), login.get("plan").asText().contains("scanCount"));
+    }
+}
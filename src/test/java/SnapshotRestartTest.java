@@ -0,0 +1,121 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import DAO.MessageDAO;
+import Model.Account;
+import Model.Message;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class SnapshotRestartTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Run the in-memory engine with snapshots enabled, so its state only survives a restart through the snapshot.
+     */
+    @Before
+    public void setUp() throws IOException {
+        System.setProperty("socialmedia.storage", "memory");
+        System.setProperty("socialmedia.snapshot.dir", folder.newFolder("snapshots").toString());
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+    }
+
+    @After
+    public void tearDown() {
+        if (app != null) {
+            app.stop();
+        }
+        System.clearProperty("socialmedia.storage");
+        System.clearProperty("socialmedia.snapshot.dir");
+        System.clearProperty("socialmedia.warmup.requests");
+    }
+
+    SocialMediaController start() throws Exception {
+        SocialMediaController controller = new SocialMediaController();
+        app = controller.startAPI();
+        app.start(8080);
+        controller.getReadiness().whenReady().get(10, TimeUnit.SECONDS);
+        return controller;
+    }
+
+    HttpResponse<String> post(String path, Object body) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path))
+                .POST(HttpRequest.BodyPublishers.ofString(objectMapper.writeValueAsString(body)))
+                .header("Content-Type", "application/json")
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    HttpResponse<String> get(String path) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder().uri(URI.create("http://localhost:8080" + path)).build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    /**
+     * Accounts and messages written before a restart are served after it, and the node reports ready.
+     */
+    @Test
+    public void stateSurvivesRestart() throws Exception {
+        start();
+        Account account = objectMapper.readValue(post("/register", new Account("snapshot_user", "password")).body(), Account.class);
+        Message message = objectMapper.readValue(post("/messages", new Message(account.getAccount_id(), "persisted", 1669947792L)).body(), Message.class);
+        app.stop();
+
+        start();
+        HttpResponse<String> ready = get("/health/ready");
+        Assert.assertEquals(200, ready.statusCode());
+
+        HttpResponse<String> response = get("/messages/" + message.getMessage_id());
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertEquals(message, objectMapper.readValue(response.body(), Message.class));
+        Assert.assertEquals(200, post("/login", new Account("snapshot_user", "password")).statusCode());
+
+        // the id sequence is restored too, so new messages do not reuse ids
+        Message next = objectMapper.readValue(post("/messages", new Message(account.getAccount_id(), "after restart", 1669947793L)).body(), Message.class);
+        Assert.assertEquals(message.getMessage_id() + 1, next.getMessage_id());
+    }
+
+    /**
+     * With H2, the cached messages are reloaded from the database on restart instead of restored as they
+     * were, so a change made after the snapshot is served, from the cache.
+     */
+    @Test
+    public void cachedMessagesAreReloadedFromTheDatabase() throws Exception {
+        System.setProperty("socialmedia.storage", "h2");
+        // warm-up requests would load message 1 again
+        System.setProperty("socialmedia.warmup.requests", "0");
+        ConnectionUtil.resetTestDatabase();
+        start();
+        Assert.assertEquals("test message 1", objectMapper.readValue(get("/messages/1").body(), Message.class).getMessage_text());
+        app.stop();
+
+        // changed while the node is down, after its last snapshot
+        new MessageDAO().updateMessage(new Message(1, 1, "changed after the snapshot", 1669947792L));
+
+        start();
+        long checkouts = ConnectionUtil.getCheckouts();
+        Message[] served = objectMapper.readValue(get("/messages?ids=1").body(), Message[].class);
+        Assert.assertEquals("changed after the snapshot", served[0].getMessage_text());
+        Assert.assertEquals(checkouts, ConnectionUtil.getCheckouts());
+    }
+}
@@ -0,0 +1,144 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import DAO.Repositories;
+import Model.Account;
+import Model.Message;
+import Service.MessageService;
+import Service.TimelineCache;
+
+public class TimelineCacheTest {
+
+    private static List<Message> timeline(int postedBy, int... ids){
+        List<Message> messages = new ArrayList<>();
+        for(int id : ids){
+            messages.add(new Message(id, postedBy, "message " + id, id * 10L));
+        }
+        return messages;
+    }
+
+    /**
+     * Posts, edits and deletes patch a cached timeline in place of dropping it.
+     */
+    @Test
+    public void writesPatchTheCachedTimeline() {
+        TimelineCache cache = new TimelineCache(1 << 20);
+        Assert.assertNull(cache.get(1));
+        cache.fill(1, cache.stamp(1), timeline(1, 2, 5));
+
+        cache.put(new Message(7, 1, "message 7", 70L));
+        cache.put(new Message(3, 1, "message 3", 30L));
+        cache.put(new Message(5, 1, "edited", 50L));
+        cache.remove(1, 2);
+        cache.remove(1, 42);
+        // another author's timeline is not cached, so nothing is created for it
+        cache.put(new Message(8, 2, "message 8", 80L));
+
+        List<Message> expected = timeline(1, 3, 5, 7);
+        expected.set(1, new Message(5, 1, "edited", 50L));
+        Assert.assertEquals(expected, cache.get(1));
+        Assert.assertNull(cache.get(2));
+        Assert.assertEquals(1, cache.size());
+    }
+
+    /**
+     * A timeline loaded before a write to its author is not stored, so the write cannot be lost.
+     */
+    @Test
+    public void fillRacingWithAWriteIsDropped() {
+        TimelineCache cache = new TimelineCache(1 << 20);
+        long stamp = cache.stamp(1);
+        cache.put(new Message(3, 1, "message 3", 30L));
+        cache.fill(1, stamp, timeline(1, 2));
+
+        Assert.assertNull(cache.get(1));
+    }
+
+    /**
+     * A timeline loaded before a clear is not stored after it, so the clear cannot be undone.
+     */
+    @Test
+    public void fillRacingWithAClearIsDropped() {
+        TimelineCache cache = new TimelineCache(1 << 20);
+        long stamp = cache.stamp(1);
+        cache.clear();
+        cache.fill(1, stamp, timeline(1, 2));
+
+        Assert.assertNull(cache.get(1));
+    }
+
+    /**
+     * Over its weight, the cache evicts timelines that were not read since the last sweep first, and
+     * never caches a timeline heavier than a sixteenth of its weight.
+     */
+    @Test
+    public void evictsUnreferencedTimelinesByWeight() {
+        int[] ids = new int[20];
+        for(int i = 0; i < ids.length; i++){
+            ids[i] = i + 1;
+        }
+        TimelineCache probe = new TimelineCache(1 << 20);
+        probe.fill(1, probe.stamp(1), timeline(1, ids));
+        long timelineWeight = probe.getWeight();
+
+        TimelineCache cache = new TimelineCache(timelineWeight * 16 + timelineWeight / 2);
+        for(int author = 1; author <= 16; author++){
+            cache.fill(author, cache.stamp(author), timeline(author, ids));
+        }
+        Assert.assertEquals(16, cache.size());
+        Assert.assertEquals(0, cache.getEvictions());
+
+        // the first sweep clears every mark before it evicts; reading a survivor marks it again, so the
+        // second sweep spares it
+        cache.fill(17, cache.stamp(17), timeline(17, ids));
+        Assert.assertEquals(1, cache.getEvictions());
+        int survivor = 1;
+        while(cache.get(survivor) == null){
+            survivor++;
+        }
+        cache.fill(18, cache.stamp(18), timeline(18, ids));
+
+        Assert.assertEquals(2, cache.getEvictions());
+        Assert.assertTrue(cache.getWeight() <= timelineWeight * 16 + timelineWeight / 2);
+        Assert.assertNotNull(cache.get(survivor));
+        Assert.assertNotNull(cache.get(18));
+
+        int[] many = new int[400];
+        for(int i = 0; i < many.length; i++){
+            many[i] = i + 1;
+        }
+        cache.fill(19, cache.stamp(19), timeline(19, many));
+        Assert.assertNull(cache.get(19));
+    }
+
+    /**
+     * The service serves repeated reads of an author's messages from the cache and keeps them current
+     * across writes.
+     */
+    @Test
+    public void serviceKeepsTimelinesCurrent() {
+        Repositories repositories = Repositories.inMemory();
+        Account account = repositories.getAccountRepository().insertAccount(new Account("timeline_user", "password"));
+        MessageService messageService = new MessageService(repositories.getMessageRepository());
+        int author = account.getAccount_id();
+
+        Message first = messageService.addMessage(new Message(author, "first", 1L));
+        Assert.assertEquals(Arrays.asList(first), messageService.getAllMessagesOfUser(author));
+        Message second = messageService.addMessage(new Message(author, "second", 2L));
+        Message edit = new Message();
+        edit.setMessage_id(first.getMessage_id());
+        edit.setMessage_text("first, edited");
+        Message edited = messageService.updateMessage(edit);
+        Assert.assertEquals(Arrays.asList(edited, second), messageService.getAllMessagesOfUser(author));
+        messageService.getMessageByID(second.getMessage_id());
+        messageService.deleteMessageByID(second.getMessage_id());
+
+        Assert.assertEquals(Arrays.asList(edited), messageService.getAllMessagesOfUser(author));
+        Assert.assertEquals(repositories.getMessageRepository().getMessagesOfUser(author), messageService.getAllMessagesOfUser(author));
+        Assert.assertEquals(3, messageService.getTimelineCache().getHits());
+    }
+}
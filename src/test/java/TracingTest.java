@@ -0,0 +1,121 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Util.ConnectionUtil;
+import Util.Trace;
+import Util.Tracer;
+import io.javalin.Javalin;
+
+public class TracingTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app with every request traced, and create a
+     * new webClient and ObjectMapper for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        System.setProperty("socialmedia.trace.sampleRate", "1");
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        socialMediaController.getReadiness().awaitReady(30, TimeUnit.SECONDS);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+        System.clearProperty("socialmedia.trace.sampleRate");
+    }
+
+    /**
+     * Sending an http request to DELETE localhost:8080/messages/1, then GET localhost:8080/admin/traces?slowest=1000
+     *
+     * Expected Response:
+     *  Status Code: 200 with an X-Trace-Id header; the trace of the delete has spans for the service calls and
+     *  for the SQL statements they ran, nested below them
+     */
+    @Test
+    public void deleteIsTracedDownToTheSql() throws IOException, InterruptedException {
+        HttpRequest deleteRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/1"))
+                .DELETE()
+                .build();
+        HttpResponse<String> deleteResponse = webClient.send(deleteRequest, HttpResponse.BodyHandlers.ofString());
+        String traceId = deleteResponse.headers().firstValue("X-Trace-Id").orElse(null);
+        Assert.assertNotNull(traceId);
+
+        HttpRequest tracesRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/admin/traces?slowest=1000"))
+                .build();
+        JsonNode traces = objectMapper.readTree(webClient.send(tracesRequest, HttpResponse.BodyHandlers.ofString()).body());
+        JsonNode trace = null;
+        for(JsonNode candidate : traces){
+            if(Long.toHexString(candidate.get("trace_id").asLong()).equals(traceId)){
+                trace = candidate;
+            }
+        }
+        Assert.assertNotNull(trace);
+        Assert.assertEquals("DELETE /messages/{message_id} 200", trace.get("name").asText());
+
+        boolean sawServiceSpan = false;
+        boolean sawDeleteSql = false;
+        for(JsonNode span : trace.get("spans")){
+            String name = span.get("name").asText();
+            if(name.equals("MessageService.deleteMessageByID")){
+                sawServiceSpan = true;
+            }
+            if(name.contains("DELETE FROM message")){
+                sawDeleteSql = true;
+                Assert.assertTrue(span.get("depth").asInt() > 0);
+            }
+        }
+        Assert.assertTrue(sawServiceSpan);
+        Assert.assertTrue(sawDeleteSql);
+    }
+
+    /**
+     * The ring buffer keeps only the newest traces, and unsampled requests record nothing.
+     */
+    @Test
+    public void ringBufferKeepsTheNewestSampledTraces() {
+        Tracer tracer = new Tracer(2, 1);
+        for(int i = 0; i < 3; i++){
+            tracer.start("request " + i);
+            try(Trace.Span span = Tracer.span("step")){
+                Assert.assertNotNull(span);
+            }
+            tracer.finish("request " + i);
+        }
+        tracer.setSampleRate(0);
+        tracer.start("unsampled");
+        Assert.assertNull(tracer.finish("unsampled"));
+
+        List<Trace> recent = tracer.recent();
+        Assert.assertEquals(2, recent.size());
+        Assert.assertEquals("request 2", recent.get(0).getName());
+        Assert.assertEquals("request 1", recent.get(1).getName());
+        Assert.assertEquals("step", recent.get(0).getSpans().get(0).getName());
+    }
+}
@@ -0,0 +1,164 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import DAO.MessageDAO;
+import Model.Message;
+import Service.MessageService;
+import Util.ConnectionUtil;
+import Util.UnitOfWork;
+import io.javalin.Javalin;
+
+public class UnitOfWorkTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        socialMediaController.getReadiness().awaitReady(30, TimeUnit.SECONDS);
+    }
+
+    @After
+    public void tearDown() {
+        UnitOfWork.attach(null);
+        app.stop();
+    }
+
+    private HttpResponse<String> send(String method, String path, String body) throws IOException, InterruptedException {
+        HttpRequest.Builder builder = HttpRequest.newBuilder().uri(URI.create("http://localhost:8080" + path));
+        if(body == null){
+            builder.method(method, HttpRequest.BodyPublishers.noBody());
+        }else{
+            builder.header("Content-Type", "application/json").method(method, HttpRequest.BodyPublishers.ofString(body));
+        }
+        return webClient.send(builder.build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    /**
+     * Sending POST localhost:8080/messages, PATCH localhost:8080/messages/1 and DELETE
+     * localhost:8080/messages/1
+     *
+     * Expected Response:
+     *  Each request checks out at most one pooled connection for all of its DAO calls
+     */
+    @Test
+    public void writeRequestsCheckOutOneConnection() throws IOException, InterruptedException {
+        long before = ConnectionUtil.getCheckouts();
+        HttpResponse<String> posted = send("POST", "/messages", "{\"posted_by\":1,\"message_text\":\"hello\",\"time_posted_epoch\":1669947800}");
+        Assert.assertEquals(200, posted.statusCode());
+        Assert.assertTrue(ConnectionUtil.getCheckouts() - before <= 1);
+
+        before = ConnectionUtil.getCheckouts();
+        Assert.assertEquals(200, send("PATCH", "/messages/1", "{\"message_text\":\"updated\"}").statusCode());
+        Assert.assertEquals(1, ConnectionUtil.getCheckouts() - before);
+
+        before = ConnectionUtil.getCheckouts();
+        HttpResponse<String> deleted = send("DELETE", "/messages/1", null);
+        Assert.assertEquals(200, deleted.statusCode());
+        Assert.assertEquals("updated", objectMapper.readValue(deleted.body(), Message.class).getMessage_text());
+        Assert.assertEquals(1, ConnectionUtil.getCheckouts() - before);
+        Assert.assertEquals("", send("GET", "/messages/1", null).body());
+    }
+
+    /**
+     * Writes of a unit are not visible to other connections until it commits.
+     */
+    @Test
+    public void writesAreCommittedWhenTheUnitFinishes() throws Exception {
+        MessageDAO messageDAO = new MessageDAO();
+        UnitOfWork unit = new UnitOfWork();
+        UnitOfWork.attach(unit);
+        Message added = messageDAO.insertMessage(new Message(1, "in a unit", 1669947800L));
+        Message updated = new Message(added.message_id, 1, "edited in a unit", 1669947800L);
+        Assert.assertEquals(updated, messageDAO.updateMessage(updated));
+        UnitOfWork.attach(null);
+
+        // read on another thread, outside of the unit
+        Assert.assertNull(CompletableFuture.supplyAsync(() -> messageDAO.getMessageByID(added.message_id)).get(5, TimeUnit.SECONDS));
+        unit.finish(true);
+        Assert.assertEquals(updated, messageDAO.getMessageByID(added.message_id));
+    }
+
+    /**
+     * Rolling back a unit undoes its writes and drops what the service cached from them; a DAO rolling
+     * back its own statements does not undo earlier ones of the unit.
+     */
+    @Test
+    public void rollbackUndoesTheUnitsWrites() {
+        MessageDAO messageDAO = new MessageDAO();
+        MessageService messageService = new MessageService(messageDAO);
+        Assert.assertEquals(1, messageService.getAllMessagesOfUser(1).size());
+
+        UnitOfWork unit = new UnitOfWork();
+        UnitOfWork.attach(unit);
+        Message added = messageService.addMessage(new Message(1, "rolled back", 1669947800L));
+        Assert.assertEquals(2, messageService.getAllMessagesOfUser(1).size());
+        UnitOfWork.attach(null);
+        unit.finish(false);
+
+        Assert.assertNull(messageDAO.getMessageByID(added.message_id));
+        Assert.assertEquals(1, messageService.getAllMessagesOfUser(1).size());
+
+        unit = new UnitOfWork();
+        UnitOfWork.attach(unit);
+        Message kept = messageDAO.insertMessage(new Message(1, "kept", 1669947801L));
+        Assert.assertFalse(messageDAO.deleteMessageByID(kept.message_id + 1000));
+        UnitOfWork.attach(null);
+        unit.finish(true);
+
+        Assert.assertEquals(kept, messageDAO.getMessageByID(kept.message_id));
+    }
+
+    /**
+     * Requests reading while a unit's write is not yet committed neither see the write in the caches nor
+     * leave the old row cached once it commits.
+     */
+    @Test
+    public void readsBeforeTheCommitDoNotCacheTheOldRow() throws Exception {
+        MessageService messageService = new MessageService(new MessageDAO());
+        Assert.assertEquals("test message 1", messageService.getMessageByID(1).getMessage_text());
+        Assert.assertEquals("test message 1", messageService.getAllMessagesOfUser(1).get(0).getMessage_text());
+
+        UnitOfWork unit = new UnitOfWork();
+        UnitOfWork.attach(unit);
+        Message edited = new Message(1, 1, "edited in a unit", 1669947792L);
+        Assert.assertEquals(edited, messageService.updateMessage(edited));
+        UnitOfWork.attach(null);
+
+        // another request, between the write and the commit
+        Assert.assertEquals("test message 1", CompletableFuture.supplyAsync(() -> messageService.getMessageByID(1))
+                .get(5, TimeUnit.SECONDS).getMessage_text());
+        Assert.assertEquals("test message 1", CompletableFuture.supplyAsync(() -> messageService.getAllMessagesOfUser(1))
+                .get(5, TimeUnit.SECONDS).get(0).getMessage_text());
+
+        unit.finish(true);
+        Assert.assertEquals(edited, messageService.getMessageByID(1));
+        Assert.assertEquals(edited, messageService.getAllMessagesOfUser(1).get(0));
+        Assert.assertEquals(new MessageDAO().getVersionedMessageByID(1), messageService.getVersionedMessageByID(1));
+    }
+}
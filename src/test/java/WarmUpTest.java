@@ -0,0 +1,61 @@
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class WarmUpTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database and start the app; setUp returns once startup has finished.
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Assert.assertTrue(socialMediaController.getReadiness().awaitReady(30, TimeUnit.SECONDS));
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * After startup the readiness probe answers 200 and the warm-up requests left the data unchanged.
+     */
+    @Test
+    public void readyAfterWarmUpWithoutChangingData() throws Exception {
+        HttpRequest health = HttpRequest.newBuilder().uri(URI.create("http://localhost:8080/health/ready")).build();
+        HttpResponse<String> healthResponse = webClient.send(health, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, healthResponse.statusCode());
+
+        HttpRequest messages = HttpRequest.newBuilder().uri(URI.create("http://localhost:8080/messages")).build();
+        HttpResponse<String> response = webClient.send(messages, HttpResponse.BodyHandlers.ofString());
+        List<Message> actual = objectMapper.readValue(response.body(), new TypeReference<List<Message>>(){});
+        Assert.assertEquals(1, actual.size());
+        Assert.assertEquals(new Message(1, 1, "test message 1", 1669947792), actual.get(0));
+    }
+}